@@ -69,6 +69,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -245,14 +246,67 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
                     .build();
         }
         LOG.debug("Running query {} for job {}", query.id(), job.getId());
-        final HashMap<String, SearchType.Result> resultsMap = Maps.newHashMap();
+        final List<String> searchTypeIds = new ArrayList<>(queryContext.searchTypeQueries().keySet());
+        final List<SearchRequest> searches = searchRequests(job, query, queryContext, searchTypeIds);
+
+        //ES does not support per-request cancel_after_time_interval. We have to use simplified solution - the whole multi-search will be cancelled if it takes more than configured max. exec. time.
+        final PlainActionFuture<MultiSearchResponse> mSearchFuture = client.cancellableMsearch(searches);
+        job.setQueryExecutionFuture(query.id(), mSearchFuture);
+        final List<MultiSearchResponse.Item> results = getResults(mSearchFuture, job.getCancelAfterSeconds(), searches.size());
+
+        final QueryResult queryResult = extractResult(job, query, queryContext, searchTypeIds, results);
+        LOG.debug("Query {} ran for job {}", query.id(), job.getId());
+        return queryResult;
+    }
 
+    @Override
+    public boolean supportsMultiQueryRun() {
+        return true;
+    }
+
+    @Override
+    @WithSpan
+    public Map<Query, QueryResult> doRun(SearchJob job, Map<Query, ESGeneratedQueryContext> queryContexts) {
+        LOG.debug("Running queries {} for job {}", queryContexts.keySet().stream().map(Query::id).toList(), job.getId());
+        // the search types of all queries go out as one multi-search, each query gets back its slice of the responses
+        final List<SearchRequest> searches = new ArrayList<>();
+        final Map<Query, List<String>> searchTypeIdsByQuery = new HashMap<>();
+        final Map<Query, Integer> firstSearchIndexByQuery = new HashMap<>();
+        queryContexts.forEach((query, queryContext) -> {
+            final List<String> searchTypeIds = new ArrayList<>(queryContext.searchTypeQueries().keySet());
+            searchTypeIdsByQuery.put(query, searchTypeIds);
+            firstSearchIndexByQuery.put(query, searches.size());
+            if (!searchTypeIds.isEmpty()) {
+                searches.addAll(searchRequests(job, query, queryContext, searchTypeIds));
+            }
+        });
+
+        final List<MultiSearchResponse.Item> results;
+        if (searches.isEmpty()) {
+            results = Collections.emptyList();
+        } else {
+            final PlainActionFuture<MultiSearchResponse> mSearchFuture = client.cancellableMsearch(searches);
+            queryContexts.keySet().forEach(query -> job.setQueryExecutionFuture(query.id(), mSearchFuture));
+            results = getResults(mSearchFuture, job.getCancelAfterSeconds(), searches.size());
+        }
+
+        final Map<Query, QueryResult> queryResults = new LinkedHashMap<>();
+        queryContexts.forEach((query, queryContext) -> {
+            final List<String> searchTypeIds = searchTypeIdsByQuery.get(query);
+            final int firstSearchIndex = firstSearchIndexByQuery.get(query);
+            queryResults.put(query, extractResult(job, query, queryContext, searchTypeIds,
+                    results.subList(firstSearchIndex, firstSearchIndex + searchTypeIds.size())));
+        });
+        LOG.debug("Queries {} ran for job {}", queryContexts.keySet().stream().map(Query::id).toList(), job.getId());
+        return queryResults;
+    }
+
+    private List<SearchRequest> searchRequests(SearchJob job, Query query, ESGeneratedQueryContext queryContext, List<String> searchTypeIds) {
         final Set<String> affectedIndices = indexLookup.indexNamesForStreamsInTimeRange(query.usedStreamIds(), query.timerange());
 
         final Map<String, SearchSourceBuilder> searchTypeQueries = queryContext.searchTypeQueries();
-        final List<String> searchTypeIds = new ArrayList<>(searchTypeQueries.keySet());
 
-        final List<SearchRequest> searches = searchTypeIds
+        return searchTypeIds
                 .stream()
                 .map(searchTypeId -> {
                     final Set<String> affectedIndicesForSearchType = query.searchTypes().stream()
@@ -275,12 +329,11 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
                 })
                 .map(request -> request.preference(job.getId()))
                 .toList();
+    }
 
-        //ES does not support per-request cancel_after_time_interval. We have to use simplified solution - the whole multi-search will be cancelled if it takes more than configured max. exec. time.
-        final PlainActionFuture<MultiSearchResponse> mSearchFuture = client.cancellableMsearch(searches);
-        job.setQueryExecutionFuture(query.id(), mSearchFuture);
-        final List<MultiSearchResponse.Item> results = getResults(mSearchFuture, job.getCancelAfterSeconds(), searches.size());
-
+    private QueryResult extractResult(SearchJob job, Query query, ESGeneratedQueryContext queryContext, List<String> searchTypeIds,
+                                      List<MultiSearchResponse.Item> results) {
+        final HashMap<String, SearchType.Result> resultsMap = Maps.newHashMap();
         for (SearchType searchType : query.searchTypes()) {
             final String searchTypeId = searchType.id();
             final Provider<ESSearchTypeHandler<? extends SearchType>> handlerProvider = elasticsearchSearchTypeHandlers.get(searchType.type());
@@ -320,7 +373,6 @@ public class ElasticsearchBackend implements QueryBackend<ESGeneratedQueryContex
             }
         }
 
-        LOG.debug("Query {} ran for job {}", query.id(), job.getId());
         return QueryResult.builder()
                 .query(query)
                 .searchTypes(resultsMap)
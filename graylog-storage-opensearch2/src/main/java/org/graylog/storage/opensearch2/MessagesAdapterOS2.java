@@ -18,8 +18,11 @@ package org.graylog.storage.opensearch2;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.joschi.jadconfig.util.Size;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import org.graylog.shaded.opensearch2.org.opensearch.OpenSearchException;
 import org.graylog.shaded.opensearch2.org.opensearch.action.bulk.BulkItemResponse;
 import org.graylog.shaded.opensearch2.org.opensearch.action.bulk.BulkRequest;
@@ -27,10 +30,18 @@ import org.graylog.shaded.opensearch2.org.opensearch.action.bulk.BulkResponse;
 import org.graylog.shaded.opensearch2.org.opensearch.action.get.GetRequest;
 import org.graylog.shaded.opensearch2.org.opensearch.action.get.GetResponse;
 import org.graylog.shaded.opensearch2.org.opensearch.action.index.IndexRequest;
+import org.graylog.shaded.opensearch2.org.opensearch.client.Request;
+import org.graylog.shaded.opensearch2.org.opensearch.client.Response;
+import org.graylog.shaded.opensearch2.org.opensearch.client.ResponseException;
 import org.graylog.shaded.opensearch2.org.opensearch.client.indices.AnalyzeRequest;
 import org.graylog.shaded.opensearch2.org.opensearch.client.indices.AnalyzeResponse;
+import org.graylog.shaded.opensearch2.org.opensearch.common.xcontent.LoggingDeprecationHandler;
 import org.graylog.shaded.opensearch2.org.opensearch.common.xcontent.XContentType;
+import org.graylog.shaded.opensearch2.org.opensearch.common.xcontent.json.JsonXContent;
 import org.graylog.shaded.opensearch2.org.opensearch.core.rest.RestStatus;
+import org.graylog.shaded.opensearch2.org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.graylog.shaded.opensearch2.org.opensearch.core.xcontent.XContentParser;
+import org.graylog2.indexer.messages.BulkBufferPool;
 import org.graylog2.indexer.messages.ChunkedBulkIndexer;
 import org.graylog2.indexer.messages.DocumentNotFoundException;
 import org.graylog2.indexer.messages.Indexable;
@@ -42,10 +53,12 @@ import org.graylog2.indexer.messages.IndexingSuccess;
 import org.graylog2.indexer.messages.Messages;
 import org.graylog2.indexer.messages.MessagesAdapter;
 import org.graylog2.indexer.messages.SerializationContext;
+import org.graylog2.indexer.messages.SerializedBulkRequest;
 import org.graylog2.indexer.results.ResultMessage;
 import org.graylog2.indexer.results.ResultMessageFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -74,15 +87,31 @@ public class MessagesAdapterOS2 implements MessagesAdapter {
     private final Meter invalidTimestampMeter;
     private final ChunkedBulkIndexer chunkedBulkIndexer;
     private final ObjectMapper objectMapper;
+    private final boolean streamingSerialization;
+    private final long maxBulkRequestBytes;
+    private final BulkBufferPool bulkBufferPool;
 
-    @Inject
     public MessagesAdapterOS2(ResultMessageFactory resultMessageFactory, OpenSearchClient openSearchClient,
                               MetricRegistry metricRegistry, ChunkedBulkIndexer chunkedBulkIndexer, ObjectMapper objectMapper) {
+        this(resultMessageFactory, openSearchClient, metricRegistry, chunkedBulkIndexer, objectMapper,
+                false, Size.megabytes(50), Size.megabytes(64));
+    }
+
+    @Inject
+    public MessagesAdapterOS2(ResultMessageFactory resultMessageFactory, OpenSearchClient openSearchClient,
+                              MetricRegistry metricRegistry, ChunkedBulkIndexer chunkedBulkIndexer, ObjectMapper objectMapper,
+                              @Named("elasticsearch_bulk_streaming_serialization") boolean streamingSerialization,
+                              @Named("elasticsearch_bulk_max_request_size") Size maxBulkRequestSize,
+                              @Named("elasticsearch_bulk_buffer_pool_size") Size bulkBufferPoolSize) {
         this.resultMessageFactory = resultMessageFactory;
         this.client = openSearchClient;
         this.invalidTimestampMeter = metricRegistry.meter(name(Messages.class, "invalid-timestamps"));
         this.chunkedBulkIndexer = chunkedBulkIndexer;
         this.objectMapper = objectMapper;
+        this.streamingSerialization = streamingSerialization;
+        this.maxBulkRequestBytes = maxBulkRequestSize.toBytes();
+        this.bulkBufferPool = new BulkBufferPool(BulkBufferPool.DEFAULT_SEGMENT_SIZE,
+                (int) Math.min(Integer.MAX_VALUE, bulkBufferPoolSize.toBytes() / BulkBufferPool.DEFAULT_SEGMENT_SIZE));
     }
 
     @Override
@@ -110,7 +139,61 @@ public class MessagesAdapterOS2 implements MessagesAdapter {
 
     @Override
     public IndexingResults bulkIndex(List<IndexingRequest> messageList) throws IOException {
-        return chunkedBulkIndexer.index(messageList, this::runBulkRequest);
+        if (!streamingSerialization) {
+            return chunkedBulkIndexer.index(messageList, this::runBulkRequest);
+        }
+        try (SerializedBulkRequest bulkRequest = SerializedBulkRequest.serialize(messageList,
+                SerializationContext.of(objectMapper, invalidTimestampMeter), bulkBufferPool)) {
+            return chunkedBulkIndexer.index(bulkRequest, maxBulkRequestBytes,
+                    (indexedSuccessfully, previousResults, slice) -> runSerializedBulkRequest(indexedSuccessfully, previousResults, bulkRequest, slice));
+        }
+    }
+
+    private ChunkedBulkIndexer.BulkIndexResult runSerializedBulkRequest(int indexedSuccessfully, IndexingResults previousResults,
+                                                                        SerializedBulkRequest bulkRequest,
+                                                                        SerializedBulkRequest.Slice slice) throws ChunkedBulkIndexer.EntityTooLargeException, IOException {
+        final Request request = new Request("POST", "/_bulk");
+        request.setEntity(new SerializedBulkRequestEntity(bulkRequest, slice));
+
+        final BulkResponse result;
+        try {
+            result = client.executeWithIOException((c, requestOptions) -> {
+                request.setOptions(requestOptions);
+                final Response response = c.getLowLevelClient().performRequest(request);
+                try (InputStream content = response.getEntity().getContent();
+                     XContentParser parser = JsonXContent.jsonXContent.createParser(NamedXContentRegistry.EMPTY, LoggingDeprecationHandler.INSTANCE, content)) {
+                    return BulkResponse.fromXContent(parser);
+                }
+            }, "Unable to bulk index messages");
+        } catch (ResponseException e) {
+            final int status = e.getResponse().getStatusLine().getStatusCode();
+            if (status == RestStatus.REQUEST_ENTITY_TOO_LARGE.getStatus()) {
+                throw new ChunkedBulkIndexer.EntityTooLargeException(indexedSuccessfully, previousResults);
+            } else if (status == RestStatus.TOO_MANY_REQUESTS.getStatus()) {
+                final JsonNode error = readError(e.getResponse());
+                if (error.toString().contains(CIRCUIT_BREAKING_EXCEPTION)) {
+                    throw new ChunkedBulkIndexer.CircuitBreakerException(indexedSuccessfully, previousResults, durabilityFrom(error));
+                }
+                throw new ChunkedBulkIndexer.TooManyRequestsException(indexedSuccessfully, previousResults);
+            }
+            throw new org.graylog2.indexer.ElasticsearchException(e);
+        }
+        final List<IndexingRequest> chunk = bulkRequest.requests(slice);
+        return new ChunkedBulkIndexer.BulkIndexResult(indexingResultsFrom(result, chunk), result::buildFailureMessage, result.getItems().length);
+    }
+
+    private JsonNode readError(Response response) {
+        try (InputStream content = response.getEntity().getContent()) {
+            return objectMapper.readTree(content).path("error");
+        } catch (IOException | RuntimeException e) {
+            return objectMapper.missingNode();
+        }
+    }
+
+    private ChunkedBulkIndexer.CircuitBreakerException.Durability durabilityFrom(JsonNode error) {
+        return "TRANSIENT".equals(error.path("durability").asText())
+                ? ChunkedBulkIndexer.CircuitBreakerException.Durability.Transient
+                : ChunkedBulkIndexer.CircuitBreakerException.Durability.Permanent;
     }
 
     private ChunkedBulkIndexer.BulkIndexResult runBulkRequest(int indexedSuccessfully, IndexingResults previousResults, List<IndexingRequest> chunk) throws ChunkedBulkIndexer.EntityTooLargeException {
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.storage.opensearch2;
+
+import org.graylog.shaded.opensearch2.org.apache.http.entity.AbstractHttpEntity;
+import org.graylog.shaded.opensearch2.org.apache.http.entity.ContentType;
+import org.graylog2.indexer.messages.SerializedBulkRequest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Repeatable HTTP entity which streams a slice of a {@link SerializedBulkRequest} directly from its buffers.
+ */
+class SerializedBulkRequestEntity extends AbstractHttpEntity {
+    private final SerializedBulkRequest request;
+    private final SerializedBulkRequest.Slice slice;
+
+    SerializedBulkRequestEntity(SerializedBulkRequest request, SerializedBulkRequest.Slice slice) {
+        this.request = request;
+        this.slice = slice;
+        setContentType(ContentType.APPLICATION_JSON.toString());
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return true;
+    }
+
+    @Override
+    public long getContentLength() {
+        return request.sizeInBytes(slice);
+    }
+
+    @Override
+    public InputStream getContent() {
+        return request.openStream(slice);
+    }
+
+    @Override
+    public void writeTo(OutputStream outStream) throws IOException {
+        request.writeTo(slice, outStream);
+    }
+
+    @Override
+    public boolean isStreaming() {
+        return false;
+    }
+}
@@ -17,8 +17,10 @@
 package org.graylog.storage.opensearch2.views;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import org.graylog.plugins.views.search.Query;
 import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.Search;
 import org.graylog.plugins.views.search.SearchJob;
 import org.graylog.plugins.views.search.SearchType;
 import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
@@ -39,10 +41,13 @@ import org.mockito.junit.MockitoRule;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.verify;
 
 public class OpenSearchBackendMultiSearchTest extends OpenSearchBackendGeneratedRequestTestBase {
     @Rule
@@ -148,6 +153,78 @@ public class OpenSearchBackendMultiSearchTest extends OpenSearchBackendGenerated
         );
     }
 
+    @Test
+    public void searchTypesOfAllQueriesGoOutInOneMultiSearch() throws Exception {
+        final Query query1 = Query.builder()
+                .id("query1")
+                .searchTypes(Set.of(Pivot.builder()
+                        .id("pivot1")
+                        .series(Collections.singletonList(Average.builder().field("field1").build()))
+                        .rollup(true)
+                        .build()))
+                .query(ElasticsearchQueryString.of("*"))
+                .timerange(timeRangeForTest())
+                .build();
+        final Query query2 = Query.builder()
+                .id("query2")
+                .searchTypes(Set.of(Pivot.builder()
+                        .id("pivot2")
+                        .series(Collections.singletonList(Max.builder().field("field2").build()))
+                        .rollup(true)
+                        .build()))
+                .query(ElasticsearchQueryString.of("*"))
+                .timerange(timeRangeForTest())
+                .build();
+        final SearchJob job = new SearchJob("job1", Search.builder().id("search1").queries(ImmutableSet.of(query1, query2)).build(), "admin", "test-node-id");
+        final MultiSearchResponse response = TestMultisearchResponse.fromFixture("successfulMultiSearchResponse.json");
+        mockCancellableMSearch(response);
+
+        final Map<Query, OSGeneratedQueryContext> queryContexts = new LinkedHashMap<>();
+        queryContexts.put(query1, createContext(query1));
+        queryContexts.put(query2, createContext(query2));
+        final Map<Query, QueryResult> queryResults = this.openSearchBackend.doRun(job, queryContexts);
+
+        verify(client).cancellableMsearch(clientRequestCaptor.capture());
+        assertThat(clientRequestCaptor.getValue()).hasSize(2);
+
+        assertThat(queryResults).containsOnlyKeys(query1, query2);
+        assertThat(queryResults.get(query1).searchTypes()).containsOnlyKeys("pivot1");
+        assertThat(((PivotResult) queryResults.get(query1).searchTypes().get("pivot1")).rows().get(0)).isEqualTo(
+                PivotResult.Row.builder().key(ImmutableList.of()).source("leaf").addValue(
+                        PivotResult.Value.create(Collections.singletonList("avg(field1)"), 27220.273504273504, true, "row-leaf")
+                ).build()
+        );
+        assertThat(queryResults.get(query2).searchTypes()).containsOnlyKeys("pivot2");
+        assertThat(((PivotResult) queryResults.get(query2).searchTypes().get("pivot2")).rows().get(0)).isEqualTo(
+                PivotResult.Row.builder().key(ImmutableList.of()).source("leaf").addValue(
+                        PivotResult.Value.create(Collections.singletonList("max(field2)"), 42.0, true, "row-leaf")
+                ).build()
+        );
+    }
+
+    @Test
+    public void failingSearchTypeOnlyFailsItsOwnQuery() throws Exception {
+        final Query query1 = query.toBuilder().id("query1").build();
+        final Query query2 = Query.builder()
+                .id("query2")
+                .query(ElasticsearchQueryString.of("*"))
+                .timerange(timeRangeForTest())
+                .build();
+        final SearchJob job = new SearchJob("job1", Search.builder().id("search1").queries(ImmutableSet.of(query1, query2)).build(), "admin", "test-node-id");
+        final MultiSearchResponse response = TestMultisearchResponse.fromFixture("partiallySuccessfulMultiSearchResponse.json");
+        mockCancellableMSearch(response);
+
+        final Map<Query, OSGeneratedQueryContext> queryContexts = new LinkedHashMap<>();
+        queryContexts.put(query1, createContext(query1));
+        queryContexts.put(query2, createContext(query2));
+        final Map<Query, QueryResult> queryResults = this.openSearchBackend.doRun(job, queryContexts);
+
+        assertThat(queryResults.get(query1).errors()).hasSize(1);
+        assertThat(queryResults.get(query1).searchTypes()).containsOnlyKeys("pivot2");
+        assertThat(queryResults.get(query2).errors()).isEmpty();
+        assertThat(queryResults.get(query2).searchTypes()).isEmpty();
+    }
+
     private OSGeneratedQueryContext createContext(Query query) {
         return this.openSearchBackend.generate(query, Collections.emptySet(), DateTimeZone.UTC);
     }
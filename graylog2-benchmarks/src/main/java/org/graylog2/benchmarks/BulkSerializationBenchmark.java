@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.Meter;
+import com.google.common.base.Strings;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.indexer.messages.BulkBufferPool;
+import org.graylog2.indexer.messages.ChunkedBulkIndexer;
+import org.graylog2.indexer.messages.IndexingRequest;
+import org.graylog2.indexer.messages.IndexingResults;
+import org.graylog2.indexer.messages.MessagesTestIndexSet;
+import org.graylog2.indexer.messages.SerializationContext;
+import org.graylog2.indexer.messages.SerializedBulkRequest;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.Tools;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the serialization of output batches into bulk requests by the {@link ChunkedBulkIndexer}, without sending
+ * them anywhere. {@code heapChunks} serializes every message into its own byte array like the regular bulk path,
+ * {@code streamingSlices} serializes the batch into pooled buffers with {@link SerializedBulkRequest}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BulkSerializationBenchmark {
+    private static final long MAX_CHUNK_BYTES = 5 * 1024 * 1024;
+
+    @Param({"500", "5000"})
+    public int batchSize;
+
+    @Param({"256", "4096"})
+    public int messageSize;
+
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    private final IndexSet indexSet = new MessagesTestIndexSet();
+    private final ChunkedBulkIndexer indexer = new ChunkedBulkIndexer();
+    private final SerializationContext context = SerializationContext.of(new ObjectMapperProvider().get(), new Meter());
+    private final BulkBufferPool pool = new BulkBufferPool(BulkBufferPool.DEFAULT_SEGMENT_SIZE, 1024);
+    private List<IndexingRequest> requests;
+
+    @Setup
+    public void setUp() {
+        final String text = Strings.repeat("A", messageSize);
+        requests = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            final Message message = messageFactory.createMessage(i + text, "benchmark-source", Tools.nowUTC());
+            message.addField("http_method", "GET");
+            message.addField("http_response_code", 200);
+            message.addField("took_ms", 42L);
+            requests.add(IndexingRequest.create(indexSet, message));
+        }
+    }
+
+    @Benchmark
+    public IndexingResults heapChunks() throws IOException {
+        return indexer.index(requests, (indexedSuccessfully, previousResults, chunk) -> {
+            final ByteArrayOutputStream body = new ByteArrayOutputStream();
+            for (IndexingRequest request : chunk) {
+                body.write(request.message().serialize(context));
+                body.write('\n');
+            }
+            return new ChunkedBulkIndexer.BulkIndexResult(IndexingResults.empty(), () -> "", chunk.size());
+        });
+    }
+
+    @Benchmark
+    public IndexingResults streamingSlices() throws IOException {
+        try (SerializedBulkRequest bulkRequest = SerializedBulkRequest.serialize(requests, context, pool)) {
+            return indexer.index(bulkRequest, MAX_CHUNK_BYTES, (indexedSuccessfully, previousResults, slice) -> {
+                bulkRequest.writeTo(slice, OutputStream.nullOutputStream());
+                return new ChunkedBulkIndexer.BulkIndexResult(IndexingResults.empty(), () -> "", slice.size());
+            });
+        }
+    }
+}
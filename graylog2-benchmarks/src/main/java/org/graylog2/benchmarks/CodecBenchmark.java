@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.inputs.codecs.GelfCodec;
+import org.graylog2.inputs.codecs.SyslogCodec;
+import org.graylog2.inputs.codecs.gelf.GELFBulkDroppedMsgService;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Measures decoding of raw messages with the {@link GelfCodec} and the {@link SyslogCodec}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CodecBenchmark {
+    private static final String GELF = """
+            {"version": "1.1", "host": "example.org", "short_message": "A short message that helps you identify what is going on",
+             "full_message": "Backtrace here\\n\\nmore stuff", "timestamp": 1385053862.3072, "level": 1,
+             "_user_id": 9001, "_some_info": "foo", "_some_env_var": "bar"}""";
+    private static final String SYSLOG_RFC3164 = "<45>Oct 21 12:09:37 c4dc57ba1ebb syslog-ng[7208]: syslog-ng starting up; version='3.5.3'";
+    private static final String SYSLOG_RFC5424 = "<165>1 2012-12-25T22:14:15.003Z mymachine.example.com evntslog - ID47 [exampleSDID@32473 iut=\"3\" eventSource=\"Application\" eventID=\"1011\"] BOMAn application event log entry";
+
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    private final InetSocketAddress remoteAddress = new InetSocketAddress("127.0.0.1", 5140);
+
+    private GelfCodec gelfCodec;
+    private SyslogCodec syslogCodec;
+    private RawMessage gelfMessage;
+    private RawMessage gzipGelfMessage;
+    private RawMessage rfc3164Message;
+    private RawMessage rfc5424Message;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Configuration configuration = new Configuration(Collections.emptyMap());
+        gelfCodec = new GelfCodec(configuration, null, messageFactory, new GELFBulkDroppedMsgService(null));
+        syslogCodec = new SyslogCodec(configuration, new MetricRegistry(), messageFactory);
+
+        gelfMessage = new RawMessage(GELF.getBytes(UTF_8), remoteAddress);
+        gzipGelfMessage = new RawMessage(gzip(GELF.getBytes(UTF_8)), remoteAddress);
+        rfc3164Message = new RawMessage(SYSLOG_RFC3164.getBytes(UTF_8), remoteAddress);
+        rfc5424Message = new RawMessage(SYSLOG_RFC5424.getBytes(UTF_8), remoteAddress);
+    }
+
+    @Benchmark
+    public Optional<Message> gelf() {
+        return gelfCodec.decodeSafe(gelfMessage);
+    }
+
+    @Benchmark
+    public Optional<Message> gelfGzip() {
+        return gelfCodec.decodeSafe(gzipGelfMessage);
+    }
+
+    @Benchmark
+    public Optional<Message> syslogRfc3164() {
+        return syslogCodec.decodeSafe(rfc3164Message);
+    }
+
+    @Benchmark
+    public Optional<Message> syslogRfc5424() {
+        return syslogCodec.decodeSafe(rfc5424Message);
+    }
+
+    private static byte[] gzip(byte[] payload) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(payload);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.eventbus.EventBus;
+import org.apache.commons.io.FileUtils;
+import org.graylog2.Configuration;
+import org.graylog2.audit.NullAuditEventSender;
+import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.plugin.system.SimpleNodeId;
+import org.graylog2.shared.SuppressForbidden;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.LocalKafkaJournal;
+import org.joda.time.Duration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.graylog2.plugin.configuration.Configuration.EMPTY_CONFIGURATION;
+
+/**
+ * Measures writing to and reading from a {@link LocalKafkaJournal} in a temporary directory. The journal is created
+ * from scratch for every iteration, so writes don't run into the retention limits.
+ * <p>
+ * Reads include decoding the {@link RawMessage}, because that is where the journal reader spends its time.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalKafkaJournalBenchmark {
+    private static final int BATCH_SIZE = 500;
+    private static final int PREFILLED_MESSAGES = 200_000;
+
+    @Param({"256", "2048"})
+    public int messageSize;
+
+    // Only affects reads
+    @Param({"false", "true"})
+    public boolean memoryMappedReads;
+
+    private ScheduledExecutorService scheduler;
+    private Path journalDirectory;
+    private LocalKafkaJournal journal;
+    private List<Journal.Entry> batch;
+    private long readOffset;
+
+    @Setup(Level.Iteration)
+    @SuppressForbidden("Executors#newSingleThreadScheduledExecutor() is okay for benchmarks")
+    public void setUp() throws IOException {
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        journalDirectory = Files.createTempDirectory("journal-benchmark");
+        final ServerStatus serverStatus = new ServerStatus(new Configuration(), EnumSet.of(ServerStatus.Capability.SERVER),
+                new EventBus("journal-benchmark"), NullAuditEventSender::new, new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000000"));
+        journal = new LocalKafkaJournal(journalDirectory,
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.gigabytes(10L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                LocalKafkaJournal.THRESHOLD_THROTTLING_DISABLED,
+                memoryMappedReads,
+                1,
+                new MetricRegistry(),
+                serverStatus);
+        journal.startAsync().awaitRunning();
+
+        batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            final RawMessage rawMessage = new RawMessage(new byte[messageSize]);
+            rawMessage.setCodecName("raw");
+            rawMessage.setCodecConfig(EMPTY_CONFIGURATION);
+            batch.add(journal.createEntry(rawMessage.getIdBytes(), rawMessage.encode()));
+        }
+        for (int i = 0; i < PREFILLED_MESSAGES / BATCH_SIZE; i++) {
+            journal.write(batch);
+        }
+        readOffset = 0;
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws IOException {
+        journal.stopAsync().awaitTerminated();
+        scheduler.shutdownNow();
+        FileUtils.deleteDirectory(journalDirectory.toFile());
+    }
+
+    @Benchmark
+    public long write() {
+        return journal.write(batch);
+    }
+
+    @Benchmark
+    public void read(Blackhole blackhole) {
+        final List<Journal.JournalReadEntry> entries = journal.read(readOffset, BATCH_SIZE);
+        for (Journal.JournalReadEntry entry : entries) {
+            blackhole.consume(RawMessage.decode(entry.getPayloadBuffer(), entry.getOffset()));
+        }
+        readOffset = (readOffset + entries.size()) % PREFILLED_MESSAGES;
+    }
+}
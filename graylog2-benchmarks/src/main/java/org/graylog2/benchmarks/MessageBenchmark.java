@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.Tools;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Measures the cost of creating messages and adding fields to them, which every codec and pipeline rule does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageBenchmark {
+    @Param({"5", "20", "50"})
+    public int fieldCount;
+
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    private final DateTime timestamp = Tools.nowUTC();
+    private String[] fieldNames;
+
+    @Setup
+    public void setUp() {
+        fieldNames = IntStream.range(0, fieldCount).mapToObj(i -> "field_" + i).toArray(String[]::new);
+    }
+
+    @Benchmark
+    public Message createMessage() {
+        return messageFactory.createMessage("benchmark message", "benchmark-source", timestamp);
+    }
+
+    @Benchmark
+    public Message addStringFields() {
+        final Message message = messageFactory.createMessage("benchmark message", "benchmark-source", timestamp);
+        for (String fieldName : fieldNames) {
+            message.addField(fieldName, "value");
+        }
+        return message;
+    }
+
+    @Benchmark
+    public Message addNumericFields() {
+        final Message message = messageFactory.createMessage("benchmark message", "benchmark-source", timestamp);
+        for (int i = 0; i < fieldNames.length; i++) {
+            message.addField(fieldNames[i], i);
+        }
+        return message;
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.eventbus.EventBus;
+import org.bson.types.ObjectId;
+import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.codegen.RuleCompiler;
+import org.graylog.plugins.pipelineprocessor.db.PipelineDao;
+import org.graylog.plugins.pipelineprocessor.db.PipelineService;
+import org.graylog.plugins.pipelineprocessor.db.PipelineStreamConnectionsService;
+import org.graylog.plugins.pipelineprocessor.db.RuleDao;
+import org.graylog.plugins.pipelineprocessor.db.RuleMetricsConfigDto;
+import org.graylog.plugins.pipelineprocessor.db.RuleMetricsConfigService;
+import org.graylog.plugins.pipelineprocessor.db.RuleService;
+import org.graylog.plugins.pipelineprocessor.db.memory.InMemoryPipelineService;
+import org.graylog.plugins.pipelineprocessor.db.memory.InMemoryPipelineStreamConnectionsService;
+import org.graylog.plugins.pipelineprocessor.db.memory.InMemoryRuleService;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
+import org.graylog.plugins.pipelineprocessor.functions.messages.HasField;
+import org.graylog.plugins.pipelineprocessor.functions.messages.SetField;
+import org.graylog.plugins.pipelineprocessor.functions.strings.Contains;
+import org.graylog.plugins.pipelineprocessor.functions.strings.Lowercase;
+import org.graylog.plugins.pipelineprocessor.functions.strings.RegexMatch;
+import org.graylog.plugins.pipelineprocessor.parser.FunctionRegistry;
+import org.graylog.plugins.pipelineprocessor.parser.PipelineRuleParser;
+import org.graylog.plugins.pipelineprocessor.processors.ConfigurationStateUpdater;
+import org.graylog.plugins.pipelineprocessor.processors.PipelineInterpreter;
+import org.graylog.plugins.pipelineprocessor.processors.PipelineResolver;
+import org.graylog.plugins.pipelineprocessor.rest.PipelineConnections;
+import org.graylog2.events.ClusterEventBus;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.Messages;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.shared.SuppressForbidden;
+import org.graylog2.shared.messageq.noop.NoopMessageQueueAcknowledger;
+import org.graylog2.streams.StreamImpl;
+import org.graylog2.streams.StreamMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PipelineInterpreter#process(Messages)} for a message in the default stream, which is connected to
+ * {@code pipelineCount} pipelines using a small set of typical rules.
+ * <p>
+ * The pipelines modify the message, so every invocation processes a freshly created message. Compare with
+ * {@link MessageBenchmark} to account for the message creation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PipelineInterpreterBenchmark {
+    private static final String RULES = """
+            rule "has_http_method"
+            when
+                has_field("http_method")
+            then
+                set_field("http_request", true);
+            end
+            ---
+            rule "request_id"
+            when
+                regex("^request (\\\\d+) ", to_string($message.message)).matches == true
+            then
+                let result = regex("^request (\\\\d+) ", to_string($message.message));
+                set_field("request_id", result["0"]);
+            end
+            ---
+            rule "contains_error"
+            when
+                contains(to_string($message.message), "error", true)
+            then
+                set_field("level", 3);
+            end
+            ---
+            rule "lowercase_source"
+            when
+                true
+            then
+                set_field("source", lowercase(to_string($message.source)));
+            end
+            """;
+
+    @Param({"1", "10"})
+    public int pipelineCount;
+
+    @Param({"false", "true"})
+    public boolean compiledRules;
+
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    private ScheduledExecutorService scheduler;
+    private PipelineInterpreter interpreter;
+    private Stream defaultStream;
+
+    @Setup
+    @SuppressForbidden("Executors#newSingleThreadScheduledExecutor() is okay for benchmarks")
+    public void setUp() {
+        final ClusterEventBus clusterEventBus = new ClusterEventBus();
+        final RuleService ruleService = new InMemoryRuleService(clusterEventBus);
+        final String[] rules = RULES.split("---\n");
+        for (int i = 0; i < rules.length; i++) {
+            ruleService.save(RuleDao.create("rule-" + i, "rule-" + i, null, rules[i], Tools.nowUTC(), null, null, null));
+        }
+
+        final PipelineService pipelineService = new InMemoryPipelineService(clusterEventBus);
+        final Set<String> pipelineIds = new HashSet<>();
+        for (int i = 0; i < pipelineCount; i++) {
+            final String id = new ObjectId().toHexString();
+            pipelineService.save(PipelineDao.create(id, null, "pipeline-" + i, null,
+                    "pipeline \"pipeline-" + i + "\"\n" +
+                            "stage 0 match either\n" +
+                            "    rule \"has_http_method\";\n" +
+                            "    rule \"request_id\";\n" +
+                            "stage 1 match all\n" +
+                            "    rule \"contains_error\";\n" +
+                            "    rule \"lowercase_source\";\n" +
+                            "end\n",
+                    Tools.nowUTC(), null));
+            pipelineIds.add(id);
+        }
+
+        final PipelineStreamConnectionsService connectionsService = new InMemoryPipelineStreamConnectionsService(clusterEventBus);
+        connectionsService.save(PipelineConnections.create(null, Stream.DEFAULT_STREAM_ID, pipelineIds));
+
+        final Map<String, Function<?>> functions = Map.of(
+                HasField.NAME, new HasField(),
+                SetField.NAME, new SetField(),
+                StringConversion.NAME, new StringConversion(),
+                RegexMatch.NAME, new RegexMatch(),
+                Contains.NAME, new Contains(),
+                Lowercase.NAME, new Lowercase());
+        final PipelineRuleParser parser = new PipelineRuleParser(new FunctionRegistry(functions));
+        final RuleMetricsConfigService ruleMetricsConfigService = new RuleMetricsConfigService(null, clusterEventBus) {
+            @Override
+            public RuleMetricsConfigDto get() {
+                return RuleMetricsConfigDto.createDefault();
+            }
+        };
+
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        scheduler = Executors.newSingleThreadScheduledExecutor();
+        final ConfigurationStateUpdater stateUpdater = new ConfigurationStateUpdater(ruleService,
+                pipelineService,
+                connectionsService,
+                parser,
+                (config, ruleParser) -> new PipelineResolver(ruleParser, config,
+                        new RuleCompiler(compiledRules, metricRegistry)),
+                ruleMetricsConfigService,
+                metricRegistry,
+                scheduler,
+                new EventBus("pipeline-benchmark"),
+                (currentPipelines, streamPipelineConnections, ruleMetricsConfig) -> new PipelineInterpreter.State(
+                        currentPipelines, streamPipelineConnections, ruleMetricsConfig, metricRegistry, 1, true));
+        interpreter = new PipelineInterpreter(new NoopMessageQueueAcknowledger(), metricRegistry, stateUpdater);
+
+        defaultStream = new StreamMock(Map.of(
+                "_id", new ObjectId(Stream.DEFAULT_STREAM_ID),
+                StreamImpl.FIELD_TITLE, "Default Stream",
+                StreamImpl.FIELD_DEFAULT_STREAM, true));
+    }
+
+    @TearDown
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Benchmark
+    public Messages process() {
+        final Message message = messageFactory.createMessage("request 42 failed with an error", "Web-01", Tools.nowUTC());
+        message.addField("http_method", "GET");
+        message.addStream(defaultStream);
+        return interpreter.process(message);
+    }
+}
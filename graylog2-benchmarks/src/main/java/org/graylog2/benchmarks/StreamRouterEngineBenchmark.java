@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.benchmarks;
+
+import com.codahale.metrics.MetricRegistry;
+import org.bson.types.ObjectId;
+import org.graylog2.Configuration;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.shared.SuppressForbidden;
+import org.graylog2.streams.StreamFaultManager;
+import org.graylog2.streams.StreamImpl;
+import org.graylog2.streams.StreamMetrics;
+import org.graylog2.streams.StreamMock;
+import org.graylog2.streams.StreamRouterEngine;
+import org.graylog2.streams.StreamRuleImpl;
+import org.graylog2.streams.matchers.StreamRuleMock;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link StreamRouterEngine#match(Message)} with synthetic stream rule sets. Every stream has an exact match
+ * rule on the source, a regex rule on the message and a presence rule, so a message matches a single stream.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamRouterEngineBenchmark {
+    @Param({"10", "100", "500"})
+    public int streamCount;
+
+    @Param({"false", "true"})
+    public boolean compiledMatching;
+
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    private ExecutorService executorService;
+    private StreamRouterEngine engine;
+    private Message message;
+
+    @Setup
+    @SuppressForbidden("Executors#newCachedThreadPool() is okay for benchmarks")
+    public void setUp() {
+        final List<Stream> streams = new ArrayList<>(streamCount);
+        for (int i = 0; i < streamCount; i++) {
+            final StreamMock stream = new StreamMock(Map.of(
+                    "_id", new ObjectId(),
+                    StreamImpl.FIELD_TITLE, "stream-" + i,
+                    StreamImpl.FIELD_MATCHING_TYPE, Stream.MatchingType.AND));
+            final List<StreamRule> rules = List.of(
+                    rule(stream, StreamRuleType.EXACT, "source", "host-" + i),
+                    rule(stream, StreamRuleType.REGEX, "message", "^request \\d+ from service-" + i + "$"),
+                    rule(stream, StreamRuleType.PRESENCE, "http_method", null));
+            stream.setStreamRules(rules);
+            streams.add(stream);
+        }
+
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final StreamMetrics streamMetrics = new StreamMetrics(metricRegistry);
+        final StreamFaultManager streamFaultManager = new StreamFaultManager(new Configuration(), streamMetrics, null, null);
+        final Stream defaultStream = new StreamMock(Map.of(
+                "_id", new ObjectId(Stream.DEFAULT_STREAM_ID),
+                StreamImpl.FIELD_TITLE, "Default Stream",
+                StreamImpl.FIELD_DEFAULT_STREAM, true));
+
+        executorService = Executors.newCachedThreadPool();
+        engine = new StreamRouterEngine(streams, executorService, streamFaultManager, streamMetrics,
+                () -> defaultStream, metricRegistry, compiledMatching);
+
+        // Matches the stream in the middle of the list
+        final int target = streamCount / 2;
+        message = messageFactory.createMessage("request 42 from service-" + target, "host-" + target, Tools.nowUTC());
+        message.addField("http_method", "GET");
+    }
+
+    @TearDown
+    public void tearDown() {
+        executorService.shutdownNow();
+    }
+
+    @Benchmark
+    public List<Stream> match() {
+        return engine.match(message);
+    }
+
+    private static StreamRule rule(Stream stream, StreamRuleType type, String field, String value) {
+        final Map<String, Object> rule = new HashMap<>();
+        rule.put("_id", new ObjectId());
+        rule.put(StreamRuleImpl.FIELD_TYPE, type.toInteger());
+        rule.put(StreamRuleImpl.FIELD_FIELD, field);
+        rule.put(StreamRuleImpl.FIELD_VALUE, value);
+        rule.put(StreamRuleImpl.FIELD_INVERTED, false);
+        rule.put(StreamRuleImpl.FIELD_STREAM_ID, stream.getId());
+        return new StreamRuleMock(rule);
+    }
+}
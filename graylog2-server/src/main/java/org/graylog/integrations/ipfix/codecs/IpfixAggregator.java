@@ -22,13 +22,14 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.RemovalListener;
 import com.google.protobuf.ByteString;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import jakarta.inject.Inject;
 import org.graylog.integrations.ipfix.InformationElementDefinitions;
 import org.graylog.integrations.ipfix.IpfixJournal;
 import org.graylog.integrations.ipfix.IpfixParser;
 import org.graylog.integrations.ipfix.ShallowDataSet;
 import org.graylog.integrations.ipfix.ShallowTemplateSet;
+import org.graylog.plugins.netflow.codecs.FlowTemplateRegistry;
 import org.graylog.plugins.netflow.codecs.RemoteAddressCodecAggregator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,23 +46,33 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import static org.graylog.plugins.netflow.codecs.FlowTemplateRegistry.Protocol.IPFIX;
+
+/**
+ * Prepends the templates to the IPFIX data sets referencing them and buffers data sets until their templates are
+ * known. Templates are shared between the nodes in the cluster by the {@link FlowTemplateRegistry}.
+ */
 public class IpfixAggregator implements RemoteAddressCodecAggregator {
     private static final Logger LOG = LoggerFactory.getLogger(IpfixAggregator.class);
-    private final Cache<TemplateKey, ShallowTemplateSet.Record> templateCache;
-    private final Cache<TemplateKey, Queue<ShallowDataSet>> packetCache;
+    private final FlowTemplateRegistry templateRegistry;
+    private final Cache<TemplateKey, BufferedDataSets> packetCache;
     private final IpfixParser shallowParser = new IpfixParser(InformationElementDefinitions.empty());
 
+    /**
+     * Creates an aggregator which doesn't share templates with other nodes.
+     */
     public IpfixAggregator() {
-        this.templateCache = CacheBuilder.newBuilder()
-                                         .maximumSize(5000)
-                                         .removalListener(notification -> LOG.debug("Removed [{}] from template cache for reason [{}]", notification.getKey(), notification.getCause()))
-                                         .recordStats()
-                                         .build();
+        this(new FlowTemplateRegistry());
+    }
+
+    @Inject
+    public IpfixAggregator(FlowTemplateRegistry templateRegistry) {
+        this.templateRegistry = templateRegistry;
         this.packetCache = CacheBuilder.newBuilder()
                                        .expireAfterWrite(1, TimeUnit.MINUTES)
                                        .maximumWeight(Size.megabytes(1).toBytes())
-                                       .removalListener((RemovalListener<TemplateKey, Queue<ShallowDataSet>>) notification -> LOG.debug("Removed [{}] from packet cache for reason [{}]", notification.getKey(), notification.getCause()))
-                                       .weigher((key, value) -> value.stream().map(shallowDataSet -> shallowDataSet.content().length).reduce(0, Integer::sum))
+                                       .removalListener((RemovalListener<TemplateKey, BufferedDataSets>) notification -> LOG.debug("Removed [{}] from packet cache for reason [{}]", notification.getKey(), notification.getCause()))
+                                       .weigher((key, value) -> value.dataSets.stream().map(shallowDataSet -> shallowDataSet.content().length).reduce(0, Integer::sum))
                                        .recordStats()
                                        .build();
     }
@@ -73,6 +84,8 @@ public class IpfixAggregator implements RemoteAddressCodecAggregator {
             return new Result(null, false);
         }
         try {
+            // read before registering the templates of this message, see BufferedDataSets#templateVersion
+            final long templateVersion = templateRegistry.version();
             final IpfixParser.MessageDescription messageDescription = shallowParser.shallowParseMessage(buf);
             final long observationDomainId = messageDescription.getHeader().observationDomainId();
             addTemplateKeyInCache(remoteAddress, messageDescription, observationDomainId);
@@ -84,32 +97,37 @@ public class IpfixAggregator implements RemoteAddressCodecAggregator {
             // the set of template records to include in the newly created message that is our "aggregate result"
             final Set<Integer> bufferedTemplateIdList = new HashSet<>();
 
-            if (!messageDescription.declaredTemplateIds().isEmpty()) {
-                // if we have new templates, look for buffered data records that we have all the templates for now
+            // if templates have been added since we last looked at the buffered data sets of this exporter, be it by this
+            // message or by another node, look for buffered data records that we have all the templates for now
+            final BufferedDataSets bufferedPackets = packetCache.getIfPresent(TemplateKey.idForExporter(remoteAddress, observationDomainId));
+            final long currentTemplateVersion = templateRegistry.version();
+            if (bufferedPackets != null && bufferedPackets.templateVersion != currentTemplateVersion) {
+                bufferedPackets.templateVersion = currentTemplateVersion;
                 final Set<Integer> knownTemplateIdsList = new HashSet<>();
                 collectAllTemplateIds(remoteAddress, observationDomainId, knownTemplateIdsList);
 
-                final Queue<ShallowDataSet> bufferedPackets = packetCache.getIfPresent(TemplateKey.idForExporter(remoteAddress, observationDomainId));
-                handleBufferedPackets(packetsToSendCollection, bufferedTemplateIdList, knownTemplateIdsList, bufferedPackets);
+                handleBufferedPackets(packetsToSendCollection, bufferedTemplateIdList, knownTemplateIdsList, bufferedPackets.dataSets);
             }
             boolean packetBuffered = false;
 
-            // the list of template keys to return in the result ( TODO this copies all of the templates all the time :( )
-            final Set<TemplateKey> templatesList = new HashSet<>(templateCache.asMap().keySet());
+            // the list of template keys to return in the result ( TODO this copies all of the exporter's templates all the time :( )
+            final Set<TemplateKey> templatesList = new HashSet<>();
+            for (Integer templateId : templateRegistry.templateIds(IPFIX, remoteAddress, observationDomainId)) {
+                templatesList.add(new TemplateKey(remoteAddress, observationDomainId, templateId));
+            }
 
             bufferedTemplateIdList.addAll(messageDescription.referencedTemplateIds());
             LOG.debug("Finding the needed templates for the buffered and current packets");
             for (int templateId : bufferedTemplateIdList) {
                 final TemplateKey templateKey = new TemplateKey(remoteAddress, observationDomainId, templateId);
-                final Object template = templateCache.getIfPresent(templateKey);
+                final Object template = templateRegistry.get(IPFIX, remoteAddress, observationDomainId, templateId);
 
                 if (template == null) {
                     LOG.debug("Template is null, packet needs to be buffered until templates have been received.");
                     try {
                         final TemplateKey newTemplateKey = TemplateKey.idForExporter(remoteAddress, observationDomainId);
-                        final Queue<ShallowDataSet> bufferedPackets = packetCache.get(newTemplateKey, ConcurrentLinkedQueue::new);
-                        final byte[] bytes = ByteBufUtil.getBytes(buf);
-                        bufferedPackets.addAll(messageDescription.dataSets());
+                        final BufferedDataSets exporterDataSets = packetCache.get(newTemplateKey, () -> new BufferedDataSets(templateVersion));
+                        exporterDataSets.dataSets.addAll(messageDescription.dataSets());
                         packetBuffered = true;
                     } catch (ExecutionException ignored) {
                         // the loader cannot fail, it only creates a new queue
@@ -147,8 +165,13 @@ public class IpfixAggregator implements RemoteAddressCodecAggregator {
     public void buildJournalObject(Set<ShallowDataSet> packetsToSendCollection, Set<TemplateKey> templatesList, IpfixJournal.RawIpfix.Builder journalBuilder) {
         LOG.debug("Assembling the packet with necessary templates and data records which include the templates needed.");
         for (TemplateKey templateKey : templatesList) {
-            final ShallowTemplateSet.Record record = templateCache.getIfPresent(templateKey);
-            journalBuilder.putTemplates(templateKey.getTemplateId(), ByteString.copyFrom(record.getRecordBytes()));
+            final FlowTemplateRegistry.FlowTemplate template = templateRegistry.get(IPFIX, templateKey.getRemoteAddress(),
+                    templateKey.getObservationDomainId(), templateKey.getTemplateId());
+            if (template == null) {
+                LOG.warn("Template [{}] expired while processing, not adding it to the message.", templateKey);
+                continue;
+            }
+            journalBuilder.putTemplates(templateKey.getTemplateId(), ByteString.copyFrom(template.getBytes()));
         }
 
         // TODO write out options template sets, too
@@ -199,13 +222,8 @@ public class IpfixAggregator implements RemoteAddressCodecAggregator {
     }
 
     public void collectAllTemplateIds(@Nullable SocketAddress remoteAddress, long observationDomainId, Set<Integer> knownTemplateIdsList) {
-        LOG.debug("Collecting all templateIds from templateKeys stored in templateCache.");
-        for (TemplateKey templateKey : templateCache.asMap().keySet()) {
-            if (templateKey.getRemoteAddress() == remoteAddress && templateKey.getObservationDomainId() == observationDomainId) {
-                final Integer templateId = templateKey.getTemplateId();
-                knownTemplateIdsList.add(templateId);
-            }
-        }
+        LOG.debug("Collecting all templateIds known for the exporter from the template registry.");
+        knownTemplateIdsList.addAll(templateRegistry.templateIds(IPFIX, remoteAddress, observationDomainId));
     }
 
     public void addTemplateKeyInCache(@Nullable SocketAddress remoteAddress, IpfixParser.MessageDescription messageDescription, long observationDomainId) {
@@ -214,8 +232,19 @@ public class IpfixAggregator implements RemoteAddressCodecAggregator {
             LOG.debug("Created template key with remote address [{}], observation domain ID [{}] and " +
                       "template ID [{}].", templateKey.getRemoteAddress(), templateKey.getObservationDomainId(), templateKey.getTemplateId());
 
-            templateCache.put(templateKey, messageDescription.getTemplateRecord(templateId));
-            LOG.debug("Saving templates key (raw bytes) in template cache to combine in new message later.");
+            final ShallowTemplateSet.Record record = messageDescription.getTemplateRecord(templateId);
+            templateRegistry.register(IPFIX, remoteAddress, observationDomainId, templateId, record.getRecordBytes(), false);
+            LOG.debug("Saving templates key (raw bytes) in template registry to combine in new message later.");
+        }
+    }
+
+    private static class BufferedDataSets {
+        private final Queue<ShallowDataSet> dataSets = new ConcurrentLinkedQueue<>();
+        // the template registry version the data sets have last been checked against
+        private volatile long templateVersion;
+
+        BufferedDataSets(long templateVersion) {
+            this.templateVersion = templateVersion;
         }
     }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.netflow.codecs;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.auto.value.AutoValue;
+
+/**
+ * Published on the cluster event bus when a node learns a new or changed NetFlow v9 or IPFIX template.
+ */
+@AutoValue
+public abstract class FlowTemplateLearnedEvent {
+    @JsonProperty("protocol")
+    public abstract FlowTemplateRegistry.Protocol protocol();
+
+    @JsonProperty("exporter")
+    public abstract String exporter();
+
+    @JsonProperty("domain_id")
+    public abstract long domainId();
+
+    @JsonProperty("template_id")
+    public abstract int templateId();
+
+    @JsonProperty("option_template")
+    public abstract boolean optionTemplate();
+
+    /**
+     * The raw template record, Base64 encoded.
+     */
+    @JsonProperty("template")
+    public abstract String template();
+
+    @JsonCreator
+    public static FlowTemplateLearnedEvent create(@JsonProperty("protocol") FlowTemplateRegistry.Protocol protocol,
+                                                  @JsonProperty("exporter") String exporter,
+                                                  @JsonProperty("domain_id") long domainId,
+                                                  @JsonProperty("template_id") int templateId,
+                                                  @JsonProperty("option_template") boolean optionTemplate,
+                                                  @JsonProperty("template") String template) {
+        return new AutoValue_FlowTemplateLearnedEvent(protocol, exporter, domainId, templateId, optionTemplate, template);
+    }
+}
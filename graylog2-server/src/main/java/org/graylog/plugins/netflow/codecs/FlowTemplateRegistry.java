@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.netflow.codecs;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.graylog2.events.ClusterEventBus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the NetFlow v9 and IPFIX templates learned by this node and by the other nodes in the cluster.
+ * <p>
+ * Exporters only send their templates every few packets or minutes. If a load balancer spreads the packets of an
+ * exporter over several nodes, every node would otherwise buffer the data flows until it received the template
+ * itself. New and changed templates are therefore published on the cluster event bus, so the aggregators on all
+ * nodes can process the buffered flows as soon as any node has seen the template.
+ * </p>
+ * <p>
+ * Templates are identified by the exporter address, the source id (NetFlow v9) or observation domain id (IPFIX) and
+ * the template id, so sharing them only helps if the load balancer retains the exporter address.
+ * </p>
+ */
+@Singleton
+public class FlowTemplateRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(FlowTemplateRegistry.class);
+
+    private static final int MAX_TEMPLATES = 10_000;
+
+    public enum Protocol {
+        NETFLOW_V9,
+        IPFIX
+    }
+
+    private final Cache<Key, FlowTemplate> templates;
+    private final AtomicLong version = new AtomicLong();
+    @Nullable
+    private final ClusterEventBus clusterEventBus;
+
+    /**
+     * Creates a registry which only holds the templates seen by this node.
+     */
+    public FlowTemplateRegistry() {
+        this(null);
+    }
+
+    @Inject
+    public FlowTemplateRegistry(ClusterEventBus clusterEventBus, EventBus serverEventBus) {
+        this(clusterEventBus);
+        serverEventBus.register(this);
+    }
+
+    private FlowTemplateRegistry(@Nullable ClusterEventBus clusterEventBus) {
+        this.clusterEventBus = clusterEventBus;
+        this.templates = CacheBuilder.newBuilder()
+                .maximumSize(MAX_TEMPLATES)
+                .removalListener(notification -> LOG.debug("Removed {} from template registry for reason {}", notification.getKey(), notification.getCause()))
+                .build();
+    }
+
+    /**
+     * Adds a template received from an exporter. New or changed templates are published to the other nodes.
+     */
+    public void register(Protocol protocol, @Nullable SocketAddress exporter, long domainId, int templateId,
+                         byte[] bytes, boolean optionTemplate) {
+        final Key key = new Key(protocol, exporterId(exporter), domainId, templateId);
+        if (put(key, new FlowTemplate(bytes, optionTemplate)) && clusterEventBus != null) {
+            LOG.debug("Publishing new template {}", key);
+            clusterEventBus.post(FlowTemplateLearnedEvent.create(protocol, key.exporter(), domainId, templateId,
+                    optionTemplate, Base64.getEncoder().encodeToString(bytes)));
+        }
+    }
+
+    @Nullable
+    public FlowTemplate get(Protocol protocol, @Nullable SocketAddress exporter, long domainId, int templateId) {
+        return templates.getIfPresent(new Key(protocol, exporterId(exporter), domainId, templateId));
+    }
+
+    /**
+     * Returns the ids of all templates known for the given exporter.
+     */
+    public Set<Integer> templateIds(Protocol protocol, @Nullable SocketAddress exporter, long domainId) {
+        final String exporterId = exporterId(exporter);
+        final Set<Integer> templateIds = new HashSet<>();
+        for (Key key : templates.asMap().keySet()) {
+            if (key.protocol() == protocol && key.domainId() == domainId && key.exporter().equals(exporterId)) {
+                templateIds.add(key.templateId());
+            }
+        }
+        return templateIds;
+    }
+
+    /**
+     * Returns a counter which is incremented whenever a template is added or changed. Aggregators use it to decide
+     * whether their buffered packets have to be checked again.
+     */
+    public long version() {
+        return version.get();
+    }
+
+    @Subscribe
+    public void handleTemplateLearned(FlowTemplateLearnedEvent event) {
+        final Key key = new Key(event.protocol(), event.exporter(), event.domainId(), event.templateId());
+        // Events published by this node are delivered here as well, they don't change the registry
+        if (put(key, new FlowTemplate(Base64.getDecoder().decode(event.template()), event.optionTemplate()))) {
+            LOG.debug("Received template {} from another node", key);
+        }
+    }
+
+    private boolean put(Key key, FlowTemplate template) {
+        final FlowTemplate previous = templates.asMap().put(key, template);
+        if (template.equals(previous)) {
+            return false;
+        }
+        version.incrementAndGet();
+        return true;
+    }
+
+    private static String exporterId(@Nullable SocketAddress exporter) {
+        if (exporter instanceof InetSocketAddress address && address.getAddress() != null) {
+            return address.getAddress().getHostAddress() + ":" + address.getPort();
+        }
+        return String.valueOf(exporter);
+    }
+
+    private record Key(Protocol protocol, String exporter, long domainId, int templateId) {
+    }
+
+    public static final class FlowTemplate {
+        private final byte[] bytes;
+        private final boolean optionTemplate;
+
+        public FlowTemplate(byte[] bytes, boolean optionTemplate) {
+            this.bytes = bytes;
+            this.optionTemplate = optionTemplate;
+        }
+
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        public boolean isOptionTemplate() {
+            return optionTemplate;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            final FlowTemplate that = (FlowTemplate) o;
+            return optionTemplate == that.optionTemplate && Arrays.equals(bytes, that.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(bytes) + Boolean.hashCode(optionTemplate);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.google.protobuf.ByteString;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import org.graylog.plugins.netflow.codecs.FlowTemplateRegistry.FlowTemplate;
 import org.graylog.plugins.netflow.v9.NetFlowV9Journal;
 import org.graylog.plugins.netflow.v9.NetFlowV9Parser;
 import org.graylog.plugins.netflow.v9.RawNetFlowV9Packet;
@@ -46,32 +47,37 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
+import static org.graylog.plugins.netflow.codecs.FlowTemplateRegistry.Protocol.NETFLOW_V9;
+
 /**
  * For Netflow v9 packets we want to prepend the corresponding flow template.
  * If we don't have that template yet, we consider the flow packet to be incomplete and continue to wait for the template.
- * TODO consider sharing seen templates between nodes in the cluster to minimize wait time
+ * Templates are shared between the nodes in the cluster by the {@link FlowTemplateRegistry}, so a packet only waits
+ * until any node has received its template.
  */
 public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
     private static final Logger LOG = LoggerFactory.getLogger(NetflowV9CodecAggregator.class);
 
     private static final ByteBuf PASSTHROUGH_MARKER = Unpooled.wrappedBuffer(new byte[]{NetFlowCodec.PASSTHROUGH_MARKER});
 
-    private final Cache<TemplateKey, TemplateBytes> templateCache;
-    private final Cache<TemplateKey, Queue<PacketBytes>> packetCache;
+    private final FlowTemplateRegistry templateRegistry;
+    private final Cache<TemplateKey, BufferedPackets> packetCache;
 
-    @Inject
+    /**
+     * Creates an aggregator which doesn't share templates with other nodes.
+     */
     public NetflowV9CodecAggregator() {
-        // TODO customize
-        this.templateCache = CacheBuilder.newBuilder()
-                .maximumSize(5000)
-                .removalListener(notification -> LOG.debug("Removed {} from template cache for reason {}", notification.getKey(), notification.getCause()))
-                .recordStats()
-                .build();
+        this(new FlowTemplateRegistry());
+    }
+
+    @Inject
+    public NetflowV9CodecAggregator(FlowTemplateRegistry templateRegistry) {
+        this.templateRegistry = templateRegistry;
         this.packetCache = CacheBuilder.newBuilder()
                 .expireAfterWrite(1, TimeUnit.MINUTES)
                 .maximumWeight(Size.megabytes(1).toBytes())
-                .removalListener((RemovalListener<TemplateKey, Queue<PacketBytes>>) notification -> LOG.debug("Removed {} from packet cache for reason {}", notification.getKey(), notification.getCause()))
-                .weigher((key, value) -> value.stream().map(PacketBytes::readableBytes).reduce(0, Integer::sum))
+                .removalListener((RemovalListener<TemplateKey, BufferedPackets>) notification -> LOG.debug("Removed {} from packet cache for reason {}", notification.getKey(), notification.getCause()))
+                .weigher((key, value) -> value.packets.stream().map(PacketBytes::readableBytes).reduce(0, Integer::sum))
                 .recordStats()
                 .build();
     }
@@ -102,12 +108,14 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
 
             // The rest of the code works as follows:
             // We shallowly parse the incoming packet, extracting all flows into ByteBufs.
-            // We then cache the raw bytes for template flows, keyed by remote ip and source id. These are used to reassemble the packet for the journal later.
+            // We then register the raw bytes for template flows, keyed by remote ip and source id. These are used to reassemble the packet for the journal later.
             // For each netflow v9 packet that we do not have a matching template for yet, we put it into a queue.
-            // Once the template flow arrives we go back through the queue and remove now matching packets for further processing.
+            // Once the template flow arrives on any node we go back through the queue and remove now matching packets for further processing.
             if (LOG.isTraceEnabled()) {
                 LOG.trace("Received V9 packet:\n{}", ByteBufUtil.prettyHexDump(buf));
             }
+            // read before registering the templates of this packet, see BufferedPackets#templateVersion
+            final long templateVersion = templateRegistry.version();
             final RawNetFlowV9Packet rawNetFlowV9Packet = NetFlowV9Parser.parsePacketShallow(buf);
             final long sourceId = rawNetFlowV9Packet.header().sourceId();
 
@@ -118,9 +126,7 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
                 final int templateId = template.getKey();
                 final byte[] bytes = template.getValue();
 
-                final TemplateKey templateKey = new TemplateKey(remoteAddress, sourceId, templateId);
-                final TemplateBytes templateBytes = new TemplateBytes(bytes, false);
-                templateCache.put(templateKey, templateBytes);
+                templateRegistry.register(NETFLOW_V9, remoteAddress, sourceId, templateId, bytes, false);
             }
 
             final Map.Entry<Integer, byte[]> optionTemplate = rawNetFlowV9Packet.optionTemplate();
@@ -128,10 +134,7 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
                 final int templateId = optionTemplate.getKey();
                 final byte[] bytes = optionTemplate.getValue();
 
-                final TemplateKey templateKey = new TemplateKey(remoteAddress, sourceId, templateId);
-                final TemplateBytes templateBytes = new TemplateBytes(bytes, true);
-
-                templateCache.put(templateKey, templateBytes);
+                templateRegistry.register(NETFLOW_V9, remoteAddress, sourceId, templateId, bytes, true);
             }
 
             // this list of flows to return in the result
@@ -139,36 +142,31 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
             final Set<ByteBuf> packetsToSend = new HashSet<>();
             final Set<Integer> bufferedTemplateIds = new HashSet<>();
 
-            // if we have new templates, figure out which buffered packets template requirements are now satisfied
-            if (!rawNetFlowV9Packet.templates().isEmpty() || rawNetFlowV9Packet.optionTemplate() != null) {
-                final Set<Integer> knownTemplateIds = new HashSet<>();
-                for (TemplateKey templateKey : templateCache.asMap().keySet()) {
-                    if (templateKey.getRemoteAddress() == remoteAddress && templateKey.getSourceId() == sourceId) {
-                        final Integer templateId = templateKey.getTemplateId();
-                        knownTemplateIds.add(templateId);
+            // if templates have been added since we last looked at the buffered packets of this exporter, be it by this
+            // packet or by another node, figure out which buffered packets template requirements are now satisfied
+            final BufferedPackets bufferedPackets = packetCache.getIfPresent(TemplateKey.idForExporter(remoteAddress, sourceId));
+            final long currentTemplateVersion = templateRegistry.version();
+            if (bufferedPackets != null && bufferedPackets.templateVersion != currentTemplateVersion) {
+                bufferedPackets.templateVersion = currentTemplateVersion;
+                final Set<Integer> knownTemplateIds = templateRegistry.templateIds(NETFLOW_V9, remoteAddress, sourceId);
+
+                final List<PacketBytes> tempQueue = new ArrayList<>(bufferedPackets.packets.size());
+                PacketBytes previousPacket;
+                int addedPackets = 0;
+                while (null != (previousPacket = bufferedPackets.packets.poll())) {
+                    // are all templates the packet references there?
+                    if (knownTemplateIds.containsAll(previousPacket.getUsedTemplates())) {
+                        packetsToSend.add(Unpooled.wrappedBuffer(previousPacket.getBytes()));
+                        bufferedTemplateIds.addAll(previousPacket.getUsedTemplates());
+                        addedPackets++;
+                    } else {
+                        tempQueue.add(previousPacket);
                     }
                 }
-
-                final Queue<PacketBytes> bufferedPackets = packetCache.getIfPresent(TemplateKey.idForExporter(remoteAddress, sourceId));
-                if (bufferedPackets != null) {
-                    final List<PacketBytes> tempQueue = new ArrayList<>(bufferedPackets.size());
-                    PacketBytes previousPacket;
-                    int addedPackets = 0;
-                    while (null != (previousPacket = bufferedPackets.poll())) {
-                        // are all templates the packet references there?
-                        if (knownTemplateIds.containsAll(previousPacket.getUsedTemplates())) {
-                            packetsToSend.add(Unpooled.wrappedBuffer(previousPacket.getBytes()));
-                            bufferedTemplateIds.addAll(previousPacket.getUsedTemplates());
-                            addedPackets++;
-                        } else {
-                            tempQueue.add(previousPacket);
-                        }
-                    }
-                    LOG.debug("Processing {} previously buffered packets, {} packets require more templates.", addedPackets, tempQueue.size());
-                    // if we couldn't process some of the buffered packets, add them back to the queue to wait for more templates to come in
-                    if (!tempQueue.isEmpty()) {
-                        bufferedPackets.addAll(tempQueue);
-                    }
+                LOG.debug("Processing {} previously buffered packets, {} packets require more templates.", addedPackets, tempQueue.size());
+                // if we couldn't process some of the buffered packets, add them back to the queue to wait for more templates to come in
+                if (!tempQueue.isEmpty()) {
+                    bufferedPackets.packets.addAll(tempQueue);
                 }
             }
 
@@ -181,15 +179,15 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
             bufferedTemplateIds.addAll(rawNetFlowV9Packet.usedTemplates());
             for (int templateId : bufferedTemplateIds) {
                 final TemplateKey templateKey = new TemplateKey(remoteAddress, sourceId, templateId);
-                final TemplateBytes template = templateCache.getIfPresent(templateKey);
+                final FlowTemplate template = templateRegistry.get(NETFLOW_V9, remoteAddress, sourceId, templateId);
 
                 if (template == null) {
                     // we don't have the template, this packet needs to be buffered until we receive the templates
                     try {
                         final TemplateKey newTemplateKey = TemplateKey.idForExporter(remoteAddress, sourceId);
-                        final Queue<PacketBytes> bufferedPackets = packetCache.get(newTemplateKey, ConcurrentLinkedQueue::new);
+                        final BufferedPackets exporterPackets = packetCache.get(newTemplateKey, () -> new BufferedPackets(templateVersion));
                         final byte[] bytes = ByteBufUtil.getBytes(buf);
-                        bufferedPackets.add(new PacketBytes(bytes, rawNetFlowV9Packet.usedTemplates()));
+                        exporterPackets.packets.add(new PacketBytes(bytes, rawNetFlowV9Packet.usedTemplates()));
                         packetBuffered = true;
                     } catch (ExecutionException ignored) {
                         // the loader cannot fail, it only creates a new queue
@@ -218,7 +216,7 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
             // add the used templates and option template to the journal message builder
             final NetFlowV9Journal.RawNetflowV9.Builder builder = NetFlowV9Journal.RawNetflowV9.newBuilder();
             for (TemplateKey templateKey : templates) {
-                final TemplateBytes templateBytes = templateCache.getIfPresent(templateKey);
+                final FlowTemplate templateBytes = templateRegistry.get(NETFLOW_V9, remoteAddress, sourceId, templateKey.getTemplateId());
                 if (templateBytes == null) {
                     LOG.warn("Template {} expired while processing, discarding netflow packet", templateKey);
                 } else if (templateBytes.isOptionTemplate()) {
@@ -251,21 +249,13 @@ public class NetflowV9CodecAggregator implements RemoteAddressCodecAggregator {
         }
     }
 
-    private static class TemplateBytes {
-        private final byte[] bytes;
-        private final boolean optionTemplate;
-
-        public TemplateBytes(byte[] bytes, boolean optionTemplate) {
-            this.bytes = bytes;
-            this.optionTemplate = optionTemplate;
-        }
-
-        public byte[] getBytes() {
-            return bytes;
-        }
+    private static class BufferedPackets {
+        private final Queue<PacketBytes> packets = new ConcurrentLinkedQueue<>();
+        // the template registry version the packets have last been checked against
+        private volatile long templateVersion;
 
-        public boolean isOptionTemplate() {
-            return optionTemplate;
+        BufferedPackets(long templateVersion) {
+            this.templateVersion = templateVersion;
         }
     }
 
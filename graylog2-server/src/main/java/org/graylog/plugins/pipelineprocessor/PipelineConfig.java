@@ -23,4 +23,7 @@ public class PipelineConfig implements PluginConfigBean {
 
     @Parameter("cached_stageiterators")
     private boolean cachedStageIterators = true;
+
+    @Parameter("compiled_pipeline_rules")
+    private boolean compiledPipelineRules = false;
 }
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.ast;
+
+import org.graylog.plugins.pipelineprocessor.ast.expressions.Expression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FieldRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FunctionExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.MessageRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.VarRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.functions.PrefetchingFunction;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the calls of {@link PrefetchingFunction prefetching functions} in rules which can be prefetched for a batch
+ * of messages.
+ * <p>
+ * A call can be prefetched if all of its arguments only depend on the current message, i.e. they are constants,
+ * message fields like {@code $message.x} or {@code to_string()} of those.
+ */
+public class PrefetchableCalls {
+    private PrefetchableCalls() {
+    }
+
+    public static List<FunctionExpression> of(List<Rule> rules) {
+        final List<FunctionExpression> calls = new ArrayList<>();
+        final RuleAstWalker walker = new RuleAstWalker();
+        final RuleAstBaseListener listener = new RuleAstBaseListener() {
+            @Override
+            public void enterFunctionCall(FunctionExpression expr) {
+                if (expr.getFunction() instanceof PrefetchingFunction && allDependOnMessageOnly(expr.children())) {
+                    calls.add(expr);
+                }
+            }
+        };
+        for (Rule rule : rules) {
+            walker.walk(listener, rule);
+        }
+        return calls;
+    }
+
+    private static boolean dependsOnMessageOnly(Expression expr) {
+        if (expr instanceof VarRefExpression) {
+            // rule variables are only known while the rule runs, even if they are assigned a constant
+            return false;
+        }
+        if (expr instanceof MessageRefExpression ref) {
+            return ref.getFieldExpr() instanceof FieldRefExpression;
+        }
+        if (expr instanceof FunctionExpression function) {
+            return StringConversion.NAME.equals(function.getFunction().descriptor().name())
+                    && allDependOnMessageOnly(function.children());
+        }
+        return expr.isConstant() && allDependOnMessageOnly(expr.children());
+    }
+
+    private static boolean allDependOnMessageOnly(Iterable<Expression> exprs) {
+        for (Expression expr : exprs) {
+            if (!dependsOnMessageOnly(expr)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -23,6 +23,7 @@ import org.antlr.v4.runtime.CommonToken;
 import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanExpression;
 import org.graylog.plugins.pipelineprocessor.ast.expressions.LogicalExpression;
 import org.graylog.plugins.pipelineprocessor.ast.statements.Statement;
+import org.graylog.plugins.pipelineprocessor.codegen.GeneratedRule;
 import org.graylog.plugins.pipelineprocessor.processors.PipelineMetricRegistry;
 
 import javax.annotation.Nullable;
@@ -43,6 +44,10 @@ public abstract class Rule {
     private transient Meter localMatched;
     private transient Meter globalNotMatched;
     private transient Meter localNotMatched;
+    private transient Meter globalSkipped;
+    private transient Meter localSkipped;
+
+    private transient GeneratedRule generatedRule;
 
     @Nullable
     public abstract String id();
@@ -63,6 +68,28 @@ public abstract class Rule {
         return toBuilder().id(id).build();
     }
 
+    /**
+     * The compiled form of this rule, if it has been compiled.
+     *
+     * @return the generated code or {@code null} if the rule is interpreted
+     */
+    @Nullable
+    public GeneratedRule generatedRule() {
+        return generatedRule;
+    }
+
+    /**
+     * Creates a copy of this rule which evaluates the given generated code instead of interpreting the AST.
+     *
+     * @param generatedRule the compiled form of this rule
+     * @return a copy of this rule
+     */
+    public Rule withGeneratedRule(GeneratedRule generatedRule) {
+        final Rule rule = toBuilder().build();
+        rule.generatedRule = generatedRule;
+        return rule;
+    }
+
     public static Rule alwaysFalse(String name) {
         return builder().name(name).when(new BooleanExpression(new CommonToken(-1), false)).then(Collections.emptyList()).build();
     }
@@ -92,6 +119,23 @@ public abstract class Rule {
         localNotMatched = metricRegistry.registerLocalRuleMeter(pipelineId, stageId, id(), "not-matched");
     }
 
+    /**
+     * Register the metrics counting how often this rule was not evaluated, because its preconditions ruled out a match.
+     * <p>
+     * Only rules with {@link RulePreconditions} can be skipped, so this is separate from {@link #registerMetrics}.
+     *
+     * @param metricRegistry the registry to add the metrics to
+     * @param pipelineId     the pipeline ID
+     * @param stageId        the pipeline stage ID
+     */
+    public void registerSkipMetrics(PipelineMetricRegistry metricRegistry, String pipelineId, int stageId) {
+        if (id() == null) {
+            return;
+        }
+        globalSkipped = metricRegistry.registerGlobalRuleMeter(id(), "skipped");
+        localSkipped = metricRegistry.registerLocalRuleMeter(pipelineId, stageId, id(), "skipped");
+    }
+
     public void markExecution() {
         if (id() != null) {
             globalExecuted.mark();
@@ -113,6 +157,13 @@ public abstract class Rule {
         }
     }
 
+    public void markSkipped() {
+        if (globalSkipped != null) {
+            globalSkipped.mark();
+            localSkipped.mark();
+        }
+    }
+
     public void markFailure() {
         if (id() != null) {
             globalFailed.mark();
@@ -126,7 +177,9 @@ public abstract class Rule {
      * @return a copy of this rule
      */
     public Rule copy() {
-        return toBuilder().build();
+        final Rule rule = toBuilder().build();
+        rule.generatedRule = generatedRule;
+        return rule;
     }
 
     @AutoValue.Builder
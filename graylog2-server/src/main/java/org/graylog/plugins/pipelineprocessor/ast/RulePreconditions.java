@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.ast;
+
+import org.graylog.plugins.pipelineprocessor.ast.expressions.AndExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanValuedFunctionWrapper;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.EqualityExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.Expression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FieldRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FunctionExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.MessageRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.StringExpression;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
+import org.graylog.plugins.pipelineprocessor.functions.messages.HasField;
+
+import javax.annotation.Nullable;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Conditions on the current message that must hold for a rule's {@code when} clause to be true.
+ * <p>
+ * Only the top-level conjunction of the condition is inspected and only two shapes are recognized:
+ * <ul>
+ *     <li>{@code has_field("x")} requires the field {@code x} to be present</li>
+ *     <li>{@code $message.x == "literal"} and {@code to_string($message.x) == "literal"} require the field to have
+ *     the given string value</li>
+ * </ul>
+ * Everything else is left to the evaluation of the rule, so the preconditions never rule out a message the
+ * condition would have matched.
+ */
+public class RulePreconditions {
+    private static final RulePreconditions NONE = new RulePreconditions(Collections.emptySet(), Collections.emptyMap());
+
+    /**
+     * A required string value of a message field.
+     *
+     * @param literal the value the field needs to have
+     * @param lenient {@code true} if the field is compared via {@code to_string()}, which turns a missing field into
+     *                the empty string and non-string values into their string representation
+     */
+    public record FieldValue(String literal, boolean lenient) {
+    }
+
+    private final Set<String> requiredFields;
+    private final Map<String, FieldValue> requiredValues;
+
+    private RulePreconditions(Set<String> requiredFields, Map<String, FieldValue> requiredValues) {
+        this.requiredFields = requiredFields;
+        this.requiredValues = requiredValues;
+    }
+
+    public static RulePreconditions of(Rule rule) {
+        final Set<String> requiredFields = new HashSet<>();
+        final Map<String, FieldValue> requiredValues = new HashMap<>();
+        collect(rule.when(), requiredFields, requiredValues);
+        if (requiredFields.isEmpty() && requiredValues.isEmpty()) {
+            return NONE;
+        }
+        return new RulePreconditions(requiredFields, requiredValues);
+    }
+
+    /**
+     * @return the names of the fields the message must contain
+     */
+    public Set<String> requiredFields() {
+        return requiredFields;
+    }
+
+    /**
+     * @return the field values the message must have, by field name
+     */
+    public Map<String, FieldValue> requiredValues() {
+        return requiredValues;
+    }
+
+    public boolean isEmpty() {
+        return requiredFields.isEmpty() && requiredValues.isEmpty();
+    }
+
+    private static void collect(Expression expr, Set<String> requiredFields, Map<String, FieldValue> requiredValues) {
+        if (expr instanceof AndExpression and) {
+            collect(and.left(), requiredFields, requiredValues);
+            collect(and.right(), requiredFields, requiredValues);
+        } else if (expr instanceof BooleanValuedFunctionWrapper wrapper
+                && wrapper.expression() instanceof FunctionExpression function
+                && HasField.NAME.equals(function.getFunction().descriptor().name())) {
+            final FunctionArgs args = function.getArgs();
+            // has_field() on another message than the current one tells us nothing
+            if (args.getArgs().size() == 1 && args.expression(HasField.FIELD) instanceof StringExpression field) {
+                requiredFields.add((String) field.evaluateUnsafe(null));
+            }
+        } else if (expr instanceof EqualityExpression equality && equality.isCheckEquality()) {
+            if (equality.left() instanceof StringExpression literal) {
+                addRequiredValue(equality.right(), literal, requiredValues);
+            } else if (equality.right() instanceof StringExpression literal) {
+                addRequiredValue(equality.left(), literal, requiredValues);
+            }
+        }
+    }
+
+    private static void addRequiredValue(Expression expr, StringExpression literal, Map<String, FieldValue> requiredValues) {
+        final String value = (String) literal.evaluateUnsafe(null);
+        String field = messageField(expr);
+        boolean lenient = false;
+        if (field == null
+                && expr instanceof FunctionExpression function
+                && StringConversion.NAME.equals(function.getFunction().descriptor().name())
+                && function.getArgs().getArgs().size() == 1) {
+            field = messageField(function.getArgs().expression("value"));
+            lenient = true;
+        }
+        // a second value for the same field would make the rule impossible to match, keep the first one to be safe
+        if (field != null) {
+            requiredValues.putIfAbsent(field, new FieldValue(value, lenient));
+        }
+    }
+
+    @Nullable
+    private static String messageField(@Nullable Expression expr) {
+        if (expr instanceof MessageRefExpression ref && ref.getFieldExpr() instanceof FieldRefExpression field) {
+            return field.fieldName();
+        }
+        return null;
+    }
+}
@@ -18,8 +18,11 @@ package org.graylog.plugins.pipelineprocessor.ast;
 
 import com.codahale.metrics.Meter;
 import com.google.auto.value.AutoValue;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FunctionExpression;
 import org.graylog.plugins.pipelineprocessor.processors.PipelineMetricRegistry;
 
+import javax.annotation.Nullable;
+import java.util.Collections;
 import java.util.List;
 
 @AutoValue
@@ -29,6 +32,8 @@ public abstract class Stage implements Comparable<Stage> {
     }
 
     private List<Rule> rules;
+    private transient StageRuleIndex ruleIndex;
+    private transient List<FunctionExpression> prefetchableCalls = Collections.emptyList();
     // not an autovalue property, because it introduces a cycle in hashCode() and we have no way of excluding it
     private transient Pipeline pipeline;
     private transient Meter executed;
@@ -45,6 +50,27 @@ public abstract class Stage implements Comparable<Stage> {
 
     public void setRules(List<Rule> rules) {
         this.rules = rules;
+        this.ruleIndex = rules == null ? null : StageRuleIndex.create(rules);
+        this.prefetchableCalls = rules == null ? Collections.emptyList() : PrefetchableCalls.of(rules);
+    }
+
+    /**
+     * The function calls of this stage's rules which can be prefetched for a whole batch of messages.
+     *
+     * @see PrefetchableCalls
+     */
+    public List<FunctionExpression> getPrefetchableCalls() {
+        return prefetchableCalls;
+    }
+
+    /**
+     * The index over the preconditions of this stage's rules.
+     *
+     * @return the index or {@code null} if every rule needs to be evaluated for every message
+     */
+    @Nullable
+    public StageRuleIndex getRuleIndex() {
+        return ruleIndex;
     }
 
     public static Builder builder() {
@@ -66,6 +92,13 @@ public abstract class Stage implements Comparable<Stage> {
      */
     public void registerMetrics(PipelineMetricRegistry metricRegistry, String pipelineId) {
         executed = metricRegistry.registerStageMeter(pipelineId, stage(), "executed");
+        if (ruleIndex != null) {
+            for (int i = 0; i < rules.size(); i++) {
+                if (ruleIndex.isIndexed(i)) {
+                    rules.get(i).registerSkipMetrics(metricRegistry, pipelineId, stage());
+                }
+            }
+        }
     }
 
     public void markExecution() {
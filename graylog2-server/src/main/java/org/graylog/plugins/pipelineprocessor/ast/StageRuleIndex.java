@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.ast;
+
+import org.graylog2.plugin.Message;
+
+import javax.annotation.Nullable;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index over the {@link RulePreconditions} of the rules in a stage, used to find the rules whose condition cannot
+ * match a message without evaluating them.
+ * <p>
+ * Rules are identified by their position in the stage.
+ */
+public class StageRuleIndex {
+    private static final BitSet NO_RULES = new BitSet();
+
+    // rules with at least one precondition
+    private final BitSet indexedRules = new BitSet();
+
+    // field name -> rules that require the field to be present
+    private final Map<String, BitSet> requiredFields = new HashMap<>();
+    // field name -> rules that require the field to have a certain value
+    private final Map<String, FieldValues> requiredValues = new HashMap<>();
+
+    private static class FieldValues {
+        // all rules with a value for this field
+        private final BitSet rules = new BitSet();
+        // literal -> rules requiring this value
+        private final Map<String, BitSet> byLiteral = new HashMap<>();
+        // rules which can still match if the field is missing, i.e. to_string() comparisons with the empty string
+        private final BitSet matchingMissing = new BitSet();
+    }
+
+    private StageRuleIndex() {
+    }
+
+    /**
+     * Creates an index for the given rules.
+     *
+     * @param rules the rules of a stage
+     * @return the index or {@code null} if none of the rules have preconditions
+     */
+    @Nullable
+    public static StageRuleIndex create(List<Rule> rules) {
+        final StageRuleIndex index = new StageRuleIndex();
+        for (int i = 0; i < rules.size(); i++) {
+            final RulePreconditions preconditions = RulePreconditions.of(rules.get(i));
+            if (preconditions.isEmpty()) {
+                continue;
+            }
+            index.indexedRules.set(i);
+            for (String field : preconditions.requiredFields()) {
+                index.requiredFields.computeIfAbsent(field, f -> new BitSet()).set(i);
+            }
+            for (Map.Entry<String, RulePreconditions.FieldValue> entry : preconditions.requiredValues().entrySet()) {
+                final RulePreconditions.FieldValue value = entry.getValue();
+                final FieldValues fieldValues = index.requiredValues.computeIfAbsent(entry.getKey(), f -> new FieldValues());
+                fieldValues.rules.set(i);
+                fieldValues.byLiteral.computeIfAbsent(value.literal(), l -> new BitSet()).set(i);
+                if (value.lenient() && value.literal().isEmpty()) {
+                    fieldValues.matchingMissing.set(i);
+                }
+            }
+        }
+        return index.indexedRules.isEmpty() ? null : index;
+    }
+
+    /**
+     * @param position the position of the rule in the stage
+     * @return {@code true} if the rule at the given position might be skipped
+     */
+    public boolean isIndexed(int position) {
+        return indexedRules.get(position);
+    }
+
+    /**
+     * Determines the rules whose condition cannot match the given message.
+     *
+     * @param message the message to check
+     * @return the positions of the rules to skip or {@code null} if all rules need to be evaluated
+     */
+    @Nullable
+    public BitSet rulesToSkip(Message message) {
+        BitSet skipped = null;
+        for (Map.Entry<String, BitSet> entry : requiredFields.entrySet()) {
+            if (!message.hasField(entry.getKey())) {
+                skipped = or(skipped, entry.getValue());
+            }
+        }
+        for (Map.Entry<String, FieldValues> entry : requiredValues.entrySet()) {
+            final FieldValues fieldValues = entry.getValue();
+            final Object value = message.getField(entry.getKey());
+            final BitSet candidates;
+            if (value == null) {
+                candidates = fieldValues.matchingMissing;
+            } else if (value instanceof String stringValue) {
+                candidates = fieldValues.byLiteral.getOrDefault(stringValue, NO_RULES);
+            } else {
+                // we can't tell how other types compare to the literal, let the rules decide
+                continue;
+            }
+            for (int i = fieldValues.rules.nextSetBit(0); i >= 0; i = fieldValues.rules.nextSetBit(i + 1)) {
+                if (!candidates.get(i)) {
+                    if (skipped == null) {
+                        skipped = new BitSet();
+                    }
+                    skipped.set(i);
+                }
+            }
+        }
+        return skipped;
+    }
+
+    private static BitSet or(@Nullable BitSet skipped, BitSet rules) {
+        if (skipped == null) {
+            return (BitSet) rules.clone();
+        }
+        skipped.or(rules);
+        return skipped;
+    }
+}
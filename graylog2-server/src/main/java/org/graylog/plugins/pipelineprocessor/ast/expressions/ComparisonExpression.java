@@ -43,6 +43,13 @@ public class ComparisonExpression extends BinaryExpression implements LogicalExp
 
         final Object leftValue = this.left.evaluateUnsafe(context);
         final Object rightValue = this.right.evaluateUnsafe(context);
+        return compareValues(leftValue, rightValue);
+    }
+
+    /**
+     * Compares the already evaluated operands of this expression.
+     */
+    public boolean compareValues(Object leftValue, Object rightValue) {
         if (leftValue instanceof DateTime && rightValue instanceof DateTime) {
             return compareDateTimes(operator, (DateTime) leftValue, (DateTime) rightValue);
         }
@@ -47,6 +47,13 @@ public class EqualityExpression extends BinaryExpression implements LogicalExpre
     public boolean evaluateBool(EvaluationContext context) {
         final Object left = this.left.evaluateUnsafe(context);
         final Object right = this.right.evaluateUnsafe(context);
+        return compareValues(context, left, right);
+    }
+
+    /**
+     * Compares the already evaluated operands of this expression.
+     */
+    public boolean compareValues(EvaluationContext context, Object left, Object right) {
         if (left == null) {
             log.warn(context.pipelineErrorMessage("left expression evaluated to null, returning false: " + this.left));
             return false;
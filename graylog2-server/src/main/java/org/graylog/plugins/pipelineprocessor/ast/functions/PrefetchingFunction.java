@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.ast.functions;
+
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+
+import java.util.List;
+
+/**
+ * Implemented by functions which can load the data they need for a whole batch of messages at once, e.g. lookup
+ * table functions which can send all keys to the data adapter in a single request.
+ * <p>
+ * The interpreter only prefetches calls whose arguments are constants or fields of the current message, because
+ * nothing else is known before the rules run.
+ */
+public interface PrefetchingFunction {
+    /**
+     * Loads the data this function will need when it is evaluated for the messages of the given contexts.
+     * <p>
+     * This is only an optimization, the function is evaluated for every message as usual afterwards. Implementations
+     * must not change the messages and should not throw.
+     *
+     * @param args     the arguments of the function call
+     * @param contexts one context per message, without any rule variables
+     */
+    void prefetch(FunctionArgs args, List<EvaluationContext> contexts);
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.codegen;
+
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.Rule;
+import org.graylog.plugins.pipelineprocessor.ast.exceptions.FunctionEvaluationException;
+import org.graylog.plugins.pipelineprocessor.ast.exceptions.LocationAwareEvalException;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.AndExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.BooleanValuedFunctionWrapper;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.ComparisonExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.ConstantExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.EqualityExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.Expression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FieldRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FunctionExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.LogicalExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.MessageRefExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.NotExpression;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.OrExpression;
+import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
+import org.graylog.plugins.pipelineprocessor.ast.statements.FunctionStatement;
+import org.graylog.plugins.pipelineprocessor.ast.statements.Statement;
+import org.graylog.plugins.pipelineprocessor.ast.statements.VarAssignStatement;
+import org.graylog2.plugin.Message;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.objectweb.asm.Opcodes.AALOAD;
+import static org.objectweb.asm.Opcodes.ACC_FINAL;
+import static org.objectweb.asm.Opcodes.ACC_PRIVATE;
+import static org.objectweb.asm.Opcodes.ACC_PUBLIC;
+import static org.objectweb.asm.Opcodes.ACC_SUPER;
+import static org.objectweb.asm.Opcodes.ACONST_NULL;
+import static org.objectweb.asm.Opcodes.ALOAD;
+import static org.objectweb.asm.Opcodes.ARETURN;
+import static org.objectweb.asm.Opcodes.ASTORE;
+import static org.objectweb.asm.Opcodes.ATHROW;
+import static org.objectweb.asm.Opcodes.BIPUSH;
+import static org.objectweb.asm.Opcodes.CHECKCAST;
+import static org.objectweb.asm.Opcodes.DUP;
+import static org.objectweb.asm.Opcodes.GETFIELD;
+import static org.objectweb.asm.Opcodes.GOTO;
+import static org.objectweb.asm.Opcodes.ICONST_0;
+import static org.objectweb.asm.Opcodes.ICONST_1;
+import static org.objectweb.asm.Opcodes.IFEQ;
+import static org.objectweb.asm.Opcodes.IFNE;
+import static org.objectweb.asm.Opcodes.IFNULL;
+import static org.objectweb.asm.Opcodes.INVOKEINTERFACE;
+import static org.objectweb.asm.Opcodes.INVOKESPECIAL;
+import static org.objectweb.asm.Opcodes.INVOKESTATIC;
+import static org.objectweb.asm.Opcodes.INVOKEVIRTUAL;
+import static org.objectweb.asm.Opcodes.IRETURN;
+import static org.objectweb.asm.Opcodes.IXOR;
+import static org.objectweb.asm.Opcodes.NEW;
+import static org.objectweb.asm.Opcodes.POP;
+import static org.objectweb.asm.Opcodes.PUTFIELD;
+import static org.objectweb.asm.Opcodes.RETURN;
+import static org.objectweb.asm.Opcodes.SIPUSH;
+import static org.objectweb.asm.Opcodes.V17;
+
+/**
+ * Translates the AST of a single rule into the bytecode of a {@link GeneratedRule} implementation.
+ * <p>
+ * Logical operators, comparisons, equality checks, constants, message field references and function calls are
+ * compiled to bytecode. Any other expression or statement is evaluated by the interpreter, so that every rule can be
+ * compiled even if some parts of it can't. The AST nodes, functions and constant values referenced by the generated
+ * code are passed to its constructor and kept in final fields.
+ */
+class CodeGenerator {
+    // the generated class must be in the same package as the lookup which defines it
+    static final String GENERATED_CLASS = Type.getInternalName(GeneratedRule.class).replace("GeneratedRule", "CompiledRule");
+
+    private static final String OBJECT = Type.getInternalName(Object.class);
+    private static final String CONTEXT = Type.getInternalName(EvaluationContext.class);
+    private static final String EXPRESSION = Type.getInternalName(Expression.class);
+    private static final String LOGICAL_EXPRESSION = Type.getInternalName(LogicalExpression.class);
+    private static final String MESSAGE = Type.getInternalName(Message.class);
+    private static final String FUNCTION = Type.getInternalName(Function.class);
+    private static final String CONTEXT_ARG = "(" + Type.getDescriptor(EvaluationContext.class) + ")";
+
+    // local variable slots of all generated methods
+    private static final int THIS = 0;
+    private static final int CONTEXT_VAR = 1;
+    private static final int FIRST_FREE_VAR = 2;
+
+    private final Rule rule;
+    private final List<Object> constants = new ArrayList<>();
+    private final List<Class<?>> constantTypes = new ArrayList<>();
+    private int interpretedExpressions = 0;
+
+    private MethodVisitor mv;
+    private int nextVar;
+
+    static class GeneratedClass {
+        private final byte[] bytecode;
+        private final Object[] constants;
+        private final int interpretedExpressions;
+
+        GeneratedClass(byte[] bytecode, Object[] constants, int interpretedExpressions) {
+            this.bytecode = bytecode;
+            this.constants = constants;
+            this.interpretedExpressions = interpretedExpressions;
+        }
+
+        byte[] bytecode() {
+            return bytecode;
+        }
+
+        /**
+         * The arguments of the generated constructor.
+         */
+        Object[] constants() {
+            return constants;
+        }
+
+        int interpretedExpressions() {
+            return interpretedExpressions;
+        }
+    }
+
+    CodeGenerator(Rule rule) {
+        this.rule = rule;
+    }
+
+    GeneratedClass generate() {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(V17, ACC_PUBLIC | ACC_FINAL | ACC_SUPER, GENERATED_CLASS, null, OBJECT,
+                new String[]{Type.getInternalName(GeneratedRule.class)});
+
+        beginMethod(cw, ACC_PUBLIC, "when", CONTEXT_ARG + "Z");
+        emitBool(rule.when());
+        mv.visitInsn(IRETURN);
+        endMethod();
+
+        final List<Statement> statements = List.copyOf(rule.then());
+        for (int i = 0; i < statements.size(); i++) {
+            generateStatementValue(cw, i, statements.get(i));
+        }
+        generateThen(cw, statements);
+        generateFieldsAndConstructor(cw);
+
+        cw.visitEnd();
+        return new GeneratedClass(cw.toByteArray(), constants.toArray(), interpretedExpressions);
+    }
+
+    /**
+     * Every action is evaluated in a method of its own, which keeps the exception handling of the actions separate
+     * from the one of the function calls.
+     */
+    private void generateStatementValue(ClassWriter cw, int index, Statement statement) {
+        final Expression expression = statementExpression(statement);
+        if (expression == null) {
+            return;
+        }
+        beginMethod(cw, ACC_PRIVATE, statementMethod(index), CONTEXT_ARG + "Ljava/lang/Object;");
+        emitValue(expression);
+        mv.visitInsn(ARETURN);
+        endMethod();
+    }
+
+    private void generateThen(ClassWriter cw, List<Statement> statements) {
+        beginMethod(cw, ACC_PUBLIC, "then", CONTEXT_ARG + "Z");
+        for (int i = 0; i < statements.size(); i++) {
+            final Statement statement = statements.get(i);
+            final Expression expression = statementExpression(statement);
+            if (expression == null) {
+                loadConstant(statement, Statement.class);
+                mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+                mv.visitMethodInsn(INVOKEINTERFACE, Type.getInternalName(Statement.class), "evaluate",
+                        "(" + Type.getDescriptor(EvaluationContext.class) + ")Ljava/lang/Object;", true);
+                mv.visitInsn(POP);
+                interpretedExpressions++;
+            } else {
+                // same as Expression#evaluate: exceptions are recorded as evaluation errors and the value becomes null
+                final int value = nextVar++;
+                final int exception = nextVar++;
+                final Label start = new Label();
+                final Label end = new Label();
+                final Label handler = new Label();
+                final Label done = new Label();
+                mv.visitTryCatchBlock(start, end, handler, Type.getInternalName(Exception.class));
+                mv.visitLabel(start);
+                mv.visitVarInsn(ALOAD, THIS);
+                mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+                mv.visitMethodInsn(INVOKESPECIAL, GENERATED_CLASS, statementMethod(i), CONTEXT_ARG + "Ljava/lang/Object;", false);
+                mv.visitVarInsn(ASTORE, value);
+                mv.visitLabel(end);
+                mv.visitJumpInsn(GOTO, done);
+                mv.visitLabel(handler);
+                mv.visitVarInsn(ASTORE, exception);
+                mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+                mv.visitVarInsn(ALOAD, exception);
+                loadConstant(expression, Expression.class);
+                mv.visitMethodInsn(INVOKEVIRTUAL, CONTEXT, "onEvaluationException",
+                        "(Ljava/lang/Exception;" + Type.getDescriptor(Expression.class) + ")V", false);
+                mv.visitInsn(ACONST_NULL);
+                mv.visitVarInsn(ASTORE, value);
+                mv.visitLabel(done);
+
+                if (statement instanceof VarAssignStatement assignment) {
+                    mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+                    mv.visitLdcInsn(assignment.getName());
+                    loadConstant(expression.getType(), Class.class);
+                    mv.visitVarInsn(ALOAD, value);
+                    mv.visitMethodInsn(INVOKEVIRTUAL, CONTEXT, "define",
+                            "(Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)V", false);
+                }
+            }
+
+            // skip the remaining actions once an action raised an error
+            final Label next = new Label();
+            mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+            mv.visitMethodInsn(INVOKEVIRTUAL, CONTEXT, "hasEvaluationErrors", "()Z", false);
+            mv.visitJumpInsn(IFEQ, next);
+            mv.visitInsn(ICONST_0);
+            mv.visitInsn(IRETURN);
+            mv.visitLabel(next);
+        }
+        mv.visitInsn(ICONST_1);
+        mv.visitInsn(IRETURN);
+        endMethod();
+    }
+
+    private void generateFieldsAndConstructor(ClassWriter cw) {
+        for (int i = 0; i < constants.size(); i++) {
+            cw.visitField(ACC_PRIVATE | ACC_FINAL, constantField(i), Type.getDescriptor(constantTypes.get(i)), null, null).visitEnd();
+        }
+        beginMethod(cw, ACC_PUBLIC, "<init>", "([Ljava/lang/Object;)V");
+        mv.visitVarInsn(ALOAD, THIS);
+        mv.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        for (int i = 0; i < constants.size(); i++) {
+            mv.visitVarInsn(ALOAD, THIS);
+            mv.visitVarInsn(ALOAD, 1);
+            pushInt(i);
+            mv.visitInsn(AALOAD);
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(constantTypes.get(i)));
+            mv.visitFieldInsn(PUTFIELD, GENERATED_CLASS, constantField(i), Type.getDescriptor(constantTypes.get(i)));
+        }
+        mv.visitInsn(RETURN);
+        endMethod();
+    }
+
+    /**
+     * Leaves the boolean value of the expression on the stack, like {@link LogicalExpression#evaluateBool}.
+     */
+    private void emitBool(Expression expression) {
+        if (expression instanceof BooleanExpression bool) {
+            mv.visitInsn(bool.evaluateBool(null) ? ICONST_1 : ICONST_0);
+        } else if (expression instanceof AndExpression and && isLogical(and.left(), and.right())) {
+            final Label isFalse = new Label();
+            final Label end = new Label();
+            emitBool(and.left());
+            mv.visitJumpInsn(IFEQ, isFalse);
+            emitBool(and.right());
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(isFalse);
+            mv.visitInsn(ICONST_0);
+            mv.visitLabel(end);
+        } else if (expression instanceof OrExpression or && isLogical(or.left(), or.right())) {
+            final Label isTrue = new Label();
+            final Label end = new Label();
+            emitBool(or.left());
+            mv.visitJumpInsn(IFNE, isTrue);
+            emitBool(or.right());
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(isTrue);
+            mv.visitInsn(ICONST_1);
+            mv.visitLabel(end);
+        } else if (expression instanceof NotExpression not && isLogical(not.right())) {
+            emitBool(not.right());
+            mv.visitInsn(ICONST_1);
+            mv.visitInsn(IXOR);
+        } else if (expression instanceof ComparisonExpression comparison) {
+            loadConstant(comparison, ComparisonExpression.class);
+            emitValue(comparison.left());
+            emitValue(comparison.right());
+            mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(ComparisonExpression.class), "compareValues",
+                    "(Ljava/lang/Object;Ljava/lang/Object;)Z", false);
+        } else if (expression instanceof EqualityExpression equality) {
+            loadConstant(equality, EqualityExpression.class);
+            mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+            emitValue(equality.left());
+            emitValue(equality.right());
+            mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(EqualityExpression.class), "compareValues",
+                    "(" + Type.getDescriptor(EvaluationContext.class) + "Ljava/lang/Object;Ljava/lang/Object;)Z", false);
+        } else if (expression instanceof BooleanValuedFunctionWrapper wrapper) {
+            final Label isNull = new Label();
+            final Label end = new Label();
+            emitValue(wrapper.expression());
+            mv.visitInsn(DUP);
+            mv.visitJumpInsn(IFNULL, isNull);
+            mv.visitTypeInsn(CHECKCAST, Type.getInternalName(Boolean.class));
+            mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Boolean.class), "booleanValue", "()Z", false);
+            mv.visitJumpInsn(GOTO, end);
+            mv.visitLabel(isNull);
+            mv.visitInsn(POP);
+            mv.visitInsn(ICONST_0);
+            mv.visitLabel(end);
+        } else if (expression instanceof LogicalExpression) {
+            loadConstant(expression, LogicalExpression.class);
+            mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+            mv.visitMethodInsn(INVOKEINTERFACE, LOGICAL_EXPRESSION, "evaluateBool", CONTEXT_ARG + "Z", true);
+            interpretedExpressions++;
+        } else {
+            throw new IllegalArgumentException("Expected a logical expression but got " + expression.getClass().getSimpleName());
+        }
+    }
+
+    /**
+     * Leaves the value of the expression on the stack, like {@link Expression#evaluateUnsafe(EvaluationContext)}.
+     */
+    private void emitValue(Expression expression) {
+        if (expression instanceof ConstantExpression || expression instanceof FieldRefExpression) {
+            emitConstantValue(expression.evaluateUnsafe(EvaluationContext.emptyContext()));
+        } else if (expression instanceof AndExpression || expression instanceof OrExpression
+                || expression instanceof NotExpression || expression instanceof ComparisonExpression
+                || expression instanceof EqualityExpression || expression instanceof BooleanValuedFunctionWrapper) {
+            emitBool(expression);
+            mv.visitMethodInsn(INVOKESTATIC, Type.getInternalName(Boolean.class), "valueOf", "(Z)Ljava/lang/Boolean;", false);
+        } else if (expression instanceof MessageRefExpression messageRef) {
+            emitMessageRef(messageRef);
+        } else if (expression instanceof FunctionExpression function && !isDeprecated(function)) {
+            emitFunctionCall(function);
+        } else {
+            loadConstant(expression, Expression.class);
+            mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+            mv.visitMethodInsn(INVOKEINTERFACE, EXPRESSION, "evaluateUnsafe", CONTEXT_ARG + "Ljava/lang/Object;", true);
+            interpretedExpressions++;
+        }
+    }
+
+    private void emitConstantValue(Object value) {
+        if (value == null) {
+            mv.visitInsn(ACONST_NULL);
+        } else if (value instanceof String) {
+            mv.visitLdcInsn(value);
+        } else {
+            loadConstant(value, Object.class);
+        }
+    }
+
+    private void emitMessageRef(MessageRefExpression messageRef) {
+        final Expression fieldExpr = messageRef.getFieldExpr();
+        if (fieldExpr == messageRef) {
+            // plain $message
+            mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+            mv.visitMethodInsn(INVOKEVIRTUAL, CONTEXT, "currentMessage", "()" + Type.getDescriptor(Message.class), false);
+        } else if (fieldExpr instanceof ConstantExpression || fieldExpr instanceof FieldRefExpression) {
+            final Object fieldName = fieldExpr.evaluateUnsafe(EvaluationContext.emptyContext());
+            if (fieldName == null) {
+                mv.visitInsn(ACONST_NULL);
+                return;
+            }
+            mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+            mv.visitMethodInsn(INVOKEVIRTUAL, CONTEXT, "currentMessage", "()" + Type.getDescriptor(Message.class), false);
+            mv.visitLdcInsn(fieldName.toString());
+            mv.visitMethodInsn(INVOKEVIRTUAL, MESSAGE, "getField", "(Ljava/lang/String;)Ljava/lang/Object;", false);
+        } else {
+            final int fieldName = nextVar++;
+            final Label end = new Label();
+            emitValue(fieldExpr);
+            mv.visitInsn(DUP);
+            mv.visitJumpInsn(IFNULL, end);
+            mv.visitMethodInsn(INVOKEVIRTUAL, OBJECT, "toString", "()Ljava/lang/String;", false);
+            mv.visitVarInsn(ASTORE, fieldName);
+            mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+            mv.visitMethodInsn(INVOKEVIRTUAL, CONTEXT, "currentMessage", "()" + Type.getDescriptor(Message.class), false);
+            mv.visitVarInsn(ALOAD, fieldName);
+            mv.visitMethodInsn(INVOKEVIRTUAL, MESSAGE, "getField", "(Ljava/lang/String;)Ljava/lang/Object;", false);
+            // a null field name is left on the stack as the result
+            mv.visitLabel(end);
+        }
+    }
+
+    /**
+     * Calls the function directly, with the same exception handling as {@link FunctionExpression#evaluateUnsafe}.
+     */
+    private void emitFunctionCall(FunctionExpression function) {
+        final int exception = nextVar++;
+        final Label start = new Label();
+        final Label end = new Label();
+        final Label rethrow = new Label();
+        final Label wrap = new Label();
+        final Label done = new Label();
+        mv.visitTryCatchBlock(start, end, rethrow, Type.getInternalName(LocationAwareEvalException.class));
+        mv.visitTryCatchBlock(start, end, wrap, Type.getInternalName(Exception.class));
+
+        mv.visitLabel(start);
+        loadConstant(function.getFunction().descriptor().returnType(), Class.class);
+        loadConstant(function.getFunction(), Function.class);
+        loadConstant(function.getArgs(), FunctionArgs.class);
+        mv.visitVarInsn(ALOAD, CONTEXT_VAR);
+        mv.visitMethodInsn(INVOKEINTERFACE, FUNCTION, "evaluate",
+                "(" + Type.getDescriptor(FunctionArgs.class) + Type.getDescriptor(EvaluationContext.class) + ")Ljava/lang/Object;", true);
+        mv.visitMethodInsn(INVOKEVIRTUAL, Type.getInternalName(Class.class), "cast", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
+        mv.visitLabel(end);
+        mv.visitJumpInsn(GOTO, done);
+
+        // the exception already has a location from the input source, simply propagate it
+        mv.visitLabel(rethrow);
+        mv.visitInsn(ATHROW);
+
+        mv.visitLabel(wrap);
+        mv.visitVarInsn(ASTORE, exception);
+        mv.visitTypeInsn(NEW, Type.getInternalName(FunctionEvaluationException.class));
+        mv.visitInsn(DUP);
+        loadConstant(function, FunctionExpression.class);
+        mv.visitVarInsn(ALOAD, exception);
+        mv.visitMethodInsn(INVOKESPECIAL, Type.getInternalName(FunctionEvaluationException.class), "<init>",
+                "(" + Type.getDescriptor(FunctionExpression.class) + "Ljava/lang/Exception;)V", false);
+        mv.visitInsn(ATHROW);
+
+        mv.visitLabel(done);
+    }
+
+    private void loadConstant(Object value, Class<?> type) {
+        final int index = constants.size();
+        constants.add(value);
+        constantTypes.add(type);
+        mv.visitVarInsn(ALOAD, THIS);
+        mv.visitFieldInsn(GETFIELD, GENERATED_CLASS, constantField(index), Type.getDescriptor(type));
+    }
+
+    private void pushInt(int value) {
+        if (value <= 5) {
+            mv.visitInsn(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            mv.visitIntInsn(BIPUSH, value);
+        } else if (value <= Short.MAX_VALUE) {
+            mv.visitIntInsn(SIPUSH, value);
+        } else {
+            mv.visitLdcInsn(value);
+        }
+    }
+
+    private void beginMethod(ClassWriter cw, int access, String name, String descriptor) {
+        mv = cw.visitMethod(access, name, descriptor, null, null);
+        mv.visitCode();
+        nextVar = FIRST_FREE_VAR;
+    }
+
+    private void endMethod() {
+        // the maximum stack size and number of locals are computed by the class writer
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        mv = null;
+    }
+
+    private static Expression statementExpression(Statement statement) {
+        if (statement instanceof FunctionStatement functionStatement) {
+            return functionStatement.getFunctionExpression();
+        } else if (statement instanceof VarAssignStatement assignment) {
+            return assignment.getValueExpression();
+        }
+        return null;
+    }
+
+    private static boolean isLogical(Expression... expressions) {
+        for (Expression expression : expressions) {
+            if (!(expression instanceof LogicalExpression)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDeprecated(FunctionExpression function) {
+        // deprecated functions log a warning on every call, leave that to the interpreter
+        return Boolean.TRUE.equals(function.getFunction().descriptor().deprecated());
+    }
+
+    private static String statementMethod(int index) {
+        return "action" + index;
+    }
+
+    private static String constantField(int index) {
+        return "c" + index;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.codegen;
+
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+
+/**
+ * The compiled form of a {@link org.graylog.plugins.pipelineprocessor.ast.Rule}, generated by {@link RuleCompiler}.
+ * <p>
+ * Implementations behave exactly like the interpreter: exceptions thrown by the condition are propagated to the caller
+ * and errors raised by an action are recorded in the evaluation context.
+ */
+public interface GeneratedRule {
+
+    /**
+     * Evaluates the {@code when} clause of the rule.
+     */
+    boolean when(EvaluationContext context);
+
+    /**
+     * Executes the {@code then} clause of the rule, stopping at the first action which raised an evaluation error.
+     *
+     * @return {@code false} if an action raised an error and the remaining actions have been skipped
+     */
+    boolean then(EvaluationContext context);
+}
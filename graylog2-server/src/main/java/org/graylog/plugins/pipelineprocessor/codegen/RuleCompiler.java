@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.codegen;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog.plugins.pipelineprocessor.ast.Rule;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Compiles parsed rules to bytecode, so that the pipeline interpreter doesn't have to walk their AST for every message.
+ * <p>
+ * Rules which can't be compiled keep being interpreted. Each rule is defined as a hidden class, which is unloaded
+ * once the rule has been replaced.
+ */
+@Singleton
+public class RuleCompiler {
+    private static final Logger LOG = LoggerFactory.getLogger(RuleCompiler.class);
+
+    private final boolean enabled;
+    private final Counter compiledRules;
+    private final Counter failedRules;
+    private final Counter interpretedExpressions;
+    private final Timer compileTime;
+
+    @Inject
+    public RuleCompiler(@Named("compiled_pipeline_rules") boolean enabled, MetricRegistry metricRegistry) {
+        this.enabled = enabled;
+        this.compiledRules = metricRegistry.counter(name(RuleCompiler.class, "compiled-rules"));
+        this.failedRules = metricRegistry.counter(name(RuleCompiler.class, "failed-rules"));
+        this.interpretedExpressions = metricRegistry.counter(name(RuleCompiler.class, "interpreted-expressions"));
+        this.compileTime = metricRegistry.timer(name(RuleCompiler.class, "compile-time"));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Compiles the rule if compiled pipeline rules are enabled.
+     *
+     * @param rule the parsed rule
+     * @return the compiled rule, or the given rule if compilation is disabled or failed
+     */
+    public Rule maybeCompile(Rule rule) {
+        return enabled ? compile(rule) : rule;
+    }
+
+    /**
+     * Compiles the rule, regardless of whether compiled pipeline rules are enabled.
+     *
+     * @param rule the parsed rule
+     * @return a copy of the rule which evaluates the generated code, or the given rule if it couldn't be compiled
+     */
+    public Rule compile(Rule rule) {
+        try (Timer.Context ignored = compileTime.time()) {
+            final CodeGenerator.GeneratedClass generated = new CodeGenerator(rule).generate();
+            final Class<?> generatedClass = MethodHandles.lookup().defineHiddenClass(generated.bytecode(), true).lookupClass();
+            final GeneratedRule generatedRule = (GeneratedRule) generatedClass.getConstructor(Object[].class)
+                    .newInstance((Object) generated.constants());
+
+            compiledRules.inc();
+            interpretedExpressions.inc(generated.interpretedExpressions());
+            LOG.debug("Compiled rule <{}>, {} expressions are left to the interpreter", rule.name(), generated.interpretedExpressions());
+            return rule.withGeneratedRule(generatedRule);
+        } catch (Exception | LinkageError e) {
+            failedRules.inc();
+            LOG.warn("Unable to compile rule <{}>, it will be interpreted instead.", rule.name(), e);
+            return rule;
+        }
+    }
+}
@@ -22,6 +22,7 @@ import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.ast.functions.PrefetchingFunction;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.RuleBuilderFunctionGroup;
 import org.graylog2.lookup.LookupTableService;
 import org.graylog2.plugin.lookup.LookupResult;
@@ -29,13 +30,14 @@ import org.graylog2.plugin.lookup.LookupResult;
 import jakarta.inject.Inject;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.object;
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.string;
 import static org.graylog2.plugin.lookup.LookupResult.SINGLE_VALUE_KEY;
 
-public class Lookup extends AbstractFunction<Map<Object, Object>> {
+public class Lookup extends AbstractFunction<Map<Object, Object>> implements PrefetchingFunction {
 
     public static final String NAME = "lookup";
 
@@ -75,6 +77,11 @@ public class Lookup extends AbstractFunction<Map<Object, Object>> {
         return result.multiValue();
     }
 
+    @Override
+    public void prefetch(FunctionArgs args, List<EvaluationContext> contexts) {
+        LookupPrefetch.prefetch(lookupTableParam, keyParam, args, contexts);
+    }
+
     @Override
     public FunctionDescriptor<Map<Object, Object>> descriptor() {
         //noinspection unchecked
@@ -21,16 +21,19 @@ import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.ast.functions.PrefetchingFunction;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.RuleBuilderFunctionGroup;
 import org.graylog2.lookup.LookupTableService;
 import org.graylog2.plugin.lookup.LookupResult;
 
 import jakarta.inject.Inject;
 
+import java.util.List;
+
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.object;
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.string;
 
-public class LookupHasValue extends AbstractFunction<Object> {
+public class LookupHasValue extends AbstractFunction<Object> implements PrefetchingFunction {
 
     public static final String NAME = "lookup_has_value";
 
@@ -62,6 +65,11 @@ public class LookupHasValue extends AbstractFunction<Object> {
         return (result != null && !result.isEmpty());
     }
 
+    @Override
+    public void prefetch(FunctionArgs args, List<EvaluationContext> contexts) {
+        LookupPrefetch.prefetch(lookupTableParam, keyParam, args, contexts);
+    }
+
     @Override
     public FunctionDescriptor<Object> descriptor() {
         //noinspection unchecked
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.functions.lookup;
+
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
+import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog2.lookup.LookupTableService;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Loads the keys of a lookup function call for a batch of messages into the lookup table's cache.
+ */
+final class LookupPrefetch {
+    private LookupPrefetch() {
+    }
+
+    static void prefetch(ParameterDescriptor<String, LookupTableService.Function> lookupTableParam,
+                         ParameterDescriptor<Object, Object> keyParam,
+                         FunctionArgs args,
+                         List<EvaluationContext> contexts) {
+        // only prefetch for a constant lookup table name, otherwise every message could use a different table
+        if (contexts.isEmpty()
+                || !(args.getPreComputedValue(lookupTableParam.name()) instanceof LookupTableService.Function table)) {
+            return;
+        }
+
+        final Set<Object> keys = new HashSet<>();
+        for (EvaluationContext context : contexts) {
+            final Object key = keyParam.required(args, context);
+            if (key != null) {
+                keys.add(key);
+            }
+        }
+        table.prefetch(keys);
+    }
+}
@@ -23,6 +23,7 @@ import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.ast.functions.PrefetchingFunction;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.RuleBuilderFunctionGroup;
 import org.graylog2.lookup.LookupTableService;
 import org.graylog2.plugin.lookup.LookupResult;
@@ -34,7 +35,7 @@ import java.util.List;
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.object;
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.string;
 
-public class LookupStringList extends AbstractFunction<List<String>> {
+public class LookupStringList extends AbstractFunction<List<String>> implements PrefetchingFunction {
 
     public static final String NAME = "lookup_string_list";
 
@@ -78,6 +79,11 @@ public class LookupStringList extends AbstractFunction<List<String>> {
         return result.stringListValue();
     }
 
+    @Override
+    public void prefetch(FunctionArgs args, List<EvaluationContext> contexts) {
+        LookupPrefetch.prefetch(lookupTableParam, keyParam, args, contexts);
+    }
+
     @Override
     public FunctionDescriptor<List<String>> descriptor() {
         //noinspection unchecked
@@ -21,16 +21,19 @@ import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.ast.functions.PrefetchingFunction;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.RuleBuilderFunctionGroup;
 import org.graylog2.lookup.LookupTableService;
 import org.graylog2.plugin.lookup.LookupResult;
 
 import jakarta.inject.Inject;
 
+import java.util.List;
+
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.object;
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.string;
 
-public class LookupStringListContains extends AbstractFunction<Boolean> {
+public class LookupStringListContains extends AbstractFunction<Boolean> implements PrefetchingFunction {
 
     public static final String NAME = "lookup_string_list_contains";
 
@@ -73,6 +76,11 @@ public class LookupStringListContains extends AbstractFunction<Boolean> {
         return result.stringListValue().contains(value);
     }
 
+    @Override
+    public void prefetch(FunctionArgs args, List<EvaluationContext> contexts) {
+        LookupPrefetch.prefetch(lookupTableParam, keyParam, args, contexts);
+    }
+
     @Override
     public FunctionDescriptor<Boolean> descriptor() {
         //noinspection unchecked
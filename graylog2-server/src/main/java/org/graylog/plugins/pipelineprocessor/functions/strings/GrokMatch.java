@@ -17,7 +17,6 @@
 package org.graylog.plugins.pipelineprocessor.functions.strings;
 
 import com.google.common.collect.ForwardingMap;
-import io.krakens.grok.api.Grok;
 import io.krakens.grok.api.Match;
 import jakarta.inject.Inject;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
@@ -60,10 +59,8 @@ public class GrokMatch extends AbstractFunction<GrokMatch.GrokResult> {
             return null;
         }
 
-        final Grok grok = grokPatternRegistry.cachedGrokForPattern(pattern, onlyNamedCaptures);
-
         try {
-            final Match match = grok.match(value);
+            final Match match = grokPatternRegistry.match(pattern, onlyNamedCaptures, value);
             return new GrokResult(match.captureFlattened());
         } catch (StackOverflowError e) {
             throw new IllegalStateException("Stack overflow during grok pattern matching");
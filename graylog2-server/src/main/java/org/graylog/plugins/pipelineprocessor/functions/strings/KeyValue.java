@@ -20,12 +20,14 @@ import com.google.common.base.CharMatcher;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.inject.TypeLiteral;
+import jakarta.inject.Inject;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.RuleBuilderFunctionGroup;
+import org.graylog2.utilities.CompiledPatternCache;
 
 import java.util.Collections;
 import java.util.Iterator;
@@ -33,6 +35,7 @@ import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.bool;
 import static org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor.string;
@@ -43,6 +46,7 @@ public class KeyValue extends AbstractFunction<Map<String, String>> {
     public static final String TAKE_FIRST = "take_first";
     public static final String TAKE_LAST = "take_last";
     public static final String ARRAY = "array";
+    private static final String CHAR_MATCHER_NAMESPACE = "key_value-char-matcher";
     private final ParameterDescriptor<String, String> valueParam;
     private final ParameterDescriptor<String, CharMatcher> splitParam;
     private final ParameterDescriptor<String, CharMatcher> valueSplitParam;
@@ -55,20 +59,26 @@ public class KeyValue extends AbstractFunction<Map<String, String>> {
 
 
     public KeyValue() {
+        this(CompiledPatternCache.create());
+    }
+
+    @Inject
+    public KeyValue(CompiledPatternCache patternCache) {
+        final Function<String, CharMatcher> anyOf = chars -> patternCache.get(CHAR_MATCHER_NAMESPACE, chars, CharMatcher::anyOf);
         valueParam = string("value").ruleBuilderVariable().description("The string to extract key/value pairs from").build();
-        splitParam = string("delimiters", CharMatcher.class).transform(CharMatcher::anyOf).optional().description("The characters used to separate pairs, defaults to whitespace").build();
-        valueSplitParam = string("kv_delimiters", CharMatcher.class).transform(CharMatcher::anyOf).optional().description("The characters used to separate keys from values, defaults to '='").build();
+        splitParam = string("delimiters", CharMatcher.class).transform(anyOf).optional().description("The characters used to separate pairs, defaults to whitespace").build();
+        valueSplitParam = string("kv_delimiters", CharMatcher.class).transform(anyOf).optional().description("The characters used to separate keys from values, defaults to '='").build();
 
         ignoreEmptyValuesParam = bool("ignore_empty_values").optional().description("Whether to ignore keys with empty values, defaults to true").defaultValue(Optional.of(true)).build();
         allowDupeKeysParam = bool("allow_dup_keys").optional().description("Whether to allow duplicate keys, defaults to true").defaultValue(Optional.of(true)).build();
         duplicateHandlingParam = string("handle_dup_keys").optional().defaultValue(Optional.of(TAKE_FIRST)).description("How to handle duplicate keys: (default) 'take_first': only use first value, 'take_last': only take last value or use a delimiter e.g. ','").build();
         trimCharactersParam = string("trim_key_chars", CharMatcher.class)
-                .transform(CharMatcher::anyOf)
+                .transform(anyOf)
                 .optional()
                 .description("The characters to trim from keys, default is not to trim")
                 .build();
         trimValueCharactersParam = string("trim_value_chars", CharMatcher.class)
-                .transform(CharMatcher::anyOf)
+                .transform(anyOf)
                 .optional()
                 .description("The characters to trim from values, default is not to trim")
                 .build();
@@ -17,7 +17,6 @@
 package org.graylog.plugins.pipelineprocessor.functions.strings;
 
 import com.google.common.reflect.TypeToken;
-import io.krakens.grok.api.Grok;
 import io.krakens.grok.api.Match;
 import jakarta.inject.Inject;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
@@ -71,9 +70,7 @@ public class MultiGrokMatch extends AbstractFunction<GrokMatch.GrokResult> {
         }
 
         for (String pattern : patterns) {
-            final Grok grok = grokPatternRegistry.cachedGrokForPattern(pattern, onlyNamedCaptures);
-
-            final Match match = grok.match(value);
+            final Match match = grokPatternRegistry.match(pattern, onlyNamedCaptures, value);
             if (!match.isNull()) {
                 return new GrokMatch.GrokResult(match.captureFlattened());
             }
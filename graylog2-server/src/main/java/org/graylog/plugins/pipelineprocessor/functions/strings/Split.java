@@ -19,12 +19,14 @@ package org.graylog.plugins.pipelineprocessor.functions.strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Ints;
 import com.google.common.reflect.TypeToken;
+import jakarta.inject.Inject;
 import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
 import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
 import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
 import org.graylog.plugins.pipelineprocessor.rulebuilder.RuleBuilderFunctionGroup;
+import org.graylog2.utilities.CompiledPatternCache;
 
 import java.util.List;
 import java.util.regex.Pattern;
@@ -44,8 +46,13 @@ public class Split extends AbstractFunction<List<String>> {
     private final ParameterDescriptor<Long, Integer> limit;
 
     public Split() {
+        this(CompiledPatternCache.create());
+    }
+
+    @Inject
+    public Split(CompiledPatternCache patternCache) {
         pattern = ParameterDescriptor.string("pattern", Pattern.class)
-                .transform(Pattern::compile)
+                .transform(patternCache::regex)
                 .description("The regular expression to split by, uses Java regex syntax")
                 .build();
         value = ParameterDescriptor.string("value").ruleBuilderVariable()
@@ -36,8 +36,12 @@ import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog.plugins.pipelineprocessor.ast.Pipeline;
 import org.graylog.plugins.pipelineprocessor.ast.Rule;
 import org.graylog.plugins.pipelineprocessor.ast.Stage;
+import org.graylog.plugins.pipelineprocessor.ast.StageRuleIndex;
+import org.graylog.plugins.pipelineprocessor.ast.expressions.FunctionExpression;
 import org.graylog.plugins.pipelineprocessor.ast.expressions.LogicalExpression;
+import org.graylog.plugins.pipelineprocessor.ast.functions.PrefetchingFunction;
 import org.graylog.plugins.pipelineprocessor.ast.statements.Statement;
+import org.graylog.plugins.pipelineprocessor.codegen.GeneratedRule;
 import org.graylog.plugins.pipelineprocessor.db.RuleMetricsConfigDto;
 import org.graylog.plugins.pipelineprocessor.processors.listeners.InterpreterListener;
 import org.graylog.plugins.pipelineprocessor.processors.listeners.NoopInterpreterListener;
@@ -52,7 +56,6 @@ import org.graylog2.shared.buffers.processors.ProcessBufferProcessor;
 import org.graylog2.shared.messageq.MessageQueueAcknowledger;
 import org.graylog2.shared.metrics.MetricUtils;
 import org.graylog2.shared.utilities.ExceptionUtils;
-import org.jooq.lambda.tuple.Tuple2;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -62,17 +65,19 @@ import jakarta.inject.Inject;
 import jakarta.inject.Named;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
-import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static org.graylog2.plugin.utilities.ratelimitedlog.RateLimitedLogFactory.createDefaultRateLimitedLog;
-import static org.jooq.lambda.tuple.Tuple.tuple;
 
 public class PipelineInterpreter implements MessageProcessor {
     private static final RateLimitedLog log = createDefaultRateLimitedLog(PipelineInterpreter.class);
@@ -126,38 +131,63 @@ public class PipelineInterpreter implements MessageProcessor {
      */
     public Messages process(Messages messages, InterpreterListener interpreterListener, State state) {
         interpreterListener.startProcessing();
-        // message id + stream id
-        final Set<Tuple2<String, String>> processingBlacklist = Sets.newHashSet();
-
-        final List<Message> toProcess = Lists.newArrayList(messages);
-        final List<Message> fullyProcessed = Lists.newArrayListWithExpectedSize(toProcess.size());
+        // all messages of this batch, including the ones created by pipelines. a message is identified by its
+        // position in this list, which is also its row in the processing blacklist.
+        final List<Message> batch = Lists.newArrayList(messages);
+        // message index + stream ordinal
+        final StreamBlacklist processingBlacklist = new StreamBlacklist();
+        // most messages in a batch are on the same streams, so the pipelines and stages to run are resolved only
+        // once per distinct set of streams
+        final Map<BitSet, StreamPlan> plans = new HashMap<>();
+        final BitSet initialStreams = new BitSet();
+        final BitSet streamsToRun = new BitSet();
+
+        IndexList toProcess = IndexList.range(batch.size());
+        IndexList nextRound = new IndexList(batch.size());
+        final List<Message> fullyProcessed = Lists.newArrayListWithExpectedSize(batch.size());
+        final boolean prefetch = state.hasPrefetchableCalls();
 
         while (!toProcess.isEmpty()) {
-            final MessageCollection currentSet = new MessageCollection(toProcess);
-            // we'll add them back below
-            toProcess.clear();
-
-            for (Message message : currentSet) {
+            if (prefetch) {
+                prefetch(batch, toProcess, plans, processingBlacklist, streamsToRun, state);
+            }
+            for (int i = 0; i < toProcess.size(); i++) {
+                final int messageIndex = toProcess.get(i);
+                final Message message = batch.get(messageIndex);
                 final String msgId = message.getId();
 
-                // this makes a copy of the list, which is mutated later in updateStreamBlacklist
-                // it serves as a worklist, to keep track of which <msg, stream> tuples need to be re-run again
-                final Set<String> initialStreamIds = message.getStreams().stream().map(Stream::getId).collect(Collectors.toSet());
-
-                final ImmutableSet<Pipeline> pipelinesToRun = selectPipelines(interpreterListener,
-                        processingBlacklist,
-                        message,
-                        initialStreamIds,
-                        state.getStreamPipelineConnections());
+                // initialStreams serves as a worklist, to keep track of which <msg, stream> tuples need to be re-run again
+                initialStreams.clear();
+                streamsToRun.clear();
+                for (Stream stream : message.getStreams()) {
+                    final int ordinal = processingBlacklist.ordinal(stream.getId());
+                    initialStreams.set(ordinal);
+                    // if a message-stream combination has already been processed (is in the blacklist), skip that execution
+                    if (!processingBlacklist.contains(messageIndex, ordinal)) {
+                        streamsToRun.set(ordinal);
+                    }
+                }
 
-                toProcess.addAll(processForResolvedPipelines(message, msgId, pipelinesToRun, interpreterListener, state));
+                final StreamPlan plan = selectPipelines(plans, streamsToRun, processingBlacklist, state);
+                interpreterListener.processStreams(message, plan.pipelines(), plan.streamIds());
+                log.debug("[{}] running pipelines {} for streams {}", msgId, plan.pipelines(), plan.streamIds());
+
+                if (!plan.pipelines().isEmpty()) {
+                    final List<Message> created = processForResolvedPipelines(message, msgId, plan.pipelines(),
+                            new StageIterator(plan.stages()), interpreterListener);
+                    for (Message createdMessage : created) {
+                        nextRound.add(batch.size());
+                        batch.add(createdMessage);
+                    }
+                }
 
                 // add each processed message-stream combination to the blacklist set and figure out if the processing
                 // has added a stream to the message, in which case we need to cycle and determine whether to process
                 // its pipeline connections, too
                 boolean addedStreams = updateStreamBlacklist(processingBlacklist,
+                        messageIndex,
                         message,
-                        initialStreamIds);
+                        initialStreams);
                 potentiallyDropFilteredMessage(message);
 
                 // go to 1 and iterate over all messages again until no more streams are being assigned
@@ -167,9 +197,14 @@ public class PipelineInterpreter implements MessageProcessor {
                 } else {
                     // process again, we've added a stream
                     log.debug("[{}] new streams assigned, running again for those streams", msgId);
-                    toProcess.add(message);
+                    nextRound.add(messageIndex);
                 }
             }
+
+            final IndexList processed = toProcess;
+            toProcess = nextRound;
+            nextRound = processed;
+            nextRound.clear();
         }
 
         interpreterListener.finishProcessing();
@@ -188,42 +223,89 @@ public class PipelineInterpreter implements MessageProcessor {
 
     // given the initial streams the message was on before the processing and its current state, update the set of
     // <msgid, stream> that should not be run again (which prevents re-running pipelines over and over again)
-    private boolean updateStreamBlacklist(Set<Tuple2<String, String>> processingBlacklist,
+    private boolean updateStreamBlacklist(StreamBlacklist processingBlacklist,
+                                          int messageIndex,
                                           Message message,
-                                          Set<String> initialStreamIds) {
+                                          BitSet initialStreams) {
         boolean addedStreams = false;
         for (Stream stream : message.getStreams()) {
-            if (!initialStreamIds.remove(stream.getId())) {
+            final int ordinal = processingBlacklist.ordinal(stream.getId());
+            if (!initialStreams.get(ordinal)) {
                 addedStreams = true;
             } else {
                 // only add pre-existing streams to blacklist, this has the effect of only adding already processed streams,
                 // not newly added ones.
-                processingBlacklist.add(tuple(message.getId(), stream.getId()));
+                processingBlacklist.add(messageIndex, ordinal);
             }
         }
         return addedStreams;
     }
 
-    // determine which pipelines should be executed give the stream-pipeline connections and the current message
-    // the initialStreamIds are not mutated, but are being passed for efficiency, as they are used later in #process()
-    private ImmutableSet<Pipeline> selectPipelines(InterpreterListener interpreterListener,
-                                                   Set<Tuple2<String, String>> processingBlacklist,
-                                                   Message message,
-                                                   Set<String> initialStreamIds,
-                                                   ImmutableSetMultimap<String, Pipeline> streamConnection) {
-        final String msgId = message.getId();
-
-        // if a message-stream combination has already been processed (is in the set), skip that execution
-        final Set<String> streamsIds = initialStreamIds.stream()
-                .filter(streamId -> !processingBlacklist.contains(tuple(msgId, streamId)))
-                .filter(streamConnection::containsKey)
-                .collect(Collectors.toSet());
-        final ImmutableSet<Pipeline> pipelinesToRun = streamsIds.stream()
-                .flatMap(streamId -> streamConnection.get(streamId).stream())
-                .collect(ImmutableSet.toImmutableSet());
-        interpreterListener.processStreams(message, pipelinesToRun, streamsIds);
-        log.debug("[{}] running pipelines {} for streams {}", msgId, pipelinesToRun, streamsIds);
-        return pipelinesToRun;
+    // load the data of prefetchable function calls for all messages of the round at once, instead of one message
+    // after another while the rules run. this is best effort: the calls are evaluated for every message afterwards.
+    private void prefetch(List<Message> batch,
+                          IndexList toProcess,
+                          Map<BitSet, StreamPlan> plans,
+                          StreamBlacklist processingBlacklist,
+                          BitSet streamsToRun,
+                          State state) {
+        final Map<FunctionExpression, List<EvaluationContext>> contextsByCall = new IdentityHashMap<>();
+        for (int i = 0; i < toProcess.size(); i++) {
+            final int messageIndex = toProcess.get(i);
+            final Message message = batch.get(messageIndex);
+            streamsToRun.clear();
+            for (Stream stream : message.getStreams()) {
+                final int ordinal = processingBlacklist.ordinal(stream.getId());
+                if (!processingBlacklist.contains(messageIndex, ordinal)) {
+                    streamsToRun.set(ordinal);
+                }
+            }
+
+            final StreamPlan plan = selectPipelines(plans, streamsToRun, processingBlacklist, state);
+            if (!plan.prefetchableCalls().isEmpty()) {
+                final EvaluationContext context = new EvaluationContext(message);
+                for (FunctionExpression call : plan.prefetchableCalls()) {
+                    contextsByCall.computeIfAbsent(call, c -> new ArrayList<>()).add(context);
+                }
+            }
+        }
+
+        contextsByCall.forEach((call, contexts) -> {
+            try {
+                ((PrefetchingFunction) call.getFunction()).prefetch(call.getArgs(), contexts);
+            } catch (Exception e) {
+                log.debug("Unable to prefetch {} for {} messages", call, contexts.size(), e);
+            }
+        });
+    }
+
+    // determine which pipelines should be executed given the stream-pipeline connections and the streams a message
+    // still needs to be processed for. the result is shared by all messages of the batch with the same streams.
+    private StreamPlan selectPipelines(Map<BitSet, StreamPlan> plans,
+                                       BitSet streamsToRun,
+                                       StreamBlacklist processingBlacklist,
+                                       State state) {
+        final StreamPlan existingPlan = plans.get(streamsToRun);
+        if (existingPlan != null) {
+            return existingPlan;
+        }
+
+        final ImmutableSetMultimap<String, Pipeline> streamConnection = state.getStreamPipelineConnections();
+        final ImmutableSet.Builder<String> streamIds = ImmutableSet.builder();
+        final ImmutableSet.Builder<Pipeline> pipelinesToRun = ImmutableSet.builder();
+        for (int ordinal = streamsToRun.nextSetBit(0); ordinal >= 0; ordinal = streamsToRun.nextSetBit(ordinal + 1)) {
+            final String streamId = processingBlacklist.streamId(ordinal);
+            final ImmutableSet<Pipeline> pipelines = streamConnection.get(streamId);
+            if (!pipelines.isEmpty()) {
+                streamIds.add(streamId);
+                pipelinesToRun.addAll(pipelines);
+            }
+        }
+        final ImmutableSet<Pipeline> pipelines = pipelinesToRun.build();
+        final StreamPlan plan = new StreamPlan(pipelines, streamIds.build(), state.getStageConfiguration(pipelines),
+                state.hasPrefetchableCalls() ? prefetchableCalls(pipelines) : List.of());
+        plans.put((BitSet) streamsToRun.clone(), plan);
+        return plan;
     }
 
     /**
@@ -260,11 +342,18 @@ public class PipelineInterpreter implements MessageProcessor {
                                                      Set<Pipeline> pipelines,
                                                      InterpreterListener interpreterListener,
                                                      State state) {
+        return processForResolvedPipelines(message, msgId, pipelines, state.getStageIterator(pipelines), interpreterListener);
+    }
+
+    private List<Message> processForResolvedPipelines(Message message,
+                                                      String msgId,
+                                                      Set<Pipeline> pipelines,
+                                                      StageIterator stages,
+                                                      InterpreterListener interpreterListener) {
         final List<Message> result = new ArrayList<>();
         // record execution of pipeline in metrics
         pipelines.forEach(Pipeline::markExecution);
 
-        final StageIterator stages = state.getStageIterator(pipelines);
         final Set<Pipeline> pipelinesToSkip = Sets.newHashSet();
 
         // iterate through all stages for all matching pipelines, per "stage slice" instead of per pipeline.
@@ -314,7 +403,16 @@ public class PipelineInterpreter implements MessageProcessor {
         final List<Rule> rulesToRun = new ArrayList<>(stageRules.size());
         boolean anyRulesMatched = stageRules.isEmpty(); // If there are no rules, we can simply continue to the next stage
         boolean allRulesMatched = true;
-        for (Rule rule : stageRules) {
+        // rules whose preconditions (required fields and values) already tell us that they cannot match
+        final StageRuleIndex ruleIndex = stage.getRuleIndex();
+        final BitSet rulesToSkip = ruleIndex == null ? null : ruleIndex.rulesToSkip(message);
+        for (int i = 0; i < stageRules.size(); i++) {
+            final Rule rule = stageRules.get(i);
+            if (rulesToSkip != null && rulesToSkip.get(i)) {
+                skipRule(rule, msgId, pipeline, interpreterListener);
+                allRulesMatched = false;
+                continue;
+            }
             try {
                 final boolean ruleCondition = evaluateRuleCondition(rule, message, msgId, pipeline, context, rulesToRun, interpreterListener);
                 anyRulesMatched |= ruleCondition;
@@ -381,6 +479,14 @@ public class PipelineInterpreter implements MessageProcessor {
         interpreterListener.executeRule(rule, pipeline);
         try {
             log.debug("[{}] rule `{}` matched running actions", msgId, rule.name());
+            final GeneratedRule generatedRule = rule.generatedRule();
+            if (generatedRule != null) {
+                // the generated code stops at the first action which raised an error, just like the loop below
+                if (!generatedRule.then(context)) {
+                    return onStatementError(message, interpreterListener, pipeline, context, rule);
+                }
+                return true;
+            }
             for (Statement statement : rule.then()) {
                 if (!evaluateStatement(message, interpreterListener, pipeline, context, rule, statement)) {
                     // statement raised an error, skip the rest of the rule
@@ -401,23 +507,39 @@ public class PipelineInterpreter implements MessageProcessor {
         statement.evaluate(context);
         if (context.hasEvaluationErrors()) {
             // if the last statement resulted in an error, do not continue to execute this rules
-            final EvaluationContext.EvalError lastError = Iterables.getLast(context.evaluationErrors());
-            message.addProcessingError(new Message.ProcessingError(
-                    ProcessingFailureCause.RuleStatementEvaluationError,
-                    String.format(Locale.ENGLISH,
-                            "Error evaluating action for rule <%s/%s> (pipeline <%s/%s>)",
-                            rule.name(), rule.id(), pipeline.name(), pipeline.id()),
-                    lastError.toString()
-            ));
-            interpreterListener.failExecuteRule(rule, pipeline);
-            log.debug("Encountered evaluation error, skipping rest of the rule: {}",
-                    lastError);
-            rule.markFailure();
-            return false;
+            return onStatementError(message, interpreterListener, pipeline, context, rule);
         }
         return true;
     }
 
+    private boolean onStatementError(Message message,
+                                     InterpreterListener interpreterListener,
+                                     Pipeline pipeline,
+                                     EvaluationContext context, Rule rule) {
+        final EvaluationContext.EvalError lastError = Iterables.getLast(context.evaluationErrors());
+        message.addProcessingError(new Message.ProcessingError(
+                ProcessingFailureCause.RuleStatementEvaluationError,
+                String.format(Locale.ENGLISH,
+                        "Error evaluating action for rule <%s/%s> (pipeline <%s/%s>)",
+                        rule.name(), rule.id(), pipeline.name(), pipeline.id()),
+                lastError.toString()
+        ));
+        interpreterListener.failExecuteRule(rule, pipeline);
+        log.debug("Encountered evaluation error, skipping rest of the rule: {}",
+                lastError);
+        rule.markFailure();
+        return false;
+    }
+
+    // the outcome is the same as evaluating a condition which doesn't match, without the cost of the evaluation
+    private void skipRule(Rule rule, String msgId, Pipeline pipeline, InterpreterListener interpreterListener) {
+        interpreterListener.evaluateRule(rule, pipeline);
+        rule.markSkipped();
+        rule.markNonMatch();
+        interpreterListener.dissatisfyRule(rule, pipeline);
+        log.debug("[{}] rule `{}` cannot match, skipping", msgId, rule.name());
+    }
+
     private boolean evaluateRuleCondition(Rule rule,
                                           Message message,
                                           String msgId,
@@ -427,8 +549,9 @@ public class PipelineInterpreter implements MessageProcessor {
         interpreterListener.evaluateRule(rule, pipeline);
         final boolean matched;
         final LogicalExpression logicalExpression = rule.when();
+        final GeneratedRule generatedRule = rule.generatedRule();
         try {
-            matched = logicalExpression.evaluateBool(context);
+            matched = generatedRule != null ? generatedRule.when(context) : logicalExpression.evaluateBool(context);
         } catch (Exception e) {
 
             context.onEvaluationException(e, logicalExpression);
@@ -472,6 +595,65 @@ public class PipelineInterpreter implements MessageProcessor {
         }
     }
 
+    // rules can be shared between pipelines, so the same call can be in several of their stages
+    private static List<FunctionExpression> prefetchableCalls(Set<Pipeline> pipelines) {
+        final Set<FunctionExpression> calls = Sets.newIdentityHashSet();
+        for (Pipeline pipeline : pipelines) {
+            for (Stage stage : pipeline.stages()) {
+                calls.addAll(stage.getPrefetchableCalls());
+            }
+        }
+        return List.copyOf(calls);
+    }
+
+    // the pipelines and stages to run for a set of streams
+    private record StreamPlan(ImmutableSet<Pipeline> pipelines,
+                              ImmutableSet<String> streamIds,
+                              StageIterator.Configuration stages,
+                              List<FunctionExpression> prefetchableCalls) {
+    }
+
+    // growable list of message indexes, used as the per-round worklist in #process()
+    private static final class IndexList {
+        private int[] values;
+        private int size;
+
+        IndexList(int capacity) {
+            this.values = new int[Math.max(capacity, 8)];
+        }
+
+        static IndexList range(int size) {
+            final IndexList list = new IndexList(size);
+            for (int i = 0; i < size; i++) {
+                list.add(i);
+            }
+            return list;
+        }
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
     public static class State {
         private final Logger LOG = LoggerFactory.getLogger(getClass());
         protected static final String STAGE_CACHE_METRIC_SUFFIX = "stage-cache";
@@ -481,6 +663,7 @@ public class PipelineInterpreter implements MessageProcessor {
         private final LoadingCache<Set<Pipeline>, StageIterator.Configuration> cache;
         private final boolean cachedIterators;
         private final RuleMetricsConfigDto ruleMetricsConfig;
+        private final boolean hasPrefetchableCalls;
 
         @AssistedInject
         public State(@Assisted ImmutableMap<String, Pipeline> currentPipelines,
@@ -493,6 +676,9 @@ public class PipelineInterpreter implements MessageProcessor {
             this.streamPipelineConnections = streamPipelineConnections;
             this.cachedIterators = cachedIterators;
             this.ruleMetricsConfig = ruleMetricsConfig;
+            this.hasPrefetchableCalls = currentPipelines != null && currentPipelines.values().stream()
+                    .flatMap(pipeline -> pipeline.stages().stream())
+                    .anyMatch(stage -> !stage.getPrefetchableCalls().isEmpty());
 
             cache = CacheBuilder.newBuilder()
                     .concurrencyLevel(processorCount)
@@ -525,16 +711,28 @@ public class PipelineInterpreter implements MessageProcessor {
             return ruleMetricsConfig.metricsEnabled();
         }
 
+        /**
+         * @return whether any stage of the current pipelines contains function calls which can be prefetched for a
+         * batch of messages
+         */
+        public boolean hasPrefetchableCalls() {
+            return hasPrefetchableCalls;
+        }
+
         public StageIterator getStageIterator(Set<Pipeline> pipelines) {
+            return new StageIterator(getStageConfiguration(pipelines));
+        }
+
+        public StageIterator.Configuration getStageConfiguration(Set<Pipeline> pipelines) {
             try {
                 if (cachedIterators) {
-                    return new StageIterator(cache.get(pipelines));
+                    return cache.get(pipelines);
                 } else {
-                    return new StageIterator(pipelines);
+                    return new StageIterator.Configuration(pipelines);
                 }
             } catch (ExecutionException e) {
                 LOG.error("Unable to get StageIterator from cache, this should not happen.", ExceptionUtils.getRootCause(e));
-                return new StageIterator(pipelines);
+                return new StageIterator.Configuration(pipelines);
             }
         }
 
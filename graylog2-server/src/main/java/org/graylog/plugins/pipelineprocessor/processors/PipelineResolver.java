@@ -16,6 +16,7 @@
  */
 package org.graylog.plugins.pipelineprocessor.processors;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSetMultimap;
@@ -24,6 +25,7 @@ import com.google.inject.assistedinject.Assisted;
 import jakarta.inject.Inject;
 import org.graylog.plugins.pipelineprocessor.ast.Pipeline;
 import org.graylog.plugins.pipelineprocessor.ast.Rule;
+import org.graylog.plugins.pipelineprocessor.codegen.RuleCompiler;
 import org.graylog.plugins.pipelineprocessor.db.PipelineDao;
 import org.graylog.plugins.pipelineprocessor.db.RuleDao;
 import org.graylog.plugins.pipelineprocessor.parser.ParseException;
@@ -62,15 +64,22 @@ public class PipelineResolver {
 
     private final PipelineRuleParser ruleParser;
     private final PipelineResolverConfig config;
+    private final RuleCompiler ruleCompiler;
     private final Supplier<Stream<RuleDao>> ruleDaoSupplier;
     private final Supplier<Stream<PipelineDao>> pipelineDaoSupplier;
     private final Supplier<Stream<PipelineConnections>> pipelineConnectionsSupplier;
 
+    public PipelineResolver(PipelineRuleParser ruleParser, PipelineResolverConfig config) {
+        this(ruleParser, config, new RuleCompiler(false, new MetricRegistry()));
+    }
+
     @Inject
     public PipelineResolver(@Assisted PipelineRuleParser ruleParser,
-                            @Assisted PipelineResolverConfig config) {
+                            @Assisted PipelineResolverConfig config,
+                            RuleCompiler ruleCompiler) {
         this.ruleParser = ruleParser;
         this.config = config;
+        this.ruleCompiler = ruleCompiler;
         this.ruleDaoSupplier = config.rulesSupplier();
         this.pipelineDaoSupplier = config.pipelinesSupplier();
         this.pipelineConnectionsSupplier = config.pipelineConnectionsSupplier();
@@ -114,7 +123,7 @@ public class PipelineResolver {
             ruleStream.forEach(ruleDao -> {
                 Rule rule;
                 try {
-                    rule = ruleParser.parseRule(ruleDao.id(), ruleDao.source(), false);
+                    rule = ruleCompiler.maybeCompile(ruleParser.parseRule(ruleDao.id(), ruleDao.source(), false));
                 } catch (ParseException e) {
                     LOG.warn("Ignoring non parseable rule <{}/{}> with errors <{}>", ruleDao.title(), ruleDao.id(), e.getErrors());
                     rule = Rule.alwaysFalse("Failed to parse rule: " + ruleDao.id());
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.processors;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps track of the message/stream combinations that have already been run through their connected pipelines
+ * during a single batch.
+ * <p>
+ * Messages are identified by their index in the batch and streams by an ordinal that is assigned the first time a
+ * stream is seen. The combinations are stored in a single bit set with one row of {@code stride} bits per message,
+ * so neither lookups nor updates allocate.
+ */
+class StreamBlacklist {
+    private static final int INITIAL_STRIDE = 64;
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> streamIds = new ArrayList<>();
+    private BitSet bits = new BitSet();
+    private int stride = INITIAL_STRIDE;
+
+    /**
+     * Returns the ordinal of the given stream, assigning the next free one if the stream hasn't been seen before.
+     */
+    int ordinal(String streamId) {
+        final Integer ordinal = ordinals.get(streamId);
+        if (ordinal != null) {
+            return ordinal;
+        }
+        final int next = streamIds.size();
+        ordinals.put(streamId, next);
+        streamIds.add(streamId);
+        return next;
+    }
+
+    String streamId(int ordinal) {
+        return streamIds.get(ordinal);
+    }
+
+    boolean contains(int messageIndex, int ordinal) {
+        return ordinal < stride && bits.get(messageIndex * stride + ordinal);
+    }
+
+    void add(int messageIndex, int ordinal) {
+        if (ordinal >= stride) {
+            grow(ordinal);
+        }
+        bits.set(messageIndex * stride + ordinal);
+    }
+
+    // re-lay out the existing rows with a stride that fits the given ordinal
+    private void grow(int ordinal) {
+        int newStride = stride;
+        while (ordinal >= newStride) {
+            newStride *= 2;
+        }
+        final BitSet relaid = new BitSet();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            relaid.set((i / stride) * newStride + (i % stride));
+        }
+        bits = relaid;
+        stride = newStride;
+    }
+}
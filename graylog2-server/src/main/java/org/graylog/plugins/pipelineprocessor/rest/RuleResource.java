@@ -176,7 +176,7 @@ public class RuleResource extends RestResource implements PluginRestResource {
     ) {
         final Rule rule = pipelineRuleService.parseRuleOrThrow(request.ruleSource().id(), request.ruleSource().source(), true);
         Message message = ruleSimulator.createMessage(request.message());
-        return ruleSimulator.simulate(rule, message);
+        return ruleSimulator.simulate(rule, message, request.compiled());
     }
 
     @ApiOperation(value = "Get all processing rules")
@@ -21,6 +21,8 @@ import com.fasterxml.jackson.annotation.JsonCreator;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.auto.value.AutoValue;
 
+import javax.annotation.Nullable;
+
 @AutoValue
 @JsonAutoDetect
 public abstract class SimulateRuleRequest {
@@ -30,9 +32,13 @@ public abstract class SimulateRuleRequest {
     @JsonProperty
     public abstract RuleSource ruleSource();
 
+    @JsonProperty
+    public abstract boolean compiled();
+
     @JsonCreator
     public static SimulateRuleRequest create (@JsonProperty("message") String message,
-                                              @JsonProperty("rule_source") RuleSource ruleSource) {
-        return new AutoValue_SimulateRuleRequest(message, ruleSource);
+                                              @JsonProperty("rule_source") RuleSource ruleSource,
+                                              @JsonProperty("compiled") @Nullable Boolean compiled) {
+        return new AutoValue_SimulateRuleRequest(message, ruleSource, Boolean.TRUE.equals(compiled));
     }
 }
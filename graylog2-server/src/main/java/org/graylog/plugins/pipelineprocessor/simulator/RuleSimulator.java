@@ -24,6 +24,7 @@ import org.apache.commons.lang.StringUtils;
 import org.graylog.plugins.pipelineprocessor.ast.Pipeline;
 import org.graylog.plugins.pipelineprocessor.ast.Rule;
 import org.graylog.plugins.pipelineprocessor.ast.Stage;
+import org.graylog.plugins.pipelineprocessor.codegen.RuleCompiler;
 import org.graylog.plugins.pipelineprocessor.processors.ConfigurationStateUpdater;
 import org.graylog.plugins.pipelineprocessor.processors.PipelineInterpreter;
 import org.graylog2.plugin.Message;
@@ -44,13 +45,23 @@ public class RuleSimulator {
     private final ConfigurationStateUpdater configurationStateUpdater;
     private final ObjectMapper objectMapper;
     private final MessageFactory messageFactory;
+    private final RuleCompiler ruleCompiler;
 
     @Inject
     public RuleSimulator(ConfigurationStateUpdater configurationStateUpdater, ObjectMapper objectMapper,
-                         MessageFactory messageFactory) {
+                         MessageFactory messageFactory, RuleCompiler ruleCompiler) {
         this.configurationStateUpdater = configurationStateUpdater;
         this.objectMapper = objectMapper;
         this.messageFactory = messageFactory;
+        this.ruleCompiler = ruleCompiler;
+    }
+
+    /**
+     * Runs the rule on the message, either interpreting it or executing its compiled form.
+     * Comparing the results of both shows whether a rule behaves the same once compiled.
+     */
+    public Message simulate(Rule rule, Message message, boolean compiled) {
+        return simulate(compiled ? ruleCompiler.compile(rule) : rule, message);
     }
 
     public Message simulate(Rule rule, Message message) {
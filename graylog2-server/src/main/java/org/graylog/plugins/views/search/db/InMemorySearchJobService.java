@@ -18,6 +18,8 @@ package org.graylog.plugins.views.search.db;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
 import com.google.common.util.concurrent.Uninterruptibles;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -49,9 +51,17 @@ public class InMemorySearchJobService implements SearchJobService {
                 .expireAfterAccess(5, TimeUnit.MINUTES)
                 .maximumSize(1000)
                 .recordStats()
+                .removalListener(InMemorySearchJobService::cancelAbandonedJob)
                 .build();
     }
 
+    private static void cancelAbandonedJob(RemovalNotification<String, SearchJob> notification) {
+        // nobody polled the job for a while, don't keep its queued queries around
+        if (notification.getCause() == RemovalCause.EXPIRED && notification.getValue() != null) {
+            notification.getValue().cancel();
+        }
+    }
+
     @Override
     public SearchJob create(final Search search,
                             final String owner,
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs queries on a fixed size thread pool in weighted fair order instead of submission order.
+ * <p>
+ * Every owner gets its own flow per {@link QueryExecutionPriority}, and flows are served by start-time fair queueing:
+ * a dashboard submitting dozens of queries only delays its own queries, not the ones of other users. Interactive
+ * flows are weighted higher than background flows, so they get a larger share of the pool while background work
+ * still makes progress.
+ * <p>
+ * The thread pool only ever sees interchangeable "run next" tokens, the actual task is picked when a worker becomes
+ * free. This allows queued tasks to be dropped by cancelling their future.
+ */
+public class FairQueryScheduler {
+    private static final int FLOW_CLEANUP_THRESHOLD = 1024;
+
+    private final ThreadPoolExecutor executor;
+    private final int interactiveWeight;
+
+    // all guarded by "this"
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>();
+    private final Map<Flow, Double> finishTags = new HashMap<>();
+    private double virtualTime = 0;
+    private long sequence = 0;
+
+    public FairQueryScheduler(int poolSize, int queueSize, int interactiveWeight, String nameFormat) {
+        this(new ThreadPoolExecutor(poolSize, poolSize,
+                0L, TimeUnit.MILLISECONDS,
+                queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder()
+                        .setNameFormat(nameFormat)
+                        .build()
+        ), interactiveWeight);
+    }
+
+    @VisibleForTesting
+    FairQueryScheduler(ThreadPoolExecutor executor, int interactiveWeight) {
+        if (interactiveWeight < 1) {
+            throw new IllegalArgumentException("Interactive weight must be positive: " + interactiveWeight);
+        }
+        this.executor = executor;
+        this.interactiveWeight = interactiveWeight;
+    }
+
+    /**
+     * Queues the given supplier. The returned future completes with the supplier's result, or exceptionally with a
+     * {@link CompletionException} wrapping the thrown exception, like {@link CompletableFuture#supplyAsync}.
+     * Cancelling the future removes the task from the queue if it has not been started yet.
+     *
+     * @throws RejectedExecutionException if the thread pool queue is full
+     */
+    public <T> CompletableFuture<T> submit(String owner, QueryExecutionPriority priority, Supplier<T> supplier) {
+        final Task<T> task;
+        synchronized (this) {
+            final Flow flow = new Flow(Objects.toString(owner, ""), priority);
+            final double startTag = Math.max(virtualTime, finishTags.getOrDefault(flow, 0d));
+            finishTags.put(flow, startTag + 1d / weight(priority));
+            task = new Task<>(supplier, startTag, sequence++);
+            queue.add(task);
+        }
+        task.future.whenComplete((result, throwable) -> {
+            if (task.future.isCancelled()) {
+                remove(task);
+            }
+        });
+        try {
+            executor.execute(this::runNext);
+        } catch (RejectedExecutionException e) {
+            remove(task);
+            throw e;
+        }
+        return task.future;
+    }
+
+    @VisibleForTesting
+    synchronized int queued() {
+        return queue.size();
+    }
+
+    private int weight(QueryExecutionPriority priority) {
+        return priority == QueryExecutionPriority.INTERACTIVE ? interactiveWeight : 1;
+    }
+
+    private synchronized void remove(Task<?> task) {
+        queue.remove(task);
+    }
+
+    private void runNext() {
+        final Task<?> task;
+        synchronized (this) {
+            task = queue.poll();
+            if (task == null) {
+                // the task belonging to this token has been cancelled
+                return;
+            }
+            virtualTime = Math.max(virtualTime, task.startTag);
+            if (queue.isEmpty()) {
+                finishTags.clear();
+            } else if (finishTags.size() > FLOW_CLEANUP_THRESHOLD) {
+                // idle flows restart at the virtual time anyway
+                finishTags.values().removeIf(finishTag -> finishTag <= virtualTime);
+            }
+        }
+        task.run();
+    }
+
+    private record Flow(String owner, QueryExecutionPriority priority) {}
+
+    private static class Task<T> implements Comparable<Task<?>> {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final Supplier<T> supplier;
+        private final double startTag;
+        private final long sequence;
+
+        private Task(Supplier<T> supplier, double startTag, long sequence) {
+            this.supplier = supplier;
+            this.startTag = startTag;
+            this.sequence = sequence;
+        }
+
+        private void run() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(supplier.get());
+            } catch (Throwable t) {
+                future.completeExceptionally(new CompletionException(t));
+            }
+        }
+
+        @Override
+        public int compareTo(Task<?> other) {
+            final int byStartTag = Double.compare(startTag, other.startTag);
+            return byStartTag != 0 ? byStartTag : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -35,6 +35,8 @@ import org.graylog2.plugin.indexer.searches.timeranges.TimeRange;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -122,6 +124,67 @@ public interface QueryBackend<T extends GeneratedQueryContext> {
      */
     QueryResult doRun(SearchJob job, Query query, T queryContext);
 
+    /**
+     * Whether this backend can execute several queries of the same job at once, see {@link #run(SearchJob, Map)}.
+     * The query engine only batches queries for backends returning {@code true}.
+     *
+     * @return {@code true} if {@link #doRun(SearchJob, Map)} sends the queries as one request
+     */
+    default boolean supportsMultiQueryRun() {
+        return false;
+    }
+
+    default Map<Query, QueryResult> run(SearchJob job, Map<Query, GeneratedQueryContext> generatedQueryContexts) {
+        try {
+            final Stopwatch stopwatch = Stopwatch.createStarted();
+            final QueryExecutionStats.Builder statsBuilder = QueryExecutionStats.builderWithCurrentTime();
+            final Map<Query, T> queryContexts = new LinkedHashMap<>();
+            //noinspection unchecked
+            generatedQueryContexts.forEach((query, context) -> queryContexts.put(query, (T) context));
+            final Map<Query, QueryResult> results = doRun(job, queryContexts);
+            stopwatch.stop();
+            final Map<Query, QueryResult> resultsWithStats = new LinkedHashMap<>();
+            results.forEach((query, result) -> {
+                // all queries shared the same request, so they also share its duration
+                final QueryExecutionStats stats = statsBuilder.duration(stopwatch.elapsed(TimeUnit.MILLISECONDS))
+                        .effectiveTimeRange(effectiveTimeRangeForResult(query, result))
+                        .build();
+                getExecutionStatsCollector().storeStats(stats);
+                resultsWithStats.put(query, result.toBuilder()
+                        .executionStats(stats)
+                        .build());
+            });
+            return resultsWithStats;
+        } catch (Exception e) {
+            // same as for a single query: never throw exceptions into the engine, fail every query of the batch instead
+            final Map<Query, QueryResult> failedResults = new LinkedHashMap<>();
+            generatedQueryContexts.forEach((query, context) -> {
+                final QueryError queryError = new QueryError(query, e);
+                context.addError(queryError);
+                failedResults.put(query, QueryResult.failedQueryWithError(query, queryError));
+            });
+            return failedResults;
+        }
+    }
+
+    /**
+     * Run the generated queries of the given job together.
+     * <p>
+     * The default implementation runs the queries one after the other, backends supporting
+     * {@link #supportsMultiQueryRun()} override it to send them to the search cluster in one request.
+     * Errors of individual queries are added to their own context and do not fail the other queries.
+     *
+     * @param job           currently executing job
+     * @param queryContexts the queries to run and their contexts generated by {@link #generate(Query, Set, DateTimeZone)}
+     * @return the result for every query, in the iteration order of {@code queryContexts}
+     * @throws RuntimeException if the queries could not be executed for some reason
+     */
+    default Map<Query, QueryResult> doRun(SearchJob job, Map<Query, T> queryContexts) {
+        final Map<Query, QueryResult> results = new LinkedHashMap<>();
+        queryContexts.forEach((query, context) -> results.put(query, doRun(job, query, context)));
+        return results;
+    }
+
     default ExplainResults.QueryExplainResult explain(SearchJob job, Query query, GeneratedQueryContext queryContext) {
         //noinspection unchecked
         return doExplain(job, query, (T) queryContext);
@@ -16,7 +16,6 @@
  */
 package org.graylog.plugins.views.search.engine;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.opentelemetry.instrumentation.annotations.WithSpan;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
@@ -37,16 +36,17 @@ import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.Executor;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletionException;
 import java.util.stream.Collectors;
 
 import static org.graylog.plugins.views.search.engine.validation.DataLakeSearchValidator.containsDataLakeSearchElements;
@@ -57,9 +57,8 @@ public class QueryEngine {
     private final Set<QueryMetadataDecorator> queryMetadataDecorators;
     private final QueryParser queryParser;
 
-    // TODO proper thread pool with tunable settings
-    private final Executor indexerJobsQueryPool;
-    private final Executor dataLakeJobsQueryPool;
+    private final FairQueryScheduler indexerJobsQueryPool;
+    private final FairQueryScheduler dataLakeJobsQueryPool;
     private final ElasticsearchBackendProvider elasticsearchBackendProvider;
     private final Map<String, QueryBackend<? extends GeneratedQueryContext>> unversionedBackends;
 
@@ -74,28 +73,18 @@ public class QueryEngine {
         this.queryMetadataDecorators = queryMetadataDecorators;
         this.queryParser = queryParser;
 
-        this.indexerJobsQueryPool = createThreadPool(
+        this.indexerJobsQueryPool = new FairQueryScheduler(
                 configuration.searchQueryEngineIndexerJobsPoolSize(),
                 configuration.searchQueryEngineIndexerJobsQueueSize(),
+                configuration.searchQueryEngineInteractiveWeight(),
                 "query-engine-indexer-jobs-%d");
-        this.dataLakeJobsQueryPool = createThreadPool(
+        this.dataLakeJobsQueryPool = new FairQueryScheduler(
                 configuration.searchQueryEngineDataLakeJobsPoolSize(),
                 configuration.searchQueryEngineDataLakeJobsQueueSize(),
+                configuration.searchQueryEngineInteractiveWeight(),
                 "query-engine-data-lake-jobs-%d");
     }
 
-    private Executor createThreadPool(final int poolSize,
-                                      final int queueSize,
-                                      final String nameFormat) {
-        return new ThreadPoolExecutor(poolSize, poolSize,
-                0L, TimeUnit.MILLISECONDS,
-                queueSize > 0 ? new ArrayBlockingQueue<>(queueSize) : new LinkedBlockingQueue<>(),
-                new ThreadFactoryBuilder()
-                        .setNameFormat(nameFormat)
-                        .build()
-        );
-    }
-
     public QueryMetadata parse(Search search, Query query) {
         final QueryMetadata parsedMetadata = queryParser.parse(query);
 
@@ -117,40 +106,119 @@ public class QueryEngine {
         return new ExplainResults(searchJob.getSearchId(), new ExplainResults.SearchResult(queries), validationErrors);
     }
 
-    @WithSpan
     public SearchJob execute(SearchJob searchJob, Set<SearchError> validationErrors, DateTimeZone timezone) {
+        return execute(searchJob, validationErrors, timezone, QueryExecutionPriority.INTERACTIVE);
+    }
+
+    @WithSpan
+    public SearchJob execute(SearchJob searchJob, Set<SearchError> validationErrors, DateTimeZone timezone, QueryExecutionPriority priority) {
         final Set<Query> validQueries = searchJob.getSearch().queries()
                 .stream()
                 .filter(query -> !isQueryWithError(validationErrors, query))
                 .collect(Collectors.toSet());
 
 
-        validQueries.forEach(query -> searchJob.addQueryResultFuture(query.id(),
-                // generate and run each query, making sure we never let an exception escape
-                // if need be we default to an empty result with a failed state and the wrapped exception
-                CompletableFuture.supplyAsync(() -> prepareAndRun(searchJob, query, validationErrors, timezone),
-                                containsDataLakeSearchElements(query) ? dataLakeJobsQueryPool : indexerJobsQueryPool)
-                        .handle((queryResult, throwable) -> {
-                            if (throwable != null) {
-                                final Throwable cause = throwable.getCause();
-                                final SearchError error;
-                                if (cause instanceof SearchException) {
-                                    error = ((SearchException) cause).error();
-                                } else {
-                                    error = new QueryError(query, cause);
-                                }
-                                LOG.debug("Running query {} failed: {}", query.id(), cause);
-                                searchJob.addError(error);
-                                return QueryResult.failedQueryWithError(query, error);
-                            }
-                            return queryResult;
-                        })
-        ));
+        // queries of backends supporting it are run together, so all their search types go out in one request
+        final Map<QueryBatchKey, List<Query>> batches = new LinkedHashMap<>();
+        validQueries.forEach(query -> {
+            final FairQueryScheduler pool = containsDataLakeSearchElements(query) ? dataLakeJobsQueryPool : indexerJobsQueryPool;
+            multiQueryBackendType(query).ifPresentOrElse(
+                    backendType -> batches.computeIfAbsent(new QueryBatchKey(pool, backendType), key -> new ArrayList<>()).add(query),
+                    () -> submitQuery(searchJob, query, pool, validationErrors, timezone, priority));
+        });
+        batches.forEach((batchKey, queries) -> {
+            if (queries.size() == 1) {
+                submitQuery(searchJob, queries.get(0), batchKey.pool(), validationErrors, timezone, priority);
+            } else {
+                submitQueries(searchJob, queries, batchKey.pool(), validationErrors, timezone, priority);
+            }
+        });
 
         LOG.debug("Search job {} executing", searchJob.getId());
         return searchJob.seal();
     }
 
+    private void submitQuery(SearchJob searchJob, Query query, FairQueryScheduler pool, Set<SearchError> validationErrors,
+                             DateTimeZone timezone, QueryExecutionPriority priority) {
+        final CompletableFuture<QueryResult> execution = pool.submit(searchJob.getOwner(), priority,
+                () -> prepareAndRun(searchJob, query, validationErrors, timezone));
+        // cancelling the search job drops queries that are still waiting for a worker
+        searchJob.setQueryExecutionFuture(query.id(), execution);
+        searchJob.addQueryResultFuture(query.id(), withErrorHandling(searchJob, query, execution));
+    }
+
+    private void submitQueries(SearchJob searchJob, List<Query> queries, FairQueryScheduler pool, Set<SearchError> validationErrors,
+                               DateTimeZone timezone, QueryExecutionPriority priority) {
+        final Map<Query, CompletableFuture<QueryResult>> results = new LinkedHashMap<>();
+        queries.forEach(query -> results.put(query, new CompletableFuture<>()));
+        final CompletableFuture<Void> execution = pool.submit(searchJob.getOwner(), priority, () -> {
+            prepareAndRun(searchJob, results, validationErrors, timezone);
+            return null;
+        });
+        execution.whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                // the batch failed or has been cancelled, this is a no-op for queries which are done already
+                results.values().forEach(result -> result.completeExceptionally(throwable));
+            }
+        });
+        results.forEach((query, result) -> {
+            searchJob.setQueryExecutionFuture(query.id(), execution);
+            searchJob.addQueryResultFuture(query.id(), withErrorHandling(searchJob, query, result));
+        });
+    }
+
+    // make sure we never let an exception escape
+    // if need be we default to an empty result with a failed state and the wrapped exception
+    private CompletableFuture<QueryResult> withErrorHandling(SearchJob searchJob, Query query, CompletableFuture<QueryResult> execution) {
+        return execution.handle((queryResult, throwable) -> {
+            if (throwable != null) {
+                final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                final SearchError error;
+                if (cause instanceof SearchException) {
+                    error = ((SearchException) cause).error();
+                } else if (cause instanceof CancellationException) {
+                    error = new QueryError(query, "Query execution has been cancelled.");
+                } else {
+                    error = new QueryError(query, cause);
+                }
+                LOG.debug("Running query {} failed: {}", query.id(), cause);
+                searchJob.addError(error);
+                return QueryResult.failedQueryWithError(query, error);
+            }
+            return queryResult;
+        });
+    }
+
+    private void prepareAndRun(SearchJob searchJob, Map<Query, CompletableFuture<QueryResult>> results,
+                               Set<SearchError> validationErrors, DateTimeZone timezone) {
+        final var backend = getBackendForQuery(results.keySet().iterator().next());
+        final Map<Query, GeneratedQueryContext> generatedQueryContexts = new LinkedHashMap<>();
+        results.forEach((query, result) -> {
+            LOG.debug("[{}] Using {} to generate query", query.id(), backend);
+            try {
+                generatedQueryContexts.put(query, backend.generate(query, validationErrors, timezone));
+            } catch (Exception e) {
+                // only fails this query, the handle in #withErrorHandling converts it to a "failed" result
+                result.completeExceptionally(e);
+            }
+        });
+        if (generatedQueryContexts.isEmpty()) {
+            return;
+        }
+        LOG.trace("Generated queries {}, running them on backend {}", generatedQueryContexts.keySet(), backend);
+        final Map<Query, QueryResult> queryResults = backend.run(searchJob, generatedQueryContexts);
+        generatedQueryContexts.forEach((query, generatedQueryContext) -> {
+            generatedQueryContext.errors().forEach(searchJob::addError);
+            final QueryResult result = queryResults.get(query);
+            LOG.debug("[{}] Query returned {}", query.id(), result);
+            if (result == null) {
+                results.get(query).completeExceptionally(new IllegalStateException("Backend returned no result for query " + query.id()));
+            } else {
+                results.get(query).complete(result);
+            }
+        });
+    }
+
     private QueryResult prepareAndRun(SearchJob searchJob, Query query, Set<SearchError> validationErrors, DateTimeZone timezone) {
         final var backend = getBackendForQuery(query);
         LOG.debug("[{}] Using {} to generate query", query.id(), backend);
@@ -175,6 +243,16 @@ public class QueryEngine {
                 .anyMatch(id -> Objects.equals(id, query.id()));
     }
 
+    private Optional<Class<?>> multiQueryBackendType(Query query) {
+        try {
+            final var backend = getBackendForQuery(query);
+            return backend.supportsMultiQueryRun() ? Optional.of(backend.getClass()) : Optional.empty();
+        } catch (IllegalArgumentException e) {
+            // reported as error of the query when it is run on its own
+            return Optional.empty();
+        }
+    }
+
     private QueryBackend<? extends GeneratedQueryContext> getBackendForQuery(Query query) {
         var backendQuery = query.query();
         if (backendQuery.type().equals(ElasticsearchQueryString.NAME)) {
@@ -185,4 +263,6 @@ public class QueryEngine {
         }
         throw new IllegalArgumentException("Unknown backend type: " + backendQuery.type());
     }
+
+    private record QueryBatchKey(FairQueryScheduler pool, Class<?> backendType) {}
 }
@@ -25,7 +25,9 @@ import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReturnDocument;
+import jakarta.annotation.Nullable;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import one.util.streamex.StreamEx;
@@ -54,6 +56,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.elemMatch;
@@ -354,51 +357,123 @@ public class DBJobTriggerService {
      */
     public Optional<JobTriggerDto> nextRunnableTrigger() {
         final DateTime now = clock.nowUTC();
+        return lockNextRunnableTrigger(runnableTriggersFilter(now, null), now);
+    }
+
+    /**
+     * Locks and returns up to {@code limit} runnable triggers, ordered by their next time. The caller needs to take
+     * care of releasing the trigger locks.
+     * <p>
+     * If an affinity grace period is given, triggers which have last been run by another node are only locked once
+     * they are overdue by the grace period. This keeps triggers on the same node as long as that node keeps up.
+     *
+     * @param limit               max number of triggers to lock
+     * @param affinityGracePeriod grace period for triggers last run by another node, or null to lock any trigger
+     * @return the locked triggers, an empty list if there are no runnable triggers
+     */
+    public List<JobTriggerDto> nextRunnableTriggers(int limit, @Nullable java.time.Duration affinityGracePeriod) {
+        checkArgument(limit > 0, "limit must be positive");
+        final DateTime now = clock.nowUTC();
+        final Bson filter = runnableTriggersFilter(now, affinityGracePeriod);
+
+        if (limit == 1) {
+            return lockNextRunnableTrigger(filter, now).map(List::of).orElse(List.of());
+        }
+
+        // There is no atomic "find and update many" operation, so we first select the candidates and then lock
+        // them with an update that repeats the filter. Candidates which have been locked by another node in the
+        // meantime are skipped by the update.
+        final List<ObjectId> candidateIds;
+        try (final var stream = stream(collection.find(filter, Document.class)
+                .sort(ascending(FIELD_NEXT_TIME))
+                .projection(Projections.include(FIELD_ID))
+                .limit(limit))) {
+            candidateIds = stream.map(document -> document.getObjectId(FIELD_ID)).toList();
+        }
+
+        if (candidateIds.isEmpty()) {
+            return List.of();
+        } else if (candidateIds.size() == 1) {
+            return lockNextRunnableTrigger(and(idEq(candidateIds.get(0)), filter), now).map(List::of).orElse(List.of());
+        }
+
+        final long lockedTriggers = collection.updateMany(and(in(FIELD_ID, candidateIds), filter), lockUpdate(now))
+                .getModifiedCount();
+        if (lockedTriggers == 0) {
+            return List.of();
+        }
+
+        // The triggered_at field is only set when locking a trigger, so it identifies the triggers locked above
+        try (final var stream = stream(collection.find(and(
+                        in(FIELD_ID, candidateIds),
+                        eq(FIELD_LOCK_OWNER, nodeId),
+                        eq(FIELD_STATUS, JobTriggerStatus.RUNNING),
+                        eq(FIELD_TRIGGERED_AT, Optional.of(now))))
+                .sort(ascending(FIELD_NEXT_TIME)))) {
+            return stream.toList();
+        }
+    }
+
+    private Optional<JobTriggerDto> lockNextRunnableTrigger(Bson filter, DateTime now) {
+        // We want to lock the trigger with the oldest next time
+        final var sort = ascending(FIELD_NEXT_TIME);
 
+        // Atomically update, lock and return the next runnable trigger
+        final JobTriggerDto trigger = collection.findOneAndUpdate(filter, lockUpdate(now),
+                new FindOneAndUpdateOptions().sort(sort).returnDocument(ReturnDocument.AFTER)
+        );
+
+        return Optional.ofNullable(trigger);
+    }
+
+    private Bson runnableTriggersFilter(DateTime now, @Nullable java.time.Duration affinityGracePeriod) {
         // exclude triggers which require a constraint that is not satisfied by this node
         final var constraintsQuery = not(
                 elemMatch(FIELD_CONSTRAINTS, new Document("$nin", schedulerCapabilitiesService.getNodeCapabilities()))
         );
 
-        final var filter = or(and(
-                        // We cannot lock a trigger that is already locked by another node
-                        eq(FIELD_LOCK_OWNER, null),
-                        eq(FIELD_STATUS, JobTriggerStatus.RUNNABLE),
-                        lte(FIELD_START_TIME, now),
-                        constraintsQuery,
-
-                        or( // Skip triggers that have an endTime which is due
-                                not(exists(FIELD_END_TIME)),
-                                eq(FIELD_END_TIME, null),
-                                gt(FIELD_END_TIME, Optional.of(now))
-                        ),
-                        // TODO: Using the wall clock time here can be problematic if the node time is off
-                        //       The scheduler should not lock any new triggers if it detects that its clock is wrong
-                        lte(FIELD_NEXT_TIME, now)
-                ), and(
-                        ne(FIELD_LOCK_OWNER, null),
-                        ne(FIELD_LOCK_OWNER, nodeId),
-                        eq(FIELD_STATUS, JobTriggerStatus.RUNNING),
-                        constraintsQuery,
-                        lt(FIELD_LAST_LOCK_TIME, now.minus(lockExpirationDuration.toMilliseconds())))
+        final List<Bson> runnableQuery = new ArrayList<>(List.of(
+                // We cannot lock a trigger that is already locked by another node
+                eq(FIELD_LOCK_OWNER, null),
+                eq(FIELD_STATUS, JobTriggerStatus.RUNNABLE),
+                lte(FIELD_START_TIME, now),
+                constraintsQuery,
+
+                or( // Skip triggers that have an endTime which is due
+                        not(exists(FIELD_END_TIME)),
+                        eq(FIELD_END_TIME, null),
+                        gt(FIELD_END_TIME, Optional.of(now))
+                ),
+                // TODO: Using the wall clock time here can be problematic if the node time is off
+                //       The scheduler should not lock any new triggers if it detects that its clock is wrong
+                lte(FIELD_NEXT_TIME, now)
+        ));
+        if (affinityGracePeriod != null) {
+            runnableQuery.add(or(
+                    eq(FIELD_LAST_LOCK_OWNER, null),
+                    eq(FIELD_LAST_LOCK_OWNER, nodeId),
+                    // Take over triggers from nodes which don't keep up or are gone
+                    lte(FIELD_NEXT_TIME, now.minus(affinityGracePeriod.toMillis()))
+            ));
+        }
+
+        return or(and(runnableQuery), and(
+                ne(FIELD_LOCK_OWNER, null),
+                ne(FIELD_LOCK_OWNER, nodeId),
+                eq(FIELD_STATUS, JobTriggerStatus.RUNNING),
+                constraintsQuery,
+                lt(FIELD_LAST_LOCK_TIME, now.minus(lockExpirationDuration.toMilliseconds())))
         );
-        // We want to lock the trigger with the oldest next time
-        final var sort = ascending(FIELD_NEXT_TIME);
+    }
 
-        final var lockUpdate = combine(
+    private Bson lockUpdate(DateTime now) {
+        return combine(
                 set(FIELD_LOCK_OWNER, nodeId),
                 set(FIELD_LAST_LOCK_OWNER, nodeId),
                 set(FIELD_STATUS, JobTriggerStatus.RUNNING),
                 set(FIELD_TRIGGERED_AT, Optional.of(now)),
                 set(FIELD_LAST_LOCK_TIME, now)
         );
-
-        // Atomically update, lock and return the next runnable trigger
-        final JobTriggerDto trigger = collection.findOneAndUpdate(filter, lockUpdate,
-                new FindOneAndUpdateOptions().sort(sort).returnDocument(ReturnDocument.AFTER)
-        );
-
-        return Optional.ofNullable(trigger);
     }
 
     /**
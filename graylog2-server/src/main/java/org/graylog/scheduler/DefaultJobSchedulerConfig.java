@@ -17,11 +17,13 @@
 package org.graylog.scheduler;
 
 import com.google.common.collect.ImmutableMap;
+import com.github.joschi.jadconfig.util.Duration;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import org.graylog2.cluster.leader.LeaderElectionService;
 
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * This is the default {@link JobSchedulerConfig}.
@@ -51,4 +53,15 @@ public class DefaultJobSchedulerConfig implements JobSchedulerConfig {
     public Map<String, Integer> concurrencyLimits() {
         return ImmutableMap.copyOf(config.getConcurrencyLimits());
     }
+
+    @Override
+    public int triggerBatchSize() {
+        return config.getTriggerBatchSize();
+    }
+
+    @Override
+    public Optional<java.time.Duration> triggerAffinityGracePeriod() {
+        final Duration gracePeriod = config.getTriggerAffinityGracePeriod();
+        return gracePeriod.toMilliseconds() > 0 ? Optional.of(java.time.Duration.ofMillis(gracePeriod.toMilliseconds())) : Optional.empty();
+    }
 }
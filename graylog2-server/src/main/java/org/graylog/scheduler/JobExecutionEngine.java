@@ -44,9 +44,10 @@ import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -77,6 +78,9 @@ public class JobExecutionEngine {
     private final JobWorkerPool workerPool;
     private final RefreshingLockService.Factory refreshingLockServiceFactory;
     private final Map<String, Integer> concurrencyLimits;
+    private final int triggerBatchSize;
+    @Nullable
+    private final java.time.Duration triggerAffinityGracePeriod;
     private final long backoffMillis;
 
     private final Counter executionSuccessful;
@@ -84,6 +88,8 @@ public class JobExecutionEngine {
     private final Meter executionDenied;
     private final Meter executionRescheduled;
     private final Timer executionTime;
+    private final Map<String, Timer> triggerLagTimers = new ConcurrentHashMap<>();
+    private final MetricRegistry metricRegistry;
     private final LoadingCache<String, Long> gaugeCache;
 
     private final AtomicBoolean isRunning = new AtomicBoolean(true);
@@ -125,7 +131,10 @@ public class JobExecutionEngine {
         this.workerPool = workerPool;
         this.refreshingLockServiceFactory = refreshingLockServiceFactory;
         this.concurrencyLimits = schedulerConfig.concurrencyLimits();
+        this.triggerBatchSize = schedulerConfig.triggerBatchSize();
+        this.triggerAffinityGracePeriod = schedulerConfig.triggerAffinityGracePeriod().orElse(null);
         this.backoffMillis = backoffMillis;
+        this.metricRegistry = metricRegistry;
 
         this.executionSuccessful = metricRegistry.counter(MetricRegistry.name(getClass(), "executions", "successful"));
         this.executionFailed = metricRegistry.counter(MetricRegistry.name(getClass(), "executions", "failed"));
@@ -180,10 +189,11 @@ public class JobExecutionEngine {
     }
 
     /**
-     * Execute the engine. This will try to lock a trigger and execute the job if there are free slots in the
-     * worker pool and the engine is not shutting down.
+     * Execute the engine. This will try to lock triggers and execute the jobs if there are free slots in the
+     * worker pool and the engine is not shutting down. The engine locks up to the configured trigger batch size
+     * at once, but never more triggers than there are free slots in the worker pool.
      *
-     * @return true if a job trigger has been locked and the related job has been triggered, false otherwise
+     * @return true if job triggers have been locked and all related jobs have been triggered, false otherwise
      */
     public boolean execute() {
         // Cleanup stale scheduler state *before* processing any triggers for the first time.
@@ -194,25 +204,35 @@ public class JobExecutionEngine {
 
         // We want to avoid a call to the database if there are no free slots in the pool or the engine is shutting down
         if (isRunning.get() && workerPool.hasFreeSlots()) {
-            final Optional<JobTriggerDto> triggerOptional = jobTriggerService.nextRunnableTrigger();
-
-            if (triggerOptional.isPresent()) {
-                final JobTriggerDto trigger = triggerOptional.get();
-
-                if (!workerPool.execute(() -> handleTriggerWithConcurrencyLimit(trigger))) {
-                    // The job couldn't be executed so we have to release the trigger again with the same nextTime
-                    jobTriggerService.releaseTrigger(trigger, JobTriggerUpdate.withNextTime(trigger.nextTime()));
-                    executionDenied.mark();
-                    return false;
+            final int limit = Math.max(1, Math.min(triggerBatchSize, workerPool.freeSlots()));
+            final List<JobTriggerDto> triggers = nextRunnableTriggers(limit);
+
+            if (!triggers.isEmpty()) {
+                boolean allExecuted = true;
+                for (final JobTriggerDto trigger : triggers) {
+                    if (!workerPool.execute(() -> handleTriggerWithConcurrencyLimit(trigger))) {
+                        // The job couldn't be executed so we have to release the trigger again with the same nextTime
+                        jobTriggerService.releaseTrigger(trigger, JobTriggerUpdate.withNextTime(trigger.nextTime()));
+                        executionDenied.mark();
+                        allExecuted = false;
+                    }
                 }
 
-                return true;
+                return allExecuted;
             }
         }
         executionDenied.mark();
         return false;
     }
 
+    private List<JobTriggerDto> nextRunnableTriggers(int limit) {
+        // Keep the single trigger code path for the default configuration
+        if (limit == 1 && triggerAffinityGracePeriod == null) {
+            return jobTriggerService.nextRunnableTrigger().map(List::of).orElse(List.of());
+        }
+        return jobTriggerService.nextRunnableTriggers(limit, triggerAffinityGracePeriod);
+    }
+
     public void updateLockedJobs() {
         if (workerPool.anySlotsUsed()) {
             jobTriggerService.updateLockedJobTriggers();
@@ -253,6 +273,7 @@ public class JobExecutionEngine {
 
     private void handleTrigger(JobTriggerDto trigger) {
         LOG.trace("Locked trigger {} (owner={})", trigger.id(), trigger.lock().owner());
+        recordTriggerLag(trigger);
         try {
             final JobDefinitionDto jobDefinition = jobDefinitionService.get(trigger.jobDefinitionId())
                     .orElseThrow(() -> new IllegalStateException("Couldn't find job definition " + trigger.jobDefinitionId()));
@@ -278,6 +299,13 @@ public class JobExecutionEngine {
         }
     }
 
+    private void recordTriggerLag(JobTriggerDto trigger) {
+        final long lagMillis = DateTime.now(DateTimeZone.UTC).getMillis() - trigger.nextTime().getMillis();
+        triggerLagTimers.computeIfAbsent(trigger.jobDefinitionType(), jobType ->
+                        metricRegistry.timer(MetricRegistry.name(getClass(), "executions", "lag", "type", jobType)))
+                .update(Math.max(0, lagMillis), TimeUnit.MILLISECONDS);
+    }
+
     @WithSpan
     private void executeJob(JobTriggerDto trigger, JobDefinitionDto jobDefinition, Job job) {
         Span.current().setAttribute(SCHEDULER_JOB_CLASS, job.getClass().getSimpleName())
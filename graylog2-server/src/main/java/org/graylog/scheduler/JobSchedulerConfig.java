@@ -16,7 +16,9 @@
  */
 package org.graylog.scheduler;
 
+import java.time.Duration;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Used by the scheduler to configure itself.
@@ -45,4 +47,23 @@ public interface JobSchedulerConfig {
      * entry signifies unlimited concurrency (up to numberOfWorkerThreads)
      */
     Map<String, Integer> concurrencyLimits();
+
+    /**
+     * The maximum number of runnable triggers to lock in a single database round trip.
+     *
+     * @return max number of triggers to lock at once
+     */
+    default int triggerBatchSize() {
+        return 1;
+    }
+
+    /**
+     * If present, triggers are preferably locked by the node which ran them last. Other nodes only lock them once
+     * they are overdue by the returned grace period.
+     *
+     * @return the grace period for triggers which were last run by another node, or empty to disable trigger affinity
+     */
+    default Optional<Duration> triggerAffinityGracePeriod() {
+        return Optional.empty();
+    }
 }
@@ -21,6 +21,7 @@ import com.github.joschi.jadconfig.ValidationException;
 import com.github.joschi.jadconfig.Validator;
 import com.github.joschi.jadconfig.util.Duration;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import org.graylog2.configuration.converters.MapConverter;
 import org.graylog2.plugin.PluginConfigBean;
 
@@ -34,6 +35,8 @@ public class JobSchedulerConfiguration implements PluginConfigBean {
     public static final String LOOP_SLEEP_DURATION = "job_scheduler_loop_sleep_duration";
     public static final String LOCK_EXPIRATION_DURATION = "job_scheduler_lock_expiration_duration";
     public static final String CONCURRENCY_LIMITS = "job_scheduler_concurrency_limits";
+    public static final String TRIGGER_BATCH_SIZE = "job_scheduler_trigger_batch_size";
+    public static final String TRIGGER_AFFINITY_GRACE_PERIOD = "job_scheduler_trigger_affinity_grace_period";
 
     @Parameter(value = LOOP_SLEEP_DURATION, validators = PositiveDurationValidator.class)
     private Duration loopSleepDuration = Duration.seconds(1);
@@ -44,6 +47,12 @@ public class JobSchedulerConfiguration implements PluginConfigBean {
     @Parameter(value = CONCURRENCY_LIMITS, converter = MapConverter.StringInteger.class)
     private Map<String, Integer> concurrencyLimits = Map.of();
 
+    @Parameter(value = TRIGGER_BATCH_SIZE, validators = PositiveIntegerValidator.class)
+    private int triggerBatchSize = 10;
+
+    @Parameter(value = TRIGGER_AFFINITY_GRACE_PERIOD)
+    private Duration triggerAffinityGracePeriod = Duration.seconds(0);
+
     /**
      * Concurrency limits per job type. A missing entry signifies unlimited concurrency. (up to the number of worker threads)
      *
@@ -53,6 +62,26 @@ public class JobSchedulerConfiguration implements PluginConfigBean {
         return concurrencyLimits;
     }
 
+    /**
+     * The maximum number of runnable triggers to lock in a single database round trip. The scheduler never locks
+     * more triggers than it has free worker threads.
+     *
+     * @return max number of triggers to lock at once
+     */
+    public int getTriggerBatchSize() {
+        return triggerBatchSize;
+    }
+
+    /**
+     * Triggers are preferably run on the node which ran them last. Other nodes only take them over once they are
+     * overdue by this grace period. A zero duration disables the trigger affinity.
+     *
+     * @return the grace period for triggers which were last run by another node
+     */
+    public Duration getTriggerAffinityGracePeriod() {
+        return triggerAffinityGracePeriod;
+    }
+
     public Duration getLoopSleepDuration() {
         return loopSleepDuration;
     }
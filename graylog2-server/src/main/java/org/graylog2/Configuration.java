@@ -23,6 +23,7 @@ import com.github.joschi.jadconfig.ValidatorMethod;
 import com.github.joschi.jadconfig.converters.StringSetConverter;
 import com.github.joschi.jadconfig.converters.TrimmedStringSetConverter;
 import com.github.joschi.jadconfig.util.Duration;
+import com.github.joschi.jadconfig.util.Size;
 import com.github.joschi.jadconfig.validators.PositiveDurationValidator;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.github.joschi.jadconfig.validators.PositiveLongValidator;
@@ -44,6 +45,7 @@ import org.graylog2.outputs.BatchSizeConfig;
 import org.graylog2.plugin.Tools;
 import org.graylog2.security.hashing.PBKDF2PasswordAlgorithm;
 import org.graylog2.security.realm.RootAccountRealm;
+import org.graylog2.utilities.CompiledPatternCache;
 import org.graylog2.utilities.IPSubnetConverter;
 import org.graylog2.utilities.IpSubnet;
 import org.joda.time.DateTimeZone;
@@ -66,6 +68,7 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
     public static final String SAFE_CLASSES = "safe_classes";
 
     public static final String CONTENT_PACKS_DIR = "content_packs_dir";
+    public static final String LOOKUP_TABLE_STORE_DIR = "lookup_table_store_dir";
     /**
      * Deprecated! Use isLeader() instead.
      */
@@ -98,6 +101,12 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
     @Parameter(value = "outputbuffer_processor_threads_core_pool_size", required = true, validators = PositiveIntegerValidator.class)
     private int outputBufferProcessorThreadsCorePoolSize = 3;
 
+    @Parameter(value = "output_batch_dispatch")
+    private boolean outputBatchDispatch = false;
+
+    @Parameter(value = "output_batch_dispatch_queue_size", validators = PositiveIntegerValidator.class)
+    private int outputBatchDispatchQueueSize = 16;
+
     @Parameter(value = "node_id_file", validators = NodeIdFileValidator.class)
     private String nodeIdFile = "/etc/graylog/server/node-id";
 
@@ -132,6 +141,24 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
     @Parameter(value = "stream_processing_max_faults", validators = PositiveIntegerValidator.class)
     private int streamProcessingMaxFaults = 3;
 
+    @Parameter(value = "stream_router_compiled_matching")
+    private boolean streamRouterCompiledMatching = false;
+
+    @Parameter(value = "gelf_chunk_aggregation_pooled")
+    private boolean gelfChunkAggregationPooled = false;
+
+    @Parameter(value = "gelf_chunk_aggregation_max_memory")
+    private Size gelfChunkAggregationMaxMemory = Size.megabytes(256L);
+
+    @Parameter(value = "gelf_chunk_aggregation_max_messages", validators = PositiveIntegerValidator.class)
+    private int gelfChunkAggregationMaxMessages = 65536;
+
+    @Parameter(value = "compiled_pattern_cache_size", validators = PositiveIntegerValidator.class)
+    private int compiledPatternCacheSize = CompiledPatternCache.DEFAULT_MAX_WEIGHT;
+
+    @Parameter(value = "grok_re2j_prefilter")
+    private boolean grokRe2jPrefilter = false;
+
     @Parameter(value = "output_module_timeout", validators = PositiveLongValidator.class)
     private long outputModuleTimeout = 10000;
 
@@ -184,12 +211,18 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
     @Parameter(value = CONTENT_PACKS_DIR)
     private Path contentPacksDir;
 
+    @Parameter(value = LOOKUP_TABLE_STORE_DIR)
+    private Path lookupTableStoreDir;
+
     @Parameter(value = "content_packs_auto_install", converter = TrimmedStringSetConverter.class)
     private Set<String> contentPacksAutoInstall = Collections.emptySet();
 
     @Parameter(value = "index_ranges_cleanup_interval", validators = PositiveDurationValidator.class)
     private Duration indexRangesCleanupInterval = Duration.hours(1L);
 
+    @Parameter(value = "index_ranges_cache_rebuild_interval", validators = PositiveDurationValidator.class)
+    private Duration indexRangesCacheRebuildInterval = Duration.minutes(5L);
+
     @Parameter(value = "trusted_proxies", converter = IPSubnetConverter.class)
     private Set<IpSubnet> trustedProxies = Collections.emptySet();
 
@@ -269,6 +302,9 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
     @Parameter("search_query_engine_data_lake_jobs_queue_size")
     private int searchQueryEngineDataLakeJobsQueueSize = 0;
 
+    @Parameter(value = "search_query_engine_interactive_weight", validators = PositiveIntegerValidator.class)
+    private int searchQueryEngineInteractiveWeight = 4;
+
     @Documentation("""
             Enabling this parameter will activate automatic security configuration. Graylog server will
             set a default 30-day automatic certificate renewal policy and create a self-signed CA. This CA
@@ -368,6 +404,14 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         return outputBufferProcessorThreadsCorePoolSize;
     }
 
+    public boolean isOutputBatchDispatch() {
+        return outputBatchDispatch;
+    }
+
+    public int getOutputBatchDispatchQueueSize() {
+        return outputBatchDispatchQueueSize;
+    }
+
     public boolean isCloud() {
         return isCloud;
     }
@@ -428,6 +472,22 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         return streamProcessingMaxFaults;
     }
 
+    public boolean isStreamRouterCompiledMatching() {
+        return streamRouterCompiledMatching;
+    }
+
+    public boolean isGelfChunkAggregationPooled() {
+        return gelfChunkAggregationPooled;
+    }
+
+    public Size getGelfChunkAggregationMaxMemory() {
+        return gelfChunkAggregationMaxMemory;
+    }
+
+    public int getGelfChunkAggregationMaxMessages() {
+        return gelfChunkAggregationMaxMessages;
+    }
+
     public long getOutputModuleTimeout() {
         return outputModuleTimeout;
     }
@@ -490,6 +550,11 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         return Optional.ofNullable(contentPacksDir).orElse(getDataDir().resolve("contentpacks"));
     }
 
+    @NamedBindingOverride(value = LOOKUP_TABLE_STORE_DIR)
+    public Path getLookupTableStoreDir() {
+        return Optional.ofNullable(lookupTableStoreDir).orElse(getDataDir().resolve("lookup-tables"));
+    }
+
     public Set<String> getContentPacksAutoInstall() {
         return contentPacksAutoInstall;
     }
@@ -498,6 +563,10 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         return indexRangesCleanupInterval;
     }
 
+    public Duration getIndexRangesCacheRebuildInterval() {
+        return indexRangesCacheRebuildInterval;
+    }
+
     public Set<IpSubnet> getTrustedProxies() {
         return trustedProxies;
     }
@@ -556,6 +625,14 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         }
     }
 
+    @ValidatorMethod
+    @SuppressWarnings("unused")
+    public void validateOutputBatchDispatch() throws ValidationException {
+        if (isOutputBatchDispatch() && !isProcessorBatchClaiming()) {
+            throw new ValidationException("\"output_batch_dispatch\" requires \"processor_batch_claiming\" to be enabled.");
+        }
+    }
+
     @ValidatorMethod
     public void validateLeaderElectionTimeouts() throws ValidationException {
         if (leaderElectionMode != LeaderElectionMode.AUTOMATIC) {
@@ -611,6 +688,10 @@ public class Configuration extends CaConfiguration implements CommonNodeConfigur
         return searchQueryEngineDataLakeJobsQueueSize;
     }
 
+    public int searchQueryEngineInteractiveWeight() {
+        return searchQueryEngineInteractiveWeight;
+    }
+
     public static class NodeIdFileValidator implements Validator<String> {
         @Override
         public void validate(String name, String path) throws ValidationException {
@@ -33,11 +33,14 @@ import org.graylog2.plugin.GlobalMetricNames;
 import org.graylog2.plugin.Message;
 import org.graylog2.plugin.buffers.Buffer;
 import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.shared.buffers.BatchClaimingEventProcessor;
 import org.graylog2.shared.buffers.LoggingExceptionHandler;
 import org.graylog2.shared.buffers.PartitioningWorkHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadFactory;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -55,7 +58,9 @@ public class OutputBuffer extends Buffer {
                         OutputBufferProcessor.Factory processorFactory,
                         @Named("outputbuffer_processors") int processorCount,
                         @Named("ring_size") int ringSize,
-                        @Named("processor_wait_strategy") String waitStrategyName) {
+                        @Named("processor_wait_strategy") String waitStrategyName,
+                        @Named("processor_batch_claiming") boolean batchClaiming,
+                        @Named("processor_max_batch_size") int maxBatchSize) {
         this.ringBufferSize = ringSize;
         this.incomingMessages = metricRegistry.meter(name(OutputBuffer.class, "incomingMessages"));
 
@@ -78,18 +83,27 @@ public class OutputBuffer extends Buffer {
         );
         disruptor.setDefaultExceptionHandler(new LoggingExceptionHandler(LOG));
 
-        final EventHandler<MessageEvent>[] processors = new PartitioningWorkHandler[processorCount];
-        for (int i = 0; i < processorCount; i++) {
-            processors[i] = new PartitioningWorkHandler<>(processorFactory.create(i), i, processorCount);
+        if (batchClaiming) {
+            final List<OutputBufferProcessor> processors = new ArrayList<>(processorCount);
+            for (int i = 0; i < processorCount; i++) {
+                processors.add(processorFactory.create(i));
+            }
+            disruptor.handleEventsWith(BatchClaimingEventProcessor.createProcessors(disruptor.getRingBuffer(),
+                    processors, new LoggingExceptionHandler(LOG), maxBatchSize));
+        } else {
+            final EventHandler<MessageEvent>[] processors = new PartitioningWorkHandler[processorCount];
+            for (int i = 0; i < processorCount; i++) {
+                processors[i] = new PartitioningWorkHandler<>(processorFactory.create(i), i, processorCount);
+            }
+            disruptor.handleEventsWith(processors);
         }
 
-        disruptor.handleEventsWith(processors);
-
         ringBuffer = disruptor.start();
 
         LOG.info("Initialized OutputBuffer with ring size <{}> and wait strategy <{}>, " +
-                        "running {} parallel buffer processors.",
-                ringBufferSize, waitStrategy.getClass().getSimpleName(), processorCount);
+                        "running {} parallel buffer processors{}.",
+                ringBufferSize, waitStrategy.getClass().getSimpleName(), processorCount,
+                batchClaiming ? " with batch claiming" : "");
     }
 
     private ThreadFactory threadFactory(final MetricRegistry metricRegistry) {
@@ -36,10 +36,13 @@ import org.graylog2.plugin.Message;
 import org.graylog2.plugin.ServerStatus;
 import org.graylog2.plugin.buffers.MessageEvent;
 import org.graylog2.plugin.outputs.MessageOutput;
-import org.graylog2.shared.buffers.WorkHandler;
+import org.graylog2.shared.buffers.BatchWorkHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
@@ -52,13 +55,14 @@ import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
-public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
+public class OutputBufferProcessor implements BatchWorkHandler<MessageEvent> {
 
     private static final Logger LOG = LoggerFactory.getLogger(OutputBufferProcessor.class);
 
     private static final String INCOMING_MESSAGES_METRICNAME = name(OutputBufferProcessor.class, "incomingMessages");
     private static final String PROCESS_TIME_METRICNAME = name(OutputBufferProcessor.class, "processTime");
 
+    // only used to write single messages, stays null if output_batch_dispatch is enabled
     private final ExecutorService executor;
 
     private final Configuration configuration;
@@ -70,7 +74,9 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
 
     private final OutputRouter outputRouter;
     private final MessageOutput defaultMessageOutput;
+    private final StreamOutputDispatcher streamOutputDispatcher;
     private final int processorOrdinal;
+    private final boolean batchDispatch;
 
     @Inject
     public OutputBufferProcessor(Configuration configuration,
@@ -78,15 +84,22 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
                                  ServerStatus serverStatus,
                                  OutputRouter outputRouter,
                                  @DefaultMessageOutput MessageOutput defaultMessageOutput,
+                                 StreamOutputDispatcher streamOutputDispatcher,
                                  @Assisted int processorOrdinal) {
         this.configuration = configuration;
         this.serverStatus = serverStatus;
         this.outputRouter = outputRouter;
         this.defaultMessageOutput = defaultMessageOutput;
+        this.streamOutputDispatcher = streamOutputDispatcher;
         this.processorOrdinal = processorOrdinal;
+        this.batchDispatch = configuration.isOutputBatchDispatch();
 
-        final int corePoolSize = configuration.getOutputBufferProcessorThreadsCorePoolSize();
-        this.executor = executorService(globalMetricRegistry, corePoolSize);
+        if (batchDispatch) {
+            this.executor = null;
+        } else {
+            final int corePoolSize = configuration.getOutputBufferProcessorThreadsCorePoolSize();
+            this.executor = executorService(globalMetricRegistry, corePoolSize);
+        }
 
         this.incomingMessages = globalMetricRegistry.meter(INCOMING_MESSAGES_METRICNAME);
         this.outputThroughput = globalMetricRegistry.counter(GlobalMetricNames.OUTPUT_THROUGHPUT);
@@ -193,6 +206,83 @@ public class OutputBufferProcessor implements WorkHandler<MessageEvent> {
         event.clearMessages();
     }
 
+    /**
+     * Writes a batch of messages to the outputs if {@code output_batch_dispatch} is enabled, otherwise every event is
+     * handled by {@link #onEvent(MessageEvent)}.
+     * <p>
+     * The messages are grouped by output and every output receives a single {@link MessageOutput#write(List)} call
+     * per batch. The default output is written to on the calling thread to exert back pressure on the processing
+     * pipeline. Stream outputs are written to by the {@link StreamOutputDispatcher}, which uses a bounded queue per
+     * output so slow outputs cannot stall the default output.
+     *
+     * @param events the events to write to outputs
+     * @throws Exception
+     */
+    @Override
+    public void onBatch(List<MessageEvent> events) throws Exception {
+        if (!batchDispatch) {
+            BatchWorkHandler.super.onBatch(events);
+            return;
+        }
+
+        try {
+            final List<Message> messages = new ArrayList<>(events.size());
+            final Map<MessageOutput, List<Message>> streamOutputMessages = new IdentityHashMap<>();
+            for (final MessageEvent event : events) {
+                final Message msg = event.getMessage();
+                if (msg == null) {
+                    LOG.debug("Skipping null message.");
+                    continue;
+                }
+                messages.add(msg);
+
+                final Set<MessageOutput> messageOutputs = outputRouter.getStreamOutputsForMessage(msg);
+                msg.recordCounter(serverStatus, "matched-outputs", messageOutputs.size());
+                for (final MessageOutput output : messageOutputs) {
+                    streamOutputMessages.computeIfAbsent(output, k -> new ArrayList<>()).add(msg);
+                }
+            }
+            incomingMessages.mark(messages.size());
+
+            if (messages.isEmpty()) {
+                return;
+            }
+
+            streamOutputMessages.forEach((output, outputMessages) -> {
+                if (output == null) {
+                    LOG.error("Output was null!");
+                } else if (!output.isRunning()) {
+                    LOG.debug("Skipping stopped output {}", output.getClass().getName());
+                } else {
+                    streamOutputDispatcher.dispatch(output, outputMessages);
+                }
+            });
+
+            if (defaultMessageOutput.isRunning()) {
+                try (Timer.Context ignored = processTime.time()) {
+                    defaultMessageOutput.write(messages);
+                } catch (Exception e) {
+                    LOG.error("Error in output [" + defaultMessageOutput.getClass() + "].", e);
+                }
+            } else {
+                LOG.debug("Skipping stopped output {}", defaultMessageOutput.getClass().getName());
+            }
+
+            for (final Message msg : messages) {
+                if (msg.hasRecordings()) {
+                    LOG.debug("Message event trace: {}", msg.recordingsAsString());
+                }
+            }
+            outputThroughput.inc(messages.size());
+
+            LOG.debug("Wrote batch of {} messages to all outputs. Finished handling.", messages.size());
+        } finally {
+            for (final MessageEvent event : events) {
+                event.clearMessages();
+            }
+        }
+    }
+
     private Future<?> processMessage(final Message msg, final MessageOutput defaultMessageOutput) {
         return processMessage(msg, defaultMessageOutput, new CountDownLatch(0));
     }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jakarta.inject.Inject;
+import jakarta.inject.Singleton;
+import org.graylog2.Configuration;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Writes message batches to stream outputs. Every stream output gets its own bounded queue and writer thread, so a
+ * slow stream output neither blocks the output buffer processors nor other outputs. As a consequence, every stream
+ * output is written to by exactly one thread at a time and receives its batches in the order they were dispatched.
+ * <p>
+ * If the queue of an output stays full for longer than {@code output_module_timeout}, the batch is dropped for that
+ * output and counted in the {@code droppedMessages} meter.
+ * <p>
+ * The dispatcher is stopped by {@link #shutdown(long, TimeUnit)} once the output buffer has been drained.
+ */
+@Singleton
+public class StreamOutputDispatcher {
+    private static final Logger LOG = LoggerFactory.getLogger(StreamOutputDispatcher.class);
+
+    private final ConcurrentMap<MessageOutput, OutputQueue> queues = new ConcurrentHashMap<>();
+    private final ThreadFactory threadFactory = new ThreadFactoryBuilder()
+            .setNameFormat("stream-output-dispatcher-%d")
+            .setDaemon(true)
+            .build();
+    private final int queueSize;
+    private final long offerTimeoutMs;
+    private final Timer processTime;
+    private final Meter droppedMessages;
+    private final Counter queuedBatches;
+    // dispatching batches shares the lock, stopping the dispatcher needs it exclusively
+    private final ReadWriteLock stopLock = new ReentrantReadWriteLock();
+    private boolean stopped = false;
+
+    @Inject
+    public StreamOutputDispatcher(Configuration configuration, MetricRegistry metricRegistry) {
+        this.queueSize = configuration.getOutputBatchDispatchQueueSize();
+        this.offerTimeoutMs = configuration.getOutputModuleTimeout();
+        this.processTime = metricRegistry.timer(name(OutputBufferProcessor.class, "processTime"));
+        this.droppedMessages = metricRegistry.meter(name(StreamOutputDispatcher.class, "droppedMessages"));
+        this.queuedBatches = metricRegistry.counter(name(StreamOutputDispatcher.class, "queuedBatches"));
+    }
+
+    /**
+     * Queues the messages for the given output. Blocks for up to {@code output_module_timeout} if the queue of the
+     * output is full.
+     *
+     * @param output   the stream output
+     * @param messages the messages to write
+     */
+    public void dispatch(MessageOutput output, List<Message> messages) {
+        stopLock.readLock().lock();
+        try {
+            if (stopped) {
+                LOG.warn("Dispatcher has been stopped. Dropping {} messages for output [{}].", messages.size(), output.getClass());
+                droppedMessages.mark(messages.size());
+                return;
+            }
+            // a queue which has been closed in the meantime is replaced by a new one
+            while (!queues.computeIfAbsent(output, this::startQueue).offer(messages)) {
+                LOG.debug("Queue of output [{}] has been closed, retrying with a new queue.", output.getClass());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            droppedMessages.mark(messages.size());
+        } finally {
+            stopLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops accepting new batches, waits until the queued batches have been written to their outputs and stops the
+     * writer threads. Writer threads which are still busy after the timeout are interrupted and their remaining
+     * batches are dropped.
+     *
+     * @param timeout the maximum time to wait for all queues to be drained
+     * @param unit    the unit of the timeout
+     */
+    public void shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        stopLock.writeLock().lock();
+        try {
+            stopped = true;
+        } finally {
+            stopLock.writeLock().unlock();
+        }
+
+        final List<OutputQueue> openQueues = List.copyOf(queues.values());
+        openQueues.forEach(OutputQueue::drain);
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (final OutputQueue queue : openQueues) {
+            final long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMs > 0) {
+                queue.thread.join(remainingMs);
+            }
+            if (queue.thread.isAlive()) {
+                LOG.warn("Output [{}] did not finish writing its queued batches in time. Dropping {} batches.",
+                        queue.output.getClass(), queue.batches.size());
+                queue.thread.interrupt();
+            }
+        }
+    }
+
+    private OutputQueue startQueue(MessageOutput output) {
+        final OutputQueue queue = new OutputQueue(output, new ArrayBlockingQueue<>(queueSize));
+        queue.thread.start();
+        return queue;
+    }
+
+    private class OutputQueue implements Runnable {
+        private final MessageOutput output;
+        private final BlockingQueue<List<Message>> batches;
+        private final Thread thread;
+        // offering batches shares the lock, closing the queue needs it exclusively
+        private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+        private boolean closed = false;
+        private volatile boolean draining = false;
+
+        OutputQueue(MessageOutput output, BlockingQueue<List<Message>> batches) {
+            this.output = output;
+            this.batches = batches;
+            this.thread = threadFactory.newThread(this);
+        }
+
+        /**
+         * Lets the writer thread stop as soon as the queue is empty. No batches are offered anymore at this point.
+         */
+        void drain() {
+            draining = true;
+        }
+
+        /**
+         * Queues the batch, or drops it if the queue stays full for longer than {@code output_module_timeout}.
+         *
+         * @return {@code false} if the queue has been closed and the batch has to be offered to a new queue
+         */
+        boolean offer(List<Message> messages) throws InterruptedException {
+            closeLock.readLock().lock();
+            try {
+                if (closed) {
+                    return false;
+                }
+                if (batches.offer(messages, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    queuedBatches.inc();
+                } else {
+                    LOG.warn("Queue of output [{}] is full. Dropping {} messages for this output.", output.getClass(), messages.size());
+                    droppedMessages.mark(messages.size());
+                }
+                return true;
+            } finally {
+                closeLock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Closes the queue and removes it, unless a batch is being offered or still waits in the queue.
+         */
+        private boolean tryClose() {
+            if (!closeLock.writeLock().tryLock()) {
+                return false;
+            }
+            try {
+                if (!batches.isEmpty()) {
+                    return false;
+                }
+                closed = true;
+                queues.remove(output, this);
+                return true;
+            } finally {
+                closeLock.writeLock().unlock();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final List<Message> messages;
+                try {
+                    messages = draining ? batches.poll() : batches.poll(1, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+
+                if (messages == null) {
+                    if (draining) {
+                        break;
+                    }
+                    // The output has been stopped, make sure new batches go to a fresh queue
+                    if (!output.isRunning() && tryClose()) {
+                        break;
+                    }
+                    continue;
+                }
+
+                queuedBatches.dec();
+                if (!output.isRunning()) {
+                    LOG.debug("Skipping stopped output {}", output.getClass().getName());
+                    continue;
+                }
+                try (Timer.Context ignored = processTime.time()) {
+                    output.write(messages);
+                } catch (Exception e) {
+                    LOG.error("Error in output [" + output.getClass() + "].", e);
+                }
+            }
+        }
+    }
+}
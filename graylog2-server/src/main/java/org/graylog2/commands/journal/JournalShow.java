@@ -48,6 +48,7 @@ public class JournalShow extends AbstractJournalCommand {
                 "\n");
         sb.append("\t").append("Total size in bytes: ").append(sizeInBytes).append("\n");
         sb.append("\t").append("Number of segments: ").append(numSegments).append("\n");
+        sb.append("\t").append("Number of partitions: ").append(journal.getPartitionCount()).append("\n");
         sb.append("\t").append("Log start offset: ").append(startOffset).append("\n");
         sb.append("\t").append("Log end offset: ").append(lastOffset).append("\n");
         sb.append("\t").append("Number of messages: ").append(lastOffset - startOffset + 1).append("\n");
@@ -58,6 +59,9 @@ public class JournalShow extends AbstractJournalCommand {
             sb.append(committedReadOffset);
         }
         sb.append("\n");
+        if (journal.getPartitionCount() > 1) {
+            appendPartitionDetails(journal, sb);
+        }
 
         if (showSegmentDetails) {
             appendSegmentDetails(journal, sb);
@@ -68,6 +72,22 @@ public class JournalShow extends AbstractJournalCommand {
         System.out.flush();
     }
 
+    private void appendPartitionDetails(LocalKafkaJournal journal, StringBuilder sb) {
+        for (int partition = 0; partition < journal.getPartitionCount(); partition++) {
+            final long partitionCommittedOffset = journal.getCommittedOffset(partition);
+            sb.append("\t\t").append("Partition ").append(partition).append("\n");
+            sb.append("\t\t\t").append("Log start offset: ").append(journal.getLogStartOffset(partition)).append("\n");
+            sb.append("\t\t\t").append("Log end offset: ").append(journal.getLogEndOffset(partition) - 1).append("\n");
+            sb.append("\t\t\t").append("Committed read offset: ");
+            if (partitionCommittedOffset == Long.MIN_VALUE) {
+                sb.append("nothing committed");
+            } else {
+                sb.append(partitionCommittedOffset);
+            }
+            sb.append("\n");
+        }
+    }
+
     private void appendSegmentDetails(LocalKafkaJournal journal, StringBuilder sb) {
         final Iterable<LogSegment> segments = journal.getSegments();
         int i = 1;
@@ -27,18 +27,30 @@ public class JournalTruncate extends AbstractJournalCommand {
     @Required
     private long offset = Long.MIN_VALUE;
 
+    @Option(name = {"-p", "--partition"}, description = "Journal partition to truncate, required if the journal has more than one partition.")
+    private int partition = -1;
+
     public JournalTruncate() {
         super("truncate-journal");
     }
 
     @Override
     protected void runCommand() {
+        if (partition < 0 && journal.getPartitionCount() > 1) {
+            System.err.println("The journal has " + journal.getPartitionCount() + " partitions, please select the partition to truncate with --partition.");
+            return;
+        }
+        if (partition >= journal.getPartitionCount()) {
+            System.err.println("Illegal partition " + partition + ", the journal has " + journal.getPartitionCount() + " partition(s).");
+            return;
+        }
+        final int truncatedPartition = Math.max(partition, 0);
         try {
-            final long logEndOffset = journal.getLogEndOffset();
+            final long logEndOffset = journal.getLogEndOffset(truncatedPartition);
             if (offset > logEndOffset) {
                 System.err.println("Truncating journal to " + offset + " has no effect as the largest offset in the log is " + (logEndOffset - 1) + ".");
             } else {
-                journal.truncateTo(offset);
+                journal.truncateTo(truncatedPartition, offset);
             }
         } catch (IllegalArgumentException e) {
             System.err.println("Illegal offset value " + offset);
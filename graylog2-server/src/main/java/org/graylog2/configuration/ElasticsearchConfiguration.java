@@ -172,6 +172,15 @@ public class ElasticsearchConfiguration {
     @Parameter(value = "elasticsearch_index_optimization_jobs", validators = PositiveIntegerValidator.class)
     private int indexOptimizationJobs = 10;
 
+    @Parameter(value = "elasticsearch_bulk_streaming_serialization")
+    private boolean bulkStreamingSerialization = false;
+
+    @Parameter(value = "elasticsearch_bulk_max_request_size")
+    private Size bulkMaxRequestSize = Size.megabytes(50);
+
+    @Parameter(value = "elasticsearch_bulk_buffer_pool_size")
+    private Size bulkBufferPoolSize = Size.megabytes(64);
+
     @Nullable
     public Period getMaxIndexRetentionPeriod() {
         return maxIndexRetentionPeriod;
@@ -300,6 +309,18 @@ public class ElasticsearchConfiguration {
         return indexOptimizationJobs;
     }
 
+    public boolean isBulkStreamingSerialization() {
+        return bulkStreamingSerialization;
+    }
+
+    public Size getBulkMaxRequestSize() {
+        return bulkMaxRequestSize;
+    }
+
+    public Size getBulkBufferPoolSize() {
+        return bulkBufferPoolSize;
+    }
+
     public boolean allowFlexibleRetentionPeriod() {
         return allowFlexibleRetentionPeriod;
     }
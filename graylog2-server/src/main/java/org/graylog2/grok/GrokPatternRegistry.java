@@ -17,53 +17,77 @@
 package org.graylog2.grok;
 
 import com.google.common.base.Throwables;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
-import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.re2j.PatternSyntaxException;
 import io.krakens.grok.api.Grok;
 import io.krakens.grok.api.GrokCompiler;
+import io.krakens.grok.api.Match;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
+import org.graylog2.utilities.CompiledPatternCache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.Set;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
-import static com.google.common.cache.CacheLoader.asyncReloading;
-
 @Singleton
 public class GrokPatternRegistry {
     private static final Logger log = LoggerFactory.getLogger(GrokPatternRegistry.class);
 
+    private static final String GROK_NAMESPACE = "grok";
+    private static final String GROK_NAMED_ONLY_NAMESPACE = "grok-named-only";
+    private static final com.google.re2j.Pattern END_ANCHOR_ONLY_TERMINATOR = com.google.re2j.Pattern.compile("[\\r\\x{85}\\x{2028}\\x{2029}]");
+
     private final GrokPatternService grokPatternService;
+    private final CompiledPatternCache patternCache;
+    private final boolean re2jPrefilter;
 
     private final AtomicReference<Set<GrokPattern>> patterns = new AtomicReference<>(Collections.emptySet());
-    private final LoadingCache<String, Grok> grokCache;
-    private final LoadingCache<String, Grok> grokCacheNamedOnly;
+
+    /**
+     * A compiled grok pattern.
+     *
+     * @param grok      the grok instance
+     * @param prefilter the linear-time RE2/J version of the expanded pattern or {@code null} if it is disabled or the
+     *                  pattern can't be translated to RE2/J
+     */
+    private record CompiledGrok(Grok grok,
+                                @Nullable LinearTimePattern prefilter) implements CompiledPatternCache.Weighted {
+        @Override
+        public int patternLength() {
+            return grok.getNamedRegex().length();
+        }
+    }
+
+    /**
+     * An RE2/J pattern which matches at least every value the expanded grok pattern matches.
+     *
+     * @param pattern     the RE2/J pattern
+     * @param endAnchored whether the grok pattern uses {@code $}, which also matches before a final line terminator
+     *                    other than {@code \n} in java.util.regex, but not in RE2/J
+     */
+    private record LinearTimePattern(com.google.re2j.Pattern pattern, boolean endAnchored) {
+        boolean rejects(String value) {
+            if (endAnchored && END_ANCHOR_ONLY_TERMINATOR.matcher(value).find()) {
+                return false;
+            }
+            return !pattern.matcher(value).find();
+        }
+    }
 
     @Inject
     public GrokPatternRegistry(EventBus serverEventBus,
                                GrokPatternService grokPatternService,
-                               @Named("daemonScheduler") ScheduledExecutorService daemonExecutor) {
+                               CompiledPatternCache patternCache,
+                               @Named("grok_re2j_prefilter") boolean re2jPrefilter) {
         this.grokPatternService = grokPatternService;
-
-        grokCache = CacheBuilder.newBuilder()
-                .expireAfterAccess(1, TimeUnit.MINUTES) // prevent from hanging on to memory forever
-                .build(asyncReloading(new GrokReloader(false), daemonExecutor));
-
-        grokCacheNamedOnly = CacheBuilder.newBuilder()
-                .expireAfterAccess(1, TimeUnit.MINUTES) // prevent from hanging on to memory forever
-                .build(asyncReloading(new GrokReloader(true), daemonExecutor));
+        this.patternCache = patternCache;
+        this.re2jPrefilter = re2jPrefilter;
 
         // trigger initial loading
         reload();
@@ -92,44 +116,167 @@ public class GrokPatternRegistry {
     }
 
     public Grok cachedGrokForPattern(String pattern, boolean namedCapturesOnly) {
+        return compiledGrok(pattern, namedCapturesOnly).grok();
+    }
+
+    /**
+     * Matches the value against the given grok pattern.
+     * <p>
+     * If the RE2/J prefilter is enabled and the expanded pattern can be compiled by RE2/J, the value is first checked
+     * in linear time and only handed to the backtracking matcher if RE2/J found a match. This prevents catastrophic
+     * backtracking on values which don't match.
+     *
+     * @param pattern           the grok pattern
+     * @param namedCapturesOnly whether to only return named captures
+     * @param value             the value to match
+     * @return the match, {@link Match#EMPTY} if the value doesn't match
+     */
+    public Match match(String pattern, boolean namedCapturesOnly, String value) {
+        final CompiledGrok compiledGrok = compiledGrok(pattern, namedCapturesOnly);
+        if (compiledGrok.prefilter() != null && compiledGrok.prefilter().rejects(value)) {
+            return Match.EMPTY;
+        }
+        return compiledGrok.grok().match(value);
+    }
+
+    private CompiledGrok compiledGrok(String pattern, boolean namedCapturesOnly) {
         try {
-            if (namedCapturesOnly) {
-                return grokCacheNamedOnly.get(pattern);
-            } else {
-                return grokCache.get(pattern);
-            }
-        } catch (UncheckedExecutionException | ExecutionException e) {
+            return patternCache.get(namedCapturesOnly ? GROK_NAMED_ONLY_NAMESPACE : GROK_NAMESPACE, pattern,
+                    source -> compile(source, namedCapturesOnly));
+        } catch (RuntimeException e) {
             final Throwable rootCause = Throwables.getRootCause(e);
             log.error("Unable to load grok pattern {} into cache", pattern, rootCause);
             throw new RuntimeException(rootCause);
         }
     }
 
-    private void reload() {
-        final Set<GrokPattern> grokPatterns = grokPatternService.loadAll();
-        patterns.set(grokPatterns);
-        grokCache.invalidateAll();
-        grokCacheNamedOnly.invalidateAll();
+    private CompiledGrok compile(String pattern, boolean namedCapturesOnly) {
+        final GrokCompiler grokCompiler = GrokCompiler.newInstance();
+        for (GrokPattern grokPattern : patterns()) {
+            grokCompiler.register(grokPattern.name(), grokPattern.pattern());
+        }
+        final Grok grok = grokCompiler.compile(pattern, namedCapturesOnly);
+        return new CompiledGrok(grok, re2jPrefilter ? linearTimePattern(grok) : null);
     }
 
-    public Set<GrokPattern> patterns() {
-        return patterns.get();
+    // RE2/J is more permissive for ".", "^" and "$" with these flags. The remaining differences are handled by
+    // translateToRe2j() and LinearTimePattern, so RE2/J never rejects a value the grok pattern matches.
+    @Nullable
+    private static LinearTimePattern linearTimePattern(Grok grok) {
+        final String regex = grok.getNamedRegex();
+        final String re2jRegex = translateToRe2j(regex);
+        if (re2jRegex == null) {
+            log.debug("Grok pattern {} uses constructs which behave differently in RE2/J, using backtracking only.",
+                    grok.getOriginalGrokPattern());
+            return null;
+        }
+        try {
+            final com.google.re2j.Pattern pattern = com.google.re2j.Pattern.compile(re2jRegex,
+                    com.google.re2j.Pattern.DOTALL | com.google.re2j.Pattern.MULTILINE);
+            return new LinearTimePattern(pattern, isEndAnchored(regex));
+        } catch (PatternSyntaxException e) {
+            log.debug("Grok pattern {} can't be matched in linear time, using backtracking only: {}",
+                    grok.getOriginalGrokPattern(), e.getMessage());
+            return null;
+        }
     }
 
-    private class GrokReloader extends CacheLoader<String, Grok> {
-        private final boolean namedCapturesOnly;
-
-        GrokReloader(boolean namedCapturesOnly) {
-            this.namedCapturesOnly = namedCapturesOnly;
+    /**
+     * Translates a java.util.regex pattern to an RE2/J pattern which matches at least the same values.
+     * <ul>
+     *     <li>{@code \s} also matches a vertical tab in java.util.regex, so it is extended by {@code \x0B}.</li>
+     *     <li>{@code \S} is more permissive in RE2/J and only kept outside of negated character classes.</li>
+     *     <li>{@code \b} and {@code \B} may treat Unicode letters as word characters in java.util.regex, but not in
+     *     RE2/J, {@code \v} is a class of vertical whitespace in java.util.regex, but only the vertical tab in RE2/J,
+     *     and nested character classes are a union in java.util.regex, but literals in RE2/J. Patterns using them
+     *     aren't translated.</li>
+     * </ul>
+     *
+     * @return the RE2/J pattern or {@code null} if the pattern can't be translated
+     */
+    @Nullable
+    static String translateToRe2j(String regex) {
+        final StringBuilder re2jRegex = new StringBuilder(regex.length() + 16);
+        boolean inClass = false;
+        boolean negatedClass = false;
+        int i = 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                final char escaped = regex.charAt(i + 1);
+                if (escaped == 'Q') {
+                    // quoted literals are copied as they are
+                    final int quoteEnd = regex.indexOf("\\E", i + 2);
+                    final int end = quoteEnd < 0 ? regex.length() : quoteEnd + 2;
+                    re2jRegex.append(regex, i, end);
+                    i = end;
+                    continue;
+                }
+                switch (escaped) {
+                    case 'b', 'B', 'v' -> {
+                        return null;
+                    }
+                    case 's' -> re2jRegex.append(inClass ? "\\s\\x0B" : "[\\s\\x0B]");
+                    case 'S' -> {
+                        if (negatedClass) {
+                            return null;
+                        }
+                        re2jRegex.append("\\S");
+                    }
+                    default -> re2jRegex.append(c).append(escaped);
+                }
+                i += 2;
+            } else if (c == '[') {
+                if (inClass) {
+                    return null;
+                }
+                inClass = true;
+                negatedClass = i + 1 < regex.length() && regex.charAt(i + 1) == '^';
+                final int start = negatedClass ? i + 2 : i + 1;
+                re2jRegex.append(regex, i, start);
+                i = start;
+                // a "]" right at the start of the class is a literal
+                if (i < regex.length() && regex.charAt(i) == ']') {
+                    re2jRegex.append(']');
+                    i++;
+                }
+            } else {
+                if (c == ']' && inClass) {
+                    inClass = false;
+                    negatedClass = false;
+                }
+                re2jRegex.append(c);
+                i++;
+            }
         }
+        return re2jRegex.toString();
+    }
 
-        @Override
-        public Grok load(@Nonnull String pattern) throws Exception {
-            final GrokCompiler grokCompiler = GrokCompiler.newInstance();
-            for (GrokPattern grokPattern : patterns()) {
-                grokCompiler.register(grokPattern.name(), grokPattern.pattern());
+    private static boolean isEndAnchored(String regex) {
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == ']') {
+                inClass = false;
+            } else if (c == '$' && !inClass) {
+                return true;
             }
-            return grokCompiler.compile(pattern, namedCapturesOnly);
         }
+        return false;
+    }
+
+    private void reload() {
+        final Set<GrokPattern> grokPatterns = grokPatternService.loadAll();
+        patterns.set(grokPatterns);
+        patternCache.invalidate(GROK_NAMESPACE);
+        patternCache.invalidate(GROK_NAMED_ONLY_NAMESPACE);
+    }
+
+    public Set<GrokPattern> patterns() {
+        return patterns.get();
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.messages;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of fixed size direct {@link ByteBuffer} segments used to hold serialized bulk requests.
+ * <p>
+ * Segments are allocated on demand. At most {@code maxPooledSegments} released segments are kept for reuse, all
+ * others are left to the garbage collector.
+ */
+public class BulkBufferPool {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private final Queue<ByteBuffer> segments = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooledSegments = new AtomicInteger();
+    private final int segmentSize;
+    private final int maxPooledSegments;
+
+    public BulkBufferPool(int segmentSize, int maxPooledSegments) {
+        if (segmentSize < 1) {
+            throw new IllegalArgumentException("segmentSize must be greater than 0");
+        }
+        this.segmentSize = segmentSize;
+        this.maxPooledSegments = maxPooledSegments;
+    }
+
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    ByteBuffer acquire() {
+        final ByteBuffer segment = segments.poll();
+        if (segment == null) {
+            return ByteBuffer.allocateDirect(segmentSize);
+        }
+        pooledSegments.decrementAndGet();
+        return segment;
+    }
+
+    void release(ByteBuffer segment) {
+        if (pooledSegments.incrementAndGet() > maxPooledSegments) {
+            pooledSegments.decrementAndGet();
+            return;
+        }
+        segment.clear();
+        segments.offer(segment);
+    }
+
+    int pooledSegments() {
+        return pooledSegments.get();
+    }
+}
@@ -36,6 +36,10 @@ public class ChunkedBulkIndexer {
         BulkIndexResult apply(int indexedSuccessfully, IndexingResults previousResults, List<IndexingRequest> chunk) throws ChunkedBulkIndexer.EntityTooLargeException, IOException;
     }
 
+    public interface SerializedBulkIndex {
+        BulkIndexResult apply(int indexedSuccessfully, IndexingResults previousResults, SerializedBulkRequest.Slice slice) throws ChunkedBulkIndexer.EntityTooLargeException, IOException;
+    }
+
     public IndexingResults index(List<IndexingRequest> messageList, BulkIndex bulkIndex) throws IOException {
         if (messageList.isEmpty()) {
             return IndexingResults.empty();
@@ -72,6 +76,63 @@ public class ChunkedBulkIndexer {
         }
     }
 
+    /**
+     * Indexes an already serialized bulk request in slices of at most {@code maxChunkBytes} bytes.
+     * <p>
+     * If the indexer rejects a slice because it is too large, the slice is split in half by size and sent again from
+     * the same buffers, without serializing the messages again.
+     */
+    public IndexingResults index(SerializedBulkRequest request, long maxChunkBytes, SerializedBulkIndex bulkIndex) throws IOException {
+        if (request.size() == 0) {
+            return IndexingResults.empty();
+        }
+
+        final IndexingResults.Builder accumulatedResults = IndexingResults.Builder.create();
+        long chunkBytes = maxChunkBytes;
+        int offset = 0;
+        int attempt = 0;
+        int chunkCount = 1;
+        boolean allowResettingChunkSize = false;
+        while (offset < request.size()) {
+            final SerializedBulkRequest.Slice slice = request.slice(offset, chunkBytes);
+            final long sliceBytes = request.sizeInBytes(slice);
+            try {
+                final BulkIndexResult response = bulkIndex.apply(offset, accumulatedResults.build(), slice);
+                final IndexingResults results = response.indexingResults();
+                accumulatedResults.addResults(results);
+                offset = slice.to();
+
+                if (allowResettingChunkSize && chunkBytes != maxChunkBytes) {
+                    LOG.warn("Indexing successful again - resetting chunk size!");
+                    chunkBytes = maxChunkBytes;
+                    allowResettingChunkSize = false;
+                }
+
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Index: Bulk indexed {} messages ({} bytes, chunk {} offset {}), failures: {}",
+                            response.indexedMessages(), sliceBytes, chunkCount, slice.from(), results.errors().size());
+                }
+                logFailures(response.failureMessage(), results.errors().size());
+                chunkCount++;
+            } catch (EntityTooLargeException e) {
+                final var retryForever = e instanceof CircuitBreakerException cbe && cbe.isTransient();
+                LOG.warn("Bulk index failed with '{}' error. Retrying by splitting up chunk size <{} bytes>.", e.description(), sliceBytes);
+                if (slice.to() == request.size() && offset == 0 && sliceBytes == request.sizeInBytes()) {
+                    LOG.warn("Consider lowering the \"output_batch_size\" setting. Or resizing your Search cluster");
+                }
+                if (slice.size() > 1) {
+                    chunkBytes = Math.max(sliceBytes / 2, 1);
+                } else if (retryForever) {
+                    allowResettingChunkSize = true;
+                    retryWait.waitBeforeRetrying(attempt++);
+                } else {
+                    throw new ElasticsearchException("Bulk index cannot split output batch any further.");
+                }
+            }
+        }
+        return accumulatedResults.build();
+    }
+
     private IndexingResults bulkIndexChunked(Chunk command, boolean allowResettingChunkSize, BulkIndex bulkIndex) throws ChunkedBulkIndexer.EntityTooLargeException, IOException {
         final List<IndexingRequest> messageList = command.requests;
         final int offset = command.offset;
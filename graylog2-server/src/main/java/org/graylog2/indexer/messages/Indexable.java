@@ -17,11 +17,13 @@
 package org.graylog2.indexer.messages;
 
 import com.codahale.metrics.Meter;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.joda.time.DateTime;
 
 import javax.annotation.Nonnull;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
 
 public interface Indexable {
@@ -63,6 +65,24 @@ public interface Indexable {
         );
     }
 
+    /**
+     * Serializes the object directly to the given stream, e.g. into the buffers of a bulk request.
+     * <p>
+     * The default implementation streams the result of {@link #toElasticSearchObject(ObjectMapper, Meter)}. The
+     * stream will not be closed.
+     *
+     * @param context      Context required to perform the serialization
+     * @param outputStream the stream to write the serialized object to
+     * @throws IOException if serializing the object fails
+     */
+    default void serialize(SerializationContext context, OutputStream outputStream) throws IOException {
+        final ObjectMapper objectMapper = context.objectMapper();
+        try (JsonGenerator generator = objectMapper.createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            objectMapper.writeValue(generator, toElasticSearchObject(objectMapper, context.invalidTimestampMeter()));
+        }
+    }
+
     /**
      * Guides the failure handling framework when deciding whether this particular
      * message should be accepted for the further failure processing. By default
@@ -29,6 +29,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.ref.SoftReference;
 import java.time.Duration;
 import java.util.Arrays;
@@ -136,6 +137,14 @@ public class SerializationMemoizingMessage implements ImmutableMessage {
         return cachedEntry.serializedBytes();
     }
 
+    /**
+     * Writes the memoized serialization result to the given stream, see {@link #serialize(SerializationContext)}.
+     */
+    @Override
+    public void serialize(SerializationContext context, OutputStream outputStream) throws IOException {
+        outputStream.write(serialize(context));
+    }
+
     // only straight-forward delegations below this line
 
     @Override
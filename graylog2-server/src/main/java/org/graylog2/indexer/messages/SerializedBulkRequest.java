@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.messages;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bulk index request which has been serialized to NDJSON into pooled direct buffers.
+ * <p>
+ * Every indexing request is serialized exactly once. The byte offset of every request is recorded, so the request
+ * can be sent in {@link Slice slices} of a known size, and the same slice can be sent again (e.g. with a smaller
+ * size after the indexer rejected it) without serializing the messages again.
+ * <p>
+ * The buffers are returned to the pool when the request is {@link #close() closed}.
+ */
+public class SerializedBulkRequest implements Closeable {
+    private static final byte NEWLINE = '\n';
+
+    private final List<IndexingRequest> requests;
+    private final BulkBufferPool pool;
+    private final int segmentSize;
+    private final List<ByteBuffer> segments = new ArrayList<>();
+    private final long[] offsets;
+    private long length = 0;
+
+    private SerializedBulkRequest(List<IndexingRequest> requests, BulkBufferPool pool) {
+        this.requests = requests;
+        this.pool = pool;
+        this.segmentSize = pool.segmentSize();
+        this.offsets = new long[requests.size() + 1];
+    }
+
+    /**
+     * Serializes the given indexing requests into buffers of the given pool.
+     *
+     * @param requests the indexing requests
+     * @param context  the context used to serialize the messages
+     * @param pool     the pool providing the buffers
+     * @return the serialized request, which must be closed after use
+     * @throws IOException if serializing a message fails
+     */
+    public static SerializedBulkRequest serialize(List<IndexingRequest> requests,
+                                                  SerializationContext context,
+                                                  BulkBufferPool pool) throws IOException {
+        final SerializedBulkRequest bulkRequest = new SerializedBulkRequest(requests, pool);
+        try {
+            bulkRequest.write(context);
+        } catch (IOException | RuntimeException e) {
+            bulkRequest.close();
+            throw e;
+        }
+        return bulkRequest;
+    }
+
+    private void write(SerializationContext context) throws IOException {
+        final OutputStream out = new SegmentOutputStream();
+        try (JsonGenerator generator = context.objectMapper().getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            for (int i = 0; i < requests.size(); i++) {
+                final IndexingRequest request = requests.get(i);
+                offsets[i] = length;
+
+                generator.writeStartObject();
+                generator.writeObjectFieldStart("index");
+                generator.writeStringField("_index", request.indexSet().getWriteIndexAlias());
+                generator.writeStringField("_id", request.message().getId());
+                generator.writeEndObject();
+                generator.writeEndObject();
+                generator.flush();
+                out.write(NEWLINE);
+
+                request.message().serialize(context, out);
+                out.write(NEWLINE);
+            }
+        }
+        offsets[requests.size()] = length;
+    }
+
+    /**
+     * @return the number of indexing requests
+     */
+    public int size() {
+        return requests.size();
+    }
+
+    /**
+     * @return the size of the whole serialized request in bytes
+     */
+    public long sizeInBytes() {
+        return length;
+    }
+
+    /**
+     * Returns the largest slice starting at the given request which is not larger than {@code maxBytes}. The slice
+     * always contains at least one request, even if that request alone is larger than {@code maxBytes}.
+     *
+     * @param from     the index of the first request of the slice
+     * @param maxBytes the maximum size of the slice in bytes
+     * @return the slice
+     */
+    public Slice slice(int from, long maxBytes) {
+        if (from < 0 || from >= requests.size()) {
+            throw new IndexOutOfBoundsException("Invalid slice start " + from + " for " + requests.size() + " requests");
+        }
+        final long limit = offsets[from] + maxBytes;
+        // Find the last request end offset which is within the limit
+        int to = Arrays.binarySearch(offsets, from + 1, offsets.length, limit);
+        if (to < 0) {
+            to = -to - 2;
+        }
+        return new Slice(from, Math.max(to, from + 1));
+    }
+
+    @Override
+    public void close() {
+        segments.forEach(pool::release);
+        segments.clear();
+    }
+
+    /**
+     * A range of consecutive indexing requests of a {@link SerializedBulkRequest}.
+     *
+     * @param from the index of the first request (inclusive)
+     * @param to   the index of the last request (exclusive)
+     */
+    public record Slice(int from, int to) {
+        public int size() {
+            return to - from;
+        }
+    }
+
+    /**
+     * @return the indexing requests contained in the given slice
+     */
+    public List<IndexingRequest> requests(Slice slice) {
+        return requests.subList(slice.from(), slice.to());
+    }
+
+    /**
+     * @return the size of the given slice in bytes
+     */
+    public long sizeInBytes(Slice slice) {
+        return offsets[slice.to()] - offsets[slice.from()];
+    }
+
+    /**
+     * Opens a new stream over the NDJSON body of the given slice. The stream reads directly from the buffers, it can
+     * be opened as often as needed as long as the request has not been closed.
+     *
+     * @param slice the slice
+     * @return the stream
+     */
+    public InputStream openStream(Slice slice) {
+        return new SegmentInputStream(offsets[slice.from()], offsets[slice.to()]);
+    }
+
+    /**
+     * Writes the NDJSON body of the given slice to the given stream.
+     *
+     * @param slice the slice
+     * @param out   the target stream
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeTo(Slice slice, OutputStream out) throws IOException {
+        try (InputStream in = openStream(slice)) {
+            in.transferTo(out);
+        }
+    }
+
+    private class SegmentOutputStream extends OutputStream {
+        private ByteBuffer current;
+
+        private ByteBuffer writable() {
+            if (current == null || !current.hasRemaining()) {
+                current = pool.acquire();
+                segments.add(current);
+            }
+            return current;
+        }
+
+        @Override
+        public void write(int b) {
+            writable().put((byte) b);
+            length++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            while (len > 0) {
+                final ByteBuffer segment = writable();
+                final int n = Math.min(len, segment.remaining());
+                segment.put(b, off, n);
+                off += n;
+                len -= n;
+                length += n;
+            }
+        }
+    }
+
+    private class SegmentInputStream extends InputStream {
+        private long position;
+        private final long end;
+
+        SegmentInputStream(long start, long end) {
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() {
+            if (position >= end) {
+                return -1;
+            }
+            final ByteBuffer segment = segments.get((int) (position / segmentSize));
+            final int b = segment.get((int) (position % segmentSize)) & 0xff;
+            position++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            final ByteBuffer segment = segments.get((int) (position / segmentSize));
+            final int segmentOffset = (int) (position % segmentSize);
+            final int n = (int) Math.min(Math.min(len, segmentSize - segmentOffset), end - position);
+            segment.get(segmentOffset, b, off, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(Integer.MAX_VALUE, end - position);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.ranges;
+
+import com.google.common.collect.ImmutableMap;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable interval tree of index ranges, used to find the ranges overlapping a time range without a database query.
+ * <p>
+ * The ranges are kept in an array sorted by their begin. The array is an implicit balanced binary search tree: the
+ * node of a slice is its middle element, and each node stores the maximum end of its subtree. Queries skip every
+ * subtree whose ranges all end before the queried begin, so they take {@code O(log n + k)} time.
+ */
+final class IndexRangeIntervalTree {
+    private static final Comparator<IndexRange> BY_BEGIN = Comparator
+            .comparingLong((IndexRange range) -> range.begin().getMillis())
+            .thenComparingLong(range -> range.end().getMillis())
+            .thenComparing(IndexRange::indexName);
+
+    private final Map<String, IndexRange> rangesByIndex;
+    private final IndexRange[] ranges;
+    private final long[] begins;
+    private final long[] ends;
+    private final long[] maxEnds;
+
+    private IndexRangeIntervalTree(Map<String, IndexRange> rangesByIndex) {
+        this.rangesByIndex = ImmutableMap.copyOf(rangesByIndex);
+        this.ranges = rangesByIndex.values().toArray(new IndexRange[0]);
+        Arrays.sort(ranges, BY_BEGIN);
+
+        this.begins = new long[ranges.length];
+        this.ends = new long[ranges.length];
+        this.maxEnds = new long[ranges.length];
+        for (int i = 0; i < ranges.length; i++) {
+            begins[i] = ranges[i].begin().getMillis();
+            ends[i] = ranges[i].end().getMillis();
+        }
+        computeMaxEnds(0, ranges.length);
+    }
+
+    static IndexRangeIntervalTree create(Collection<? extends IndexRange> ranges) {
+        final Map<String, IndexRange> rangesByIndex = new HashMap<>(ranges.size());
+        for (IndexRange range : ranges) {
+            rangesByIndex.put(range.indexName(), range);
+        }
+        return new IndexRangeIntervalTree(rangesByIndex);
+    }
+
+    /**
+     * Returns a new tree with the ranges of the given indices replaced. Indices without a range are removed.
+     *
+     * @param indexNames the updated index names
+     * @param updated    the current ranges of the updated indices
+     */
+    IndexRangeIntervalTree update(Collection<String> indexNames, Collection<? extends IndexRange> updated) {
+        final Map<String, IndexRange> rangesByIndex = new HashMap<>(this.rangesByIndex);
+        indexNames.forEach(rangesByIndex::remove);
+        for (IndexRange range : updated) {
+            rangesByIndex.put(range.indexName(), range);
+        }
+        return new IndexRangeIntervalTree(rangesByIndex);
+    }
+
+    @Nullable
+    IndexRange get(String indexName) {
+        return rangesByIndex.get(indexName);
+    }
+
+    Collection<IndexRange> all() {
+        return rangesByIndex.values();
+    }
+
+    int size() {
+        return ranges.length;
+    }
+
+    /**
+     * Returns all ranges which overlap the given time range, including the bounds.
+     */
+    List<IndexRange> find(long begin, long end) {
+        final List<IndexRange> result = new ArrayList<>();
+        find(0, ranges.length, begin, end, result);
+        return result;
+    }
+
+    private void find(int from, int to, long begin, long end, List<IndexRange> result) {
+        if (from >= to) {
+            return;
+        }
+        final int node = (from + to) >>> 1;
+        if (maxEnds[node] < begin) {
+            // All ranges in this subtree end before the queried range
+            return;
+        }
+        find(from, node, begin, end, result);
+        if (begins[node] > end) {
+            // This range and all ranges to the right begin after the queried range
+            return;
+        }
+        if (ends[node] >= begin) {
+            result.add(ranges[node]);
+        }
+        find(node + 1, to, begin, end, result);
+    }
+
+    private long computeMaxEnds(int from, int to) {
+        if (from >= to) {
+            return Long.MIN_VALUE;
+        }
+        final int node = (from + to) >>> 1;
+        final long maxEnd = Math.max(ends[node], Math.max(computeMaxEnds(from, node), computeMaxEnds(node + 1, to)));
+        maxEnds[node] = maxEnd;
+        return maxEnd;
+    }
+}
@@ -22,22 +22,26 @@ import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.eventbus.AllowConcurrentEvents;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
+import com.github.joschi.jadconfig.util.Duration;
 import com.google.common.primitives.Ints;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Updates;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import org.bson.conversions.Bson;
 import org.graylog2.audit.AuditActor;
 import org.graylog2.audit.AuditEventSender;
 import org.graylog2.database.MongoCollections;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.indexer.IndexSetRegistry;
 import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.indices.events.IndicesClosedEvent;
 import org.graylog2.indexer.indices.events.IndicesDeletedEvent;
 import org.graylog2.indexer.indices.events.IndicesReopenedEvent;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
 import org.graylog2.indexer.searches.IndexRangeStats;
 import org.graylog2.plugin.system.NodeId;
 import org.joda.time.DateTime;
@@ -45,16 +49,16 @@ import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import static com.mongodb.client.model.Filters.and;
 import static com.mongodb.client.model.Filters.eq;
 import static com.mongodb.client.model.Filters.exists;
-import static com.mongodb.client.model.Filters.gte;
 import static com.mongodb.client.model.Filters.in;
-import static com.mongodb.client.model.Filters.lte;
-import static com.mongodb.client.model.Filters.or;
 import static org.graylog2.audit.AuditEventTypes.ES_INDEX_RANGE_CREATE;
 import static org.graylog2.audit.AuditEventTypes.ES_INDEX_RANGE_DELETE;
 import static org.graylog2.indexer.indices.Indices.checkIfHealthy;
@@ -68,33 +72,43 @@ public class MongoIndexRangeService implements IndexRangeService {
     private final IndexSetRegistry indexSetRegistry;
     private final AuditEventSender auditEventSender;
     private final NodeId nodeId;
+    private final ClusterEventBus clusterEventBus;
     private final MongoCollection<MongoIndexRange> collection;
 
+    // Index ranges of all indices, loaded on first use. Searches use it instead of querying the database.
+    private final Object cacheLock = new Object();
+    private volatile IndexRangeIntervalTree cachedRanges;
+
     @Inject
     public MongoIndexRangeService(MongoCollections mongoCollections,
                                   Indices indices,
                                   IndexSetRegistry indexSetRegistry,
                                   AuditEventSender auditEventSender,
                                   NodeId nodeId,
-                                  EventBus eventBus) {
+                                  EventBus eventBus,
+                                  ClusterEventBus clusterEventBus,
+                                  @Named("daemonScheduler") ScheduledExecutorService scheduler,
+                                  @Named("index_ranges_cache_rebuild_interval") Duration cacheRebuildInterval) {
         this.indices = indices;
         this.indexSetRegistry = indexSetRegistry;
         this.auditEventSender = auditEventSender;
         this.nodeId = nodeId;
+        this.clusterEventBus = clusterEventBus;
         this.collection = mongoCollections.nonEntityCollection(COLLECTION_NAME, MongoIndexRange.class);
 
         eventBus.register(this);
 
         collection.createIndex(Indexes.ascending(MongoIndexRange.FIELD_INDEX_NAME));
         collection.createIndex(Indexes.ascending(MongoIndexRange.FIELD_BEGIN, MongoIndexRange.FIELD_END));
+
+        // Index ranges are written by other nodes as well, so rebuild the cache regularly in case we missed an update
+        scheduler.scheduleWithFixedDelay(this::rebuildCache, cacheRebuildInterval.getQuantity(),
+                cacheRebuildInterval.getQuantity(), cacheRebuildInterval.getUnit());
     }
 
     @Override
     public IndexRange get(String index) throws NotFoundException {
-        final var query = and(
-                exists("start", false),
-                eq(IndexRange.FIELD_INDEX_NAME, index));
-        final MongoIndexRange indexRange = collection.find(query).first();
+        final IndexRange indexRange = cachedRanges().get(index);
         if (indexRange == null) {
             throw new NotFoundException("Index range for index <" + index + "> not found.");
         }
@@ -104,25 +118,18 @@ public class MongoIndexRangeService implements IndexRangeService {
 
     @Override
     public SortedSet<IndexRange> find(DateTime begin, DateTime end) {
-        final var query = or(
-                and(
-                        exists("start", false),  // "start" has been used by the old index ranges in MongoDB
-                        lte(IndexRange.FIELD_BEGIN, end.getMillis()),
-                        gte(IndexRange.FIELD_END, begin.getMillis())
-                ),
-                and(
-                        exists("start", false),  // "start" has been used by the old index ranges in MongoDB
-                        lte(IndexRange.FIELD_BEGIN, 0L),
-                        gte(IndexRange.FIELD_END, 0L)
-                )
-        );
+        final IndexRangeIntervalTree ranges = cachedRanges();
 
-        return ImmutableSortedSet.copyOf(IndexRange.COMPARATOR, collection.find(query));
+        return ImmutableSortedSet.<IndexRange>orderedBy(IndexRange.COMPARATOR)
+                .addAll(ranges.find(begin.getMillis(), end.getMillis()))
+                // Ranges of indices which couldn't be calculated yet
+                .addAll(ranges.find(0L, 0L))
+                .build();
     }
 
     @Override
     public SortedSet<IndexRange> findAll() {
-        return ImmutableSortedSet.copyOf(IndexRange.COMPARATOR, collection.find(exists("start", false)));
+        return ImmutableSortedSet.copyOf(IndexRange.COMPARATOR, cachedRanges().all());
     }
 
     @Override
@@ -153,21 +160,88 @@ public class MongoIndexRangeService implements IndexRangeService {
 
     @Override
     public void save(IndexRange indexRange) {
-        remove(indexRange.indexName());
+        collection.deleteMany(eq(IndexRange.FIELD_INDEX_NAME, indexRange.indexName()));
         collection.insertOne(MongoIndexRange.create(indexRange));
+        indexRangesUpdated(Set.of(indexRange.indexName()));
     }
 
     @Override
     public boolean renameIndex(String from, String to) {
-        return collection.updateMany(
+        final boolean renamed = collection.updateMany(
                         eq(IndexRange.FIELD_INDEX_NAME, from),
                         Updates.set(IndexRange.FIELD_INDEX_NAME, to))
                 .getMatchedCount() > 0;
+        if (renamed) {
+            indexRangesUpdated(Set.of(from, to));
+        }
+        return renamed;
     }
 
     @Override
     public boolean remove(String index) {
-        return collection.deleteMany(in(IndexRange.FIELD_INDEX_NAME, index)).getDeletedCount() > 0;
+        final boolean removed = collection.deleteMany(in(IndexRange.FIELD_INDEX_NAME, index)).getDeletedCount() > 0;
+        if (removed) {
+            indexRangesUpdated(Set.of(index));
+        }
+        return removed;
+    }
+
+    private void indexRangesUpdated(Set<String> indexNames) {
+        // Update our own cache right away so callers can read their writes, other nodes follow via the cluster event
+        refreshCache(indexNames);
+        clusterEventBus.post(IndexRangesUpdatedEvent.create(indexNames));
+    }
+
+    @Subscribe
+    @AllowConcurrentEvents
+    public void handleIndexRangesUpdated(IndexRangesUpdatedEvent event) {
+        refreshCache(event.indices());
+    }
+
+    private IndexRangeIntervalTree cachedRanges() {
+        final IndexRangeIntervalTree ranges = cachedRanges;
+        if (ranges != null) {
+            return ranges;
+        }
+        synchronized (cacheLock) {
+            if (cachedRanges == null) {
+                cachedRanges = loadAllRanges();
+            }
+            return cachedRanges;
+        }
+    }
+
+    private void refreshCache(Set<String> indexNames) {
+        synchronized (cacheLock) {
+            // Nothing to do if the cache hasn't been loaded yet
+            if (cachedRanges != null) {
+                final var query = and(
+                        exists("start", false),  // "start" has been used by the old index ranges in MongoDB
+                        in(IndexRange.FIELD_INDEX_NAME, indexNames));
+                cachedRanges = cachedRanges.update(indexNames, collection.find(query).into(new ArrayList<>()));
+            }
+        }
+    }
+
+    private void rebuildCache() {
+        try {
+            synchronized (cacheLock) {
+                if (cachedRanges != null) {
+                    cachedRanges = loadAllRanges();
+                }
+            }
+        } catch (Exception e) {
+            LOG.warn("Couldn't rebuild index range cache", e);
+        }
+    }
+
+    private IndexRangeIntervalTree loadAllRanges() {
+        final Stopwatch sw = Stopwatch.createStarted();
+        // "start" has been used by the old index ranges in MongoDB
+        final IndexRangeIntervalTree ranges = IndexRangeIntervalTree.create(
+                collection.find(exists("start", false)).into(new ArrayList<>()));
+        LOG.debug("Loaded {} index ranges in {}ms", ranges.size(), sw.stop().elapsed(TimeUnit.MILLISECONDS));
+        return ranges;
     }
 
     @Subscribe
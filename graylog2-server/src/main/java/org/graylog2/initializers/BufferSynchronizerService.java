@@ -22,6 +22,7 @@ import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.graylog2.Configuration;
 import org.graylog2.buffers.Buffers;
+import org.graylog2.buffers.processors.StreamOutputDispatcher;
 import org.graylog2.indexer.cluster.Cluster;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -48,16 +49,19 @@ public class BufferSynchronizerService extends AbstractIdleService {
     private final Cluster cluster;
     private final Configuration configuration;
     private final MetricRegistry metricRegistry;
+    private final StreamOutputDispatcher streamOutputDispatcher;
 
     @Inject
     public BufferSynchronizerService(final Buffers buffers,
                                      final Cluster cluster,
                                      final Configuration configuration,
-                                     final MetricRegistry metricRegistry) {
+                                     final MetricRegistry metricRegistry,
+                                     final StreamOutputDispatcher streamOutputDispatcher) {
         this.bufferSynchronizer = buffers;
         this.cluster = cluster;
         this.configuration = configuration;
         this.metricRegistry = metricRegistry;
+        this.streamOutputDispatcher = streamOutputDispatcher;
     }
 
     @Override
@@ -81,6 +85,10 @@ public class BufferSynchronizerService extends AbstractIdleService {
                 configuration.getShutdownTimeout(), TimeUnit.MILLISECONDS));
         executorService.shutdown();
         executorService.awaitTermination(configuration.getShutdownTimeout(), TimeUnit.MILLISECONDS);
+
+        // Write the batches which are still queued for stream outputs before the outputs are stopped by the
+        // OutputSetupService. Batches dispatched after this point are dropped.
+        streamOutputDispatcher.shutdown(configuration.getShutdownTimeout(), TimeUnit.MILLISECONDS);
         LOG.debug("Stopped BufferSynchronizerService");
     }
 
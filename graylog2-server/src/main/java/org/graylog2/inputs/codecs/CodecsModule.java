@@ -24,9 +24,11 @@ package org.graylog2.inputs.codecs;
 
 import com.google.inject.Scopes;
 import com.google.inject.multibindings.MapBinder;
+import com.google.inject.name.Names;
 import org.graylog.plugins.beats.Beats2Codec;
 import org.graylog2.plugin.inject.Graylog2Module;
 import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
 
 public class CodecsModule extends Graylog2Module {
     @Override
@@ -35,6 +37,9 @@ public class CodecsModule extends Graylog2Module {
 
         // Aggregators must be singletons because codecs are instantiated in DecodingProcessor per message!
         bind(GelfChunkAggregator.class).in(Scopes.SINGLETON);
+        bind(CodecAggregator.class).annotatedWith(Names.named(GelfCodec.CHUNK_AGGREGATOR))
+                .toProvider(GelfChunkAggregatorProvider.class)
+                .in(Scopes.SINGLETON);
 
         installCodec(mapBinder, RawCodec.class);
         installCodec(mapBinder, SyslogCodec.class);
@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.codecs;
+
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Provider;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+
+/**
+ * Provides the chunk aggregator used by all GELF codecs, depending on {@code gelf_chunk_aggregation_pooled}.
+ */
+public class GelfChunkAggregatorProvider implements Provider<CodecAggregator> {
+    private final boolean pooled;
+    private final Provider<GelfChunkAggregator> gelfChunkAggregator;
+    private final Provider<PooledGelfChunkAggregator> pooledGelfChunkAggregator;
+
+    @Inject
+    public GelfChunkAggregatorProvider(@Named("gelf_chunk_aggregation_pooled") boolean pooled,
+                                       Provider<GelfChunkAggregator> gelfChunkAggregator,
+                                       Provider<PooledGelfChunkAggregator> pooledGelfChunkAggregator) {
+        this.pooled = pooled;
+        this.gelfChunkAggregator = gelfChunkAggregator;
+        this.pooledGelfChunkAggregator = pooledGelfChunkAggregator;
+    }
+
+    @Override
+    public CodecAggregator get() {
+        return pooled ? pooledGelfChunkAggregator.get() : gelfChunkAggregator.get();
+    }
+}
@@ -18,6 +18,7 @@ package org.graylog2.inputs.codecs;
 
 import com.google.inject.assistedinject.Assisted;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import org.graylog2.inputs.codecs.gelf.GELFBulkDroppedMsgService;
 import org.graylog2.inputs.transports.TcpTransport;
 import org.graylog2.plugin.Message;
@@ -45,13 +46,14 @@ public class GelfCodec extends AbstractCodec {
     private static final Logger log = LoggerFactory.getLogger(GelfCodec.class);
     private static final String CK_DECOMPRESS_SIZE_LIMIT = "decompress_size_limit";
     public static final int DEFAULT_DECOMPRESS_SIZE_LIMIT = 8388608;
+    public static final String CHUNK_AGGREGATOR = "gelf_chunk_aggregator";
 
-    private final GelfChunkAggregator aggregator;
+    private final CodecAggregator aggregator;
     private final GelfDecoder gelfDecoder;
 
     @Inject
     public GelfCodec(@Assisted Configuration configuration,
-                     GelfChunkAggregator aggregator,
+                     @Named(CHUNK_AGGREGATOR) CodecAggregator aggregator,
                      MessageFactory messageFactory,
                      GELFBulkDroppedMsgService gelfBulkDroppedMsgService) {
         super(configuration);
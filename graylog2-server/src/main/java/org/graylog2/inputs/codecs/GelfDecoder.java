@@ -18,9 +18,15 @@ package org.graylog2.inputs.codecs;
 
 import com.eaio.uuid.UUID;
 import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.io.NumberInput;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+import com.fasterxml.jackson.databind.node.NullNode;
 import jakarta.inject.Inject;
 import org.apache.commons.lang3.StringUtils;
 import org.graylog2.inputs.codecs.gelf.GELFBulkDroppedMsgService;
@@ -35,9 +41,14 @@ import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
 import java.nio.charset.Charset;
-import java.util.Iterator;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 
@@ -68,35 +79,39 @@ public class GelfDecoder {
 
     public Optional<Message> decode(final RawMessage rawMessage) {
         final GELFMessage gelfMessage = new GELFMessage(rawMessage.getPayload(), rawMessage.getRemoteAddress());
-        final String json = gelfMessage.getJSON(decompressSizeLimit, charset);
-
-        final JsonNode node;
+        final GELFMessage.Type type = gelfMessage.getGELFType();
+        if (type != GELFMessage.Type.ZLIB && type != GELFMessage.Type.GZIP && type != GELFMessage.Type.UNCOMPRESSED) {
+            throw new IllegalStateException("Unknown GELF type. Not supported.");
+        }
 
+        final GelfFields gelfFields;
         try {
-            final JsonParser parser = jsonFactory.createParser(json);
-            node = objectMapper.readTree(parser);
-
-            if (node == null || node.isNull()) {
-                throw new IOException("null result");
-            }
-
-            if (parser.nextToken() != null) {
-                gelfBulkDroppedMsgService.handleDroppedMsgOccurrence(rawMessage);
-            }
+            gelfFields = readFields(gelfMessage, type);
+        } catch (JsonProcessingException | RuntimeException e) {
+            throw InputProcessingException.create("JSON is null/could not be parsed (invalid JSON)",
+                    e, rawMessage, payloadText(gelfMessage));
+        } catch (IOException e) {
+            // Only the inflater stream throws plain I/O exceptions, Jackson reports everything else as JsonProcessingException.
+            throw new IllegalStateException("Failed to decompress the GELF message payload", e);
+        }
 
-        } catch (final Exception e) {
+        if (gelfFields == null) {
             throw InputProcessingException.create("JSON is null/could not be parsed (invalid JSON)",
-                    e, rawMessage, json);
+                    new IOException("null result"), rawMessage, payloadText(gelfMessage));
+        }
+        if (gelfFields.hasTrailingContent()) {
+            gelfBulkDroppedMsgService.handleDroppedMsgOccurrence(rawMessage);
         }
 
+        final Map<String, Object> fields = gelfFields.values();
         try {
-            validateGELFMessage(node, rawMessage.getId(), rawMessage.getRemoteAddress());
+            validateGELFMessage(fields, rawMessage.getId(), rawMessage.getRemoteAddress());
         } catch (IllegalArgumentException e) {
-            throw InputProcessingException.create(e.getMessage(), e, rawMessage, json);
+            throw InputProcessingException.create(e.getMessage(), e, rawMessage, payloadText(gelfMessage));
         }
 
         // Timestamp.
-        final double messageTimestamp = timestampValue(node);
+        final double messageTimestamp = timestampValue(fields);
         final DateTime timestamp;
         if (messageTimestamp <= 0) {
             timestamp = rawMessage.getTimestamp();
@@ -106,42 +121,38 @@ public class GelfDecoder {
         }
 
         final Message message = messageFactory.createMessage(
-                stringValue(node, "short_message"),
-                stringValue(node, "host"),
+                stringValue(fields, "short_message"),
+                stringValue(fields, "host"),
                 timestamp
         );
 
-        message.addField(Message.FIELD_FULL_MESSAGE, stringValue(node, "full_message"));
+        message.addField(Message.FIELD_FULL_MESSAGE, stringValue(fields, "full_message"));
 
-        final String file = stringValue(node, "file");
+        final String file = stringValue(fields, "file");
 
         if (file != null && !file.isEmpty()) {
             message.addField("file", file);
         }
 
-        final long line = longValue(node, "line");
+        final long line = longValue(fields, "line");
         if (line > -1) {
             message.addField("line", line);
         }
 
         // Level is set by server if not specified by client.
-        final int level = intValue(node, "level");
+        final int level = intValue(fields, "level");
         if (level > -1) {
             message.addField("level", level);
         }
 
         // Facility is set by server if not specified by client.
-        final String facility = stringValue(node, "facility");
+        final String facility = stringValue(fields, "facility");
         if (facility != null && !facility.isEmpty()) {
             message.addField("facility", facility);
         }
 
         // Add additional data if there is some.
-        final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
-
-        while (fields.hasNext()) {
-            final Map.Entry<String, JsonNode> entry = fields.next();
-
+        for (final Map.Entry<String, Object> entry : fields.entrySet()) {
             String key = entry.getKey();
             // Do not index useless GELF "version" field.
             if ("version".equals(key)) {
@@ -164,20 +175,21 @@ public class GelfDecoder {
             }
 
             // Convert JSON containers to Strings, and pick a suitable number representation.
-            final JsonNode value = entry.getValue();
+            final Object value = entry.getValue();
 
             final Object fieldValue;
-            if (value.isContainerNode()) {
-                fieldValue = value.toString();
-            } else if (value.isFloatingPointNumber()) {
-                fieldValue = value.asDouble();
-            } else if (value.isIntegralNumber()) {
-                fieldValue = value.asLong();
-            } else if (value.isNull()) {
-                log.debug("Field [{}] is NULL. Skipping.", key);
-                continue;
-            } else if (value.isTextual()) {
-                fieldValue = value.asText();
+            if (value instanceof JsonNode node) {
+                if (node.isNull()) {
+                    log.debug("Field [{}] is NULL. Skipping.", key);
+                    continue;
+                }
+                fieldValue = node.toString();
+            } else if (value instanceof Double doubleValue) {
+                fieldValue = doubleValue;
+            } else if (value instanceof Number number) {
+                fieldValue = number.longValue();
+            } else if (value instanceof String) {
+                fieldValue = value;
             } else {
                 log.debug("Field [{}] has unknown value type. Skipping.", key);
                 continue;
@@ -189,87 +201,181 @@ public class GelfDecoder {
         return Optional.of(message);
     }
 
-    private void validateGELFMessage(JsonNode jsonNode, UUID id, ResolvableInetSocketAddress remoteAddress) {
+    /**
+     * Reads the top-level fields of the GELF payload with a streaming parser, inflating compressed payloads on the fly
+     * instead of materializing the whole JSON document as a {@code String} and a {@link JsonNode} tree first.
+     *
+     * @return the parsed fields or {@code null} if the payload is empty or the JSON {@code null} literal
+     */
+    @Nullable
+    private GelfFields readFields(GELFMessage gelfMessage, GELFMessage.Type type) throws IOException {
+        // Compressed payloads have always been decoded as UTF-8, regardless of the configured charset.
+        final Charset payloadCharset = type == GELFMessage.Type.UNCOMPRESSED ? charset : StandardCharsets.UTF_8;
+
+        if (StandardCharsets.UTF_8.equals(payloadCharset)) {
+            try {
+                if (type == GELFMessage.Type.UNCOMPRESSED) {
+                    final byte[] payload = gelfMessage.getPayload();
+                    if (isUnambiguousUtf8(payload[0] & 0xff, payload[1] & 0xff)) {
+                        try (JsonParser parser = jsonFactory.createParser(payload)) {
+                            return readFields(parser);
+                        }
+                    }
+                } else {
+                    try (PushbackInputStream in = new PushbackInputStream(gelfMessage.getJSONStream(decompressSizeLimit), 2)) {
+                        final byte[] head = new byte[2];
+                        final int read = in.readNBytes(head, 0, head.length);
+                        in.unread(head, 0, read);
+                        if (read == head.length && isUnambiguousUtf8(head[0] & 0xff, head[1] & 0xff)) {
+                            try (JsonParser parser = jsonFactory.createParser(in)) {
+                                return readFields(parser);
+                            }
+                        }
+                    }
+                }
+            } catch (JsonProcessingException e) {
+                // Jackson rejects malformed UTF-8 which the String based decoding used to replace, so parse invalid
+                // payloads a second time through a decoding reader before giving up on them.
+                log.trace("Retrying to parse GELF payload with a decoding reader", e);
+            }
+        }
+
+        try (InputStream in = gelfMessage.getJSONStream(decompressSizeLimit);
+             JsonParser parser = jsonFactory.createParser(new InputStreamReader(in, payloadCharset))) {
+            return readFields(parser);
+        }
+    }
+
+    /**
+     * Jackson detects UTF-16 and UTF-32 from byte order marks and zero bytes when parsing raw bytes. Only hand the
+     * bytes to Jackson directly if they cannot be mistaken for anything but UTF-8, so the result is always the same
+     * as decoding them with a UTF-8 reader.
+     */
+    private static boolean isUnambiguousUtf8(int first, int second) {
+        return first != 0 && second != 0 && first != 0xef && first != 0xfe && first != 0xff;
+    }
+
+    @Nullable
+    private static GelfFields readFields(JsonParser parser) throws IOException {
+        final JsonToken first = parser.nextToken();
+        if (first == null || first == JsonToken.VALUE_NULL) {
+            return null;
+        }
+
+        // Duplicate keys keep their first position and their last value, just like an ObjectNode.
+        final Map<String, Object> values = new LinkedHashMap<>();
+        if (first == JsonToken.START_OBJECT) {
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                final String name = parser.currentName();
+                values.put(name, readValue(parser, parser.nextToken()));
+            }
+        } else {
+            // Anything but an object lacks the mandatory fields and fails validation.
+            parser.skipChildren();
+        }
+
+        return new GelfFields(values, parser.nextToken() != null);
+    }
+
+    private static Object readValue(JsonParser parser, JsonToken token) throws IOException {
+        return switch (token) {
+            case VALUE_STRING -> parser.getText();
+            case VALUE_NUMBER_INT -> parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_NULL -> NullNode.getInstance();
+            case START_OBJECT, START_ARRAY -> parser.readValueAsTree();
+            default -> throw new JsonParseException(parser, "Unexpected token " + token);
+        };
+    }
+
+    @Nullable
+    private String payloadText(GELFMessage gelfMessage) {
+        try {
+            return gelfMessage.getJSON(decompressSizeLimit, charset);
+        } catch (IllegalStateException e) {
+            return null;
+        }
+    }
+
+    private void validateGELFMessage(Map<String, Object> fields, UUID id, ResolvableInetSocketAddress remoteAddress) {
         final String prefix = "GELF message <" + id + "> " + (remoteAddress == null ? "" : "(received from <" + remoteAddress + ">) ");
 
-        final JsonNode hostNode = jsonNode.path("host");
-        if (hostNode.isMissingNode()) {
+        final Object host = fields.get("host");
+        if (host == null) {
             log.warn(prefix + "is missing mandatory \"host\" field.");
         } else {
-            if (!hostNode.isTextual()) {
-                throw new IllegalArgumentException(prefix + "has invalid \"host\": " + hostNode.asText());
+            if (!(host instanceof String)) {
+                throw new IllegalArgumentException(prefix + "has invalid \"host\": " + asText(host));
             }
-            if (StringUtils.isBlank(hostNode.asText())) {
+            if (StringUtils.isBlank((String) host)) {
                 throw new IllegalArgumentException(prefix + "has empty mandatory \"host\" field.");
             }
         }
 
-        final JsonNode shortMessageNode = jsonNode.path("short_message");
-        final JsonNode messageNode = jsonNode.path("message");
-        if (!shortMessageNode.isMissingNode()) {
-            if (!shortMessageNode.isTextual()) {
-                throw new IllegalArgumentException(prefix + "has invalid \"short_message\": " + shortMessageNode.asText());
+        final Object shortMessage = fields.get("short_message");
+        final Object message = fields.get("message");
+        if (shortMessage != null) {
+            if (!(shortMessage instanceof String)) {
+                throw new IllegalArgumentException(prefix + "has invalid \"short_message\": " + asText(shortMessage));
             }
-            if (StringUtils.isBlank(shortMessageNode.asText()) && StringUtils.isBlank(messageNode.asText())) {
+            if (StringUtils.isBlank((String) shortMessage) && (message == null || StringUtils.isBlank(asText(message)))) {
                 throw new IllegalArgumentException(prefix + "has empty mandatory \"short_message\" field.");
             }
-        } else if (!messageNode.isMissingNode()) {
-            if (!messageNode.isTextual()) {
-                throw new IllegalArgumentException(prefix + "has invalid \"message\": " + messageNode.asText());
+        } else if (message != null) {
+            if (!(message instanceof String)) {
+                throw new IllegalArgumentException(prefix + "has invalid \"message\": " + asText(message));
             }
-            if (StringUtils.isBlank(messageNode.asText())) {
+            if (StringUtils.isBlank((String) message)) {
                 throw new IllegalArgumentException(prefix + "has empty mandatory \"message\" field.");
             }
         } else {
             throw new IllegalArgumentException(prefix + "is missing mandatory \"short_message\" or \"message\" field.");
         }
 
-        final JsonNode timestampNode = jsonNode.path("timestamp");
-        if (timestampNode.isValueNode() && !timestampNode.isNumber()) {
-            log.warn(prefix + "has invalid \"timestamp\": {}  (type: {})", timestampNode.asText(), timestampNode.getNodeType().name());
+        final Object timestamp = fields.get("timestamp");
+        if (timestamp != null && !(timestamp instanceof Number) && !isContainer(timestamp)) {
+            log.warn(prefix + "has invalid \"timestamp\": {}  (type: {})", asText(timestamp), nodeType(timestamp).name());
         }
     }
 
-    private static String stringValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asText();
-            }
-        }
-        return null;
+    private static String stringValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        return value == null ? null : asText(value);
     }
 
-    private static long longValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asLong(-1L);
-            }
+    private static long longValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        if (value instanceof Number number) {
+            return number.longValue();
+        } else if (value instanceof String text) {
+            return NumberInput.parseAsLong(text, -1L);
+        } else if (value instanceof Boolean bool) {
+            return bool ? 1L : 0L;
         }
         return -1L;
     }
 
-    private static int intValue(final JsonNode json, final String fieldName) {
-        if (json != null) {
-            final JsonNode value = json.get(fieldName);
-
-            if (value != null) {
-                return value.asInt(-1);
-            }
+    private static int intValue(final Map<String, Object> fields, final String fieldName) {
+        final Object value = fields.get(fieldName);
+        if (value instanceof Number number) {
+            return number.intValue();
+        } else if (value instanceof String text) {
+            return NumberInput.parseAsInt(text, -1);
+        } else if (value instanceof Boolean bool) {
+            return bool ? 1 : 0;
         }
         return -1;
     }
 
-    private static double timestampValue(final JsonNode json) {
-        final JsonNode value = json.path(Message.FIELD_TIMESTAMP);
-        if (value.isNumber()) {
-            return value.asDouble(-1.0);
-        } else if (value.isTextual()) {
+    private static double timestampValue(final Map<String, Object> fields) {
+        final Object value = fields.get(Message.FIELD_TIMESTAMP);
+        if (value instanceof Number number) {
+            return number.doubleValue();
+        } else if (value instanceof String text) {
             try {
-                return Double.parseDouble(value.asText());
+                return Double.parseDouble(text);
             } catch (NumberFormatException e) {
                 log.debug("Unable to parse timestamp", e);
                 return -1.0;
@@ -278,4 +384,29 @@ public class GelfDecoder {
             return -1.0;
         }
     }
+
+    /**
+     * Mirrors {@link JsonNode#asText()} for the values produced by {@link #readValue(JsonParser, JsonToken)}.
+     */
+    private static String asText(final Object value) {
+        return value instanceof JsonNode node ? node.asText() : value.toString();
+    }
+
+    private static boolean isContainer(final Object value) {
+        return value instanceof JsonNode node && node.isContainerNode();
+    }
+
+    private static JsonNodeType nodeType(final Object value) {
+        if (value instanceof JsonNode node) {
+            return node.getNodeType();
+        } else if (value instanceof String) {
+            return JsonNodeType.STRING;
+        } else if (value instanceof Boolean) {
+            return JsonNodeType.BOOLEAN;
+        }
+        return JsonNodeType.NUMBER;
+    }
+
+    private record GelfFields(Map<String, Object> values, boolean hasTrailingContent) {
+    }
 }
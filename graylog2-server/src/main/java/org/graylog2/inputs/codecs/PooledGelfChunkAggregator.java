@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.codecs;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import org.graylog2.inputs.codecs.gelf.GELFMessage;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.graylog2.inputs.codecs.GelfChunkAggregator.INVALID_RESULT;
+import static org.graylog2.inputs.codecs.GelfChunkAggregator.VALIDITY_PERIOD;
+import static org.graylog2.inputs.codecs.GelfChunkAggregator.VALID_EMPTY_RESULT;
+import static org.graylog2.inputs.codecs.gelf.GELFMessageChunk.HEADER_PART_HASH_START;
+import static org.graylog2.inputs.codecs.gelf.GELFMessageChunk.HEADER_PART_SEQCNT_START;
+import static org.graylog2.inputs.codecs.gelf.GELFMessageChunk.HEADER_PART_SEQNUM_START;
+import static org.graylog2.inputs.codecs.gelf.GELFMessageChunk.HEADER_TOTAL_LENGTH;
+
+/**
+ * Reassembles chunked GELF messages like {@link GelfChunkAggregator}, but without per-chunk heap copies.
+ * <p>
+ * Incomplete messages live in an open addressing table keyed by the 8 byte message ID. Looking up a message, adding
+ * a chunk, completing and expiring a message don't take any locks, only creating the entry for a new message
+ * synchronizes on one of several stripes. The payload of every chunk is copied into a pooled buffer and a complete
+ * message is handed on as a composite of these buffers. Incomplete messages are expired by a timing wheel.
+ * <p>
+ * Chunks are dropped if buffering them would exceed the memory limit or if the maximum number of incomplete
+ * messages has been reached.
+ */
+public class PooledGelfChunkAggregator implements CodecAggregator {
+    private static final Logger log = LoggerFactory.getLogger(PooledGelfChunkAggregator.class);
+
+    private static final int MAX_CHUNKS = 128;
+    private static final int PROBE_LIMIT = 8;
+    private static final int STRIPES = 64;
+    private static final long TICK_MILLIS = 100;
+    private static final int TICKS_PER_WHEEL = 64;
+
+    public static final String DROPPED_CHUNKS = name(PooledGelfChunkAggregator.class, "dropped-chunks");
+    public static final String BUFFERED_BYTES = name(PooledGelfChunkAggregator.class, "buffered-bytes");
+
+    private final AtomicReferenceArray<ChunkEntry> slots;
+    private final int mask;
+    private final Object[] stripes = new Object[STRIPES];
+    private final AtomicInteger entryCount = new AtomicInteger();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    private final long maxBytes;
+    private final int maxMessages;
+    private final ByteBufAllocator allocator;
+    private final Timer timer;
+
+    private final Counter chunkCounter;
+    private final Counter waitingMessages;
+    private final Counter completeMessages;
+    private final Counter expiredMessages;
+    private final Counter expiredChunks;
+    private final Counter duplicateChunks;
+    private final Counter droppedChunks;
+
+    @Inject
+    public PooledGelfChunkAggregator(MetricRegistry metricRegistry,
+                                     @Named("gelf_chunk_aggregation_max_memory") Size maxMemory,
+                                     @Named("gelf_chunk_aggregation_max_messages") int maxMessages) {
+        this(metricRegistry, maxMemory.toBytes(), maxMessages, PooledByteBufAllocator.DEFAULT,
+                new HashedWheelTimer(new ThreadFactoryBuilder().setNameFormat("gelf-chunk-expiry-%d").setDaemon(true).build(),
+                        TICK_MILLIS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL, false));
+    }
+
+    @VisibleForTesting
+    PooledGelfChunkAggregator(MetricRegistry metricRegistry,
+                              long maxBytes,
+                              int maxMessages,
+                              ByteBufAllocator allocator,
+                              Timer timer) {
+        this.maxBytes = maxBytes;
+        this.maxMessages = maxMessages;
+        this.allocator = allocator;
+        this.timer = timer;
+        // keep the table at most half full, so that a free slot is found within a few probes
+        final int capacity = Integer.highestOneBit(Math.max(maxMessages, PROBE_LIMIT) * 2 - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Object();
+        }
+
+        // share the metrics with the default aggregator, so that existing dashboards keep working
+        this.chunkCounter = metricRegistry.counter(GelfChunkAggregator.CHUNK_COUNTER);
+        this.waitingMessages = metricRegistry.counter(GelfChunkAggregator.WAITING_MESSAGES);
+        this.completeMessages = metricRegistry.counter(GelfChunkAggregator.COMPLETE_MESSAGES);
+        this.expiredMessages = metricRegistry.counter(GelfChunkAggregator.EXPIRED_MESSAGES);
+        this.expiredChunks = metricRegistry.counter(GelfChunkAggregator.EXPIRED_CHUNKS);
+        this.duplicateChunks = metricRegistry.counter(GelfChunkAggregator.DUPLICATE_CHUNKS);
+        this.droppedChunks = metricRegistry.counter(DROPPED_CHUNKS);
+        metricRegistry.gauge(BUFFERED_BYTES, () -> (Gauge<Long>) bufferedBytes::get);
+    }
+
+    @Nonnull
+    @Override
+    public Result addChunk(ByteBuf buffer) {
+        if (buffer.readableBytes() < 2) {
+            return INVALID_RESULT;
+        }
+        final int readerIndex = buffer.readerIndex();
+        switch (GELFMessage.Type.determineType(buffer.getByte(readerIndex), buffer.getByte(readerIndex + 1))) {
+            case CHUNKED:
+                return addGelfChunk(buffer, readerIndex);
+            case ZLIB:
+            case GZIP:
+            case UNCOMPRESSED:
+                // the buffer is released by the caller, the returned slice by the next handler
+                return new Result(buffer.retainedSlice(), true);
+            case UNSUPPORTED:
+            default:
+                return INVALID_RESULT;
+        }
+    }
+
+    private Result addGelfChunk(ByteBuf buffer, int readerIndex) {
+        if (buffer.readableBytes() < HEADER_TOTAL_LENGTH) {
+            log.debug("GELF message chunk is too short to contain the required header, dropping message.");
+            return INVALID_RESULT;
+        }
+        final long messageId = buffer.getLong(readerIndex + HEADER_PART_HASH_START);
+        final int sequenceNumber = buffer.getUnsignedByte(readerIndex + HEADER_PART_SEQNUM_START);
+        final int sequenceCount = buffer.getUnsignedByte(readerIndex + HEADER_PART_SEQCNT_START);
+        if (sequenceCount == 0 || sequenceCount > MAX_CHUNKS || sequenceNumber >= sequenceCount) {
+            log.debug("Invalid GELF message chunk {}/{} for message {}, dropping message.",
+                    sequenceNumber, sequenceCount, Long.toHexString(messageId));
+            return INVALID_RESULT;
+        }
+        chunkCounter.inc();
+
+        final int length = buffer.readableBytes() - HEADER_TOTAL_LENGTH;
+        if (bufferedBytes.addAndGet(length) > maxBytes) {
+            bufferedBytes.addAndGet(-length);
+            log.debug("Buffered GELF chunks exceed the limit of {} bytes, dropping chunk of message {}.",
+                    maxBytes, Long.toHexString(messageId));
+            droppedChunks.inc();
+            return INVALID_RESULT;
+        }
+        final ByteBuf chunk = allocator.buffer(length, length);
+        chunk.writeBytes(buffer, readerIndex + HEADER_TOTAL_LENGTH, length);
+
+        // an entry can be completed or expired concurrently, in that case the chunk is added to a new entry
+        for (int attempt = 0; attempt < 2; attempt++) {
+            final ChunkEntry entry = findOrCreateEntry(messageId, sequenceCount);
+            if (entry == null) {
+                log.debug("Maximum number of incomplete GELF messages reached, dropping chunk of message {}.",
+                        Long.toHexString(messageId));
+                droppedChunks.inc();
+                release(chunk);
+                return INVALID_RESULT;
+            }
+            if (sequenceNumber >= entry.chunks.length()) {
+                log.debug("Sequence number {} exceeds the sequence count {} of message {}, dropping chunk.",
+                        sequenceNumber, entry.chunks.length(), Long.toHexString(messageId));
+                release(chunk);
+                return INVALID_RESULT;
+            }
+            if (!entry.chunks.compareAndSet(sequenceNumber, null, chunk)) {
+                log.error("Received duplicate chunk {} for message {}", sequenceNumber, Long.toHexString(messageId));
+                duplicateChunks.inc();
+                release(chunk);
+                return VALID_EMPTY_RESULT;
+            }
+            if (entry.removed) {
+                if (entry.chunks.compareAndSet(sequenceNumber, chunk, null)) {
+                    continue;
+                }
+                // the chunk has already been released together with the entry
+                return VALID_EMPTY_RESULT;
+            }
+            if (entry.chunksWritten.incrementAndGet() == entry.chunks.length()) {
+                final ByteBuf message = complete(entry);
+                return message == null ? VALID_EMPTY_RESULT : new Result(message, true);
+            }
+            return VALID_EMPTY_RESULT;
+        }
+        droppedChunks.inc();
+        release(chunk);
+        return INVALID_RESULT;
+    }
+
+    @Nullable
+    private ChunkEntry findOrCreateEntry(long messageId, int sequenceCount) {
+        final int start = index(messageId);
+        final ChunkEntry existing = find(messageId, start);
+        if (existing != null) {
+            return existing;
+        }
+        // Only one thread may create the entry of a message, otherwise it could end up in two slots.
+        // All messages starting their probe at the same slot share a stripe.
+        synchronized (stripes[start & (STRIPES - 1)]) {
+            final ChunkEntry created = find(messageId, start);
+            if (created != null) {
+                return created;
+            }
+            if (entryCount.incrementAndGet() > maxMessages) {
+                entryCount.decrementAndGet();
+                return null;
+            }
+            for (int i = 0; i < PROBE_LIMIT; i++) {
+                final int slot = (start + i) & mask;
+                final ChunkEntry entry = new ChunkEntry(messageId, sequenceCount, slot);
+                if (slots.compareAndSet(slot, null, entry)) {
+                    waitingMessages.inc();
+                    entry.timeout = timer.newTimeout(timeout -> expire(entry), VALIDITY_PERIOD, TimeUnit.MILLISECONDS);
+                    return entry;
+                }
+            }
+            entryCount.decrementAndGet();
+            return null;
+        }
+    }
+
+    @Nullable
+    private ChunkEntry find(long messageId, int start) {
+        for (int i = 0; i < PROBE_LIMIT; i++) {
+            final ChunkEntry entry = slots.get((start + i) & mask);
+            if (entry != null && entry.messageId == messageId) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private int index(long messageId) {
+        final long hash = messageId * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Removes the entry from the table. Only the thread which succeeds in removing an entry may take its chunks.
+     */
+    private boolean remove(ChunkEntry entry) {
+        if (!slots.compareAndSet(entry.slot, entry, null)) {
+            return false;
+        }
+        entry.removed = true;
+        entryCount.decrementAndGet();
+        waitingMessages.dec();
+        return true;
+    }
+
+    @Nullable
+    private ByteBuf complete(ChunkEntry entry) {
+        if (!remove(entry)) {
+            // expired concurrently
+            return null;
+        }
+        final Timeout timeout = entry.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        final int sequenceCount = entry.chunks.length();
+        final CompositeByteBuf message = allocator.compositeBuffer(sequenceCount);
+        for (int i = 0; i < sequenceCount; i++) {
+            final ByteBuf chunk = entry.chunks.getAndSet(i, null);
+            if (chunk == null) {
+                log.debug("Couldn't read chunk {} of message {}, skipping this chunk.", i, Long.toHexString(entry.messageId));
+                continue;
+            }
+            bufferedBytes.addAndGet(-chunk.readableBytes());
+            message.addComponent(true, chunk);
+        }
+        completeMessages.inc();
+        return message;
+    }
+
+    @VisibleForTesting
+    void expire(ChunkEntry entry) {
+        if (!remove(entry)) {
+            // completed concurrently
+            return;
+        }
+        log.debug("Not all chunks of <{}> arrived within {}ms. Dropping chunks.", Long.toHexString(entry.messageId), VALIDITY_PERIOD);
+        int chunks = 0;
+        for (int i = 0; i < entry.chunks.length(); i++) {
+            final ByteBuf chunk = entry.chunks.getAndSet(i, null);
+            if (chunk != null) {
+                release(chunk);
+                chunks++;
+            }
+        }
+        expiredMessages.inc();
+        expiredChunks.inc(chunks);
+    }
+
+    private void release(ByteBuf chunk) {
+        bufferedBytes.addAndGet(-chunk.readableBytes());
+        chunk.release();
+    }
+
+    @VisibleForTesting
+    long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    @VisibleForTesting
+    static class ChunkEntry {
+        private final long messageId;
+        private final int slot;
+        private final AtomicReferenceArray<ByteBuf> chunks;
+        private final AtomicInteger chunksWritten = new AtomicInteger();
+        private volatile boolean removed;
+        private volatile Timeout timeout;
+
+        ChunkEntry(long messageId, int sequenceCount, int slot) {
+            this.messageId = messageId;
+            this.slot = slot;
+            this.chunks = new AtomicReferenceArray<>(sequenceCount);
+        }
+    }
+}
@@ -56,11 +56,13 @@ import javax.annotation.Nullable;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -70,8 +72,6 @@ import static com.google.common.base.Strings.isNullOrEmpty;
 public class SyslogCodec extends AbstractCodec {
     private static final Logger LOG = LoggerFactory.getLogger(SyslogCodec.class);
     public static final Pattern STRUCTURED_SYSLOG_PATTERN = Pattern.compile("<\\d{1,3}>[0-9]\\d{0,2}\\s.*", Pattern.DOTALL);
-    private static final Pattern CISCO_WITH_SEQUENCE_NUMBERS_PATTERN = Pattern.compile("<\\d{1,3}>\\d*:\\s.*", Pattern.DOTALL);
-    private static final Pattern FORTIGATE_PATTERN = Pattern.compile("<\\d{1,3}>date=.*", Pattern.DOTALL);
 
     static final String CK_FORCE_RDNS = "force_rdns";
     static final String CK_ALLOW_OVERRIDE_DATE = "allow_override_date";
@@ -83,17 +83,37 @@ public class SyslogCodec extends AbstractCodec {
     private final Timer decodeTime;
     private final MessageFactory messageFactory;
 
+    // resolved once per input instead of for every message
+    private final boolean forceRdns;
+    private final boolean allowOverrideDate;
+    private final boolean storeFullMessage;
+    private final boolean expandStructuredData;
+    @Nullable
+    private final DateTimeZone defaultTimeZone;
+    private final boolean utf8;
+    private final SyslogMessageParser parser;
+
     @AssistedInject
     public SyslogCodec(@Assisted Configuration configuration, MetricRegistry metricRegistry, MessageFactory messageFactory) {
         super(configuration);
         this.resolveTime = metricRegistry.timer(name(SyslogCodec.class, "resolveTime"));
         this.decodeTime = metricRegistry.timer(name(SyslogCodec.class, "decodeTime"));
         this.messageFactory = messageFactory;
+
+        this.forceRdns = configuration.getBoolean(CK_FORCE_RDNS);
+        this.allowOverrideDate = configuration.getBoolean(CK_ALLOW_OVERRIDE_DATE);
+        this.storeFullMessage = configuration.getBoolean(CK_STORE_FULL_MESSAGE);
+        this.expandStructuredData = configuration.getBoolean(CK_EXPAND_STRUCTURED_DATA);
+        final String timeZoneConfig = configuration.getString(CK_TIMEZONE);
+        final boolean isDefaultTimeZoneSet = StringUtils.isNotBlank(timeZoneConfig) && !DropdownField.NOT_CONFIGURED.equals(timeZoneConfig);
+        this.defaultTimeZone = isDefaultTimeZoneSet ? DateTimeZone.forID(timeZoneConfig) : null;
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+        this.parser = new SyslogMessageParser(defaultTimeZone, expandStructuredData);
     }
 
     @Override
     public Optional<Message> decodeSafe(@Nonnull RawMessage rawMessage) {
-        final String msg = new String(rawMessage.getPayload(), charset);
+        final byte[] payload = rawMessage.getPayload();
         try (Timer.Context ignored = this.decodeTime.time()) {
             final ResolvableInetSocketAddress address = rawMessage.getRemoteAddress();
             final InetSocketAddress remoteAddress;
@@ -102,14 +122,20 @@ public class SyslogCodec extends AbstractCodec {
             } else {
                 remoteAddress = address.getInetSocketAddress();
             }
-            return Optional.of(parse(msg, remoteAddress == null ? null : remoteAddress.getAddress(), rawMessage.getTimestamp()));
+            return Optional.of(parse(payload, remoteAddress == null ? null : remoteAddress.getAddress(), rawMessage.getTimestamp()));
         } catch (Exception e) {
-            throw InputProcessingException.create("Could not deserialize Syslog message.", e, rawMessage, msg);
+            throw InputProcessingException.create("Could not deserialize Syslog message.", e, rawMessage, new String(payload, charset));
         }
     }
 
     @Nonnull
-    private Message parse(String msg, InetAddress remoteAddress, DateTime receivedTimestamp) {
+    @VisibleForTesting
+    Message parse(String msg, InetAddress remoteAddress, DateTime receivedTimestamp) {
+        return parse(msg.getBytes(charset), remoteAddress, receivedTimestamp);
+    }
+
+    @Nonnull
+    private Message parse(byte[] payload, InetAddress remoteAddress, DateTime receivedTimestamp) {
         /*
          * ZOMG funny 80s neckbeard protocols. We are now deciding if to parse
          * structured (RFC5424) or unstructured (classic BSD, RFC3164) syslog
@@ -132,20 +158,48 @@ public class SyslogCodec extends AbstractCodec {
          *  http://open.spotify.com/track/2ZtQKBB8wDTtPPqDZhy7xZ
          *
          */
-        String timeZoneConfig = configuration.getString(CK_TIMEZONE);
-        final SyslogServerEventIF e;
-        boolean isDefaultTimeZoneSet = StringUtils.isNotBlank(timeZoneConfig) && !DropdownField.NOT_CONFIGURED.equals(timeZoneConfig);
-        DateTimeZone defaultTimeZone = isDefaultTimeZoneSet ? DateTimeZone.forID(timeZoneConfig) : null;
-        if (STRUCTURED_SYSLOG_PATTERN.matcher(msg).matches()) {
-            e = new StructuredSyslogServerEvent(msg, remoteAddress, defaultTimeZone);
-        } else if (CISCO_WITH_SEQUENCE_NUMBERS_PATTERN.matcher(msg).matches()) {
-            e = new CiscoSyslogServerEvent(msg, remoteAddress, defaultTimeZone);
-        } else if (FORTIGATE_PATTERN.matcher(msg).matches()) {
-            e = new FortiGateSyslogEvent(msg.trim(), defaultTimeZone);
-        } else {
-            e = new SyslogServerEvent(msg, remoteAddress, defaultTimeZone);
+        // the parser works on UTF-8, payloads in other charsets are transcoded once
+        final byte[] msg = utf8 ? payload : new String(payload, charset).getBytes(StandardCharsets.UTF_8);
+        final SyslogMessageParser.Format format = SyslogMessageParser.detectFormat(msg);
+        final SyslogMessageParser.ParsedSyslog parsed = switch (format) {
+            case STRUCTURED -> parser.parseStructured(msg);
+            case CISCO -> parser.parseCisco(msg);
+            case FORTIGATE -> parser.parseFortiGate(msg);
+            case BSD -> parser.parseBsd(msg);
+        };
+        if (parsed == null) {
+            return parseWithSyslog4j(new String(msg, StandardCharsets.UTF_8), format, remoteAddress, receivedTimestamp);
+        }
+
+        // syslog4j only keeps the trimmed message of FortiGate events
+        final int rawLength = format == SyslogMessageParser.Format.FORTIGATE ? SyslogMessageParser.trimmedLength(msg) : msg.length;
+        final Long timestamp = parsed.timestamp();
+        final Message m = messageFactory.createMessage(parsed.message(), parseHost(parsed.host(), remoteAddress),
+                parseDate(timestamp == null ? null : new Date(timestamp), receivedTimestamp, () -> rawMessage(msg, rawLength)));
+        m.addField("facility", Tools.syslogFacilityToReadable(parsed.facility()));
+        m.addField("level", parsed.level());
+        m.addField("facility_num", parsed.facility());
+
+        // Store full message if configured.
+        if (storeFullMessage) {
+            m.addField("full_message", rawMessage(msg, rawLength));
         }
 
+        m.addFields(parsed.fields());
+
+        return m;
+    }
+
+    @Nonnull
+    @VisibleForTesting
+    Message parseWithSyslog4j(String msg, SyslogMessageParser.Format format, InetAddress remoteAddress, DateTime receivedTimestamp) {
+        final SyslogServerEventIF e = switch (format) {
+            case STRUCTURED -> new StructuredSyslogServerEvent(msg, remoteAddress, defaultTimeZone);
+            case CISCO -> new CiscoSyslogServerEvent(msg, remoteAddress, defaultTimeZone);
+            case FORTIGATE -> new FortiGateSyslogEvent(msg.trim(), defaultTimeZone);
+            case BSD -> new SyslogServerEvent(msg, remoteAddress, defaultTimeZone);
+        };
+
         // If the message is a structured one, we do not want the message ID and the structured data in the
         // message string. See: https://github.com/Graylog2/graylog2-server/issues/845#issuecomment-69499719
         final String syslogMessage;
@@ -156,7 +210,8 @@ public class SyslogCodec extends AbstractCodec {
             syslogMessage = e.getMessage();
         }
 
-        final Message m = messageFactory.createMessage(syslogMessage, parseHost(e, remoteAddress), parseDate(e, receivedTimestamp));
+        final Message m = messageFactory.createMessage(syslogMessage, parseHost(e.getHost(), remoteAddress),
+                parseDate(e.getDate(), receivedTimestamp, () -> new String(e.getRaw(), charset)));
         m.addField("facility", Tools.syslogFacilityToReadable(e.getFacility()));
         m.addField("level", e.getLevel());
         m.addField("facility_num", e.getFacility());
@@ -173,17 +228,20 @@ public class SyslogCodec extends AbstractCodec {
         }
 
         // Store full message if configured.
-        if (configuration.getBoolean(CK_STORE_FULL_MESSAGE)) {
+        if (storeFullMessage) {
             m.addField("full_message", new String(e.getRaw(), charset));
         }
 
-
-        final boolean expandStructuredData = configuration.getBoolean(CK_EXPAND_STRUCTURED_DATA);
         m.addFields(parseAdditionalData(e, expandStructuredData));
 
         return m;
     }
 
+    // syslog4j returns the UTF-8 encoding of the message as raw bytes, regardless of the input charset
+    private String rawMessage(byte[] msg, int length) {
+        return new String(msg, 0, length, charset);
+    }
+
     private Map<String, Object> parseAdditionalData(SyslogServerEventIF msg, boolean expand) {
 
         // Structured syslog has more data we can parse.
@@ -205,8 +263,8 @@ public class SyslogCodec extends AbstractCodec {
         }
     }
 
-    private String parseHost(SyslogServerEventIF msg, InetAddress remoteAddress) {
-        if (remoteAddress != null && configuration.getBoolean(CK_FORCE_RDNS)) {
+    private String parseHost(@Nullable String host, InetAddress remoteAddress) {
+        if (remoteAddress != null && forceRdns) {
             try (Timer.Context ignored = this.resolveTime.time()) {
                 return Tools.rdnsLookup(remoteAddress);
             } catch (UnknownHostException e) {
@@ -214,21 +272,19 @@ public class SyslogCodec extends AbstractCodec {
             }
         }
 
-        final String host = msg.getHost();
         return isNullOrEmpty(host) && remoteAddress != null ? InetAddresses.toAddrString(remoteAddress) : host;
     }
 
-    private DateTime parseDate(SyslogServerEventIF msg, DateTime receivedTimestamp) throws IllegalStateException {
+    private DateTime parseDate(@Nullable Date sysLogDate, DateTime receivedTimestamp, Supplier<String> rawMessage) throws IllegalStateException {
         // Check if date could be parsed.
-        Date sysLogDate = msg.getDate();
         if (sysLogDate == null) {
-            if (configuration.getBoolean(CK_ALLOW_OVERRIDE_DATE)) {
+            if (allowOverrideDate) {
                 LOG.debug("Date could not be parsed. Was set to NOW because {} is true.", CK_ALLOW_OVERRIDE_DATE);
                 return receivedTimestamp;
             } else {
                 LOG.warn("Syslog message is missing date or date could not be parsed. (Possibly set {} to true) "
                                 + "Not further handling. Message was: {}",
-                        CK_ALLOW_OVERRIDE_DATE, new String(msg.getRaw(), charset));
+                        CK_ALLOW_OVERRIDE_DATE, rawMessage.get());
                 throw new IllegalStateException("Syslog message is missing date or date could not be parsed.");
             }
         }
@@ -0,0 +1,760 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.codecs;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+
+import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.zone.ZoneRules;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.google.common.base.Strings.isNullOrEmpty;
+
+/**
+ * Single pass parser for the syslog formats handled by {@link SyslogCodec}.
+ * <p>
+ * It produces exactly what the syslog4j event classes produce for well-formed messages, including their quirks
+ * (e.g. the host name staying part of an RFC 3164 message). Whenever a message deviates from the shapes handled here,
+ * the parse methods return {@code null} and the codec falls back to syslog4j, which keeps the decoded messages
+ * identical for all inputs.
+ * <p>
+ * Messages are parsed from their UTF-8 encoding and only the extracted parts are decoded. All delimiters are ASCII
+ * characters, which never occur within a multibyte UTF-8 sequence, so searching the bytes finds the same positions as
+ * searching the decoded message. Where syslog4j counts characters instead, the counted bytes have to be ASCII.
+ */
+class SyslogMessageParser {
+    enum Format {
+        STRUCTURED, CISCO, FORTIGATE, BSD
+    }
+
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+    private static final String EMPTY_STRUCTURED_DATA_PREFIX = "- -";
+    private static final String EMPTY_STRUCTURED_DATA_MARKER = "[0@0]";
+
+    private final DateTimeFormatter isoParser = ISODateTimeFormat.dateTimeParser();
+    private final DateTimeFormatter isoParserWithDefaultZone;
+    @Nullable
+    private final ZoneId defaultZoneId;
+    // the vendor specific syslog4j events default to UTC instead of the JVM time zone
+    private final ZoneId vendorZoneId;
+    private final java.time.format.DateTimeFormatter ciscoTimestampFormat;
+    private final java.time.format.DateTimeFormatter ciscoTimestampWithYearFormat;
+    private final boolean expandStructuredData;
+
+    SyslogMessageParser(@Nullable DateTimeZone defaultTimeZone, boolean expandStructuredData) {
+        this.isoParserWithDefaultZone = defaultTimeZone == null ? isoParser : isoParser.withZone(defaultTimeZone);
+        this.defaultZoneId = defaultTimeZone == null ? null : defaultTimeZone.toTimeZone().toZoneId();
+        this.vendorZoneId = defaultZoneId == null ? ZoneOffset.UTC : defaultZoneId;
+        this.ciscoTimestampFormat = java.time.format.DateTimeFormatter.ofPattern("yyyy MMM ppd HH:mm:ss[.SSS][ zzz]", Locale.ROOT)
+                .withZone(vendorZoneId);
+        this.ciscoTimestampWithYearFormat = java.time.format.DateTimeFormatter.ofPattern("MMM ppd yyyy HH:mm:ss", Locale.ROOT)
+                .withZone(vendorZoneId);
+        this.expandStructuredData = expandStructuredData;
+    }
+
+    record ParsedSyslog(String message, @Nullable String host, @Nullable Long timestamp, int facility, int level,
+                        Map<String, Object> fields) {}
+
+    /**
+     * Detects the format of a syslog message by looking at the bytes following the priority, mirroring the patterns
+     * {@link SyslogCodec} used to match against the whole message.
+     */
+    static Format detectFormat(byte[] msg) {
+        final int length = msg.length;
+        if (length < 3 || msg[0] != '<') {
+            return Format.BSD;
+        }
+        int i = 1;
+        while (i < length && i <= 3 && isDigit(msg[i])) {
+            i++;
+        }
+        if (i == 1 || i >= length || msg[i] != '>') {
+            return Format.BSD;
+        }
+        final int start = i + 1;
+
+        // <PRI>VERSION followed by whitespace
+        int version = start;
+        while (version < length && version - start < 3 && isDigit(msg[version])) {
+            version++;
+        }
+        if (version > start && version < length && isWhitespace(msg[version])) {
+            return Format.STRUCTURED;
+        }
+
+        // <PRI>SEQUENCE: followed by whitespace
+        int sequence = start;
+        while (sequence < length && isDigit(msg[sequence])) {
+            sequence++;
+        }
+        if (sequence + 1 < length && msg[sequence] == ':' && isWhitespace(msg[sequence + 1])) {
+            return Format.CISCO;
+        }
+
+        if (startsWith(msg, "date=", start)) {
+            return Format.FORTIGATE;
+        }
+        return Format.BSD;
+    }
+
+    /**
+     * Parses a classic BSD (RFC 3164) message, either with a "MMM dd HH:mm:ss" or an ISO 8601 timestamp.
+     */
+    @Nullable
+    ParsedSyslog parseBsd(byte[] msg) {
+        final int priEnd = priorityEnd(msg);
+        if (priEnd < 0) {
+            return null;
+        }
+        final int priority = parsePriority(msg, priEnd);
+        final int start = priEnd + 1;
+
+        Long timestamp = null;
+        int messageStart = start;
+        if (msg.length - start > 16) {
+            // syslog4j looks at fixed character positions here
+            if (!isAscii(msg, start, start + 17)) {
+                return null;
+            }
+            if (isDigit(msg[start])) {
+                final int space = indexOf(msg, ' ', start);
+                if (space < 0) {
+                    return null;
+                }
+                timestamp = parseIsoTimestamp(string(msg, start, space));
+                messageStart = space + 1;
+            } else {
+                final boolean singleDigitDay = msg[start + 5] == ' ';
+                timestamp = parseBsdTimestamp(msg, start, singleDigitDay);
+                // the character following the timestamp is skipped, whatever it is
+                messageStart = start + (singleDigitDay ? 15 : 16);
+            }
+            if (timestamp == null) {
+                return null;
+            }
+        }
+
+        final int hostEnd = indexOf(msg, ' ', messageStart);
+        final String host = hostEnd < 0 ? null : string(msg, messageStart, hostEnd).trim();
+
+        return new ParsedSyslog(string(msg, messageStart, msg.length), host, timestamp,
+                priority >> 3, priority & 7, Collections.emptyMap());
+    }
+
+    /**
+     * Parses an RFC 5424 message: {@code <PRI>VERSION TIMESTAMP HOSTNAME APP-NAME PROCID MSGID STRUCTURED-DATA MSG}.
+     */
+    @Nullable
+    ParsedSyslog parseStructured(byte[] msg) {
+        final int priEnd = priorityEnd(msg);
+        if (priEnd < 0) {
+            return null;
+        }
+        final int priority = parsePriority(msg, priEnd);
+
+        int position = priEnd + 1;
+        while (position < msg.length && isDigit(msg[position])) {
+            position++;
+        }
+        if (position == priEnd + 1 || position >= msg.length || msg[position] != ' ') {
+            return null;
+        }
+        position++;
+
+        final int timestampEnd = indexOf(msg, ' ', position);
+        if (timestampEnd < 0) {
+            return null;
+        }
+        final Long timestamp = parseIsoTimestamp(string(msg, position, timestampEnd));
+        if (timestamp == null) {
+            return null;
+        }
+        position = timestampEnd + 1;
+
+        final int hostEnd = indexOf(msg, ' ', position);
+        if (hostEnd < 0) {
+            return null;
+        }
+        final String host = string(msg, position, hostEnd).trim();
+        position = hostEnd + 1;
+
+        final int applicationNameEnd = indexOf(msg, ' ', position);
+        if (applicationNameEnd < 0) {
+            return null;
+        }
+        final String applicationName = nilToNull(string(msg, position, applicationNameEnd).trim());
+        position = applicationNameEnd + 1;
+
+        final int processIdEnd = indexOf(msg, ' ', position);
+        if (processIdEnd < 0) {
+            return null;
+        }
+        final String processId = nilToNull(string(msg, position, processIdEnd).trim());
+        final int restStart = processIdEnd + 1;
+
+        // MSGID STRUCTURED-DATA MSG
+        final String message;
+        final Map<String, Object> fields = new HashMap<>();
+        if (startsWith(msg, EMPTY_STRUCTURED_DATA_PREFIX, restStart)) {
+            final int messageStart = restStart + EMPTY_STRUCTURED_DATA_PREFIX.length() + 1;
+            // the character following the prefix is skipped, whatever it is
+            if (messageStart > msg.length || !isAscii(msg, messageStart - 1, messageStart)) {
+                return null;
+            }
+            message = string(msg, messageStart, msg.length);
+        } else {
+            final Map<String, Map<String, String>> structuredData = new HashMap<>();
+            final int messageStart = parseStructuredData(msg, restStart, structuredData);
+            if (messageStart < 0) {
+                return null;
+            }
+            message = messageStart <= msg.length ? string(msg, messageStart, msg.length) : "";
+            for (Map.Entry<String, Map<String, String>> element : structuredData.entrySet()) {
+                if (expandStructuredData) {
+                    final String prefix = element.getKey().trim() + "_";
+                    for (Map.Entry<String, String> parameter : element.getValue().entrySet()) {
+                        fields.put(prefix + parameter.getKey(), parameter.getValue());
+                    }
+                } else {
+                    fields.putAll(element.getValue());
+                }
+            }
+        }
+
+        if (!isNullOrEmpty(applicationName)) {
+            fields.put("application_name", applicationName);
+        }
+        if (!isNullOrEmpty(processId)) {
+            fields.put("process_id", processId);
+        }
+
+        return new ParsedSyslog(message.isEmpty() ? string(msg, restStart, msg.length) : message, host, timestamp,
+                priority >> 3, priority & 7, fields);
+    }
+
+    /**
+     * Parses a Cisco IOS message: {@code <PRI>SEQUENCE: [*]TIMESTAMP: [HOST] %FACILITY-SEVERITY-MNEMONIC: MSG}.
+     * <p>
+     * Like syslog4j, the timestamp is either "MMM dd yyyy HH:mm:ss" or "[yyyy ]MMM dd HH:mm:ss[.SSS][ zzz]" in the
+     * current year. Messages with any other timestamp get the current time and keep their timestamp in the message.
+     */
+    @Nullable
+    ParsedSyslog parseCisco(byte[] msg) {
+        final int priEnd = priorityEnd(msg);
+        if (priEnd < 0) {
+            return null;
+        }
+        final int priority = parsePriority(msg, priEnd);
+
+        final int sequenceEnd = indexOf(msg, ':', priEnd + 1);
+        if (sequenceEnd < 0) {
+            return null;
+        }
+        final int sequenceNumber = parseSequenceNumber(msg, priEnd + 1, sequenceEnd);
+        if (sequenceNumber < 0) {
+            return null;
+        }
+
+        int position = sequenceEnd + 1;
+        while (position < msg.length && msg[position] == ' ') {
+            position++;
+        }
+        if (position < msg.length && msg[position] == '*') {
+            position++;
+        }
+        // syslog4j looks at fixed character positions of the timestamp, which has to be followed by ": "
+        final int timestampEnd = indexOf(msg, ": ", position);
+        if (timestampEnd < 0 || !isAscii(msg, position, Math.min(msg.length, position + 11))) {
+            return null;
+        }
+        boolean yearAfterDay = true;
+        for (int i = position + 7; i <= position + 10 && yearAfterDay; i++) {
+            if (i >= msg.length) {
+                return null;
+            }
+            yearAfterDay = isDigit(msg[i]);
+        }
+
+        long timestamp = System.currentTimeMillis();
+        try {
+            if (yearAfterDay) {
+                if (position + 20 >= msg.length || !isAscii(msg, position, position + 21)) {
+                    return null;
+                }
+                timestamp = parseCiscoTimestamp(string(msg, position, position + 20), ciscoTimestampWithYearFormat);
+                // the character following the timestamp is skipped, whatever it is
+                position += 21;
+            } else {
+                final String value = string(msg, position, timestampEnd);
+                timestamp = parseCiscoTimestamp(Character.isLetter(msg[position])
+                        ? Year.now(ZoneId.systemDefault()).getValue() + " " + value : value, ciscoTimestampFormat);
+                position = timestampEnd + 1;
+            }
+        } catch (DateTimeParseException e) {
+            // keep the current time and the unparsed timestamp
+        }
+
+        // a host is only looked for in front of the mnemonic
+        final String host;
+        final int mnemonicStart = indexOf(msg, '%', position);
+        if (mnemonicStart <= position) {
+            host = "";
+        } else {
+            final int hostEnd = indexOf(msg, ' ', position);
+            if (hostEnd < 0) {
+                host = null;
+            } else {
+                host = string(msg, position, hostEnd).trim();
+                position = hostEnd;
+                while (position < msg.length && (msg[position] == ' ' || msg[position] == ':')) {
+                    position++;
+                }
+                if (position >= msg.length) {
+                    return null;
+                }
+            }
+        }
+
+        return new ParsedSyslog(string(msg, position, msg.length), host, timestamp,
+                priority >> 3, priority & 7, Map.of("sequence_number", sequenceNumber));
+    }
+
+    /**
+     * Parses a FortiGate message: {@code <PRI>date=YYYY-MM-DD time=HH:mm:ss devname=NAME key=value key="value" ...}.
+     * Like syslog4j, leading and trailing whitespace is ignored.
+     */
+    @Nullable
+    ParsedSyslog parseFortiGate(byte[] msg) {
+        final int priEnd = priorityEnd(msg);
+        if (priEnd < 0) {
+            return null;
+        }
+        final int priority = parsePriority(msg, priEnd);
+        final int start = priEnd + 1;
+        final int end = trimmedLength(msg);
+        // syslog4j matches the message against a pattern which doesn't allow line terminators
+        if (containsLineTerminator(msg, start, end)) {
+            return null;
+        }
+
+        final Map<String, Object> fields = new HashMap<>();
+        parseKeyValues(msg, start, end, false, fields);
+        parseKeyValues(msg, start, end, true, fields);
+
+        final String date = (String) fields.get("date");
+        final String time = (String) fields.get("time");
+        final String timeZone = (String) fields.get("tz");
+        long timestamp = System.currentTimeMillis();
+        if (date != null && time != null) {
+            try {
+                final ZoneId zoneId = timeZone == null ? vendorZoneId : ZoneOffset.of(timeZone);
+                timestamp = ZonedDateTime.of(
+                        LocalDate.parse(date, java.time.format.DateTimeFormatter.ISO_LOCAL_DATE.withZone(zoneId)),
+                        LocalTime.parse(time, java.time.format.DateTimeFormatter.ISO_LOCAL_TIME.withZone(zoneId)),
+                        zoneId).toInstant().toEpochMilli();
+            } catch (DateTimeException e) {
+                return null;
+            }
+        }
+        final String host = (String) fields.get("devname");
+        // The FortiGate "level" field is a string, Graylog requires a numeric value.
+        fields.remove("level");
+
+        return new ParsedSyslog(string(msg, start, end), host, timestamp, priority / 8, priority % 8, fields);
+    }
+
+    /**
+     * Returns the length of the message without trailing whitespace and control characters, like {@link String#trim()}.
+     */
+    static int trimmedLength(byte[] msg) {
+        int end = msg.length;
+        while (end > 0 && (msg[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * Parses {@code MSGID [SD-ID PARAM="VALUE" ...][...] MSG} starting at the given position into the given map and
+     * returns the start of the message, or -1 if the structured data isn't well-formed.
+     */
+    private static int parseStructuredData(byte[] msg, int from, Map<String, Map<String, String>> structuredData) {
+        final int sdStart = indexOf(msg, '[', from);
+        if (sdStart <= from || indexOf(msg, EMPTY_STRUCTURED_DATA_MARKER, from) >= 0) {
+            return -1;
+        }
+        // the message id must be a single token
+        int messageIdEnd = sdStart;
+        while (messageIdEnd > from && msg[messageIdEnd - 1] == ' ') {
+            messageIdEnd--;
+        }
+        final int firstSpace = indexOf(msg, ' ', from);
+        if (messageIdEnd == from || (firstSpace >= 0 && firstSpace < messageIdEnd)) {
+            return -1;
+        }
+
+        final int length = msg.length;
+        int position = sdStart;
+        int elementEnd;
+        do {
+            elementEnd = matchChar(msg, position, ']', ']');
+            if (elementEnd < 0) {
+                return -1;
+            }
+            String elementId = null;
+            final Map<String, String> parameters = new HashMap<>();
+            while (position < elementEnd) {
+                if (elementId == null) {
+                    position++;
+                    final int idEnd = matchChar(msg, position, ']', ' ');
+                    if (idEnd < 0) {
+                        return -1;
+                    }
+                    elementId = string(msg, position, idEnd);
+                    position = idEnd;
+                } else {
+                    if (msg[position] != ' ') {
+                        return -1;
+                    }
+                    position++;
+                    final int equals = indexOf(msg, '=', position);
+                    if (equals < 0 || equals + 1 >= length || msg[equals + 1] != '"') {
+                        return -1;
+                    }
+                    final int valueEnd = matchChar(msg, equals + 2, '"', '"');
+                    if (valueEnd < 0) {
+                        return -1;
+                    }
+                    parameters.put(string(msg, position, equals), unescape(string(msg, equals + 2, valueEnd)));
+                    position = valueEnd + 1;
+                }
+            }
+            position++;
+            structuredData.put(elementId, parameters);
+        } while (position < length && matchChar(msg, position, '[', '[') == position);
+
+        // the character following the structured data is skipped, whatever it is
+        if (elementEnd + 1 < length && !isAscii(msg, elementEnd + 1, elementEnd + 2)) {
+            return -1;
+        }
+        return elementEnd + 2;
+    }
+
+    /**
+     * Finds the next occurrence of one of the given characters, skipping backslash escaped characters.
+     */
+    private static int matchChar(byte[] msg, int from, char first, char second) {
+        int i = from;
+        while (i < msg.length) {
+            final byte b = msg[i];
+            if (b == '\\') {
+                // skipping only the first byte of an escaped multibyte character is fine, the others are never ASCII
+                i += 2;
+            } else if (b == first || b == second) {
+                return i;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    // syslog4j drops every backslash, not only the ones of valid escape sequences
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        final StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c != '\\') {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Adds all {@code key=value} pairs, or all {@code key="value"} pairs if quoted is set, found like the syslog4j
+     * patterns {@code (\w+)=([^\s"]*)} and {@code (\w+)="([^"]*)"}.
+     */
+    private static void parseKeyValues(byte[] msg, int from, int to, boolean quoted, Map<String, Object> fields) {
+        int position = from;
+        while (position < to) {
+            if (!isWordChar(msg[position])) {
+                position++;
+                continue;
+            }
+            int keyEnd = position;
+            while (keyEnd < to && isWordChar(msg[keyEnd])) {
+                keyEnd++;
+            }
+            if (keyEnd < to && msg[keyEnd] == '=') {
+                if (!quoted) {
+                    int valueEnd = keyEnd + 1;
+                    while (valueEnd < to && msg[valueEnd] != '"' && !isWhitespace(msg[valueEnd])) {
+                        valueEnd++;
+                    }
+                    fields.put(string(msg, position, keyEnd), string(msg, keyEnd + 1, valueEnd));
+                    position = valueEnd;
+                    continue;
+                }
+                if (keyEnd + 1 < to && msg[keyEnd + 1] == '"') {
+                    final int valueEnd = indexOf(msg, '"', keyEnd + 2);
+                    if (valueEnd >= 0 && valueEnd < to) {
+                        fields.put(string(msg, position, keyEnd), string(msg, keyEnd + 2, valueEnd));
+                        position = valueEnd + 1;
+                        continue;
+                    }
+                }
+            }
+            // a shorter key starting within the same word can't be followed by "=" either
+            position = keyEnd;
+        }
+    }
+
+    private static long parseCiscoTimestamp(String timestamp, java.time.format.DateTimeFormatter format) {
+        return ZonedDateTime.parse(timestamp, format).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Returns the sequence number of a Cisco message, 0 if there is none, or -1 if it exceeds an int.
+     */
+    private static int parseSequenceNumber(byte[] msg, int from, int to) {
+        long sequenceNumber = 0;
+        for (int i = from; i < to; i++) {
+            sequenceNumber = sequenceNumber * 10 + (msg[i] - '0');
+            if (sequenceNumber > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return (int) sequenceNumber;
+    }
+
+    @Nullable
+    private Long parseIsoTimestamp(String timestamp) {
+        final int length = timestamp.length();
+        if (length < 6) {
+            return null;
+        }
+        boolean hasTimeZone = false;
+        for (int i = 0; i < length; i++) {
+            final char c = timestamp.charAt(i);
+            if (!isIsoTimestampChar(c)) {
+                return null;
+            }
+            if (i >= length - 6 && (c == 'Z' || c == '+' || c == '-')) {
+                hasTimeZone = true;
+            }
+        }
+        try {
+            return (hasTimeZone ? isoParser : isoParserWithDefaultZone).parseMillis(timestamp);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parses "MMM dd HH:mm:ss", "MMM  d HH:mm:ss" or "MMM d HH:mm:ss" in the current year. Lenient corner cases
+     * like invalid days or local times within a DST transition are left to syslog4j.
+     */
+    @Nullable
+    private Long parseBsdTimestamp(byte[] msg, int start, boolean singleDigitDay) {
+        final int month = parseMonth(msg, start);
+        if (month < 0 || msg[start + 3] != ' ') {
+            return null;
+        }
+        final int day;
+        final int time;
+        if (singleDigitDay) {
+            day = digit(msg[start + 4]);
+            time = start + 6;
+        } else {
+            final byte tens = msg[start + 4];
+            day = tens == ' ' ? digit(msg[start + 5]) : twoDigits(msg, start + 4);
+            if (msg[start + 6] != ' ') {
+                return null;
+            }
+            time = start + 7;
+        }
+        if (msg[time + 2] != ':' || msg[time + 5] != ':') {
+            return null;
+        }
+        final int hour = twoDigits(msg, time);
+        final int minute = twoDigits(msg, time + 3);
+        final int second = twoDigits(msg, time + 6);
+        if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+            return null;
+        }
+
+        // like syslog4j, take the current year of the JVM time zone, not of the configured one
+        final ZoneId systemZoneId = ZoneId.systemDefault();
+        final int year = Year.now(systemZoneId).getValue();
+        final ZoneId zoneId = defaultZoneId == null ? systemZoneId : defaultZoneId;
+        if (day < 1 || day > YearMonth.of(year, month).lengthOfMonth()) {
+            return null;
+        }
+        final LocalDateTime dateTime = LocalDateTime.of(year, month, day, hour, minute, second);
+        final ZoneRules rules = zoneId.getRules();
+        if (!rules.isFixedOffset() && rules.getTransition(dateTime) != null) {
+            return null;
+        }
+        return dateTime.toEpochSecond(rules.getOffset(dateTime)) * 1000L;
+    }
+
+    private static int parseMonth(byte[] msg, int start) {
+        for (int i = 0; i < MONTHS.length; i++) {
+            if (startsWith(msg, MONTHS[i], start)) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the closing bracket of a {@code <PRI>} with one to three digits, or -1.
+     */
+    private static int priorityEnd(byte[] msg) {
+        if (msg.length < 3 || msg[0] != '<') {
+            return -1;
+        }
+        for (int i = 1; i < msg.length && i <= 4; i++) {
+            final byte b = msg[i];
+            if (b == '>') {
+                return i > 1 ? i : -1;
+            }
+            if (!isDigit(b)) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private static int parsePriority(byte[] msg, int priEnd) {
+        int priority = 0;
+        for (int i = 1; i < priEnd; i++) {
+            priority = priority * 10 + (msg[i] - '0');
+        }
+        return priority;
+    }
+
+    private static String string(byte[] msg, int from, int to) {
+        return new String(msg, from, to - from, StandardCharsets.UTF_8);
+    }
+
+    private static int indexOf(byte[] msg, char c, int from) {
+        for (int i = from; i < msg.length; i++) {
+            if (msg[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(byte[] msg, String value, int from) {
+        for (int i = from; i <= msg.length - value.length(); i++) {
+            if (startsWith(msg, value, i)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean startsWith(byte[] msg, String prefix, int offset) {
+        if (offset + prefix.length() > msg.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (msg[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(byte[] msg, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (msg[i] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the characters of "." in java.util.regex: \n, \r, U+0085, U+2028 and U+2029
+    private static boolean containsLineTerminator(byte[] msg, int from, int to) {
+        for (int i = from; i < to; i++) {
+            final int b = msg[i] & 0xFF;
+            if (b == '\n' || b == '\r'
+                    || (b == 0xC2 && i + 1 < to && (msg[i + 1] & 0xFF) == 0x85)
+                    || (b == 0xE2 && i + 2 < to && (msg[i + 1] & 0xFF) == 0x80 && ((msg[i + 2] & 0xFF) == 0xA8 || (msg[i + 2] & 0xFF) == 0xA9))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int twoDigits(byte[] msg, int position) {
+        final int tens = digit(msg[position]);
+        final int ones = digit(msg[position + 1]);
+        return tens < 0 || ones < 0 ? -1 : tens * 10 + ones;
+    }
+
+    private static int digit(int c) {
+        return isDigit(c) ? c - '0' : -1;
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // the characters of \s in java.util.regex
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
+    }
+
+    // the characters of \w in java.util.regex
+    private static boolean isWordChar(int c) {
+        return isDigit(c) || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || c == '_';
+    }
+
+    private static boolean isIsoTimestampChar(char c) {
+        return isDigit(c) || (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z')
+                || c == ':' || c == '.' || c == ',' || c == '+' || c == '-';
+    }
+
+    @Nullable
+    private static String nilToNull(String value) {
+        return "-".equals(value) ? null : value;
+    }
+}
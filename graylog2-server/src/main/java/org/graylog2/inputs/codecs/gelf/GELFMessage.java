@@ -20,7 +20,9 @@ import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.Tools;
 
 import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -96,6 +98,28 @@ public class GELFMessage {
         return null;
     }
 
+    /**
+     * Return a stream of the JSON payload of the GELF message, inflating compressed payloads while they are read.
+     * The caller must close the returned stream.
+     *
+     * @param maxBytes The maximum number of bytes to read from a compressed GELF payload.
+     * @return A stream of the raw (not decoded) JSON payload of the GELF message.
+     * @throws IOException if the header of a GZIP compressed payload is invalid
+     * @see #getJSON(long, Charset)
+     */
+    public InputStream getJSONStream(long maxBytes) throws IOException {
+        switch (getGELFType()) {
+            case ZLIB:
+                return InflatingPayloadInputStream.zlib(payload, maxBytes);
+            case GZIP:
+                return InflatingPayloadInputStream.gzip(payload, maxBytes);
+            case UNCOMPRESSED:
+                return new ByteArrayInputStream(payload);
+            default:
+                throw new IllegalStateException("Unknown GELF type. Not supported.");
+        }
+    }
+
     public byte[] getPayload() {
         return payload;
     }
@@ -139,7 +163,7 @@ public class GELFMessage {
             this.second = second;
         }
 
-        static Type determineType(final byte first, final byte second) {
+        public static Type determineType(final byte first, final byte second) {
 
             if (first == ZLIB.first()) {
                 // zlib's second byte is for flags and a checksum -
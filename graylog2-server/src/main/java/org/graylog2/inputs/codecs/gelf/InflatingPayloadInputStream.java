@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.codecs.gelf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Inflates a ZLIB (RFC 1950) or GZIP (RFC 1952) compressed GELF payload straight from its backing array.
+ * <p>
+ * Behaves like {@link java.util.zip.InflaterInputStream} and {@link java.util.zip.GZIPInputStream} wrapped in
+ * {@link com.google.common.io.ByteStreams#limit(InputStream, long)}, but reuses one {@link Inflater} per thread
+ * instead of allocating a new one (and its native zlib state) for every message. The inflater is returned to the
+ * pool when the stream is closed.
+ */
+final class InflatingPayloadInputStream extends InputStream {
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private static final ThreadLocal<PooledInflater> ZLIB_INFLATERS = ThreadLocal.withInitial(() -> new PooledInflater(false));
+    private static final ThreadLocal<PooledInflater> GZIP_INFLATERS = ThreadLocal.withInitial(() -> new PooledInflater(true));
+
+    private final byte[] payload;
+    private final boolean gzip;
+    private final CRC32 crc;
+    private final byte[] single = new byte[1];
+    private final PooledInflater pooled;
+    private Inflater inflater;
+    private long remaining;
+    private boolean eof;
+
+    private InflatingPayloadInputStream(byte[] payload, boolean gzip, long maxBytes) {
+        this.payload = payload;
+        this.gzip = gzip;
+        this.crc = gzip ? new CRC32() : null;
+        this.remaining = maxBytes;
+
+        final PooledInflater candidate = (gzip ? GZIP_INFLATERS : ZLIB_INFLATERS).get();
+        if (candidate.leased) {
+            // A stream on this thread is still open, don't share its inflater.
+            this.pooled = null;
+            this.inflater = new Inflater(gzip);
+        } else {
+            candidate.leased = true;
+            this.pooled = candidate;
+            this.inflater = candidate.inflater;
+        }
+    }
+
+    static InflatingPayloadInputStream zlib(byte[] payload, long maxBytes) {
+        final InflatingPayloadInputStream in = new InflatingPayloadInputStream(payload, false, maxBytes);
+        in.inflater.setInput(payload, 0, payload.length);
+        return in;
+    }
+
+    static InflatingPayloadInputStream gzip(byte[] payload, long maxBytes) throws IOException {
+        final InflatingPayloadInputStream in = new InflatingPayloadInputStream(payload, true, maxBytes);
+        try {
+            final int headerSize = in.readGzipHeader(0);
+            in.inflater.setInput(payload, headerSize, payload.length - headerSize);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(single, 0, 1) == -1 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (inflater == null) {
+            throw new IOException("Stream closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (eof || remaining <= 0) {
+            return -1;
+        }
+        final int max = (int) Math.min(len, remaining);
+        while (true) {
+            final int n;
+            try {
+                n = inflater.inflate(b, off, max);
+            } catch (DataFormatException e) {
+                final String message = e.getMessage();
+                throw new ZipException(message != null ? message : "Invalid ZLIB data format");
+            }
+            if (n > 0) {
+                if (gzip) {
+                    crc.update(b, off, n);
+                }
+                remaining -= n;
+                return n;
+            }
+            if (inflater.finished()) {
+                if (!gzip || !nextGzipMember()) {
+                    eof = true;
+                    return -1;
+                }
+            } else if (inflater.needsDictionary()) {
+                throw new ZipException("ZLIB dictionary missing");
+            } else if (inflater.needsInput()) {
+                throw new EOFException("Unexpected end of " + (gzip ? "GZIP" : "ZLIB") + " input stream");
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (inflater == null) {
+            return;
+        }
+        if (pooled != null) {
+            inflater.reset();
+            pooled.leased = false;
+        } else {
+            inflater.end();
+        }
+        inflater = null;
+    }
+
+    /**
+     * Verifies the trailer of the current GZIP member and starts inflating the next one, if there is one. Like
+     * {@link java.util.zip.GZIPInputStream}, trailing bytes which do not form a valid GZIP header are ignored.
+     */
+    private boolean nextGzipMember() throws IOException {
+        final int trailer = payload.length - inflater.getRemaining();
+        if (trailer + GZIP_TRAILER_SIZE > payload.length) {
+            throw new EOFException("Unexpected end of GZIP input stream");
+        }
+        if (readUInt(trailer) != crc.getValue() || readUInt(trailer + 4) != (inflater.getBytesWritten() & 0xffffffffL)) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+
+        final int next = trailer + GZIP_TRAILER_SIZE;
+        final int headerSize;
+        try {
+            headerSize = readGzipHeader(next);
+        } catch (IOException e) {
+            return false;
+        }
+        inflater.reset();
+        crc.reset();
+        inflater.setInput(payload, next + headerSize, payload.length - next - headerSize);
+        return true;
+    }
+
+    /**
+     * @return the size of the GZIP member header starting at {@code offset}
+     */
+    private int readGzipHeader(int offset) throws IOException {
+        crc.reset();
+        if (readUShort(offset) != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (readUByte(offset + 2) != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        final int flags = readUByte(offset + 3);
+        // Skip MTIME, XFL, and OS fields
+        int pos = offset + 10;
+        if ((flags & FEXTRA) == FEXTRA) {
+            pos += 2 + readUShort(pos);
+        }
+        if ((flags & FNAME) == FNAME) {
+            pos = skipZeroTerminated(pos);
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            pos = skipZeroTerminated(pos);
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            ensureAvailable(pos, 2);
+            crc.update(payload, offset, pos - offset);
+            if ((crc.getValue() & 0xffff) != readUShort(pos)) {
+                throw new ZipException("Corrupt GZIP header");
+            }
+            pos += 2;
+        }
+        ensureAvailable(pos, 0);
+        crc.reset();
+        return pos - offset;
+    }
+
+    private int skipZeroTerminated(int pos) throws EOFException {
+        while (readUByte(pos) != 0) {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    private long readUInt(int pos) throws EOFException {
+        return ((long) readUShort(pos + 2) << 16) | readUShort(pos);
+    }
+
+    private int readUShort(int pos) throws EOFException {
+        return (readUByte(pos + 1) << 8) | readUByte(pos);
+    }
+
+    private int readUByte(int pos) throws EOFException {
+        ensureAvailable(pos, 1);
+        return payload[pos] & 0xff;
+    }
+
+    private void ensureAvailable(int pos, int length) throws EOFException {
+        if (pos < 0 || pos + length > payload.length) {
+            throw new EOFException();
+        }
+    }
+
+    private static final class PooledInflater {
+        private final Inflater inflater;
+        private boolean leased;
+
+        private PooledInflater(boolean nowrap) {
+            this.inflater = new Inflater(nowrap);
+        }
+    }
+}
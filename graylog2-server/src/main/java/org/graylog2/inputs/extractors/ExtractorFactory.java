@@ -22,6 +22,7 @@ import org.graylog2.grok.GrokPatternRegistry;
 import org.graylog2.lookup.LookupTableService;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
+import org.graylog2.utilities.CompiledPatternCache;
 
 import jakarta.inject.Inject;
 
@@ -32,12 +33,17 @@ public class ExtractorFactory {
     private final MetricRegistry metricRegistry;
     private final GrokPatternRegistry grokPatternRegistry;
     private final LookupTableService lookupTableService;
+    private final CompiledPatternCache patternCache;
 
     @Inject
-    public ExtractorFactory(MetricRegistry metricRegistry, GrokPatternRegistry grokPatternRegistry, LookupTableService lookupTableService) {
+    public ExtractorFactory(MetricRegistry metricRegistry,
+                            GrokPatternRegistry grokPatternRegistry,
+                            LookupTableService lookupTableService,
+                            CompiledPatternCache patternCache) {
         this.metricRegistry = metricRegistry;
         this.grokPatternRegistry = grokPatternRegistry;
         this.lookupTableService = lookupTableService;
+        this.patternCache = patternCache;
     }
 
     public Extractor factory(String id,
@@ -56,7 +62,7 @@ public class ExtractorFactory {
         // TODO convert to guice factory
         switch (type) {
             case REGEX:
-                return new RegexExtractor(metricRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
+                return new RegexExtractor(metricRegistry, patternCache, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
             case SUBSTRING:
                 return new SubstringExtractor(metricRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
             case SPLIT_AND_INDEX:
@@ -64,7 +70,7 @@ public class ExtractorFactory {
             case COPY_INPUT:
                 return new CopyInputExtractor(metricRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
             case REGEX_REPLACE:
-                return new RegexReplaceExtractor(metricRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
+                return new RegexReplaceExtractor(metricRegistry, patternCache, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
             case GROK:
                 return new GrokExtractor(metricRegistry, grokPatternRegistry, id, title, order, cursorStrategy, sourceField, targetField, extractorConfig, creatorUserId, converters, conditionType, conditionValue);
             case JSON:
@@ -18,7 +18,6 @@ package org.graylog2.inputs.extractors;
 
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Strings;
-import io.krakens.grok.api.Grok;
 import io.krakens.grok.api.Match;
 import org.graylog2.ConfigurationException;
 import org.graylog2.grok.GrokPatternRegistry;
@@ -73,10 +72,8 @@ public class GrokExtractor extends Extractor {
 
     @Override
     protected Result[] run(String value) {
-        final Grok grok = grokPatternRegistry.cachedGrokForPattern(this.pattern, this.namedCapturesOnly);
-
         // the extractor instance is rebuilt every second anyway
-        final Match match = grok.match(value);
+        final Match match = grokPatternRegistry.match(this.pattern, this.namedCapturesOnly, value);
         final Map<String, Object> matches = match.captureFlattened();
         final List<Result> results = new ArrayList<>(matches.size());
 
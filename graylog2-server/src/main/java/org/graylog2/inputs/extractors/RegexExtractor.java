@@ -20,6 +20,7 @@ import com.codahale.metrics.MetricRegistry;
 import org.graylog2.ConfigurationException;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
+import org.graylog2.utilities.CompiledPatternCache;
 
 import java.util.List;
 import java.util.Map;
@@ -32,6 +33,7 @@ public class RegexExtractor extends Extractor {
     private final Pattern pattern;
 
     public RegexExtractor(final MetricRegistry metricRegistry,
+                          final CompiledPatternCache patternCache,
                           final String id,
                           final String title,
                           final long order,
@@ -49,7 +51,7 @@ public class RegexExtractor extends Extractor {
             throw new ConfigurationException("Missing regex configuration field: regex_value");
         }
 
-        pattern = Pattern.compile((String) extractorConfig.get(CONFIG_REGEX_VALUE), Pattern.DOTALL);
+        pattern = patternCache.regex((String) extractorConfig.get(CONFIG_REGEX_VALUE), Pattern.DOTALL);
     }
 
     @Override
@@ -20,6 +20,7 @@ import com.codahale.metrics.MetricRegistry;
 import org.graylog2.ConfigurationException;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
+import org.graylog2.utilities.CompiledPatternCache;
 
 import java.util.List;
 import java.util.Map;
@@ -39,6 +40,7 @@ public class RegexReplaceExtractor extends Extractor {
     private final boolean replaceAll;
 
     public RegexReplaceExtractor(final MetricRegistry metricRegistry,
+                                 final CompiledPatternCache patternCache,
                                  final String id,
                                  final String title,
                                  final long order,
@@ -71,7 +73,7 @@ public class RegexReplaceExtractor extends Extractor {
             throw new ConfigurationException("Missing configuration field: " + CONFIG_REPLACE_ALL);
         }
 
-        this.pattern = Pattern.compile((String) configRegexValue, Pattern.DOTALL);
+        this.pattern = patternCache.regex((String) configRegexValue, Pattern.DOTALL);
         this.replacement = isNullOrEmpty((String) configReplaceValue) ? DEFAULT_REPLACE_VALUE : (String) configReplaceValue;
         this.replaceAll = configReplaceAll != null && (boolean) configReplaceAll;
     }
@@ -20,15 +20,18 @@ import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import com.github.joschi.jadconfig.validators.StringNotBlankValidator;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Suppliers;
 import io.netty.channel.epoll.Epoll;
 import io.netty.channel.kqueue.KQueue;
 import io.netty.handler.ssl.OpenSsl;
 import io.netty.handler.ssl.SslProvider;
+import org.graylog2.inputs.transports.netty.IOUringTransport;
 import org.graylog2.inputs.transports.netty.NettyTransportType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Locale;
+import java.util.function.Supplier;
 
 public class NettyTransportConfiguration {
     private static final Logger LOG = LoggerFactory.getLogger(NettyTransportConfiguration.class);
@@ -43,6 +46,9 @@ public class NettyTransportConfiguration {
     @Parameter(value = PREFIX + "num_threads", required = true, validators = PositiveIntegerValidator.class)
     private int numThreads = Runtime.getRuntime().availableProcessors() * 2;
 
+    // Resolved lazily because the parameters are injected after construction.
+    private final Supplier<NettyTransportType> resolvedType = Suppliers.memoize(this::resolveType);
+
     public NettyTransportConfiguration() {
     }
 
@@ -53,8 +59,17 @@ public class NettyTransportConfiguration {
         this.numThreads = numThreads;
     }
 
+    /**
+     * @return the Netty transport type to use, after falling back from an unavailable io_uring transport
+     */
     public NettyTransportType getType() {
+        return resolvedType.get();
+    }
+
+    private NettyTransportType resolveType() {
         switch (type.toLowerCase(Locale.ROOT)) {
+            case "io_uring":
+                return ioUringOrFallback();
             case "epoll":
                 return NettyTransportType.EPOLL;
             case "kqueue":
@@ -67,6 +82,17 @@ public class NettyTransportConfiguration {
         }
     }
 
+    private NettyTransportType ioUringOrFallback() {
+        if (IOUringTransport.isAvailable()) {
+            LOG.debug("Using io_uring for Netty transport.");
+            return NettyTransportType.IO_URING;
+        }
+        final NettyTransportType fallback = detectPlatform();
+        LOG.warn("io_uring Netty transport is not available ({}), falling back to {}.",
+                IOUringTransport.unavailabilityCause(), fallback.name().toLowerCase(Locale.ROOT));
+        return fallback;
+    }
+
     private NettyTransportType detectPlatform() {
         if (Epoll.isAvailable()) {
             LOG.debug("Using epoll for Netty transport.");
@@ -76,6 +76,7 @@ public class UdpTransport extends NettyTransport {
         super(configuration, eventLoopGroupFactory, throughputCounter, localRegistry);
         this.nettyTransportConfiguration = nettyTransportConfiguration;
         this.channels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        registerTransportTypeGauge(nettyTransportConfiguration);
     }
 
     @VisibleForTesting
@@ -125,7 +126,7 @@ public class UdpTransport extends NettyTransport {
             bootstrap = getBootstrap(input);
 
             final NettyTransportType transportType = nettyTransportConfiguration.getType();
-            int numChannels = (transportType == NettyTransportType.EPOLL || transportType == NettyTransportType.KQUEUE) ? workerThreads : 1;
+            int numChannels = (transportType == NettyTransportType.EPOLL || transportType == NettyTransportType.KQUEUE || transportType == NettyTransportType.IO_URING) ? workerThreads : 1;
             for (int i = 0; i < numChannels; i++) {
                 LOG.debug("Starting channel on {}", socketAddress);
                 bootstrap.bind(socketAddress)
@@ -38,6 +38,8 @@ public class DatagramChannelFactory implements ChannelFactory<DatagramChannel> {
                 return new KQueueDatagramChannel();
             case NIO:
                 return new NioDatagramChannel();
+            case IO_URING:
+                return IOUringTransport.newDatagramChannel();
             default:
                 throw new IllegalArgumentException("Invalid or unknown Netty transport type " + transportType);
         }
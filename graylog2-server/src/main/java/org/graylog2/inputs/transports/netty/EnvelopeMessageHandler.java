@@ -39,10 +39,8 @@ public class EnvelopeMessageHandler extends SimpleChannelInboundHandler<Addresse
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, AddressedEnvelope<ByteBuf, InetSocketAddress> envelope) throws Exception {
-        final ByteBuf msg = envelope.content();
-        final byte[] bytes = new byte[msg.readableBytes()];
-        msg.readBytes(bytes);
-        final RawMessage raw = new RawMessage(bytes, envelope.sender());
+        final ByteBuf payload = RawMessageHandler.retainedPayload(ctx.alloc(), envelope.content());
+        final RawMessage raw = new RawMessage(payload, envelope.sender());
         input.processRawMessage(raw);
     }
 
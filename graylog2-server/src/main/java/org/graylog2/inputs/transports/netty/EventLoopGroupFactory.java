@@ -53,6 +53,8 @@ public class EventLoopGroupFactory {
                 return kqueueEventLoopGroup(numThreads, executor);
             case NIO:
                 return nioEventLoopGroup(numThreads, executor);
+            case IO_URING:
+                return IOUringTransport.newEventLoopGroup(numThreads, executor);
             default:
                 throw new RuntimeException("Invalid or unknown netty transport type " + configuration.getType());
         }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.DatagramChannel;
+import io.netty.channel.socket.ServerSocketChannel;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.Executor;
+
+/**
+ * Access to Netty's io_uring transport from the {@code netty-incubator-transport-native-io_uring} artifact.
+ * <p>
+ * The server ships the artifact with its native libraries for Linux on x86_64 and aarch64. The transport is still
+ * optional: it is only used if its classes are on the class path and the running kernel supports io_uring, so it is
+ * loaded reflectively instead of being linked against. Everywhere else the configured transport falls back to the
+ * platform default.
+ */
+public final class IOUringTransport {
+    private static final String PACKAGE = "io.netty.incubator.channel.uring.";
+
+    @Nullable
+    private static final Throwable UNAVAILABILITY_CAUSE;
+    private static final MethodHandle NEW_EVENT_LOOP_GROUP;
+    private static final MethodHandle NEW_SERVER_SOCKET_CHANNEL;
+    private static final MethodHandle NEW_DATAGRAM_CHANNEL;
+
+    static {
+        Throwable cause;
+        MethodHandle newEventLoopGroup = null;
+        MethodHandle newServerSocketChannel = null;
+        MethodHandle newDatagramChannel = null;
+        try {
+            final Class<?> ioUring = Class.forName(PACKAGE + "IOUring");
+            cause = (Throwable) ioUring.getMethod("unavailabilityCause").invoke(null);
+            if (cause == null) {
+                final MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+                newEventLoopGroup = lookup.findConstructor(Class.forName(PACKAGE + "IOUringEventLoopGroup"),
+                        MethodType.methodType(void.class, int.class, Executor.class));
+                newServerSocketChannel = lookup.findConstructor(Class.forName(PACKAGE + "IOUringServerSocketChannel"),
+                        MethodType.methodType(void.class));
+                newDatagramChannel = lookup.findConstructor(Class.forName(PACKAGE + "IOUringDatagramChannel"),
+                        MethodType.methodType(void.class));
+            }
+        } catch (ReflectiveOperationException | LinkageError e) {
+            cause = e;
+        }
+        UNAVAILABILITY_CAUSE = cause;
+        NEW_EVENT_LOOP_GROUP = newEventLoopGroup;
+        NEW_SERVER_SOCKET_CHANNEL = newServerSocketChannel;
+        NEW_DATAGRAM_CHANNEL = newDatagramChannel;
+    }
+
+    private IOUringTransport() {
+    }
+
+    /**
+     * @return {@code true} if the io_uring transport is on the class path and supported by the kernel
+     */
+    public static boolean isAvailable() {
+        return UNAVAILABILITY_CAUSE == null;
+    }
+
+    /**
+     * @return the reason why the io_uring transport cannot be used or {@code null} if it is available
+     */
+    @Nullable
+    public static Throwable unavailabilityCause() {
+        return UNAVAILABILITY_CAUSE;
+    }
+
+    static EventLoopGroup newEventLoopGroup(int numThreads, Executor executor) {
+        return (EventLoopGroup) create(NEW_EVENT_LOOP_GROUP, numThreads, executor);
+    }
+
+    static ServerSocketChannel newServerSocketChannel() {
+        return (ServerSocketChannel) create(NEW_SERVER_SOCKET_CHANNEL);
+    }
+
+    static DatagramChannel newDatagramChannel() {
+        return (DatagramChannel) create(NEW_DATAGRAM_CHANNEL);
+    }
+
+    private static Object create(MethodHandle constructor, Object... args) {
+        if (UNAVAILABILITY_CAUSE != null) {
+            throw new IllegalStateException("io_uring transport is not available", UNAVAILABILITY_CAUSE);
+        }
+        try {
+            return constructor.invokeWithArguments(args);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Couldn't create io_uring transport object", t);
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.graylog2.inputs.transports.netty;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.util.AttributeKey;
@@ -45,16 +46,33 @@ public class RawMessageHandler extends SimpleChannelInboundHandler<ByteBuf> {
 
     @Override
     protected void channelRead0(ChannelHandlerContext ctx, ByteBuf msg) throws Exception {
-        final byte[] bytes = new byte[msg.readableBytes()];
-        msg.readBytes(bytes);
         InetSocketAddress remoteAddress = (InetSocketAddress) ctx.channel().remoteAddress();
         if (ctx.channel().hasAttr(ORIGINAL_IP_KEY)) {
             remoteAddress = ctx.channel().attr(ORIGINAL_IP_KEY).get();
         }
-        final RawMessage raw = new RawMessage(bytes, remoteAddress);
+        final RawMessage raw = new RawMessage(retainedPayload(ctx.alloc(), msg), remoteAddress);
         input.processRawMessage(raw);
     }
 
+    /**
+     * Returns a buffer with the readable bytes of the given message which is owned by the caller. The payload is
+     * usually retained without copying, so it can be written to the journal straight from pooled memory. It is only
+     * copied into a buffer of the exact size if the message is a small part of a larger buffer (e. g. a frame of a
+     * cumulation buffer or a datagram in a fixed-size receive buffer), which would otherwise be kept alive until
+     * the message has been journalled.
+     */
+    static ByteBuf retainedPayload(ByteBufAllocator alloc, ByteBuf msg) {
+        final int readableBytes = msg.readableBytes();
+        ByteBuf root = msg;
+        while (root.unwrap() != null) {
+            root = root.unwrap();
+        }
+        if (root.capacity() <= 2L * readableBytes) {
+            return msg.retainedDuplicate();
+        }
+        return alloc.buffer(readableBytes, readableBytes).writeBytes(msg, msg.readerIndex(), readableBytes);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         LOG.debug("Could not handle message, closing connection.", cause);
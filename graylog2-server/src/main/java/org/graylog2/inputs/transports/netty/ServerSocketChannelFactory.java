@@ -38,6 +38,8 @@ public class ServerSocketChannelFactory implements ChannelFactory<ServerSocketCh
                 return new KQueueServerSocketChannel();
             case NIO:
                 return new NioServerSocketChannel();
+            case IO_URING:
+                return IOUringTransport.newServerSocketChannel();
             default:
                 throw new IllegalArgumentException("Invalid or unknown Netty transport type " + transportType);
         }
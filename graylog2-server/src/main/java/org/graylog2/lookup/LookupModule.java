@@ -24,6 +24,7 @@ import org.graylog2.lookup.adapters.DSVHTTPDataAdapter;
 import org.graylog2.lookup.adapters.DnsLookupDataAdapter;
 import org.graylog2.lookup.adapters.HTTPJSONPathDataAdapter;
 import org.graylog2.lookup.caches.CaffeineLookupCache;
+import org.graylog2.lookup.caches.MappedFileLookupCache;
 import org.graylog2.lookup.caches.NullCache;
 import org.graylog2.lookup.db.DBLookupTableConfigService;
 import org.graylog2.plugin.inject.Graylog2Module;
@@ -62,6 +63,11 @@ public class LookupModule extends Graylog2Module {
                 CaffeineLookupCache.Factory.class,
                 CaffeineLookupCache.Config.class);
 
+        installLookupCache(MappedFileLookupCache.NAME,
+                MappedFileLookupCache.class,
+                MappedFileLookupCache.Factory.class,
+                MappedFileLookupCache.Config.class);
+
         installLookupDataAdapter(CSVFileDataAdapter.NAME,
                 CSVFileDataAdapter.class,
                 CSVFileDataAdapter.Factory.class,
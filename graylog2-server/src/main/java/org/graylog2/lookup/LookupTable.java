@@ -27,7 +27,10 @@ import org.graylog2.plugin.lookup.LookupResult;
 
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import static com.google.common.collect.Streams.stream;
@@ -71,9 +74,39 @@ public abstract class LookupTable {
 
     @Nullable
     public LookupResult lookup(@Nonnull Object key) {
-        final LookupResult result = cache().get(LookupCacheKey.create(dataAdapter(), key), () -> dataAdapter().get(key));
+        return withDefaults(cache().get(LookupCacheKey.create(dataAdapter(), key), () -> dataAdapter().get(key)));
+    }
+
+    /**
+     * Looks up multiple keys at once. Keys which are not cached are loaded from the data adapter in a single request,
+     * which adapters can use to batch or parallelize their lookups.
+     *
+     * @param keys the keys to look up
+     * @return the results by key, containing an entry for every given key
+     */
+    public Map<Object, LookupResult> lookupAll(@Nonnull Collection<Object> keys) {
+        final LookupDataAdapter dataAdapter = dataAdapter();
+        final Map<LookupCacheKey, Object> keysByCacheKey = new HashMap<>(keys.size());
+        for (Object key : keys) {
+            keysByCacheKey.put(LookupCacheKey.create(dataAdapter, key), key);
+        }
 
-        if (result.hasError()) {
+        final Map<LookupCacheKey, LookupResult> cached = cache().getAll(keysByCacheKey.keySet(), missingKeys -> {
+            final List<Object> adapterKeys = missingKeys.stream().map(LookupCacheKey::key).toList();
+            final Map<Object, LookupResult> loaded = dataAdapter.getAll(adapterKeys);
+            final Map<LookupCacheKey, LookupResult> results = new HashMap<>(loaded.size());
+            loaded.forEach((key, result) -> results.put(LookupCacheKey.create(dataAdapter, key), result));
+            return results;
+        });
+
+        final Map<Object, LookupResult> results = new HashMap<>(cached.size());
+        cached.forEach((cacheKey, result) -> results.put(keysByCacheKey.get(cacheKey), withDefaults(result)));
+        return results;
+    }
+
+    @Nullable
+    private LookupResult withDefaults(@Nullable LookupResult result) {
+        if (result == null || result.hasError()) {
             return result;
         }
         // The default value will only be used if single, multi and list values are empty
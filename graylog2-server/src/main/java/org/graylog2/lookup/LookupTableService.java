@@ -49,6 +49,7 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -654,6 +655,43 @@ public class LookupTableService extends AbstractIdleService {
             return result;
         }
 
+        /**
+         * Looks up multiple keys at once, see {@link LookupTable#lookupAll(Collection)}.
+         *
+         * @param keys the keys to look up
+         * @return the results by key, containing an entry for every given key
+         */
+        public Map<Object, LookupResult> lookupAll(@Nonnull Collection<Object> keys) {
+            final LookupTable lookupTable = lookupTableService.getTable(lookupTableName);
+            final Map<Object, LookupResult> results = new HashMap<>(keys.size());
+            if (lookupTable == null) {
+                keys.forEach(key -> results.put(key, LookupResult.withError()));
+                return results;
+            }
+
+            lookupTable.lookupAll(keys).forEach((key, result) -> {
+                if (result == null || (!result.hasError() && result.isEmpty())) {
+                    results.put(key, LookupResult.empty());
+                } else {
+                    results.put(key, result);
+                }
+            });
+            return results;
+        }
+
+        /**
+         * Loads the given keys into the lookup table's cache, so subsequent single-key lookups don't have to go
+         * to the data adapter one by one. Does nothing if the lookup table's cache doesn't keep results.
+         *
+         * @param keys the keys to load
+         */
+        public void prefetch(@Nonnull Collection<Object> keys) {
+            final LookupTable lookupTable = lookupTableService.getTable(lookupTableName);
+            if (lookupTable != null && !keys.isEmpty() && lookupTable.cache().retainsResults()) {
+                lookupTable.lookupAll(keys);
+            }
+        }
+
         private Object requireValidKey(Object key) {
             return requireNonNull(key, "key cannot be null");
         }
@@ -28,16 +28,21 @@ import com.google.auto.value.AutoValue;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
+import com.google.common.io.ByteArrayDataInput;
+import com.google.common.io.ByteArrayDataOutput;
+import com.google.common.io.ByteStreams;
 import com.google.common.net.InetAddresses;
 import com.google.common.primitives.Ints;
 import com.google.inject.assistedinject.Assisted;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Size;
 import org.apache.commons.lang3.StringUtils;
 import org.graylog.autovalue.WithBeanGetter;
 import org.graylog2.lookup.AllowedAuxiliaryPathChecker;
+import org.graylog2.lookup.store.MappedLookupStore;
 import org.graylog2.plugin.lookup.LookupCachePurge;
 import org.graylog2.plugin.lookup.LookupDataAdapter;
 import org.graylog2.plugin.lookup.LookupDataAdapterConfiguration;
@@ -58,11 +63,13 @@ import java.net.Inet4Address;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -94,6 +101,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
     private final AtomicReference<Map<String, String>> lookupRef = new AtomicReference<>(ImmutableMap.of());
     private final AtomicReference<Map<String, Map<Object, Object>>> multiValueLookupRef = new AtomicReference<>(ImmutableMap.of());
     private final AtomicReference<CIDRPatriciaTrie> cidrLookupRef = new AtomicReference<>(new CIDRPatriciaTrie());
+    // Only used if the adapter keeps its data in a memory-mapped file instead of the maps above
+    private final AtomicReference<MappedLookupStore> storeRef = new AtomicReference<>();
+    private final Path storeDir;
     private final String name;
 
     private FileInfo fileInfo = FileInfo.empty();
@@ -103,11 +113,13 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                               @Assisted("name") String name,
                               @Assisted LookupDataAdapterConfiguration config,
                               MetricRegistry metricRegistry,
-                              AllowedAuxiliaryPathChecker pathChecker) {
+                              AllowedAuxiliaryPathChecker pathChecker,
+                              @Named("lookup_table_store_dir") Path storeDir) {
         super(id, name, config, metricRegistry);
         this.name = name;
         this.config = (Config) config;
         this.pathChecker = pathChecker;
+        this.storeDir = storeDir;
     }
 
     @Override
@@ -123,6 +135,10 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             throw new IllegalStateException("Check interval setting cannot be smaller than 1");
         }
 
+        if (useStore()) {
+            deleteStoreFiles();
+        }
+
         // Set file info before parsing the data for the first time
         fileInfo = getNewFileInfo();
         if (!config.isMultiValueLookup()) {
@@ -180,8 +196,10 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
         final InputStreamReader fileReader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
         final ImmutableMap.Builder<String, String> newLookupBuilder = ImmutableMap.builder();
         final CIDRPatriciaTrie cidrLookupTrie = new CIDRPatriciaTrie();
+        MappedLookupStore newStore = null;
 
-        try (final CSVReader csvReader = new CSVReader(fileReader, config.separatorAsChar(), config.quotecharAsChar())) {
+        try (final CSVReader csvReader = new CSVReader(fileReader, config.separatorAsChar(), config.quotecharAsChar());
+             final MappedLookupStore.Builder storeBuilder = useStore() ? newStoreBuilder() : null) {
             int line = 0;
             int keyColumn = -1;
             int valueColumn = -1;
@@ -228,7 +246,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                         throw new IllegalStateException(error, e);
                     }
 
-                    if (!config.isCidrLookup()) {
+                    if (storeBuilder != null) {
+                        storeBuilder.put(storeKey(key), value.getBytes(StandardCharsets.UTF_8));
+                    } else if (!config.isCidrLookup()) {
                         if (config.isCaseInsensitiveLookup()) {
                             newLookupBuilder.put(key.toLowerCase(Locale.ENGLISH), value);
                         } else {
@@ -240,7 +260,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                     }
                 }
             }
-
+            if (storeBuilder != null) {
+                newStore = storeBuilder.build();
+            }
         } catch (Exception e) {
             LOG.error("Couldn't parse CSV file {} (settings separator=<{}> quotechar=<{}> key_column=<{}> value_column=<{}>)", config.path(),
                     config.separator(), config.quotechar(), config.keyColumn(), config.valueColumn(), e);
@@ -248,7 +270,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             throw new IllegalStateException(e);
         }
 
-        if (config.isCidrLookup()) {
+        if (newStore != null) {
+            swapStore(newStore);
+        } else if (config.isCidrLookup()) {
             cidrLookupRef.set(cidrLookupTrie);
         } else {
             lookupRef.set(newLookupBuilder.build());
@@ -266,7 +290,8 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                 .filter(s -> !s.isEmpty())
                 .toList();
 
-        try (final CSVReader csvReader = new CSVReader(fileReader, config.separatorAsChar(), config.quotecharAsChar())) {
+        try (final CSVReader csvReader = new CSVReader(fileReader, config.separatorAsChar(), config.quotecharAsChar());
+             final MappedLookupStore.Builder storeBuilder = useStore() ? newStoreBuilder() : null) {
             int line = 0;
             int keyColumn = -1;
 
@@ -324,7 +349,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                             throw new IllegalStateException(error, e);
                         }
                     });
-                    if (!config.isCidrLookup()) {
+                    if (storeBuilder != null) {
+                        storeBuilder.put(storeKey(key), encodeMultiValue(values));
+                    } else if (!config.isCidrLookup()) {
                         if (config.isCaseInsensitiveLookup()) {
                             multiValueLookupBuilder.put(key.toLowerCase(Locale.ENGLISH), values);
                         } else {
@@ -337,7 +364,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                     }
                 }
             }
-            if (config.isCidrLookup()) {
+            if (storeBuilder != null) {
+                swapStore(storeBuilder.build());
+            } else if (config.isCidrLookup()) {
                 cidrLookupRef.set(cidrLookupTrie);
             } else {
                 multiValueLookupRef.set(multiValueLookupBuilder.build());
@@ -351,6 +380,75 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
 
     }
 
+    private boolean useStore() {
+        // CIDR lookups need the prefix trie, they can't use the hash index of the store
+        return config.isMemoryMapped() && !config.isCidrLookup();
+    }
+
+    private MappedLookupStore.Builder newStoreBuilder() throws IOException {
+        Files.createDirectories(storeDir);
+        return MappedLookupStore.builder(Files.createTempFile(storeDir, storeFilePrefix(), ".store"));
+    }
+
+    private String storeFilePrefix() {
+        return NAME + "-" + id() + "-";
+    }
+
+    private void swapStore(MappedLookupStore newStore) {
+        final MappedLookupStore oldStore = storeRef.getAndSet(newStore);
+        if (oldStore != null) {
+            oldStore.close();
+        }
+    }
+
+    // Removes files left behind by an earlier run of this adapter
+    private void deleteStoreFiles() throws IOException {
+        if (!Files.isDirectory(storeDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(storeDir, storeFilePrefix() + "*.store")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private byte[] storeKey(String key) {
+        return (config.isCaseInsensitiveLookup() ? key.toLowerCase(Locale.ENGLISH) : key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encodeMultiValue(Map<Object, Object> values) {
+        final ByteArrayDataOutput out = ByteStreams.newDataOutput();
+        out.writeInt(values.size());
+        values.forEach((column, value) -> {
+            writeString(out, column.toString());
+            writeString(out, value.toString());
+        });
+        return out.toByteArray();
+    }
+
+    private static Map<Object, Object> decodeMultiValue(byte[] bytes) {
+        final ByteArrayDataInput in = ByteStreams.newDataInput(bytes);
+        final int size = in.readInt();
+        final Map<Object, Object> values = new HashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            values.put(readString(in), readString(in));
+        }
+        return values;
+    }
+
+    private static void writeString(ByteArrayDataOutput out, String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteArrayDataInput in) {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     private void addToCidrTrie(IpSubnet optSubnet, CIDRPatriciaTrie cidrLookupTrie, String key, String singleValue) {
         if (optSubnet != null) {
             cidrLookupTrie.insertCIDR(key, singleValue);
@@ -385,6 +483,10 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
     @Override
     public void doStop() throws Exception {
         LOG.debug("Stopping CSV data adapter for file: {}", config.path());
+        final MappedLookupStore store = storeRef.getAndSet(null);
+        if (store != null) {
+            store.close();
+        }
     }
 
     @Override
@@ -397,7 +499,14 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
         }
 
         final String stringKey = config.isCaseInsensitiveLookup() ? String.valueOf(key).toLowerCase(Locale.ENGLISH) : String.valueOf(key);
-        final String value = lookupRef.get().get(stringKey);
+        final String value;
+        final MappedLookupStore store = storeRef.get();
+        if (store != null) {
+            final byte[] bytes = store.get(stringKey.getBytes(StandardCharsets.UTF_8));
+            value = bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        } else {
+            value = lookupRef.get().get(stringKey);
+        }
 
         if (value == null) {
             return getEmptyResult();
@@ -413,8 +522,20 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
 
     @Override
     public LookupPreview getPreview(int size) {
+        final MappedLookupStore store = storeRef.get();
         if (config.isCidrLookup()) {
             return cidrLookupRef.get().getPreview(size);
+        } else if (store != null) {
+            final Map<Object, Object> result = new HashMap<>();
+            final Iterator<Map.Entry<byte[], byte[]>> entries = store.iterator();
+            while (entries.hasNext() && result.size() < size) {
+                final Map.Entry<byte[], byte[]> entry = entries.next();
+                final String value = config.isMultiValueLookup()
+                        ? toSingleValue(decodeMultiValue(entry.getValue()))
+                        : new String(entry.getValue(), StandardCharsets.UTF_8);
+                result.put(new String(entry.getKey(), StandardCharsets.UTF_8), value);
+            }
+            return new LookupPreview(store.size(), result);
         } else {
             final Map<Object, Object> result = new HashMap<>();
             final Map<String, String> lookup = lookupRef.get();
@@ -449,7 +570,14 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
 
     private LookupResult getMultiValueLookup(Object key) {
         final String stringKey = config.isCaseInsensitiveLookup() ? String.valueOf(key).toLowerCase(Locale.ENGLISH) : String.valueOf(key);
-        final Map<Object, Object> value = multiValueLookupRef.get().get(stringKey);
+        final Map<Object, Object> value;
+        final MappedLookupStore store = storeRef.get();
+        if (store != null) {
+            final byte[] bytes = store.get(stringKey.getBytes(StandardCharsets.UTF_8));
+            value = bytes == null ? null : decodeMultiValue(bytes);
+        } else {
+            value = multiValueLookupRef.get().get(stringKey);
+        }
 
         if (value == null) {
             return getEmptyResult();
@@ -511,6 +639,7 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
                     .caseInsensitiveLookup(false)
                     .cidrLookup(false)
                     .multiValueLookup(false)
+                    .memoryMapped(false)
                     .build();
         }
     }
@@ -575,6 +704,13 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
         @JsonProperty("cidr_lookup")
         public abstract Optional<Boolean> cidrLookup();
 
+        /**
+         * Keep the data in a memory-mapped file instead of the Java heap. Meant for large files, which would otherwise
+         * need a lot of heap, twice as much while the file is reloaded.
+         */
+        @JsonProperty("memory_mapped")
+        public abstract Optional<Boolean> memoryMapped();
+
         public boolean isCaseInsensitiveLookup() {
             return caseInsensitiveLookup().isPresent() && caseInsensitiveLookup().get();
         }
@@ -587,6 +723,10 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             return cidrLookup().isPresent() && cidrLookup().get();
         }
 
+        public boolean isMemoryMapped() {
+            return memoryMapped().isPresent() && memoryMapped().get();
+        }
+
         public static Builder builder() {
             return new AutoValue_CSVFileDataAdapter_Config.Builder();
         }
@@ -654,6 +794,9 @@ public class CSVFileDataAdapter extends LookupDataAdapter {
             @JsonProperty("cidr_lookup")
             public abstract Builder cidrLookup(Boolean cidrLookup);
 
+            @JsonProperty("memory_mapped")
+            public abstract Builder memoryMapped(Boolean memoryMapped);
+
             public abstract Config build();
         }
     }
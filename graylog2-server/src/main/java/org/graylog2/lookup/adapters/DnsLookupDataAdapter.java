@@ -30,6 +30,7 @@ import com.google.common.base.Strings;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -57,13 +58,19 @@ import jakarta.inject.Inject;
 
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 public class DnsLookupDataAdapter extends LookupDataAdapter {
@@ -82,6 +89,7 @@ public class DnsLookupDataAdapter extends LookupDataAdapter {
     private static final String TIMER_REVERSE_LOOKUP = "reverseLookupTime";
     private static final String TIMER_TEXT_LOOKUP = "textLookupTime";
     private DnsClient dnsClient;
+    private ThreadPoolExecutor bulkLookupExecutor;
     private final Config config;
     private final DnsLookupAdapterConfiguration adapterConfiguration;
 
@@ -110,12 +118,21 @@ public class DnsLookupDataAdapter extends LookupDataAdapter {
         dnsClient = new DnsClient(config.requestTimeout(), adapterConfiguration.getPoolSize(),
                 adapterConfiguration.getPoolRefreshInterval().toSeconds());
         dnsClient.start(config.serverIps());
+
+        // Bulk lookups run on as many threads as there are resolvers, so all of them can have requests in flight
+        final int threads = Math.max(1, adapterConfiguration.getPoolSize());
+        bulkLookupExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("dns-lookup-" + name() + "-%d").setDaemon(true).build());
+        bulkLookupExecutor.allowCoreThreadTimeOut(true);
     }
 
     @Override
     protected void doStop() {
 
         dnsClient.stop();
+        if (bulkLookupExecutor != null) {
+            bulkLookupExecutor.shutdownNow();
+        }
     }
 
     /**
@@ -185,6 +202,39 @@ public class DnsLookupDataAdapter extends LookupDataAdapter {
         return lookupResult;
     }
 
+    /**
+     * Resolves the keys concurrently. The DNS client itself only offers blocking lookups, but its resolvers can have
+     * many queries in flight at the same time.
+     */
+    @Override
+    protected Map<Object, LookupResult> doGetAll(Collection<Object> keys) {
+        if (keys.size() <= 1) {
+            return super.doGetAll(keys);
+        }
+
+        final Map<Object, Future<LookupResult>> futures = new HashMap<>(keys.size());
+        for (Object key : keys) {
+            futures.put(key, bulkLookupExecutor.submit(() -> doGet(key)));
+        }
+
+        final Map<Object, LookupResult> results = new HashMap<>(keys.size());
+        for (Map.Entry<Object, Future<LookupResult>> entry : futures.entrySet()) {
+            try {
+                results.put(entry.getKey(), entry.getValue().get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.values().forEach(future -> future.cancel(true));
+                keys.forEach(key -> results.putIfAbsent(key, getErrorResult()));
+                return results;
+            } catch (ExecutionException e) {
+                LOG.error("DNS lookup for key [{}] failed. Cause [{}]", entry.getKey(), ExceptionUtils.getRootCauseOrMessage(e));
+                errorCounter.inc();
+                results.put(entry.getKey(), getErrorResult());
+            }
+        }
+        return results;
+    }
+
     /**
      * Provides both single and multiple addresses in LookupResult. This is because the purpose of a hostname
      * resolution request is to resolve to a single IP address (so that communication can be initiated with it).
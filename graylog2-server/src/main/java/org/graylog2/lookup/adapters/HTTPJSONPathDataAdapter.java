@@ -40,6 +40,8 @@ import jakarta.inject.Inject;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.ws.rs.core.HttpHeaders;
 import jakarta.ws.rs.core.MediaType;
+import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.Headers;
 import okhttp3.HttpUrl;
 import okhttp3.OkHttpClient;
@@ -61,15 +63,20 @@ import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Strings.isNullOrEmpty;
@@ -157,6 +164,80 @@ public class HTTPJSONPathDataAdapter extends LookupDataAdapter {
 
     @Override
     protected LookupResult doGet(Object key) {
+        final Request request = buildRequest(key);
+        if (request == null) {
+            return getErrorResult();
+        }
+
+        final Timer.Context time = httpRequestTimer.time();
+        try (final Response response = httpClient.newCall(request).execute()) {
+            return handleResponse(key, response);
+        } catch (IOException e) {
+            return handleFailure(key, request, e);
+        } finally {
+            time.stop();
+        }
+    }
+
+    /**
+     * Sends the requests for all keys concurrently. The number of requests in flight per host is limited by the
+     * HTTP client's dispatcher.
+     */
+    @Override
+    protected Map<Object, LookupResult> doGetAll(Collection<Object> keys) {
+        final Map<Object, LookupResult> results = new ConcurrentHashMap<>(keys.size());
+        final List<Call> calls = new ArrayList<>(keys.size());
+        final CountDownLatch pending = new CountDownLatch(keys.size());
+
+        for (Object key : keys) {
+            final Request request = buildRequest(key);
+            if (request == null) {
+                results.put(key, getErrorResult());
+                pending.countDown();
+                continue;
+            }
+
+            final Timer.Context time = httpRequestTimer.time();
+            final Call call = httpClient.newCall(request);
+            calls.add(call);
+            call.enqueue(new Callback() {
+                @Override
+                public void onResponse(@Nonnull Call call, @Nonnull Response response) {
+                    try (response) {
+                        results.put(key, handleResponse(key, response));
+                    } catch (Exception e) {
+                        LOG.error("Data adapter <{}>: Couldn't handle HTTP response for key <{}>", name(), key, e);
+                        results.put(key, getErrorResult());
+                    } finally {
+                        time.stop();
+                        pending.countDown();
+                    }
+                }
+
+                @Override
+                public void onFailure(@Nonnull Call call, @Nonnull IOException e) {
+                    try {
+                        results.put(key, handleFailure(key, request, e));
+                    } finally {
+                        time.stop();
+                        pending.countDown();
+                    }
+                }
+            });
+        }
+
+        try {
+            pending.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            calls.forEach(Call::cancel);
+            keys.forEach(key -> results.putIfAbsent(key, getErrorResult()));
+        }
+        return results;
+    }
+
+    @Nullable
+    private Request buildRequest(Object key) {
         String encodedKey;
         try {
             encodedKey = URLEncoder.encode(String.valueOf(key), "UTF-8").replaceAll("\\+", "%20");
@@ -170,7 +251,7 @@ public class HTTPJSONPathDataAdapter extends LookupDataAdapter {
             LOG.error("Data adapter <{}>: URL <{}> is not whitelisted. Aborting lookup request.", name(), urlString);
             publishSystemNotificationForWhitelistFailure();
             setError(UrlNotWhitelistedException.forUrl(urlString));
-            return getErrorResult();
+            return null;
         } else {
             // we use this kind of error reporting mechanism only for whitelist errors, so we can safely clear the
             // error here
@@ -182,43 +263,42 @@ public class HTTPJSONPathDataAdapter extends LookupDataAdapter {
         if (url == null) {
             LOG.error("Data adapter <{}>: Couldn't parse URL <{}> - returning empty result", name(), urlString);
             httpURLErrors.mark();
-            return getErrorResult();
+            return null;
         }
 
-        final Request request = new Request.Builder()
+        return new Request.Builder()
                 .get()
                 .url(url)
                 .headers(headers)
                 .build();
+    }
 
-        final Timer.Context time = httpRequestTimer.time();
-        try (final Response response = httpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                LOG.warn("HTTP request for key <{}> failed: {}", key, response);
-                httpRequestErrors.mark();
-                return getErrorResult();
-            }
-
-            final LookupResult result = parseBody(singleJsonPath, multiJsonPath, response.body().byteStream());
-            if (result == null) {
-                return getErrorResult();
-            }
-            return result;
-        } catch (IOException e) {
-            LOG.error("Data adapter <{}>: HTTP request error for key <{}> from URL <{}>", name(), key, urlString, e);
+    private LookupResult handleResponse(Object key, Response response) {
+        if (!response.isSuccessful()) {
+            LOG.warn("HTTP request for key <{}> failed: {}", key, response);
             httpRequestErrors.mark();
+            return getErrorResult();
+        }
 
-            Notification systemNotification = notificationService.buildNow()
-                    .addType(Notification.Type.GENERIC)
-                    .addSeverity(Notification.Severity.NORMAL)
-                    .addDetail("title", "HTTP data adapter lookup failure")
-                    .addDetail("description", f("Data adapter <%s>: HTTP request error from URL <%s>: %s", name(), urlString, e.getMessage()));
-            notificationService.publishIfFirst(systemNotification);
-
+        final LookupResult result = parseBody(singleJsonPath, multiJsonPath, response.body().byteStream());
+        if (result == null) {
             return getErrorResult();
-        } finally {
-            time.stop();
         }
+        return result;
+    }
+
+    private LookupResult handleFailure(Object key, Request request, IOException e) {
+        LOG.error("Data adapter <{}>: HTTP request error for key <{}> from URL <{}>", name(), key, request.url(), e);
+        httpRequestErrors.mark();
+
+        Notification systemNotification = notificationService.buildNow()
+                .addType(Notification.Type.GENERIC)
+                .addSeverity(Notification.Severity.NORMAL)
+                .addDetail("title", "HTTP data adapter lookup failure")
+                .addDetail("description", f("Data adapter <%s>: HTTP request error from URL <%s>: %s", name(), request.url(), e.getMessage()));
+        notificationService.publishIfFirst(systemNotification);
+
+        return getErrorResult();
     }
 
     @VisibleForTesting
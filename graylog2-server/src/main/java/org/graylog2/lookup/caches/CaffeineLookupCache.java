@@ -16,13 +16,14 @@
  */
 package org.graylog2.lookup.caches;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import com.fasterxml.jackson.annotation.JsonAutoDetect;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonTypeName;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
-import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.github.benmanes.caffeine.cache.Expiry;
 import com.github.benmanes.caffeine.cache.RemovalCause;
@@ -30,6 +31,7 @@ import com.github.benmanes.caffeine.cache.Ticker;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.github.benmanes.caffeine.cache.stats.StatsCounter;
 import com.google.auto.value.AutoValue;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.assistedinject.Assisted;
 import jakarta.annotation.Nonnull;
 import jakarta.annotation.Nullable;
@@ -40,13 +42,28 @@ import org.graylog2.plugin.lookup.LookupCache;
 import org.graylog2.plugin.lookup.LookupCacheConfiguration;
 import org.graylog2.plugin.lookup.LookupCacheKey;
 import org.graylog2.plugin.lookup.LookupResult;
+import org.graylog2.shared.utilities.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class CaffeineLookupCache extends LookupCache {
@@ -62,21 +79,26 @@ public class CaffeineLookupCache extends LookupCache {
     public static final String IGNORE_NULL = "ignore_null";
     public static final String TTL_EMPTY = "ttl_empty";
     public static final String TTL_EMPTY_UNIT = "ttl_empty_unit";
-    private final Cache<LookupCacheKey, LookupResult> cache;
+    public static final String REFRESH_AFTER_WRITE = "refresh_after_write";
+    public static final String REFRESH_AFTER_WRITE_UNIT = "refresh_after_write_unit";
+
+    // Refreshes are coalesced per entry, so a few threads are enough even for large caches
+    private static final int REFRESH_THREADS = 4;
+
+    private final AsyncCache<LookupCacheKey, CachedResult> cache;
     private final Config config;
+    private final Ticker ticker;
+    private final long refreshAfterWriteNanos;
+    private final Executor refreshExecutor;
+    private final Timer refreshTimer;
+    private final Meter staleServed;
 
     @Inject
     public CaffeineLookupCache(@Assisted("id") String id,
                                @Assisted("name") String name,
                                @Assisted LookupCacheConfiguration c,
                                MetricRegistry metricRegistry) {
-        super(id, name, c, metricRegistry);
-        config = (Config) c;
-        cache = Caffeine.newBuilder()
-                .recordStats(() -> new MetricStatsCounter(this))
-                .maximumSize(config.maxSize())
-                .expireAfter(buildExpiry(config))
-                .build();
+        this(id, name, c, metricRegistry, Ticker.systemTicker());
     }
 
     // Constructor with external ticker for testing
@@ -85,20 +107,51 @@ public class CaffeineLookupCache extends LookupCache {
                                LookupCacheConfiguration c,
                                MetricRegistry metricRegistry,
                                Ticker fakeTicker) {
+        this(id, name, c, metricRegistry, fakeTicker, refreshExecutor(name));
+    }
+
+    // Constructor with external ticker and refresh executor for testing
+    public CaffeineLookupCache(String id,
+                               String name,
+                               LookupCacheConfiguration c,
+                               MetricRegistry metricRegistry,
+                               Ticker fakeTicker,
+                               Executor refreshExecutor) {
         super(id, name, c, metricRegistry);
         config = (Config) c;
+        ticker = fakeTicker;
+        refreshAfterWriteNanos = refreshAfterWriteNanos(config);
+        this.refreshExecutor = refreshExecutor;
+        refreshTimer = metricRegistry.timer(MetricRegistry.name("org.graylog2.lookup.caches", id, "refreshTime"));
+        staleServed = metricRegistry.meter(MetricRegistry.name("org.graylog2.lookup.caches", id, "staleServed"));
         cache = Caffeine.newBuilder()
                 .recordStats(() -> new MetricStatsCounter(this))
                 .maximumSize(config.maxSize())
                 .expireAfter(buildExpiry(config))
                 .ticker(fakeTicker)
-                .build();
+                .buildAsync();
+    }
+
+    private static ExecutorService refreshExecutor(String name) {
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("lookup-cache-refresh-" + name + "-%d").setDaemon(true).build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
-    private Expiry<LookupCacheKey, LookupResult> buildExpiry(Config config) {
+    private static long refreshAfterWriteNanos(Config config) {
+        if (config.refreshAfterWrite() != null && config.refreshAfterWrite() > 0 && config.refreshAfterWriteUnit() != null) {
+            return config.refreshAfterWriteUnit().toNanos(config.refreshAfterWrite());
+        }
+        return 0L;
+    }
+
+    private Expiry<LookupCacheKey, CachedResult> buildExpiry(Config config) {
         return new Expiry<>() {
             @Override
-            public long expireAfterCreate(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull LookupResult lookupResult, long currentTime) {
+            public long expireAfterCreate(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull CachedResult cachedResult, long currentTime) {
+                final LookupResult lookupResult = cachedResult.result();
                 if (lookupResult.hasTTL()) {
                     return TimeUnit.MILLISECONDS.toNanos(lookupResult.cacheTTL());
                 } else {
@@ -111,15 +164,16 @@ public class CaffeineLookupCache extends LookupCache {
             }
 
             @Override
-            public long expireAfterUpdate(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull LookupResult lookupResult, long currentTime, long currentDuration) {
-                return currentDuration;
+            public long expireAfterUpdate(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull CachedResult cachedResult, long currentTime, long currentDuration) {
+                // Entries are only updated by refreshes, which count as a new write
+                return expireAfterCreate(lookupCacheKey, cachedResult, currentTime);
             }
 
             @Override
-            public long expireAfterRead(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull LookupResult lookupResult, long currentTime, long currentDuration) {
+            public long expireAfterRead(@Nonnull LookupCacheKey lookupCacheKey, @Nonnull CachedResult cachedResult, long currentTime, long currentDuration) {
                 if (config.ttlEmpty() != null
                         && !Boolean.TRUE.equals(config.ignoreNull())
-                        && lookupResult.isEmpty()) {
+                        && cachedResult.result().isEmpty()) {
                     LOG.trace("afterRead: empty: {}", currentDuration);
                     return currentDuration;
                 }
@@ -137,7 +191,7 @@ public class CaffeineLookupCache extends LookupCache {
     @Override
     public long entryCount() {
         if (cache != null) {
-            return cache.estimatedSize();
+            return cache.synchronous().estimatedSize();
         } else {
             return 0L;
         }
@@ -150,45 +204,178 @@ public class CaffeineLookupCache extends LookupCache {
 
     @Override
     protected void doStop() throws Exception {
-        // no action required
+        if (refreshExecutor instanceof ExecutorService executorService) {
+            executorService.shutdownNow();
+        }
     }
 
     @Override
     public LookupResult get(LookupCacheKey key, Callable<LookupResult> loader) {
-        final Function<LookupCacheKey, LookupResult> mapFunction = unused -> {
-            try {
-                final LookupResult result = loader.call();
-                if (result.hasError()) {
-                    // Bubble up errors unaltered
-                    return result;
-                }
-                if (isResultEmpty(result)) {
-                    if (Boolean.TRUE.equals(config.ignoreNull())) {
-                        LOG.trace("Ignoring empty lookup for key {}", key);
-                        return LookupResult.builder()
-                                .cacheTTL(0L)
-                                .build();
-                    } else {
-                        LOG.trace("Empty lookup for key {} with TTL {}", key, ttlEmptyMillis());
-                        return LookupResult.builder()
-                                .cacheTTL(ttlEmptyMillis())
-                                .build();
+        try (final Timer.Context ignored = lookupTimer()) {
+            final CompletableFuture<CachedResult> load = new CompletableFuture<>();
+            final CompletableFuture<CachedResult> future = cache.get(key, (unused, executor) -> load);
+            if (future == load) {
+                // The loader runs outside of the cache's locks, concurrent lookups of the same key wait for its result
+                // instead of calling the data adapter again
+                complete(load, () -> toCachedResult(key, callLoader(key, loader)));
+                return load.join().result();
+            }
+
+            final CachedResult cached = future.join();
+            if (isRefreshDue(cached)) {
+                refresh(Map.of(key, future), keys -> {
+                    final LookupResult result = callLoader(key, loader);
+                    return result == null ? Map.of() : Map.of(key, result);
+                });
+            }
+            return cached.result();
+        }
+    }
+
+    @Override
+    public Map<LookupCacheKey, LookupResult> getAll(Collection<LookupCacheKey> keys,
+                                                    Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        final Map<LookupCacheKey, CompletableFuture<CachedResult>> loads = new HashMap<>();
+        final BiFunction<Set<? extends LookupCacheKey>, Executor, CompletableFuture<Map<LookupCacheKey, CachedResult>>> mappingFunction = (missingKeys, executor) -> {
+            final CompletableFuture<Map<LookupCacheKey, CachedResult>> load = new CompletableFuture<>();
+            missingKeys.forEach(key -> loads.put(key, null));
+            complete(load, () -> loadAll(missingKeys, loader));
+            return load;
+        };
+
+        try (final Timer.Context ignored = lookupTimer()) {
+            final Map<LookupCacheKey, CachedResult> cached = cache.getAll(keys, mappingFunction).join();
+            final Map<LookupCacheKey, LookupResult> results = new HashMap<>(cached.size());
+            final Map<LookupCacheKey, CompletableFuture<CachedResult>> refreshes = new HashMap<>();
+            cached.forEach((key, cachedResult) -> {
+                results.put(key, cachedResult.result());
+                if (!loads.containsKey(key) && isRefreshDue(cachedResult)) {
+                    final CompletableFuture<CachedResult> future = cache.asMap().get(key);
+                    if (future != null) {
+                        refreshes.put(key, future);
                     }
                 }
-                return result;
+            });
+            if (!refreshes.isEmpty()) {
+                refresh(refreshes, loader);
+            }
+            return results;
+        }
+    }
+
+    private Map<LookupCacheKey, CachedResult> loadAll(Set<? extends LookupCacheKey> missingKeys,
+                                                      Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        final Map<LookupCacheKey, CachedResult> results = new HashMap<>(missingKeys.size());
+        try {
+            final Map<LookupCacheKey, LookupResult> loaded = loader.apply(Collections.unmodifiableSet(missingKeys));
+            // Keys the loader didn't return a result for are treated like empty results, so they get cached too
+            missingKeys.forEach(key -> results.put(key, toCachedResult(key, loaded.get(key))));
+        } catch (Exception e) {
+            missingKeys.forEach(key -> results.put(key, new CachedResult(loadFailure(key, e), ticker.read())));
+        }
+        return results;
+    }
+
+    private <T> void complete(CompletableFuture<T> future, Supplier<T> supplier) {
+        try {
+            future.complete(supplier.get());
+        } catch (Throwable t) {
+            // Don't leave concurrent lookups waiting forever, failed futures are removed from the cache
+            future.completeExceptionally(t);
+            throw t;
+        }
+    }
+
+    @Nullable
+    private LookupResult callLoader(LookupCacheKey key, Callable<LookupResult> loader) {
+        try {
+            return loader.call();
+        } catch (Exception e) {
+            return loadFailure(key, e);
+        }
+    }
+
+    /**
+     * Checks whether the given result should be reloaded and, if so, makes sure only one refresh runs for it.
+     * Every call for a result that is due counts as serving a stale value.
+     */
+    private boolean isRefreshDue(CachedResult cached) {
+        if (refreshAfterWriteNanos <= 0 || cached.result().hasError()) {
+            return false;
+        }
+        if (ticker.read() - cached.refreshFrom() < refreshAfterWriteNanos) {
+            return false;
+        }
+        staleServed.mark();
+        return cached.refreshing().compareAndSet(false, true);
+    }
+
+    /**
+     * Reloads the given entries in the background. The stale results stay in the cache until the reload is done.
+     * If it fails, they are kept until they expire, and the next refresh is attempted after another refresh interval.
+     */
+    private void refresh(Map<LookupCacheKey, CompletableFuture<CachedResult>> entries,
+                         Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        final Runnable refresh = () -> {
+            Map<LookupCacheKey, LookupResult> loaded;
+            try (final Timer.Context ignored = refreshTimer.time()) {
+                loaded = loader.apply(Collections.unmodifiableSet(entries.keySet()));
             } catch (Exception e) {
-                LOG.warn("Loading value from data adapter failed for key {}, returning empty result", key, e);
-                return LookupResult.withError(
-                        String.format(Locale.ENGLISH, "Loading value from data adapter failed for key <%s>: %s", key.toString(), e.getMessage()));
+                LOG.warn("Refreshing {} cached lookup results failed, keeping stale results: {}", entries.size(),
+                        ExceptionUtils.getRootCauseOrMessage(e));
+                loaded = Map.of();
+            }
+
+            final long now = ticker.read();
+            for (Map.Entry<LookupCacheKey, CompletableFuture<CachedResult>> entry : entries.entrySet()) {
+                final LookupCacheKey key = entry.getKey();
+                final LookupResult result = loaded.get(key);
+                final CachedResult stale = entry.getValue().join();
+                if (result == null || result.hasError()) {
+                    stale.retryRefresh(now);
+                } else {
+                    // Entries which have been purged or reloaded in the meantime are left alone
+                    cache.asMap().replace(key, entry.getValue(), CompletableFuture.completedFuture(toCachedResult(key, result)));
+                }
             }
         };
 
-        try (final Timer.Context ignored = lookupTimer()) {
-            return cache.get(key, mapFunction);
+        try {
+            refreshExecutor.execute(refresh);
+        } catch (RejectedExecutionException e) {
+            LOG.debug("Couldn't schedule refresh of cached lookup results", e);
+            entries.values().forEach(future -> future.join().retryRefresh(ticker.read()));
+        }
+    }
+
+    private CachedResult toCachedResult(LookupCacheKey key, @Nullable LookupResult result) {
+        if (result != null && result.hasError()) {
+            // Bubble up errors unaltered
+            return new CachedResult(result, ticker.read());
+        }
+        if (isResultEmpty(result)) {
+            if (Boolean.TRUE.equals(config.ignoreNull())) {
+                LOG.trace("Ignoring empty lookup for key {}", key);
+                return new CachedResult(LookupResult.builder()
+                        .cacheTTL(0L)
+                        .build(), ticker.read());
+            } else {
+                LOG.trace("Empty lookup for key {} with TTL {}", key, ttlEmptyMillis());
+                return new CachedResult(LookupResult.builder()
+                        .cacheTTL(ttlEmptyMillis())
+                        .build(), ticker.read());
+            }
         }
+        return new CachedResult(result, ticker.read());
     }
 
-    private boolean isResultEmpty(LookupResult result) {
+    private LookupResult loadFailure(LookupCacheKey key, Exception e) {
+        LOG.warn("Loading value from data adapter failed for key {}, returning empty result", key, e);
+        return LookupResult.withError(
+                String.format(Locale.ENGLISH, "Loading value from data adapter failed for key <%s>: %s", key.toString(), e.getMessage()));
+    }
+
+    private boolean isResultEmpty(@Nullable LookupResult result) {
         return (result == null ||
                 (result.singleValue() == null && result.multiValue() == null && result.stringListValue() == null));
     }
@@ -202,29 +389,62 @@ public class CaffeineLookupCache extends LookupCache {
 
     @Override
     public LookupResult getIfPresent(LookupCacheKey key) {
-        final LookupResult cacheEntry = cache.getIfPresent(key);
+        final CompletableFuture<CachedResult> future = cache.getIfPresent(key);
+        // Results which are still loading are not present yet
+        final CachedResult cacheEntry = future == null ? null : future.getNow(null);
         if (cacheEntry == null) {
             return LookupResult.empty();
         }
-        return cacheEntry;
+        return cacheEntry.result();
     }
 
     @Override
     public void purge() {
-        cache.invalidateAll();
+        cache.synchronous().invalidateAll();
     }
 
     @Override
     public void purge(LookupCacheKey purgeKey) {
         if (purgeKey.isPrefixOnly()) {
             // If the key to purge only contains a prefix, invalidate all keys with that prefix
-            cache.invalidateAll(
+            cache.synchronous().invalidateAll(
                     cache.asMap().keySet().stream()
                             .filter(lookupCacheKey -> purgeKey.prefix().equals(lookupCacheKey.prefix()))
                             .collect(Collectors.toSet())
             );
         } else {
-            cache.invalidate(purgeKey);
+            cache.synchronous().invalidate(purgeKey);
+        }
+    }
+
+    /**
+     * A cached lookup result with the bookkeeping needed to refresh it ahead of its expiry.
+     */
+    private static final class CachedResult {
+        private final LookupResult result;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long refreshFrom;
+
+        CachedResult(LookupResult result, long loadedAt) {
+            this.result = result;
+            this.refreshFrom = loadedAt;
+        }
+
+        LookupResult result() {
+            return result;
+        }
+
+        AtomicBoolean refreshing() {
+            return refreshing;
+        }
+
+        long refreshFrom() {
+            return refreshFrom;
+        }
+
+        void retryRefresh(long now) {
+            refreshFrom = now;
+            refreshing.set(false);
         }
     }
 
@@ -294,6 +514,15 @@ public class CaffeineLookupCache extends LookupCache {
         @JsonProperty(TTL_EMPTY_UNIT)
         public abstract TimeUnit ttlEmptyUnit();
 
+        @Min(0)
+        @Nullable
+        @JsonProperty(REFRESH_AFTER_WRITE)
+        public abstract Long refreshAfterWrite();
+
+        @Nullable
+        @JsonProperty(REFRESH_AFTER_WRITE_UNIT)
+        public abstract TimeUnit refreshAfterWriteUnit();
+
         public static Builder builder() {
             return new AutoValue_CaffeineLookupCache_Config.Builder();
         }
@@ -327,6 +556,12 @@ public class CaffeineLookupCache extends LookupCache {
             @JsonProperty(TTL_EMPTY_UNIT)
             public abstract Builder ttlEmptyUnit(@Nullable TimeUnit ttlEmptyUnit);
 
+            @JsonProperty(REFRESH_AFTER_WRITE)
+            public abstract Builder refreshAfterWrite(@Nullable Long refreshAfterWrite);
+
+            @JsonProperty(REFRESH_AFTER_WRITE_UNIT)
+            public abstract Builder refreshAfterWriteUnit(@Nullable TimeUnit refreshAfterWriteUnit);
+
             public abstract Config build();
         }
     }
@@ -0,0 +1,477 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.caches;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.fasterxml.jackson.annotation.JsonAutoDetect;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonTypeName;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.assistedinject.Assisted;
+import jakarta.annotation.Nullable;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.validation.constraints.Min;
+import org.graylog.autovalue.WithBeanGetter;
+import org.graylog2.lookup.store.MappedLookupStore;
+import org.graylog2.plugin.lookup.LookupCache;
+import org.graylog2.plugin.lookup.LookupCacheConfiguration;
+import org.graylog2.plugin.lookup.LookupCacheKey;
+import org.graylog2.plugin.lookup.LookupResult;
+import org.graylog2.shared.utilities.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A lookup cache which keeps most of its entries off-heap in a memory-mapped file.
+ * <p>
+ * Loaded results are collected on the heap first. Once there are {@code max_heap_entries} of them, they are merged
+ * with the entries of the current file into a new {@link MappedLookupStore} in the background, which then replaces
+ * the current one. The heap usage of the cache therefore doesn't grow with its size.
+ * <p>
+ * Store files are immutable, so purged keys are remembered on the heap until the next merge drops them.
+ */
+public class MappedFileLookupCache extends LookupCache {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedFileLookupCache.class);
+
+    public static final String NAME = "mapped_file_cache";
+    public static final String MAX_SIZE = "max_size";
+    public static final String MAX_HEAP_ENTRIES = "max_heap_entries";
+    public static final String EXPIRE_AFTER_WRITE = "expire_after_write";
+    public static final String EXPIRE_AFTER_WRITE_UNIT = "expire_after_write_unit";
+
+    private static final byte KEY_SEPARATOR = 0;
+
+    private final Config config;
+    private final ObjectMapper objectMapper;
+    private final Path storeDir;
+    private final Ticker ticker;
+    private final long expireAfterWriteNanos;
+
+    private final Map<LookupCacheKey, Entry> heapEntries = new ConcurrentHashMap<>();
+    private final Set<ByteBuffer> purgedKeys = ConcurrentHashMap.newKeySet();
+    private final Set<String> purgedPrefixes = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean(false);
+    private final Object storeLock = new Object();
+    private final Timer mergeTimer;
+
+    private volatile MappedLookupStore store;
+    // Incremented by full purges, so merges which started before can't bring back purged entries
+    private volatile long purgeEpoch = 0;
+    private ExecutorService mergeExecutor;
+
+    @Inject
+    public MappedFileLookupCache(@Assisted("id") String id,
+                                 @Assisted("name") String name,
+                                 @Assisted LookupCacheConfiguration c,
+                                 MetricRegistry metricRegistry,
+                                 ObjectMapper objectMapper,
+                                 @Named("lookup_table_store_dir") Path storeDir) {
+        this(id, name, c, metricRegistry, objectMapper, storeDir, Ticker.systemTicker());
+    }
+
+    // Constructor with external ticker for testing
+    public MappedFileLookupCache(String id,
+                                 String name,
+                                 LookupCacheConfiguration c,
+                                 MetricRegistry metricRegistry,
+                                 ObjectMapper objectMapper,
+                                 Path storeDir,
+                                 Ticker ticker) {
+        super(id, name, c, metricRegistry);
+        this.config = (Config) c;
+        this.objectMapper = objectMapper;
+        this.storeDir = storeDir;
+        this.ticker = ticker;
+        this.expireAfterWriteNanos = config.expireAfterWrite() > 0 && config.expireAfterWriteUnit() != null
+                ? config.expireAfterWriteUnit().toNanos(config.expireAfterWrite())
+                : Long.MAX_VALUE;
+        this.mergeTimer = metricRegistry.timer(MetricRegistry.name("org.graylog2.lookup.caches", id, "mergeTime"));
+    }
+
+    @Override
+    protected void doStart() throws Exception {
+        Files.createDirectories(storeDir);
+        deleteStoreFiles();
+        mergeExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("lookup-cache-merge-" + name() + "-%d").setDaemon(true).build());
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (mergeExecutor != null) {
+            mergeExecutor.shutdownNow();
+            mergeExecutor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        purge();
+    }
+
+    @Override
+    public long entryCount() {
+        final MappedLookupStore currentStore = store;
+        return heapEntries.size() + (currentStore == null ? 0 : currentStore.size());
+    }
+
+    @Override
+    public LookupResult get(LookupCacheKey key, Callable<LookupResult> loader) {
+        try (final Timer.Context ignored = lookupTimer()) {
+            incrTotalCount(1);
+            final LookupResult cached = find(key);
+            if (cached != null) {
+                incrHitCount(1);
+                return cached;
+            }
+            incrMissCount(1);
+
+            LookupResult result;
+            try {
+                result = loader.call();
+            } catch (Exception e) {
+                LOG.warn("Loading value from data adapter failed for key {}, returning empty result", key, e);
+                result = LookupResult.withError(String.format(Locale.ENGLISH,
+                        "Loading value from data adapter failed for key <%s>: %s", key.toString(), e.getMessage()));
+            }
+            if (result == null) {
+                result = LookupResult.empty();
+            }
+            put(key, result);
+            return result;
+        }
+    }
+
+    @Override
+    public LookupResult getIfPresent(LookupCacheKey key) {
+        final LookupResult cached = find(key);
+        return cached == null ? LookupResult.empty() : cached;
+    }
+
+    @Nullable
+    private LookupResult find(LookupCacheKey key) {
+        final long now = ticker.read();
+        final Entry heapEntry = heapEntries.get(key);
+        if (heapEntry != null && !heapEntry.isExpired(now)) {
+            return heapEntry.result();
+        }
+
+        final MappedLookupStore currentStore = store;
+        if (currentStore == null) {
+            return null;
+        }
+        final byte[] storeKey = storeKey(key);
+        if (isPurged(storeKey)) {
+            return null;
+        }
+        final byte[] value = currentStore.get(storeKey);
+        if (value == null) {
+            return null;
+        }
+        final Entry entry = decode(value);
+        return entry == null || entry.isExpired(now) ? null : entry.result();
+    }
+
+    private void put(LookupCacheKey key, LookupResult result) {
+        final long ttlNanos = result.hasTTL() ? TimeUnit.MILLISECONDS.toNanos(result.cacheTTL()) : expireAfterWriteNanos;
+        final long now = ticker.read();
+        // Avoid overflows for results which never expire
+        final long expiresAt = ttlNanos >= Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttlNanos;
+        heapEntries.put(key, new Entry(result, expiresAt));
+
+        if (heapEntries.size() >= config.maxHeapEntries() && mergeScheduled.compareAndSet(false, true)) {
+            try {
+                mergeExecutor.execute(this::merge);
+            } catch (Exception e) {
+                LOG.debug("Couldn't schedule merge of lookup cache <{}>", name(), e);
+                mergeScheduled.set(false);
+            }
+        }
+    }
+
+    private boolean isPurged(byte[] storeKey) {
+        if (!purgedKeys.isEmpty() && purgedKeys.contains(ByteBuffer.wrap(storeKey))) {
+            return true;
+        }
+        if (!purgedPrefixes.isEmpty()) {
+            for (String prefix : purgedPrefixes) {
+                if (hasPrefix(storeKey, prefix)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Writes the heap entries and the live entries of the current store to a new store and swaps it in.
+     */
+    void merge() {
+        try (final Timer.Context ignored = mergeTimer.time()) {
+            final long epoch = purgeEpoch;
+            final Map<LookupCacheKey, Entry> merged = new HashMap<>(heapEntries);
+            final Set<ByteBuffer> mergedPurgedKeys = new HashSet<>(purgedKeys);
+            final Set<String> mergedPurgedPrefixes = new HashSet<>(purgedPrefixes);
+            final MappedLookupStore oldStore = store;
+            final long now = ticker.read();
+
+            final MappedLookupStore newStore;
+            try (final MappedLookupStore.Builder builder = MappedLookupStore.builder(
+                    Files.createTempFile(storeDir, storeFilePrefix(), ".store"))) {
+                final Set<ByteBuffer> written = new HashSet<>(merged.size());
+                long size = 0;
+                for (Map.Entry<LookupCacheKey, Entry> heapEntry : merged.entrySet()) {
+                    if (size >= config.maxSize()) {
+                        break;
+                    }
+                    if (!heapEntry.getValue().isExpired(now)) {
+                        final byte[] storeKey = storeKey(heapEntry.getKey());
+                        builder.put(storeKey, encode(heapEntry.getValue()));
+                        written.add(ByteBuffer.wrap(storeKey));
+                        size++;
+                    }
+                }
+                if (oldStore != null) {
+                    // Newer entries come first, older ones are dropped once the cache is full
+                    final Iterator<Map.Entry<byte[], byte[]>> entries = oldStore.iterator();
+                    while (entries.hasNext() && size < config.maxSize()) {
+                        final Map.Entry<byte[], byte[]> entry = entries.next();
+                        final ByteBuffer storeKey = ByteBuffer.wrap(entry.getKey());
+                        if (written.contains(storeKey) || mergedPurgedKeys.contains(storeKey)
+                                || mergedPurgedPrefixes.stream().anyMatch(prefix -> hasPrefix(entry.getKey(), prefix))) {
+                            continue;
+                        }
+                        final Entry decoded = decode(entry.getValue());
+                        if (decoded != null && !decoded.isExpired(now)) {
+                            builder.put(entry.getKey(), entry.getValue());
+                            size++;
+                        }
+                    }
+                }
+                newStore = builder.build();
+            }
+
+            synchronized (storeLock) {
+                if (epoch != purgeEpoch) {
+                    // The cache has been purged in the meantime
+                    newStore.close();
+                    return;
+                }
+                store = newStore;
+            }
+            if (oldStore != null) {
+                oldStore.close();
+            }
+            // Entries which have been replaced or purged during the merge are kept
+            merged.forEach(heapEntries::remove);
+            purgedKeys.removeAll(mergedPurgedKeys);
+            purgedPrefixes.removeAll(mergedPurgedPrefixes);
+        } catch (Exception e) {
+            LOG.warn("Couldn't write entries of lookup cache <{}> to disk: {}", name(), ExceptionUtils.getRootCauseOrMessage(e));
+        } finally {
+            mergeScheduled.set(false);
+        }
+    }
+
+    @Override
+    public void purge() {
+        final MappedLookupStore oldStore;
+        synchronized (storeLock) {
+            purgeEpoch++;
+            oldStore = store;
+            store = null;
+            heapEntries.clear();
+            purgedKeys.clear();
+            purgedPrefixes.clear();
+        }
+        if (oldStore != null) {
+            oldStore.close();
+        }
+    }
+
+    @Override
+    public void purge(LookupCacheKey purgeKey) {
+        if (purgeKey.isPrefixOnly()) {
+            // If the key to purge only contains a prefix, invalidate all keys with that prefix
+            purgedPrefixes.add(purgeKey.prefix());
+            heapEntries.keySet().removeIf(key -> purgeKey.prefix().equals(key.prefix()));
+        } else {
+            purgedKeys.add(ByteBuffer.wrap(storeKey(purgeKey)));
+            heapEntries.remove(purgeKey);
+        }
+    }
+
+    // Keys are stored as the prefix, a separator and the JSON of the key, to tell apart e.g. numbers and strings
+    private byte[] storeKey(LookupCacheKey key) {
+        try {
+            final byte[] prefix = key.prefix().getBytes(StandardCharsets.UTF_8);
+            final byte[] json = objectMapper.writeValueAsBytes(key.key());
+            final byte[] storeKey = new byte[prefix.length + 1 + json.length];
+            System.arraycopy(prefix, 0, storeKey, 0, prefix.length);
+            storeKey[prefix.length] = KEY_SEPARATOR;
+            System.arraycopy(json, 0, storeKey, prefix.length + 1, json.length);
+            return storeKey;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static boolean hasPrefix(byte[] storeKey, String prefix) {
+        final byte[] prefixBytes = prefix.getBytes(StandardCharsets.UTF_8);
+        if (storeKey.length <= prefixBytes.length || storeKey[prefixBytes.length] != KEY_SEPARATOR) {
+            return false;
+        }
+        for (int i = 0; i < prefixBytes.length; i++) {
+            if (storeKey[i] != prefixBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] encode(Entry entry) throws IOException {
+        final byte[] json = objectMapper.writeValueAsBytes(entry.result());
+        return ByteBuffer.allocate(Long.BYTES + json.length).putLong(entry.expiresAt()).put(json).array();
+    }
+
+    @Nullable
+    private Entry decode(byte[] value) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(value);
+            final long expiresAt = buffer.getLong();
+            final LookupResult result = objectMapper.readValue(value, Long.BYTES, value.length - Long.BYTES, LookupResult.class);
+            return new Entry(result, expiresAt);
+        } catch (IOException e) {
+            LOG.debug("Couldn't read cached lookup result", e);
+            return null;
+        }
+    }
+
+    private String storeFilePrefix() {
+        return NAME + "-" + id() + "-";
+    }
+
+    // Removes files left behind by an earlier run of this cache
+    private void deleteStoreFiles() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(storeDir, storeFilePrefix() + "*.store")) {
+            for (Path file : files) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private record Entry(LookupResult result, long expiresAt) {
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    public interface Factory extends LookupCache.Factory {
+        @Override
+        MappedFileLookupCache create(@Assisted("id") String id, @Assisted("name") String name, LookupCacheConfiguration configuration);
+
+        @Override
+        Descriptor getDescriptor();
+    }
+
+    public static class Descriptor extends LookupCache.Descriptor<MappedFileLookupCache.Config> {
+        public Descriptor() {
+            super(NAME, MappedFileLookupCache.Config.class);
+        }
+
+        @Override
+        public Config defaultConfiguration() {
+            return Config.builder()
+                    .type(NAME)
+                    .maxSize(1_000_000)
+                    .maxHeapEntries(10_000)
+                    .expireAfterWrite(1)
+                    .expireAfterWriteUnit(TimeUnit.HOURS)
+                    .build();
+        }
+    }
+
+    @JsonAutoDetect
+    @AutoValue
+    @WithBeanGetter
+    @JsonDeserialize(builder = AutoValue_MappedFileLookupCache_Config.Builder.class)
+    @JsonTypeName(NAME)
+    public abstract static class Config implements LookupCacheConfiguration {
+
+        @Min(1)
+        @JsonProperty(MAX_SIZE)
+        public abstract long maxSize();
+
+        @Min(1)
+        @JsonProperty(MAX_HEAP_ENTRIES)
+        public abstract int maxHeapEntries();
+
+        @Min(0)
+        @JsonProperty(EXPIRE_AFTER_WRITE)
+        public abstract long expireAfterWrite();
+
+        @Nullable
+        @JsonProperty(EXPIRE_AFTER_WRITE_UNIT)
+        public abstract TimeUnit expireAfterWriteUnit();
+
+        public static Builder builder() {
+            return new AutoValue_MappedFileLookupCache_Config.Builder();
+        }
+
+        @AutoValue.Builder
+        public abstract static class Builder {
+            @JsonProperty("type")
+            public abstract Builder type(String type);
+
+            @JsonProperty(MAX_SIZE)
+            public abstract Builder maxSize(long maxSize);
+
+            @JsonProperty(MAX_HEAP_ENTRIES)
+            public abstract Builder maxHeapEntries(int maxHeapEntries);
+
+            @JsonProperty(EXPIRE_AFTER_WRITE)
+            public abstract Builder expireAfterWrite(long expireAfterWrite);
+
+            @JsonProperty(EXPIRE_AFTER_WRITE_UNIT)
+            public abstract Builder expireAfterWriteUnit(@Nullable TimeUnit expireAfterWriteUnit);
+
+            public abstract Config build();
+        }
+    }
+}
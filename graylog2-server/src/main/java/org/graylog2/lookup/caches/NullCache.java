@@ -33,7 +33,11 @@ import org.slf4j.LoggerFactory;
 
 import jakarta.inject.Inject;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.function.Function;
 
 /**
  * The cache that doesn't. Used in place when no cache is wanted, having a null implementation saves us ugly null checks.
@@ -71,6 +75,24 @@ public class NullCache extends LookupCache {
         }
     }
 
+    @Override
+    public Map<LookupCacheKey, LookupResult> getAll(Collection<LookupCacheKey> keys,
+                                                    Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        try {
+            return loader.apply(keys);
+        } catch (Exception e) {
+            LOG.warn("Loading values from data adapter failed for {} keys, returning empty results", keys.size(), e);
+            final Map<LookupCacheKey, LookupResult> results = new HashMap<>(keys.size());
+            keys.forEach(key -> results.put(key, LookupResult.empty()));
+            return results;
+        }
+    }
+
+    @Override
+    public boolean retainsResults() {
+        return false;
+    }
+
     @Override
     public LookupResult getIfPresent(LookupCacheKey key) {
         return LookupResult.empty();
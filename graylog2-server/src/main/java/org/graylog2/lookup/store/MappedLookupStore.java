@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.store;
+
+import jakarta.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * An immutable key/value store in a memory-mapped file.
+ * <p>
+ * The data lives in the page cache instead of the Java heap, so large lookup tables neither need heap nor add to
+ * garbage collection pauses. A store is written once with a {@link Builder} and can then be read concurrently
+ * without any locking. Replacing a store with a new one only swaps a reference.
+ * <p>
+ * File layout:
+ * <pre>
+ * header:  magic, version, segment shift, entry count, end of data, index offset, slot count
+ * data:    records of [int key length][int value length][key][value], never crossing a segment boundary
+ * index:   open-addressing hash table of 8 byte slots, each one a 24 bit key hash and a 40 bit record offset
+ * </pre>
+ * Files are mapped in segments because a single mapping can't be larger than 2 GB.
+ */
+public final class MappedLookupStore implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedLookupStore.class);
+
+    private static final int MAGIC = 0x474c4b53;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int PADDING = -1;
+    private static final int SLOT_SIZE = 8;
+    private static final int DEFAULT_SEGMENT_SHIFT = 30;
+    private static final long OFFSET_MASK = (1L << 40) - 1;
+    private static final byte[] ZEROS = new byte[4096];
+
+    private final Path file;
+    private final ByteBuffer[] segments;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final long entries;
+    private final long dataEnd;
+    private final long indexOffset;
+    private final long slotMask;
+
+    private MappedLookupStore(Path file, ByteBuffer[] segments, int segmentShift, long entries, long dataEnd,
+                              long indexOffset, long slotCount) {
+        this.file = file;
+        this.segments = segments;
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        this.entries = entries;
+        this.dataEnd = dataEnd;
+        this.indexOffset = indexOffset;
+        this.slotMask = slotCount - 1;
+    }
+
+    /**
+     * Starts writing a new store to the given file. An existing file is replaced.
+     */
+    public static Builder builder(Path file) throws IOException {
+        return new Builder(file, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    // Smaller segments to test records and index slots around segment boundaries
+    static Builder builder(Path file, int segmentShift) throws IOException {
+        return new Builder(file, segmentShift);
+    }
+
+    /**
+     * Opens a store which has been written by a {@link Builder} before.
+     */
+    public static MappedLookupStore open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("Not a lookup store file: " + file);
+            }
+            final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a lookup store file: " + file);
+            }
+            final int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported lookup store version " + version + ": " + file);
+            }
+            final int segmentShift = header.getInt();
+            header.getInt();
+            final long entries = header.getLong();
+            final long dataEnd = header.getLong();
+            final long indexOffset = header.getLong();
+            final long slotCount = header.getLong();
+
+            final ByteBuffer[] segments = map(channel, FileChannel.MapMode.READ_ONLY, channel.size(), segmentShift);
+            return new MappedLookupStore(file, segments, segmentShift, entries, dataEnd, indexOffset, slotCount);
+        }
+    }
+
+    private static ByteBuffer[] map(FileChannel channel, FileChannel.MapMode mode, long size, int segmentShift) throws IOException {
+        final long segmentSize = 1L << segmentShift;
+        final int segmentCount = Math.toIntExact((size + segmentSize - 1) >>> segmentShift);
+        final ByteBuffer[] segments = new ByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            final long start = (long) i << segmentShift;
+            final MappedByteBuffer segment = channel.map(mode, start, Math.min(segmentSize, size - start));
+            segments[i] = segment.order(ByteOrder.LITTLE_ENDIAN);
+        }
+        return segments;
+    }
+
+    /**
+     * Returns the value for the given key, or {@code null} if the store doesn't contain it.
+     */
+    @Nullable
+    public byte[] get(byte[] key) {
+        final long recordOffset = find(key);
+        if (recordOffset < 0) {
+            return null;
+        }
+        final ByteBuffer segment = segment(recordOffset);
+        final int position = position(recordOffset);
+        final int keyLength = segment.getInt(position);
+        final byte[] value = new byte[segment.getInt(position + 4)];
+        segment.get(position + RECORD_HEADER_SIZE + keyLength, value);
+        return value;
+    }
+
+    public boolean contains(byte[] key) {
+        return find(key) >= 0;
+    }
+
+    private long find(byte[] key) {
+        final long hash = hash(key);
+        final long fingerprint = fingerprint(hash);
+        for (long slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+            final long slotValue = readSlot(slot);
+            if (slotValue == 0) {
+                return -1;
+            }
+            final long recordOffset = slotValue & OFFSET_MASK;
+            if ((slotValue >>> 40) == fingerprint && keyEquals(recordOffset, key)) {
+                return recordOffset;
+            }
+        }
+    }
+
+    private boolean keyEquals(long recordOffset, byte[] key) {
+        final ByteBuffer segment = segment(recordOffset);
+        final int position = position(recordOffset);
+        if (segment.getInt(position) != key.length) {
+            return false;
+        }
+        final int keyStart = position + RECORD_HEADER_SIZE;
+        for (int i = 0; i < key.length; i++) {
+            if (segment.get(keyStart + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long readSlot(long slot) {
+        final long offset = indexOffset + slot * SLOT_SIZE;
+        return segment(offset).getLong(position(offset));
+    }
+
+    private ByteBuffer segment(long offset) {
+        return segments[(int) (offset >>> segmentShift)];
+    }
+
+    private int position(long offset) {
+        return (int) (offset & segmentMask);
+    }
+
+    /**
+     * The number of entries in this store.
+     */
+    public long size() {
+        return entries;
+    }
+
+    /**
+     * Iterates over all entries in the order they have been written. Every call of {@link Iterator#next()} copies
+     * the key and the value of the entry to the heap.
+     */
+    public Iterator<Map.Entry<byte[], byte[]>> iterator() {
+        return new Iterator<>() {
+            private long offset = nextRecord(segments, segmentShift, HEADER_SIZE, dataEnd);
+
+            @Override
+            public boolean hasNext() {
+                return offset < dataEnd;
+            }
+
+            @Override
+            public Map.Entry<byte[], byte[]> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final ByteBuffer segment = segment(offset);
+                final int position = position(offset);
+                final byte[] key = new byte[segment.getInt(position)];
+                final byte[] value = new byte[segment.getInt(position + 4)];
+                segment.get(position + RECORD_HEADER_SIZE, key);
+                segment.get(position + RECORD_HEADER_SIZE + key.length, value);
+                offset = nextRecord(segments, segmentShift, offset + RECORD_HEADER_SIZE + key.length + value.length, dataEnd);
+                return Map.entry(key, value);
+            }
+        };
+    }
+
+    /**
+     * Returns the offset of the next record at or after the given offset, skipping the padding at segment ends.
+     */
+    private static long nextRecord(ByteBuffer[] segments, int segmentShift, long offset, long dataEnd) {
+        if (offset >= dataEnd) {
+            return dataEnd;
+        }
+        final long segmentSize = 1L << segmentShift;
+        final long remaining = segmentSize - (offset & (segmentSize - 1));
+        if (remaining < RECORD_HEADER_SIZE
+                || segments[(int) (offset >>> segmentShift)].getInt((int) (offset & (segmentSize - 1))) == PADDING) {
+            return Math.min(offset + remaining, dataEnd);
+        }
+        return offset;
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * Deletes the file of this store.
+     * <p>
+     * The mapping itself is released once the store has been garbage collected, so concurrent readers which still
+     * use the store aren't affected.
+     */
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            LOG.warn("Couldn't delete lookup store file {}", file, e);
+        }
+    }
+
+    // FNV-1a with the finalizer of MurmurHash3, to spread similar keys over the whole index
+    private static long hash(ByteBuffer buffer, int start, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash ^= buffer.get(start + i) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long hash(byte[] key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    private static long fingerprint(long hash) {
+        // The index position uses the low bits of the hash, so take the fingerprint from the high ones
+        return hash >>> 40;
+    }
+
+    /**
+     * Writes a store file. Entries are streamed to the file as they are added, only the index is built in the file
+     * once all entries are known, so building a store doesn't need heap proportional to its size either.
+     */
+    public static final class Builder implements Closeable {
+        private final Path file;
+        private final int segmentShift;
+        private final long segmentSize;
+        private final OutputStream out;
+        private long position = 0;
+        private long entries = 0;
+        private boolean done = false;
+
+        private Builder(Path file, int segmentShift) throws IOException {
+            checkArgument(segmentShift >= 12 && segmentShift <= 30, "Invalid segment shift %s", segmentShift);
+            this.file = file;
+            this.segmentShift = segmentShift;
+            this.segmentSize = 1L << segmentShift;
+            this.out = new BufferedOutputStream(Files.newOutputStream(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE), 64 * 1024);
+            // The header is written once the store is complete
+            skip(HEADER_SIZE);
+        }
+
+        /**
+         * Adds an entry. Keys must be unique, duplicates make {@link #build()} fail.
+         */
+        public Builder put(byte[] key, byte[] value) throws IOException {
+            checkState(!done, "Store has already been built");
+            final long recordSize = (long) RECORD_HEADER_SIZE + key.length + value.length;
+            checkArgument(recordSize <= segmentSize, "Entry with %s bytes is too large", recordSize);
+
+            final long remaining = segmentSize - (position & (segmentSize - 1));
+            if (recordSize > remaining) {
+                // Records never cross segment boundaries, so they can be read from a single mapping
+                if (remaining >= RECORD_HEADER_SIZE) {
+                    writeInt(PADDING);
+                    skip(remaining - 4);
+                } else {
+                    skip(remaining);
+                }
+            }
+            checkArgument(position + recordSize <= OFFSET_MASK, "Lookup store is too large");
+
+            writeInt(key.length);
+            writeInt(value.length);
+            write(key);
+            write(value);
+            entries++;
+            return this;
+        }
+
+        /**
+         * Writes the index and opens the store.
+         *
+         * @throws IllegalArgumentException if a key has been added more than once
+         */
+        public MappedLookupStore build() throws IOException {
+            checkState(!done, "Store has already been built");
+            done = true;
+            final long dataEnd = position;
+            try (FileChannel channel = openForIndex()) {
+                // Index slots are 8 bytes, so they never cross segment boundaries either
+                final long indexOffset = dataEnd + (SLOT_SIZE - (dataEnd % SLOT_SIZE)) % SLOT_SIZE;
+                final long slotCount = Long.highestOneBit(Math.max(2, entries * 2 - 1)) << 1;
+                final long fileSize = indexOffset + slotCount * SLOT_SIZE;
+
+                // Mapping beyond the end of the file extends it, the index pages are zeroed by the file system
+                final ByteBuffer[] segments = map(channel, FileChannel.MapMode.READ_WRITE, fileSize, segmentShift);
+                segments[0].putInt(0, MAGIC)
+                        .putInt(4, VERSION)
+                        .putInt(8, segmentShift)
+                        .putLong(16, entries)
+                        .putLong(24, dataEnd)
+                        .putLong(32, indexOffset)
+                        .putLong(40, slotCount);
+                // No need to force the changes to disk, the store is read through the page cache as well
+                writeIndex(segments, dataEnd, indexOffset, slotCount);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(file);
+                throw e;
+            }
+            return open(file);
+        }
+
+        private void writeIndex(ByteBuffer[] segments, long dataEnd, long indexOffset, long slotCount) {
+            final long segmentMask = segmentSize - 1;
+            final long slotMask = slotCount - 1;
+            for (long offset = nextRecord(segments, segmentShift, HEADER_SIZE, dataEnd); offset < dataEnd; ) {
+                final ByteBuffer segment = segments[(int) (offset >>> segmentShift)];
+                final int recordPosition = (int) (offset & segmentMask);
+                final int keyLength = segment.getInt(recordPosition);
+                final int valueLength = segment.getInt(recordPosition + 4);
+                final long hash = hash(segment, recordPosition + RECORD_HEADER_SIZE, keyLength);
+
+                for (long slot = hash & slotMask; ; slot = (slot + 1) & slotMask) {
+                    final long slotOffset = indexOffset + slot * SLOT_SIZE;
+                    final ByteBuffer slotSegment = segments[(int) (slotOffset >>> segmentShift)];
+                    final int slotPosition = (int) (slotOffset & segmentMask);
+                    final long slotValue = slotSegment.getLong(slotPosition);
+                    if (slotValue == 0) {
+                        slotSegment.putLong(slotPosition, (fingerprint(hash) << 40) | offset);
+                        break;
+                    }
+                    if ((slotValue >>> 40) == fingerprint(hash) && sameKey(segments, slotValue & OFFSET_MASK, offset)) {
+                        throw new IllegalArgumentException("Multiple entries with same key: "
+                                + new String(key(segment, recordPosition), StandardCharsets.UTF_8));
+                    }
+                }
+                offset = nextRecord(segments, segmentShift, offset + RECORD_HEADER_SIZE + keyLength + valueLength, dataEnd);
+            }
+        }
+
+        private boolean sameKey(ByteBuffer[] segments, long offsetA, long offsetB) {
+            final ByteBuffer segmentA = segments[(int) (offsetA >>> segmentShift)];
+            final ByteBuffer segmentB = segments[(int) (offsetB >>> segmentShift)];
+            final int positionA = (int) (offsetA & (segmentSize - 1));
+            final int positionB = (int) (offsetB & (segmentSize - 1));
+            final int length = segmentA.getInt(positionA);
+            if (segmentB.getInt(positionB) != length) {
+                return false;
+            }
+            return segmentA.slice(positionA + RECORD_HEADER_SIZE, length)
+                    .equals(segmentB.slice(positionB + RECORD_HEADER_SIZE, length));
+        }
+
+        private static byte[] key(ByteBuffer segment, int recordPosition) {
+            final byte[] key = new byte[segment.getInt(recordPosition)];
+            segment.get(recordPosition + RECORD_HEADER_SIZE, key);
+            return key;
+        }
+
+        private FileChannel openForIndex() throws IOException {
+            out.close();
+            return FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        private void writeInt(int value) throws IOException {
+            // Little endian, like the mapped buffers which read the file
+            out.write(value);
+            out.write(value >>> 8);
+            out.write(value >>> 16);
+            out.write(value >>> 24);
+            position += 4;
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            position += bytes.length;
+        }
+
+        private void skip(long bytes) throws IOException {
+            for (long remaining = bytes; remaining > 0; remaining -= ZEROS.length) {
+                out.write(ZEROS, 0, (int) Math.min(remaining, ZEROS.length));
+            }
+            position += bytes;
+        }
+
+        /**
+         * Discards the file unless the store has been built.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!done) {
+                done = true;
+                out.close();
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
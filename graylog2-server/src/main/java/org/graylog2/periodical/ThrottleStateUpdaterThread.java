@@ -192,7 +192,6 @@ public class ThrottleStateUpdaterThread extends Periodical {
     @Override
     public void doRun() {
         throttleState = new ThrottleState(throttleState);
-        final long committedOffset = journal.getCommittedOffset();
 
         // TODO there's a lot of duplication around this class. Probably should be refactored a bit.
         // also update metrics for each of the values, so clients can get to it cheaply
@@ -202,7 +201,7 @@ public class ThrottleStateUpdaterThread extends Periodical {
 
         long previousLogEndOffset = logEndOffset;
         long previousReadOffset = currentReadOffset;
-        long logStartOffset = journal.getLogStartOffset();
+        // the offsets are summed up over all journal partitions, so their differences count the messages of all of them
         logEndOffset = journal.getLogEndOffset() - 1; // -1 because getLogEndOffset is the next offset that gets assigned
         currentReadOffset = journal.getNextReadOffset() - 1; // just to make it clear which field we read
 
@@ -220,12 +219,7 @@ public class ThrottleStateUpdaterThread extends Periodical {
 
         throttleState.processBufferCapacity = processBuffer.getRemainingCapacity();
 
-        if (committedOffset == LocalKafkaJournal.DEFAULT_COMMITTED_OFFSET) {
-            // nothing committed at all, the entire log is uncommitted, or completely empty.
-            throttleState.uncommittedJournalEntries = journal.size() == 0 ? 0 : logEndOffset - logStartOffset;
-        } else {
-            throttleState.uncommittedJournalEntries = logEndOffset - committedOffset;
-        }
+        throttleState.uncommittedJournalEntries = journal.uncommittedMessages();
         log.debug("ThrottleState: {}", throttleState);
 
         // the journal needs this to provide information to rest clients
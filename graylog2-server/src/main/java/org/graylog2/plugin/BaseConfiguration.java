@@ -58,6 +58,12 @@ public abstract class BaseConfiguration extends PathConfiguration implements Com
     @Parameter(value = "ring_size", required = true, validator = PositiveIntegerValidator.class)
     private int ringSize = 65536;
 
+    @Parameter(value = "processor_batch_claiming")
+    private boolean processorBatchClaiming = false;
+
+    @Parameter(value = "processor_max_batch_size", validator = PositiveIntegerValidator.class)
+    private int processorMaxBatchSize = 100;
+
     @Parameter(value = "inputbuffer_ring_size", required = true, validator = PositiveIntegerValidator.class)
     private int inputBufferRingSize = 65536;
 
@@ -141,6 +147,14 @@ public abstract class BaseConfiguration extends PathConfiguration implements Com
         return ringSize;
     }
 
+    public boolean isProcessorBatchClaiming() {
+        return processorBatchClaiming;
+    }
+
+    public int getProcessorMaxBatchSize() {
+        return processorMaxBatchSize;
+    }
+
     public int getInputBufferRingSize() {
         return inputBufferRingSize;
     }
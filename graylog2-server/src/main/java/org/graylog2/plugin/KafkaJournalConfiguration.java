@@ -18,8 +18,10 @@ package org.graylog2.plugin;
 
 import com.github.joschi.jadconfig.Parameter;
 import com.github.joschi.jadconfig.util.Size;
+import com.github.joschi.jadconfig.validators.PositiveIntegerValidator;
 import org.graylog2.bindings.NamedBindingOverride;
 import org.graylog2.configuration.PathConfiguration;
+import org.graylog2.shared.journal.JournalFsyncPolicy;
 import org.joda.time.Duration;
 
 import java.nio.file.Path;
@@ -53,6 +55,30 @@ public class KafkaJournalConfiguration extends PathConfiguration {
     @Parameter("message_journal_flush_age")
     private Duration messageJournalFlushAge = Duration.standardMinutes(1L);
 
+    @Parameter("message_journal_group_commit")
+    private boolean messageJournalGroupCommit = false;
+
+    @Parameter("message_journal_group_commit_size")
+    private Size messageJournalGroupCommitSize = Size.megabytes(1L);
+
+    @Parameter("message_journal_group_commit_delay")
+    private Duration messageJournalGroupCommitDelay = Duration.millis(5L);
+
+    @Parameter(value = "message_journal_fsync_policy", converter = JournalFsyncPolicy.Converter.class)
+    private JournalFsyncPolicy messageJournalFsyncPolicy = JournalFsyncPolicy.NONE;
+
+    @Parameter("message_journal_fsync_interval")
+    private Duration messageJournalFsyncInterval = Duration.standardSeconds(1L);
+
+    @Parameter("message_journal_fsync_size")
+    private Size messageJournalFsyncSize = Size.megabytes(64L);
+
+    @Parameter("message_journal_mmap_reads")
+    private boolean messageJournalMmapReads = false;
+
+    @Parameter(value = "message_journal_partitions", validator = PositiveIntegerValidator.class)
+    private int messageJournalPartitions = 1;
+
     @NamedBindingOverride(value = MESSAGE_JOURNAL_DIR)
     public Path getMessageJournalDir() {
         return Optional.ofNullable(messageJournalDir).orElse(getDataDir().resolve("journal"));
@@ -81,4 +107,36 @@ public class KafkaJournalConfiguration extends PathConfiguration {
     public Duration getMessageJournalFlushAge() {
         return messageJournalFlushAge;
     }
+
+    public boolean isMessageJournalGroupCommit() {
+        return messageJournalGroupCommit;
+    }
+
+    public Size getMessageJournalGroupCommitSize() {
+        return messageJournalGroupCommitSize;
+    }
+
+    public Duration getMessageJournalGroupCommitDelay() {
+        return messageJournalGroupCommitDelay;
+    }
+
+    public JournalFsyncPolicy getMessageJournalFsyncPolicy() {
+        return messageJournalFsyncPolicy;
+    }
+
+    public Duration getMessageJournalFsyncInterval() {
+        return messageJournalFsyncInterval;
+    }
+
+    public Size getMessageJournalFsyncSize() {
+        return messageJournalFsyncSize;
+    }
+
+    public boolean isMessageJournalMmapReads() {
+        return messageJournalMmapReads;
+    }
+
+    public int getMessageJournalPartitions() {
+        return messageJournalPartitions;
+    }
 }
@@ -44,6 +44,7 @@ import org.graylog2.plugin.streams.Stream;
 import org.graylog2.plugin.utilities.date.DateTimeConverter;
 import org.graylog2.plugin.utilities.ratelimitedlog.RateLimitedLogFactory;
 import org.graylog2.shared.messageq.Acknowledgeable;
+import org.graylog2.shared.messageq.localkafka.JournalPartitionOffset;
 import org.graylog2.shared.utilities.ExceptionUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -314,9 +315,10 @@ public class Message implements Messages, Indexable, Acknowledgeable {
     @Deprecated
     public static final Function<Message, String> ID_FUNCTION = new MessageIdFunction();
 
-    private final Map<String, Object> fields = Maps.newHashMap();
-    private Set<Stream> streams = Sets.newHashSet();
-    private Set<IndexSet> indexSets = Sets.newHashSet();
+    private final Map<String, Object> fields = new MessageFields();
+    // Most messages are routed into very few streams, so keep the initial sets small
+    private Set<Stream> streams = Sets.newHashSetWithExpectedSize(2);
+    private Set<IndexSet> indexSets = Sets.newHashSetWithExpectedSize(2);
     private String sourceInputId;
 
     // Used for drools to filter out messages.
@@ -340,7 +342,7 @@ public class Message implements Messages, Indexable, Acknowledgeable {
      */
     private Map<String, Object> metadata;
 
-    private com.codahale.metrics.Counter sizeCounter = new com.codahale.metrics.Counter();
+    private long size = 0;
 
     private List<ProcessingError> processingErrors;
 
@@ -654,26 +656,25 @@ public class Message implements Messages, Indexable, Acknowledgeable {
         }
         long newValueSize = 0;
         long oldValueSize = 0;
-        final long oldSize = sizeCounter.getCount();
+        final long oldSize = size;
         final int keyLength = fieldName.length();
         // if the field is being removed, also subtract the name's length
         if (newValue == null) {
-            sizeCounter.dec(keyLength);
+            size -= keyLength;
         } else {
             newValueSize = sizeForValue(newValue);
-            sizeCounter.inc(newValueSize);
+            size += newValueSize;
         }
         // if the field is new, also count its name's length
         if (previousValue == null) {
-            sizeCounter.inc(keyLength);
+            size += keyLength;
         } else {
             oldValueSize = sizeForValue(previousValue);
-            sizeCounter.dec(oldValueSize);
+            size -= oldValueSize;
         }
         if (LOG.isTraceEnabled()) {
-            final long newSize = sizeCounter.getCount();
             LOG.trace("[Message size update][{}] key {}/{}, new/old/change: {}/{}/{} total: {}",
-                    getId(), fieldName, keyLength, newValueSize, oldValueSize, newSize - oldSize, newSize);
+                    getId(), fieldName, keyLength, newValueSize, oldValueSize, size - oldSize, size);
         }
     }
 
@@ -690,7 +691,7 @@ public class Message implements Messages, Indexable, Acknowledgeable {
 
     @Override
     public long getSize() {
-        return sizeCounter.getCount();
+        return size;
     }
 
     public static boolean validKey(final String key) {
@@ -778,9 +779,9 @@ public class Message implements Messages, Indexable, Acknowledgeable {
     public void addStream(Stream stream) {
         indexSets.add(stream.getIndexSet());
         if (streams.add(stream)) {
-            sizeCounter.inc(8);
+            size += 8;
             if (LOG.isTraceEnabled()) {
-                LOG.trace("[Message size update][{}] stream added: {}", getId(), sizeCounter.getCount());
+                LOG.trace("[Message size update][{}] stream added: {}", getId(), size);
             }
         }
     }
@@ -810,9 +811,9 @@ public class Message implements Messages, Indexable, Acknowledgeable {
             for (Stream s : streams) {
                 indexSets.add(s.getIndexSet());
             }
-            sizeCounter.dec(8);
+            size -= 8;
             if (LOG.isTraceEnabled()) {
-                LOG.trace("[Message size update][{}] stream removed: {}", getId(), sizeCounter.getCount());
+                LOG.trace("[Message size update][{}] stream removed: {}", getId(), size);
             }
         }
 
@@ -889,10 +890,14 @@ public class Message implements Messages, Indexable, Acknowledgeable {
      */
     @Deprecated
     public long getJournalOffset() {
-        if (messageQueueId == null) {
-            return Long.MIN_VALUE;
+        if (messageQueueId instanceof JournalPartitionOffset partitionOffset) {
+            // offsets of a partitioned journal are only unique within their partition
+            return partitionOffset.offset();
         }
-        return (long) messageQueueId;
+        if (messageQueueId instanceof Long offset) {
+            return offset;
+        }
+        return Long.MIN_VALUE;
     }
 
     public void setMessageQueueId(Object messageQueueId) {
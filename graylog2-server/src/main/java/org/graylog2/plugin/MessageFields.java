@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import static org.graylog2.plugin.Message.FIELD_FULL_MESSAGE;
+import static org.graylog2.plugin.Message.FIELD_GL2_ACCOUNTED_MESSAGE_SIZE;
+import static org.graylog2.plugin.Message.FIELD_GL2_MESSAGE_ID;
+import static org.graylog2.plugin.Message.FIELD_GL2_ORIGINAL_TIMESTAMP;
+import static org.graylog2.plugin.Message.FIELD_GL2_PROCESSING_DURATION_MS;
+import static org.graylog2.plugin.Message.FIELD_GL2_PROCESSING_ERROR;
+import static org.graylog2.plugin.Message.FIELD_GL2_PROCESSING_TIMESTAMP;
+import static org.graylog2.plugin.Message.FIELD_GL2_RECEIVE_TIMESTAMP;
+import static org.graylog2.plugin.Message.FIELD_GL2_REMOTE_HOSTNAME;
+import static org.graylog2.plugin.Message.FIELD_GL2_REMOTE_IP;
+import static org.graylog2.plugin.Message.FIELD_GL2_REMOTE_PORT;
+import static org.graylog2.plugin.Message.FIELD_GL2_SOURCE_COLLECTOR;
+import static org.graylog2.plugin.Message.FIELD_GL2_SOURCE_INPUT;
+import static org.graylog2.plugin.Message.FIELD_GL2_SOURCE_NODE;
+import static org.graylog2.plugin.Message.FIELD_ID;
+import static org.graylog2.plugin.Message.FIELD_LEVEL;
+import static org.graylog2.plugin.Message.FIELD_MESSAGE;
+import static org.graylog2.plugin.Message.FIELD_SOURCE;
+import static org.graylog2.plugin.Message.FIELD_TIMESTAMP;
+import static org.graylog2.plugin.Message.GL2_SECOND_SORT_FIELD;
+
+/**
+ * Compact field storage for {@link Message}.
+ * <p>
+ * Well-known fields which are set on (almost) every message are stored in fixed slots of an array instead of a hash
+ * map entry each. All other fields are stored in a hash map which is only allocated when the first custom field is
+ * added. Null values are not stored, putting a null value removes the field.
+ * <p>
+ * Iteration returns the well-known fields first, followed by the custom fields.
+ */
+final class MessageFields extends AbstractMap<String, Object> {
+    private static final String[] SLOT_KEYS = {
+            FIELD_ID,
+            FIELD_MESSAGE,
+            FIELD_SOURCE,
+            FIELD_TIMESTAMP,
+            FIELD_FULL_MESSAGE,
+            FIELD_LEVEL,
+            FIELD_GL2_MESSAGE_ID,
+            GL2_SECOND_SORT_FIELD,
+            FIELD_GL2_ACCOUNTED_MESSAGE_SIZE,
+            FIELD_GL2_ORIGINAL_TIMESTAMP,
+            FIELD_GL2_PROCESSING_DURATION_MS,
+            FIELD_GL2_PROCESSING_ERROR,
+            FIELD_GL2_PROCESSING_TIMESTAMP,
+            FIELD_GL2_RECEIVE_TIMESTAMP,
+            FIELD_GL2_REMOTE_HOSTNAME,
+            FIELD_GL2_REMOTE_IP,
+            FIELD_GL2_REMOTE_PORT,
+            FIELD_GL2_SOURCE_COLLECTOR,
+            FIELD_GL2_SOURCE_INPUT,
+            FIELD_GL2_SOURCE_NODE
+    };
+    private static final Map<String, Integer> SLOT_INDEX = new HashMap<>();
+
+    static {
+        for (int i = 0; i < SLOT_KEYS.length; i++) {
+            SLOT_INDEX.put(SLOT_KEYS[i], i);
+        }
+    }
+
+    private final Object[] slots = new Object[SLOT_KEYS.length];
+    private int slotCount = 0;
+    private HashMap<String, Object> custom;
+    private EntrySet entrySet;
+
+    private static int slotOf(Object key) {
+        final Integer slot = SLOT_INDEX.get(key);
+        return slot == null ? -1 : slot;
+    }
+
+    @Override
+    public Object get(Object key) {
+        final int slot = slotOf(key);
+        if (slot >= 0) {
+            return slots[slot];
+        }
+        return custom == null ? null : custom.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        final int slot = slotOf(key);
+        if (slot >= 0) {
+            return slots[slot] != null;
+        }
+        return custom != null && custom.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        if (value == null) {
+            return remove(key);
+        }
+        final int slot = slotOf(key);
+        if (slot >= 0) {
+            final Object previous = slots[slot];
+            if (previous == null) {
+                slotCount++;
+            }
+            slots[slot] = value;
+            return previous;
+        }
+        if (custom == null) {
+            custom = new HashMap<>();
+        }
+        return custom.put(key, value);
+    }
+
+    @Override
+    public Object remove(Object key) {
+        final int slot = slotOf(key);
+        if (slot >= 0) {
+            return clearSlot(slot);
+        }
+        return custom == null ? null : custom.remove(key);
+    }
+
+    private Object clearSlot(int slot) {
+        final Object previous = slots[slot];
+        if (previous != null) {
+            slots[slot] = null;
+            slotCount--;
+        }
+        return previous;
+    }
+
+    @Override
+    public int size() {
+        return slotCount + (custom == null ? 0 : custom.size());
+    }
+
+    @Override
+    public void clear() {
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = null;
+        }
+        slotCount = 0;
+        if (custom != null) {
+            custom.clear();
+        }
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+        @Override
+        public Iterator<Entry<String, Object>> iterator() {
+            return new EntryIterator();
+        }
+
+        @Override
+        public int size() {
+            return MessageFields.this.size();
+        }
+
+        @Override
+        public void clear() {
+            MessageFields.this.clear();
+        }
+    }
+
+    private final class SlotEntry implements Entry<String, Object> {
+        private final int slot;
+
+        private SlotEntry(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public String getKey() {
+            return SLOT_KEYS[slot];
+        }
+
+        @Override
+        public Object getValue() {
+            return slots[slot];
+        }
+
+        @Override
+        public Object setValue(Object value) {
+            Objects.requireNonNull(value, "Message field values must not be null");
+            final Object previous = slots[slot];
+            slots[slot] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Entry<?, ?> e && getKey().equals(e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return getKey().hashCode() ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+
+    private final class EntryIterator implements Iterator<Entry<String, Object>> {
+        private int nextSlot = advance(0);
+        private int lastSlot = -1;
+        private Iterator<Entry<String, Object>> customIterator;
+
+        private int advance(int from) {
+            int slot = from;
+            while (slot < slots.length && slots[slot] == null) {
+                slot++;
+            }
+            return slot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextSlot < slots.length) {
+                return true;
+            }
+            if (customIterator == null) {
+                if (custom == null) {
+                    return false;
+                }
+                customIterator = custom.entrySet().iterator();
+            }
+            return customIterator.hasNext();
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (nextSlot < slots.length) {
+                lastSlot = nextSlot;
+                nextSlot = advance(nextSlot + 1);
+                return new SlotEntry(lastSlot);
+            }
+            lastSlot = -1;
+            return customIterator.next();
+        }
+
+        @Override
+        public void remove() {
+            if (lastSlot >= 0) {
+                if (slots[lastSlot] == null) {
+                    throw new IllegalStateException();
+                }
+                clearSlot(lastSlot);
+                lastSlot = -1;
+            } else if (customIterator != null) {
+                customIterator.remove();
+            } else {
+                throw new IllegalStateException();
+            }
+        }
+    }
+}
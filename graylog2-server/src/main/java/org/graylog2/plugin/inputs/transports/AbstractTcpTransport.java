@@ -162,6 +162,7 @@ public abstract class AbstractTcpTransport extends NettyTransport {
         this.configuration = configuration;
         this.parentEventLoopGroup = parentEventLoopGroup;
         this.nettyTransportConfiguration = nettyTransportConfiguration;
+        registerTransportTypeGauge(nettyTransportConfiguration);
         this.enabledTLSProtocols = tlsConfiguration.getEnabledTlsProtocols();
         this.channelReference = new AtomicReference<>();
         this.childChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
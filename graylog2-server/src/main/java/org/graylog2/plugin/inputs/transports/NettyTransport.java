@@ -16,6 +16,7 @@
  */
 package org.graylog2.plugin.inputs.transports;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.MetricSet;
 import com.google.common.annotations.VisibleForTesting;
@@ -23,6 +24,7 @@ import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
+import org.graylog2.inputs.transports.NettyTransportConfiguration;
 import org.graylog2.inputs.transports.netty.EventLoopGroupFactory;
 import org.graylog2.inputs.transports.netty.ExceptionLoggingChannelHandler;
 import org.graylog2.inputs.transports.netty.PromiseFailureHandler;
@@ -44,6 +46,7 @@ import javax.annotation.Nullable;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.Callable;
 
@@ -91,6 +94,14 @@ public abstract class NettyTransport implements Transport {
         localRegistry.registerAll(MetricSets.of(throughputCounter.gauges()));
     }
 
+    /**
+     * Registers a gauge with the Netty transport type this input actually runs on, which differs from the configured
+     * one if the configured transport is not available on this system.
+     */
+    protected void registerTransportTypeGauge(NettyTransportConfiguration nettyTransportConfiguration) {
+        localRegistry.register("transport_type", (Gauge<String>) () -> nettyTransportConfiguration.getType().name().toLowerCase(Locale.ROOT));
+    }
+
     protected ChannelInitializer<? extends Channel> getChannelInitializer(final LinkedHashMap<String, Callable<? extends ChannelHandler>> handlerList) {
         return new ChannelInitializer<Channel>() {
             @Override
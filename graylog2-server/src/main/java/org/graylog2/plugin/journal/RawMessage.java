@@ -21,11 +21,18 @@ import com.google.common.base.MoreObjects;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
 import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.UnsafeByteOperations;
+import com.google.protobuf.WireFormat;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.system.NodeId;
+import org.graylog2.shared.messageq.localkafka.JournalPartitionOffset;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.slf4j.Logger;
@@ -46,6 +53,7 @@ import java.util.Optional;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.base.Strings.isNullOrEmpty;
 import static org.graylog2.plugin.journal.JournalMessages.JournalMessage;
 
@@ -72,6 +80,9 @@ public class RawMessage implements Serializable {
     private final Object messageQueueId;
     private int sequenceNr;
     private Configuration codecConfig;
+    // Pooled transport buffer holding the payload until it is appended to the journal or copied to the heap.
+    @Nullable
+    private transient ByteBuf payloadBuffer;
 
     public RawMessage(@Nonnull byte[] payload) {
         this(payload, (ResolvableInetSocketAddress) null);
@@ -85,15 +96,34 @@ public class RawMessage implements Serializable {
         this(Long.MIN_VALUE, new UUID(), Tools.nowUTC(), remoteAddress, payload);
     }
 
+    /**
+     * Creates a raw message whose payload stays in the given (usually pooled) buffer. The message takes over one
+     * reference of the buffer, which is released once the payload has been written to the journal or copied to the
+     * heap by {@link #getPayload()}. Use {@link #release()} if the message is discarded before that.
+     */
+    public RawMessage(@Nonnull ByteBuf payload, @Nullable InetSocketAddress remoteAddress) {
+        this(Long.MIN_VALUE, new UUID(), Tools.nowUTC(), ResolvableInetSocketAddress.wrap(remoteAddress),
+                checkNotNull(payload, "The message payload must not be null!").readableBytes());
+        this.payloadBuffer = payload;
+    }
+
     public RawMessage(long journalOffset,
                       @Nonnull UUID id,
                       DateTime timestamp,
                       @Nullable ResolvableInetSocketAddress remoteAddress,
                       @Nonnull byte[] payload) {
+        this(journalOffset, id, timestamp, remoteAddress, checkNotNull(payload, "The message payload must not be null!").length);
+        msgBuilder.setPayload(ByteString.copyFrom(payload));
+    }
+
+    private RawMessage(long journalOffset,
+                       @Nonnull UUID id,
+                       DateTime timestamp,
+                       @Nullable ResolvableInetSocketAddress remoteAddress,
+                       int payloadSize) {
         checkNotNull(id, "The message id must not be null!");
-        checkNotNull(payload, "The message payload must not be null!");
         sequenceNr = 0;
-        if (payload.length == 0 && log.isTraceEnabled()) {
+        if (payloadSize == 0 && log.isTraceEnabled()) {
             log.trace("The message payload should not be empty, message {} from {} will be discarded.",
                     id,
                     remoteAddress == null ? "unknown" : remoteAddress,
@@ -113,8 +143,6 @@ public class RawMessage implements Serializable {
         if (null != remoteAddress) {
             setRemoteAddress(remoteAddress);
         }
-
-        msgBuilder.setPayload(ByteString.copyFrom(payload));
     }
 
     public void addSourceNode(String sourceInputId, NodeId nodeId) {
@@ -164,7 +192,110 @@ public class RawMessage implements Serializable {
         }
     }
 
+    /**
+     * Decodes a raw message from the given buffer without copying the whole buffer to the heap first. Only the fields
+     * of the message are copied, the returned message doesn't reference the buffer. This matters for slices of
+     * memory-mapped journal segments: the segment file may be truncated or deleted while the message is still being
+     * processed, and accessing a mapping beyond the end of its file crashes the JVM with a {@code SIGBUS}.
+     */
+    @Nullable
+    public static RawMessage decode(final ByteBuffer buffer, final Object messageQueueId) {
+        try {
+            final CodedInputStream input = CodedInputStream.newInstance(buffer);
+            final JournalMessage journalMessage = JournalMessage.parseFrom(input);
+
+            return new RawMessage(journalMessage, messageQueueId);
+        } catch (IOException e) {
+            log.error("Cannot read raw message from journal, ignoring this message.", e);
+            return null;
+        }
+    }
+
     public byte[] encode() {
+        copyPayloadBuffer();
+        final JournalMessage journalMessage = buildJournalMessage();
+        return journalMessage == null ? null : journalMessage.toByteArray();
+    }
+
+    /**
+     * Encodes the message like {@link #encode()}, but without copying a pooled payload buffer: the returned bytes end
+     * with the header of the payload field, and the buffer returned by {@link #detachPayloadBuffer()} has to be
+     * appended to them to get the complete encoded message.
+     *
+     * @return the encoded message without the payload, or {@code null} if the message couldn't be encoded
+     */
+    @Nullable
+    public byte[] encodeWithoutPayload() {
+        checkState(payloadBuffer != null, "The message payload is not held in a buffer");
+        final JournalMessage journalMessage = buildJournalMessage();
+        if (journalMessage == null) {
+            return null;
+        }
+
+        final int payloadSize = payloadBuffer.readableBytes();
+        final int headerSize = journalMessage.getSerializedSize();
+        final byte[] bytes = new byte[headerSize
+                + CodedOutputStream.computeTagSize(JournalMessage.PAYLOAD_FIELD_NUMBER)
+                + CodedOutputStream.computeUInt32SizeNoTag(payloadSize)];
+        try {
+            final CodedOutputStream output = CodedOutputStream.newInstance(bytes);
+            journalMessage.writeTo(output);
+            output.writeTag(JournalMessage.PAYLOAD_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            output.writeUInt32NoTag(payloadSize);
+            output.checkNoSpaceLeft();
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode message header", e);
+        }
+        return bytes;
+    }
+
+    /**
+     * Returns {@code true} if the payload of this message is held in a (pooled) buffer instead of the heap.
+     */
+    public boolean hasPayloadBuffer() {
+        return payloadBuffer != null;
+    }
+
+    /**
+     * Hands the payload buffer over to the caller, which becomes responsible for releasing it. The message has no
+     * payload afterwards.
+     *
+     * @return the payload buffer or {@code null} if the payload isn't held in a buffer
+     */
+    @Nullable
+    public ByteBuf detachPayloadBuffer() {
+        final ByteBuf buffer = payloadBuffer;
+        payloadBuffer = null;
+        return buffer;
+    }
+
+    /**
+     * Copies a pooled payload buffer to the heap and releases it. Does nothing if the payload is already on the heap.
+     */
+    public void copyPayloadBuffer() {
+        final ByteBuf buffer = payloadBuffer;
+        if (buffer != null) {
+            payloadBuffer = null;
+            try {
+                msgBuilder.setPayload(UnsafeByteOperations.unsafeWrap(ByteBufUtil.getBytes(buffer)));
+            } finally {
+                buffer.release();
+            }
+        }
+    }
+
+    /**
+     * Releases the payload buffer of a message which is discarded before it has been journalled or processed.
+     */
+    public void release() {
+        final ByteBuf buffer = detachPayloadBuffer();
+        if (buffer != null) {
+            buffer.release();
+        }
+    }
+
+    @Nullable
+    private JournalMessage buildJournalMessage() {
         try {
             final JournalMessages.CodecInfo codec = msgBuilder.getCodec();
             final JournalMessages.CodecInfo.Builder builder = JournalMessages.CodecInfo.newBuilder(codec);
@@ -175,8 +306,7 @@ public class RawMessage implements Serializable {
             }
             msgBuilder.setCodec(builder.build());
 
-            final JournalMessage journalMessage = msgBuilder.build();
-            return journalMessage.toByteArray();
+            return msgBuilder.build();
         } catch (UninitializedMessageException e) {
             log.error(
                     "Unable to write RawMessage to journal because required fields are missing, " +
@@ -194,9 +324,15 @@ public class RawMessage implements Serializable {
     }
 
     public byte[] getPayload() {
+        copyPayloadBuffer();
         return msgBuilder.getPayload().toByteArray(); // TODO PERFORMANCE array copy
     }
 
+    public int getPayloadSize() {
+        final ByteBuf buffer = payloadBuffer;
+        return buffer != null ? buffer.readableBytes() : msgBuilder.getPayload().size();
+    }
+
     public UUID getId() {
         return id;
     }
@@ -292,13 +428,29 @@ public class RawMessage implements Serializable {
         return Optional.ofNullable(lastNode);
     }
 
+    /**
+     * Returns the key which selects the journal partition of this message. Messages received by the same input from
+     * the same remote address share a key, so their order is retained in a partitioned journal.
+     */
+    public int getJournalPartitionKey() {
+        int key = 0;
+        final int sourceNodes = msgBuilder.getSourceNodesCount();
+        if (sourceNodes > 0) {
+            key = msgBuilder.getSourceNodes(sourceNodes - 1).getInputId().hashCode();
+        }
+        if (msgBuilder.hasRemote()) {
+            key = 31 * key + msgBuilder.getRemote().getAddress().hashCode();
+        }
+        return key;
+    }
+
     @Override
     public String toString() {
         final MoreObjects.ToStringHelper helper = MoreObjects.toStringHelper(this);
         helper.add("id", getId())
                 .add("messageQueueId", getMessageQueueId())
                 .add("codec", getCodecName())
-                .add("payloadSize", getPayload().length)
+                .add("payloadSize", getPayloadSize())
                 .add("timestamp", getTimestamp())
                 .add("seqenceNr", getSequenceNr());
         if (getRemoteAddress() != null) {
@@ -316,10 +468,14 @@ public class RawMessage implements Serializable {
      */
     @Deprecated
     public long getJournalOffset() {
-        if (messageQueueId == null) {
-            return Long.MIN_VALUE;
+        if (messageQueueId instanceof JournalPartitionOffset partitionOffset) {
+            // offsets of a partitioned journal are only unique within their partition
+            return partitionOffset.offset();
+        }
+        if (messageQueueId instanceof Long offset) {
+            return offset;
         }
-        return (long) messageQueueId;
+        return Long.MIN_VALUE;
     }
 
     public static class SourceNode {
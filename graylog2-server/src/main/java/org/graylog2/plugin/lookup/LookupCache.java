@@ -28,9 +28,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
 import static org.graylog2.utilities.ObjectUtils.objectId;
 
@@ -148,6 +153,31 @@ public abstract class LookupCache extends AbstractIdleService {
 
     public abstract LookupResult get(LookupCacheKey key, Callable<LookupResult> loader);
 
+    /**
+     * Returns the results for all given keys, loading the missing ones with a single call to the loader.
+     * <p>
+     * The default implementation loads each missing key separately, caches which can load in bulk should override it.
+     *
+     * @param keys   the keys to look up
+     * @param loader loads the results for the given keys which are not cached
+     * @return the results by key, containing an entry for every given key
+     */
+    public Map<LookupCacheKey, LookupResult> getAll(Collection<LookupCacheKey> keys,
+                                                    Function<Collection<LookupCacheKey>, Map<LookupCacheKey, LookupResult>> loader) {
+        final Map<LookupCacheKey, LookupResult> results = new HashMap<>(keys.size());
+        for (LookupCacheKey key : keys) {
+            results.put(key, get(key, () -> loader.apply(Collections.singleton(key)).get(key)));
+        }
+        return results;
+    }
+
+    /**
+     * Whether this cache keeps the results it loaded. Prefetching keys is pointless for caches which don't.
+     */
+    public boolean retainsResults() {
+        return true;
+    }
+
     public abstract LookupResult getIfPresent(LookupCacheKey key);
 
     public abstract void purge();
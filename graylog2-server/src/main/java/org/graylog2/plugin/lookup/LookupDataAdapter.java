@@ -26,7 +26,10 @@ import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -145,6 +148,39 @@ public abstract class LookupDataAdapter extends AbstractIdleService {
     }
     protected abstract LookupResult doGet(Object key);
 
+    /**
+     * Looks up multiple keys at once.
+     *
+     * @param keys the keys to look up
+     * @return the results by key, containing an entry for every given key
+     */
+    public Map<Object, LookupResult> getAll(Collection<Object> keys) {
+        if (state() == State.FAILED) {
+            final Map<Object, LookupResult> results = new HashMap<>(keys.size());
+            keys.forEach(key -> results.put(key, getErrorResult()));
+            return results;
+        }
+        checkState(isRunning(), "Data adapter needs to be started before it can be used");
+        try (final Timer.Context ignored = requestTimer.time()) {
+            return doGetAll(keys);
+        }
+    }
+
+    /**
+     * Looks up multiple keys at once. Adapters which can batch requests or send them concurrently should override
+     * this, the default implementation looks up one key after another.
+     *
+     * @param keys the keys to look up
+     * @return the results by key, containing an entry for every given key
+     */
+    protected Map<Object, LookupResult> doGetAll(Collection<Object> keys) {
+        final Map<Object, LookupResult> results = new HashMap<>(keys.size());
+        for (Object key : keys) {
+            results.put(key, doGet(key));
+        }
+        return results;
+    }
+
     @Deprecated
     public abstract void set(Object key, Object value);
 
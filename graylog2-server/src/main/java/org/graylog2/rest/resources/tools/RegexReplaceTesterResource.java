@@ -28,7 +28,9 @@ import org.graylog2.plugin.inputs.Extractor;
 import org.graylog2.rest.models.tools.requests.RegexReplaceTestRequest;
 import org.graylog2.rest.models.tools.responses.RegexReplaceTesterResponse;
 import org.graylog2.shared.rest.resources.RestResource;
+import org.graylog2.utilities.CompiledPatternCache;
 
+import jakarta.inject.Inject;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
@@ -49,6 +51,13 @@ import java.util.Map;
 @RequiresAuthentication
 @Path("/tools/regex_replace_tester")
 public class RegexReplaceTesterResource extends RestResource {
+    private final CompiledPatternCache patternCache;
+
+    @Inject
+    public RegexReplaceTesterResource(CompiledPatternCache patternCache) {
+        this.patternCache = patternCache;
+    }
+
     @GET
     @Timed
     @Produces(MediaType.APPLICATION_JSON)
@@ -77,7 +86,7 @@ public class RegexReplaceTesterResource extends RestResource {
         final RegexReplaceExtractor extractor;
         try {
             extractor = new RegexReplaceExtractor(
-                    new MetricRegistry(), "test", "Test", 0L, Extractor.CursorStrategy.COPY, "test", "test",
+                    new MetricRegistry(), patternCache, "test", "Test", 0L, Extractor.CursorStrategy.COPY, "test", "test",
                     config, getCurrentUser().getName(), Collections.<Converter>emptyList(), Extractor.ConditionType.NONE, ""
             );
         } catch (Extractor.ReservedFieldException e) {
@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.DataProvider;
+import com.lmax.disruptor.EventProcessor;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.Sequencer;
+import com.lmax.disruptor.TimeoutException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * An event processor which shares the events of a ring buffer with other processors, similar to the worker pool
+ * which was removed from the disruptor library.
+ * <p>
+ * Instead of looking at every sequence and skipping the ones belonging to other consumers (see
+ * {@link PartitioningWorkHandler}), every processor claims a contiguous range of the currently available sequences
+ * from a shared work sequence and hands them to its {@link BatchWorkHandler} as a single batch. A processor never
+ * waits for a batch to fill up, so the batch size adapts to the load: idle systems process single events, busy systems
+ * process batches of up to {@code maxBatchSize} events.
+ * <p>
+ * All processors which share a ring buffer must use the same work sequence and barrier.
+ */
+public class BatchClaimingEventProcessor<T> implements EventProcessor {
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private final Sequence sequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+    private final DataProvider<T> dataProvider;
+    private final SequenceBarrier sequenceBarrier;
+    private final Sequence workSequence;
+    private final BatchWorkHandler<T> handler;
+    private final ExceptionHandler<Object> exceptionHandler;
+    private final int maxBatchSize;
+    private final List<T> batch;
+
+    /**
+     * @param dataProvider     the ring buffer
+     * @param sequenceBarrier  the barrier of the ring buffer, shared by all processors
+     * @param workSequence     the sequence up to which events have been claimed, shared by all processors
+     * @param handler          the handler which processes the claimed batches
+     * @param exceptionHandler the handler for exceptions thrown by the batch handler
+     * @param maxBatchSize     the maximum number of events claimed at once
+     */
+    public BatchClaimingEventProcessor(DataProvider<T> dataProvider,
+                                       SequenceBarrier sequenceBarrier,
+                                       Sequence workSequence,
+                                       BatchWorkHandler<T> handler,
+                                       ExceptionHandler<Object> exceptionHandler,
+                                       int maxBatchSize) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be greater than 0");
+        }
+        this.dataProvider = dataProvider;
+        this.sequenceBarrier = sequenceBarrier;
+        this.workSequence = workSequence;
+        this.handler = handler;
+        this.exceptionHandler = exceptionHandler;
+        this.maxBatchSize = maxBatchSize;
+        this.batch = new ArrayList<>(maxBatchSize);
+    }
+
+    /**
+     * Creates one processor per handler which share the events of the given ring buffer.
+     *
+     * @param ringBuffer       the ring buffer
+     * @param handlers         the handlers
+     * @param exceptionHandler the handler for exceptions thrown by the batch handlers
+     * @param maxBatchSize     the maximum number of events claimed at once
+     * @return the processors
+     */
+    public static <T> EventProcessor[] createProcessors(RingBuffer<T> ringBuffer,
+                                                        List<? extends BatchWorkHandler<T>> handlers,
+                                                        ExceptionHandler<Object> exceptionHandler,
+                                                        int maxBatchSize) {
+        final SequenceBarrier barrier = ringBuffer.newBarrier();
+        final Sequence workSequence = new Sequence(Sequencer.INITIAL_CURSOR_VALUE);
+        final EventProcessor[] processors = new EventProcessor[handlers.size()];
+        for (int i = 0; i < processors.length; i++) {
+            processors[i] = new BatchClaimingEventProcessor<>(ringBuffer, barrier, workSequence, handlers.get(i),
+                    exceptionHandler, maxBatchSize);
+        }
+        return processors;
+    }
+
+    @Override
+    public Sequence getSequence() {
+        return sequence;
+    }
+
+    @Override
+    public void halt() {
+        running.set(false);
+        sequenceBarrier.alert();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running.get();
+    }
+
+    @Override
+    public void run() {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Thread is already running");
+        }
+        sequenceBarrier.clearAlert();
+
+        try {
+            handler.onStart();
+        } catch (Throwable ex) {
+            exceptionHandler.handleOnStartException(ex);
+        }
+
+        try {
+            processEvents();
+        } finally {
+            try {
+                handler.onShutdown();
+            } catch (Throwable ex) {
+                exceptionHandler.handleOnShutdownException(ex);
+            }
+            running.set(false);
+        }
+    }
+
+    private void processEvents() {
+        while (true) {
+            final long claimed = workSequence.get();
+            // Everything up to the current work sequence has been claimed by some processor, so this processor
+            // won't access any of these slots anymore and the producers may reuse them.
+            sequence.set(claimed);
+
+            final long next = claimed + 1;
+            final long available;
+            try {
+                available = sequenceBarrier.waitFor(next);
+            } catch (AlertException ex) {
+                if (!running.get()) {
+                    break;
+                }
+                continue;
+            } catch (TimeoutException ex) {
+                continue;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+
+            if (available < next) {
+                continue;
+            }
+
+            final long end = Math.min(available, claimed + maxBatchSize);
+            if (!workSequence.compareAndSet(claimed, end)) {
+                // Another processor claimed these events first
+                continue;
+            }
+
+            for (long s = next; s <= end; s++) {
+                batch.add(dataProvider.get(s));
+            }
+            try {
+                handler.onBatch(batch);
+            } catch (Throwable ex) {
+                exceptionHandler.handleEventException(ex, end, batch);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+}
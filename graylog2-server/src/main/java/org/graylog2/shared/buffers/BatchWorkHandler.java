@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers;
+
+import java.util.List;
+
+/**
+ * A {@link WorkHandler} which is able to handle a contiguous batch of events at once.
+ * <p>
+ * Used by the {@link BatchClaimingEventProcessor} which hands every batch of events it claimed from the ring buffer
+ * to exactly one handler.
+ */
+public interface BatchWorkHandler<T> extends WorkHandler<T> {
+    /**
+     * Handles a batch of events. The list and the events are owned by the ring buffer and are reused after this
+     * method returns, so handlers must not keep references to them.
+     *
+     * @param events the events, never empty
+     */
+    default void onBatch(List<T> events) throws Exception {
+        for (T event : events) {
+            onEvent(event);
+        }
+    }
+}
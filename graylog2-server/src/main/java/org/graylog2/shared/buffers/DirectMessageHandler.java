@@ -36,6 +36,10 @@ class DirectMessageHandler implements WorkHandler<RawMessageEvent> {
     @Override
     public void onEvent(RawMessageEvent event) throws Exception {
         final RawMessage rawMessage = event.getRawMessage();
+        if (rawMessage != null) {
+            // Without a journal the pooled transport buffer isn't needed any longer, don't hold it during processing
+            rawMessage.copyPayloadBuffer();
+        }
         processBuffer.insertBlocking(rawMessage);
         if (rawMessage != null) {
             processingStatusRecorder.updateIngestReceiveTime(rawMessage.getTimestamp());
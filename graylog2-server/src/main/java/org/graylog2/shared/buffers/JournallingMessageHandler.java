@@ -69,14 +69,16 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
             // call the update on the recorder service for every message. (less contention)
             processingStatusRecorder.updateIngestReceiveTime(metricsFilter.getLatestReceiveTime());
 
-            messageQueueWriter.write(entries);
-
-            // Release objects for GC
-            batch.stream()
-                    .filter(Objects::nonNull)
-                    .forEach(RawMessageEvent::clear);
-
-            batch.clear();
+            try {
+                messageQueueWriter.write(entries);
+            } finally {
+                // Release objects for GC, and pooled payloads the writer hasn't taken over
+                batch.stream()
+                        .filter(Objects::nonNull)
+                        .forEach(RawMessageEvent::clear);
+
+                batch.clear();
+            }
         }
     }
 
@@ -104,7 +106,7 @@ public class JournallingMessageHandler implements EventHandler<RawMessageEvent>
                 return null;
             }
             // stats
-            final int size = input.getEncodedRawMessage().length;
+            final int size = input.getEncodedSize();
             bytesWritten += size;
             byteCounter.inc(size);
 
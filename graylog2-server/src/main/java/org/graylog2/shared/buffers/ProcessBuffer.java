@@ -40,6 +40,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ThreadFactory;
 
 import static com.codahale.metrics.MetricRegistry.name;
@@ -51,7 +53,7 @@ public class ProcessBuffer extends Buffer {
     private static final Logger LOG = LoggerFactory.getLogger(ProcessBuffer.class);
 
     private final Meter incomingMessages;
-    private final PartitioningWorkHandler<ProcessBufferProcessor, MessageEvent>[] processors;
+    private final List<ProcessBufferProcessor> processors;
 
     @Inject
     public ProcessBuffer(MetricRegistry metricRegistry,
@@ -59,7 +61,9 @@ public class ProcessBuffer extends Buffer {
                          ProcessBufferProcessor.Factory bufferProcessorFactory,
                          @Named("processbuffer_processors") int processorCount,
                          @Named("ring_size") int ringSize,
-                         @Named("processor_wait_strategy") String waitStrategyName) {
+                         @Named("processor_wait_strategy") String waitStrategyName,
+                         @Named("processor_batch_claiming") boolean batchClaiming,
+                         @Named("processor_max_batch_size") int maxBatchSize) {
         this.ringBufferSize = ringSize;
         this.incomingMessages = metricRegistry.meter(name(ProcessBuffer.class, "incomingMessages"));
 
@@ -83,20 +87,29 @@ public class ProcessBuffer extends Buffer {
         );
         disruptor.setDefaultExceptionHandler(new LoggingExceptionHandler(LOG));
 
-        //noinspection unchecked
-        processors = new PartitioningWorkHandler[processorCount];
+        processors = new ArrayList<>(processorCount);
         for (int i = 0; i < processorCount; i++) {
-            processors[i] = new PartitioningWorkHandler<>(
-                    bufferProcessorFactory.create(decodingProcessorFactory.create(decodeTime, parseTime)), i,
-                    processorCount);
+            processors.add(bufferProcessorFactory.create(decodingProcessorFactory.create(decodeTime, parseTime)));
+        }
+
+        if (batchClaiming) {
+            disruptor.handleEventsWith(BatchClaimingEventProcessor.createProcessors(disruptor.getRingBuffer(),
+                    processors, new LoggingExceptionHandler(LOG), maxBatchSize));
+        } else {
+            //noinspection unchecked
+            final PartitioningWorkHandler<ProcessBufferProcessor, MessageEvent>[] handlers = new PartitioningWorkHandler[processorCount];
+            for (int i = 0; i < processorCount; i++) {
+                handlers[i] = new PartitioningWorkHandler<>(processors.get(i), i, processorCount);
+            }
+            disruptor.handleEventsWith(handlers);
         }
-        disruptor.handleEventsWith(processors);
 
         ringBuffer = disruptor.start();
 
         LOG.info("Initialized ProcessBuffer with ring size <{}> and wait strategy <{}>, " +
-                        "running {} parallel buffer processors.",
-                ringBufferSize, waitStrategy.getClass().getSimpleName(), processorCount);
+                        "running {} parallel buffer processors{}.",
+                ringBufferSize, waitStrategy.getClass().getSimpleName(), processorCount,
+                batchClaiming ? " with batch claiming" : "");
 
     }
 
@@ -123,8 +136,8 @@ public class ProcessBuffer extends Buffer {
 
     public ImmutableMap<String, String> getDump() {
         final ImmutableMap.Builder<String, String> processBufferDump = ImmutableMap.builder();
-        for (int i = 0, processorsLength = processors.length; i < processorsLength; i++) {
-            final ProcessBufferProcessor proc = processors[i].getDelegate();
+        for (int i = 0, processorsLength = processors.size(); i < processorsLength; i++) {
+            final ProcessBufferProcessor proc = processors.get(i);
             processBufferDump.put("ProcessBufferProcessor #" + i, proc.getCurrentMessage().map(Message::toDumpString).orElse("idle"));
         }
         return processBufferDump.build();
@@ -18,6 +18,9 @@ package org.graylog2.shared.buffers;
 
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import io.netty.buffer.ByteBuf;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.messageq.MessageQueueWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -28,21 +31,37 @@ import static com.codahale.metrics.MetricRegistry.name;
 public class RawMessageEncoderHandler implements WorkHandler<RawMessageEvent> {
     private static final Logger log = LoggerFactory.getLogger(RawMessageEncoderHandler.class);
     private final Meter incomingMessages;
+    private final boolean keepPooledPayloads;
 
     @Inject
-    public RawMessageEncoderHandler(MetricRegistry metricRegistry) {
+    public RawMessageEncoderHandler(MetricRegistry metricRegistry, MessageQueueWriter messageQueueWriter) {
         incomingMessages = metricRegistry.meter(name(RawMessageEncoderHandler.class, "incomingMessages"));
+        keepPooledPayloads = messageQueueWriter.supportsPooledPayloads();
     }
 
     @Override
     public void onEvent(RawMessageEvent event) throws Exception {
         incomingMessages.mark();
-        event.setEncodedRawMessage(event.getRawMessage().encode());
+        final RawMessage rawMessage = event.getRawMessage();
+        if (keepPooledPayloads && rawMessage.hasPayloadBuffer()) {
+            // Keep the payload in its pooled buffer, it is appended to the encoded message when writing the journal
+            final byte[] encoded = rawMessage.encodeWithoutPayload();
+            final ByteBuf payload = rawMessage.detachPayloadBuffer();
+            if (encoded == null) {
+                payload.release();
+            } else {
+                event.setEncodedPayload(payload);
+            }
+            event.setEncodedRawMessage(encoded);
+        } else {
+            event.setEncodedRawMessage(rawMessage.encode());
+        }
         event.setMessageIdBytes(event.getRawMessage().getIdBytes());
+        event.setJournalPartitionKey(event.getRawMessage().getJournalPartitionKey());
 
         if (log.isTraceEnabled()) {
             log.trace("Serialized message {} for journal, size {} bytes",
-                    event.getRawMessage().getId(), event.getEncodedRawMessage().length);
+                    event.getRawMessage().getId(), event.getEncodedSize());
         }
 
         // Set timestamp in event to retain access to it after we clear the raw message object below
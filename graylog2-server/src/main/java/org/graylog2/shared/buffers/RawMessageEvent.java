@@ -20,9 +20,11 @@ import com.eaio.uuid.UUID;
 import com.google.common.base.MoreObjects;
 import com.lmax.disruptor.EventFactory;
 import com.lmax.disruptor.EventTranslatorOneArg;
+import io.netty.buffer.ByteBuf;
 import org.graylog2.plugin.journal.RawMessage;
 import org.joda.time.DateTime;
 
+import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 
 public class RawMessageEvent {
@@ -33,6 +35,9 @@ public class RawMessageEvent {
     // once these fields are set, do NOT rely on rawMessage still being non-null!
     private byte[] messageIdBytes;
     private byte[] encodedRawMessage;
+    // pooled payload buffer following the encodedRawMessage bytes, owned by the event until a writer detaches it
+    private ByteBuf encodedPayload;
+    private int journalPartitionKey;
 
     // We need access to the raw message timestamp after the raw message has been cleared
     private DateTime messageTimestamp;
@@ -55,7 +60,7 @@ public class RawMessageEvent {
         return MoreObjects.toStringHelper(this)
                 .add("raw", getRawMessage())
                 .add("uuid", getMessageId())
-                .add("encodedLength", getEncodedRawMessage().length)
+                .add("encodedLength", getEncodedSize())
                 .toString();
     }
 
@@ -75,6 +80,40 @@ public class RawMessageEvent {
         this.encodedRawMessage = encodedRawMessage;
     }
 
+    /**
+     * Returns the pooled buffer holding the end of the encoded raw message, if the payload has not been copied into
+     * {@link #getEncodedRawMessage()}. This only happens if the message queue writer
+     * {@link org.graylog2.shared.messageq.MessageQueueWriter#supportsPooledPayloads() supports it}.
+     */
+    @Nullable
+    public ByteBuf getEncodedPayload() {
+        return encodedPayload;
+    }
+
+    public void setEncodedPayload(@Nullable ByteBuf encodedPayload) {
+        this.encodedPayload = encodedPayload;
+    }
+
+    /**
+     * Hands the pooled payload buffer over to the caller, which becomes responsible for releasing it.
+     *
+     * @return the payload buffer or {@code null} if the event doesn't hold one
+     */
+    @Nullable
+    public ByteBuf detachEncodedPayload() {
+        final ByteBuf buffer = encodedPayload;
+        encodedPayload = null;
+        return buffer;
+    }
+
+    /**
+     * Returns the size of the encoded raw message including a pooled payload buffer.
+     */
+    public int getEncodedSize() {
+        final int size = encodedRawMessage == null ? 0 : encodedRawMessage.length;
+        return encodedPayload == null ? size : size + encodedPayload.readableBytes();
+    }
+
     public void setMessageIdBytes(byte[] messageIdBytes) {
         this.messageIdBytes = messageIdBytes;
     }
@@ -83,6 +122,14 @@ public class RawMessageEvent {
         return messageIdBytes;
     }
 
+    public int getJournalPartitionKey() {
+        return journalPartitionKey;
+    }
+
+    public void setJournalPartitionKey(int journalPartitionKey) {
+        this.journalPartitionKey = journalPartitionKey;
+    }
+
     public DateTime getMessageTimestamp() {
         return messageTimestamp;
     }
@@ -97,10 +144,18 @@ public class RawMessageEvent {
         return new UUID(wrap.asLongBuffer().get(0), wrap.asLongBuffer().get(1));
     }
 
+    /**
+     * Clears the event for reuse, releasing a payload buffer which hasn't been detached by a writer.
+     */
     public void clear() {
+        final ByteBuf buffer = detachEncodedPayload();
+        if (buffer != null) {
+            buffer.release();
+        }
         this.rawMessage = null;
         this.encodedRawMessage = null;
         this.messageIdBytes = null;
+        this.journalPartitionKey = 0;
         this.messageTimestamp = null;
     }
 }
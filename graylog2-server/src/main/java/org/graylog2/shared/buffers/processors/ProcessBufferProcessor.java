@@ -19,6 +19,7 @@ package org.graylog2.shared.buffers.processors;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import com.google.inject.assistedinject.Assisted;
@@ -29,6 +30,7 @@ import org.graylog2.buffers.OutputBuffer;
 import org.graylog2.cluster.ClusterConfigChangedEvent;
 import org.graylog2.messageprocessors.OrderedMessageProcessors;
 import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageCollection;
 import org.graylog2.plugin.Messages;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.buffers.MessageEvent;
@@ -36,7 +38,7 @@ import org.graylog2.plugin.cluster.ClusterConfigService;
 import org.graylog2.plugin.messageprocessors.MessageProcessor;
 import org.graylog2.plugin.streams.DefaultStream;
 import org.graylog2.plugin.streams.Stream;
-import org.graylog2.shared.buffers.WorkHandler;
+import org.graylog2.shared.buffers.BatchWorkHandler;
 import org.graylog2.streams.StreamMetrics;
 import org.graylog2.system.processing.ProcessingStatusRecorder;
 import org.slf4j.Logger;
@@ -44,18 +46,21 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import java.util.Optional;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static com.google.common.base.Strings.isNullOrEmpty;
 
-public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
+public class ProcessBufferProcessor implements BatchWorkHandler<MessageEvent> {
     private static final Logger LOG = LoggerFactory.getLogger(ProcessBufferProcessor.class);
 
     private final Meter incomingMessages;
     private final Timer processTime;
+    private final Timer batchProcessTime;
     private final StreamMetrics streamMetrics;
     private final Meter outgoingMessages;
     private final OrderedMessageProcessors orderedMessageProcessors;
@@ -97,6 +102,7 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
         incomingMessages = metricRegistry.meter(name(ProcessBufferProcessor.class, "incomingMessages"));
         outgoingMessages = metricRegistry.meter(name(ProcessBufferProcessor.class, "outgoingMessages"));
         processTime = metricRegistry.timer(name(ProcessBufferProcessor.class, "processTime"));
+        batchProcessTime = metricRegistry.timer(name(ProcessBufferProcessor.class, "batchProcessTime"));
         this.streamMetrics = streamMetrics;
         currentMessage = null;
 
@@ -129,6 +135,53 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
         }
     }
 
+    /**
+     * Decodes all events of the batch and runs the resulting messages through the message processors as a single
+     * {@link Messages} batch. If the message processors fail, the messages of the batch are processed one by one, so
+     * only the messages which can't be processed on their own are reported as failed.
+     * <p>
+     * An event which can't be decoded doesn't keep the other events of the batch from being processed. The exception
+     * is rethrown once the batch has been processed, just like it would be for a single event.
+     */
+    @Override
+    public void onBatch(List<MessageEvent> events) throws Exception {
+        final List<Message> batch = new ArrayList<>(events.size());
+        Exception decodingException = null;
+        try {
+            for (final MessageEvent event : events) {
+                try {
+                    decodingProcessor.onEvent(event, 0L, false);
+                } catch (Exception e) {
+                    if (decodingException == null) {
+                        decodingException = e;
+                    } else {
+                        decodingException.addSuppressed(e);
+                    }
+                    continue;
+                }
+
+                if (event.isSingleMessage()) {
+                    if (event.getMessage() != null) {
+                        batch.add(event.getMessage());
+                    }
+                } else if (event.getMessages() != null) {
+                    batch.addAll(event.getMessages());
+                }
+            }
+
+            if (!batch.isEmpty()) {
+                dispatchMessages(batch);
+            }
+        } finally {
+            for (final MessageEvent event : events) {
+                event.clearMessages();
+            }
+        }
+        if (decodingException != null) {
+            throw decodingException;
+        }
+    }
+
     public Optional<Message> getCurrentMessage() {
         return Optional.ofNullable(currentMessage);
     }
@@ -147,54 +200,121 @@ public class ProcessBufferProcessor implements WorkHandler<MessageEvent> {
                 LOG.trace("Finished processing message <{}>. Writing to output buffer.", msg.getId());
             }
         } catch (Exception e) {
-            if (LOG.isDebugEnabled()) {
-                // Log warning including the stacktrace
-                LOG.warn("Unable to process message <{}>:", msg.getId(), e);
-                // Log full message content to aid debugging
-                LOG.debug("Failed message <{}>: {}", msg.getId(), msg.toDumpString());
-            } else {
-                // Only logs a single line warning without stacktrace
-                LOG.warn("Unable to process message <{}>: {}", msg.getId(), e);
-            }
+            handleProcessingException(msg, e);
+        } finally {
+            currentMessage = null;
+            outgoingMessages.mark();
+        }
+    }
+
+    private void handleProcessingException(Message msg, Exception e) {
+        if (LOG.isDebugEnabled()) {
+            // Log warning including the stacktrace
+            LOG.warn("Unable to process message <{}>:", msg.getId(), e);
+            // Log full message content to aid debugging
+            LOG.debug("Failed message <{}>: {}", msg.getId(), msg.toDumpString());
+        } else {
+            // Only logs a single line warning without stacktrace
+            LOG.warn("Unable to process message <{}>: {}", msg.getId(), e);
+        }
 
-            failureSubmissionService.submitUnknownProcessingError(msg, String.format(Locale.ENGLISH,
-                    "Unable to process message <%s>: %s",
-                    msg.getId(), e));
+        failureSubmissionService.submitUnknownProcessingError(msg, String.format(Locale.ENGLISH,
+                "Unable to process message <%s>: %s",
+                msg.getId(), e));
+    }
+
+    private void dispatchMessages(final List<Message> batch) {
+        currentMessage = batch.get(0);
+        incomingMessages.mark(batch.size());
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Starting to process batch of <{}> messages.", batch.size());
+        }
+
+        try (final Timer.Context ignored = batchProcessTime.time()) {
+            final List<MessageProcessor> processors = ImmutableList.copyOf(orderedMessageProcessors);
+            Messages processed = new MessageCollection(batch);
+            int failedProcessor = 0;
+            try {
+                final Stream defaultStream = defaultStreamProvider.get();
+                for (final Message message : batch) {
+                    message.addStream(defaultStream);
+                }
+                for (; failedProcessor < processors.size(); failedProcessor++) {
+                    processed = processors.get(failedProcessor).process(processed);
+                }
+            } catch (Exception e) {
+                // The processors before the failed one already changed the messages, running them again would repeat
+                // their side effects. Only the failed processor and the ones after it run again, one message at a time.
+                LOG.debug("Unable to process batch of <{}> messages, processing them one by one.", batch.size(), e);
+                final List<MessageProcessor> remainingProcessors = processors.subList(failedProcessor, processors.size());
+                for (final Message message : processed) {
+                    currentMessage = message;
+                    try {
+                        if (failedProcessor == 0) {
+                            message.addStream(defaultStreamProvider.get());
+                        }
+                        for (final Message result : runMessageProcessors(remainingProcessors, message)) {
+                            postProcessMessage(result);
+                        }
+                    } catch (Exception messageException) {
+                        handleProcessingException(message, messageException);
+                    }
+                }
+                return;
+            }
 
+            for (final Message message : processed) {
+                currentMessage = message;
+                try {
+                    postProcessMessage(message);
+                } catch (Exception e) {
+                    handleProcessingException(message, e);
+                }
+            }
         } finally {
             currentMessage = null;
-            outgoingMessages.mark();
+            outgoingMessages.mark(batch.size());
         }
     }
 
     private void handleMessage(@Nonnull Message msg) {
         msg.addStream(defaultStreamProvider.get());
-        Messages messages = msg;
 
-        for (MessageProcessor messageProcessor : orderedMessageProcessors) {
-            messages = messageProcessor.process(messages);
+        for (Message message : runMessageProcessors(msg)) {
+            postProcessMessage(message);
         }
+    }
 
-        for (Message message : messages) {
+    private Messages runMessageProcessors(Messages messages) {
+        return runMessageProcessors(orderedMessageProcessors, messages);
+    }
 
-            message.getStreams().forEach(s -> streamMetrics.markIncomingMeter(s.getId()));
-            message.ensureValidTimestamp();
-            message.normalizeTimestamp(getTimeStampGracePeriod());
+    private static Messages runMessageProcessors(Iterable<MessageProcessor> messageProcessors, Messages messages) {
+        for (MessageProcessor messageProcessor : messageProcessors) {
+            messages = messageProcessor.process(messages);
+        }
+        return messages;
+    }
 
-            // If a message is received via the Cluster-to-Cluster Forwarder, it already has this field set
-            if (!message.hasField(Message.FIELD_GL2_MESSAGE_ID) || isNullOrEmpty(message.getFieldAs(String.class, Message.FIELD_GL2_MESSAGE_ID))) {
-                // Set the message ID once all message processors have finished
-                // See documentation of Message.FIELD_GL2_MESSAGE_ID for details
-                message.addField(Message.FIELD_GL2_MESSAGE_ID, messageULIDGenerator.createULID(message));
-            }
+    private void postProcessMessage(Message message) {
+        message.getStreams().forEach(s -> streamMetrics.markIncomingMeter(s.getId()));
+        message.ensureValidTimestamp();
+        message.normalizeTimestamp(getTimeStampGracePeriod());
 
-            // The processing time should only be set once all message processors have finished
-            message.setProcessingTime(Tools.nowUTC());
-            processingStatusRecorder.updatePostProcessingReceiveTime(message.getReceiveTime());
+        // If a message is received via the Cluster-to-Cluster Forwarder, it already has this field set
+        if (!message.hasField(Message.FIELD_GL2_MESSAGE_ID) || isNullOrEmpty(message.getFieldAs(String.class, Message.FIELD_GL2_MESSAGE_ID))) {
+            // Set the message ID once all message processors have finished
+            // See documentation of Message.FIELD_GL2_MESSAGE_ID for details
+            message.addField(Message.FIELD_GL2_MESSAGE_ID, messageULIDGenerator.createULID(message));
+        }
 
-            if (failureSubmissionService.submitProcessingErrors(message)) {
-                outputBuffer.insertBlocking(message);
-            }
+        // The processing time should only be set once all message processors have finished
+        message.setProcessingTime(Tools.nowUTC());
+        processingStatusRecorder.updatePostProcessingReceiveTime(message.getReceiveTime());
+
+        if (failureSubmissionService.submitProcessingErrors(message)) {
+            outputBuffer.insertBlocking(message);
         }
     }
 
@@ -16,6 +16,11 @@
  */
 package org.graylog2.shared.journal;
 
+import io.netty.buffer.ByteBuf;
+import org.graylog2.shared.utilities.ByteBufferUtils;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Optional;
 
@@ -40,6 +45,44 @@ public interface Journal {
 
     void markJournalOffsetCommitted(long offset);
 
+    /**
+     * Returns the number of partitions of the journal. Every partition has its own read and committed offset and
+     * can be read by a separate consumer.
+     *
+     * @return the number of partitions, at least 1
+     */
+    default int getPartitionCount() {
+        return 1;
+    }
+
+    /**
+     * Reads the next entries of the given partition. Journals without partitions only support partition {@code 0}.
+     *
+     * @param partition    the partition to read from
+     * @param maximumCount Maximum number of entries to return.
+     * @return A list of entries
+     */
+    default List<JournalReadEntry> read(int partition, long maximumCount) {
+        if (partition != 0) {
+            throw new IllegalArgumentException("Journal partition " + partition + " does not exist");
+        }
+        return read(maximumCount);
+    }
+
+    /**
+     * Marks the given offset of a partition as committed. Journals without partitions only support partition
+     * {@code 0}.
+     *
+     * @param partition the partition the offset belongs to
+     * @param offset    the offset of the latest committed message in that partition
+     */
+    default void markJournalOffsetCommitted(int partition, long offset) {
+        if (partition != 0) {
+            throw new IllegalArgumentException("Journal partition " + partition + " does not exist");
+        }
+        markJournalOffsetCommitted(offset);
+    }
+
     /**
      * Returns the highest journal offset that has been written to persistent storage by Graylog.
      * <p>
@@ -99,28 +142,93 @@ public interface Journal {
     class Entry {
         private final byte[] idBytes;
         private final byte[] messageBytes;
+        @Nullable
+        private final ByteBuf messageTail;
+        private final int partitionKey;
+        private boolean released;
 
         public Entry(byte[] idBytes, byte[] messageBytes) {
+            this(idBytes, messageBytes, 0);
+        }
+
+        /**
+         * @param partitionKey entries with the same key are written to the same journal partition
+         */
+        public Entry(byte[] idBytes, byte[] messageBytes, int partitionKey) {
+            this(idBytes, messageBytes, null, partitionKey);
+        }
+
+        /**
+         * Creates an entry whose message consists of the given bytes followed by the readable bytes of a (pooled)
+         * buffer. The entry takes over one reference of the buffer, which has to be released with {@link #release()}
+         * after the entry has been written.
+         *
+         * @param messageTail  the end of the message, appended to {@code messageBytes}
+         * @param partitionKey entries with the same key are written to the same journal partition
+         */
+        public Entry(byte[] idBytes, byte[] messageBytes, @Nullable ByteBuf messageTail, int partitionKey) {
             this.idBytes = idBytes;
             this.messageBytes = messageBytes;
+            this.messageTail = messageTail;
+            this.partitionKey = partitionKey;
         }
 
         public byte[] getIdBytes() {
             return idBytes;
         }
 
+        /**
+         * Returns the beginning of the message, which is followed by {@link #getMessageTail()}.
+         */
         public byte[] getMessageBytes() {
             return messageBytes;
         }
+
+        @Nullable
+        public ByteBuf getMessageTail() {
+            return messageTail;
+        }
+
+        /**
+         * Returns the size of the complete message, including the message tail.
+         */
+        public int getMessageSize() {
+            return messageTail == null ? messageBytes.length : messageBytes.length + messageTail.readableBytes();
+        }
+
+        public int getPartitionKey() {
+            return partitionKey;
+        }
+
+        /**
+         * Releases the message tail. Does nothing if the entry has no message tail or has already been released.
+         */
+        public void release() {
+            if (messageTail != null && !released) {
+                released = true;
+                messageTail.release();
+            }
+        }
     }
 
     class JournalReadEntry {
 
-        private final byte[] payload;
+        private final ByteBuffer payloadBuffer;
+        private byte[] payload;
         private final long offset;
 
         public JournalReadEntry(byte[] payload, long offset) {
             this.payload = payload;
+            this.payloadBuffer = null;
+            this.offset = offset;
+        }
+
+        /**
+         * Creates an entry which is backed by the given buffer, e. g. a slice of a memory-mapped journal segment.
+         * The payload is only copied into a byte array if {@link #getPayload()} is called.
+         */
+        public JournalReadEntry(ByteBuffer payloadBuffer, long offset) {
+            this.payloadBuffer = payloadBuffer;
             this.offset = offset;
         }
 
@@ -129,7 +237,24 @@ public interface Journal {
         }
 
         public byte[] getPayload() {
+            if (payload == null) {
+                payload = ByteBufferUtils.readBytes(payloadBuffer.duplicate());
+            }
             return payload;
         }
+
+        /**
+         * Returns a read-only view of the payload without copying it.
+         */
+        public ByteBuffer getPayloadBuffer() {
+            if (payloadBuffer != null) {
+                return payloadBuffer.asReadOnlyBuffer();
+            }
+            return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+        }
+
+        public int getPayloadSize() {
+            return payloadBuffer != null ? payloadBuffer.remaining() : payload.length;
+        }
     }
 }
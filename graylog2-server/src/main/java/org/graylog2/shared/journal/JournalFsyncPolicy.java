@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.journal;
+
+import com.github.joschi.jadconfig.ParameterException;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.stream.Collectors;
+
+/**
+ * Defines when group committed journal writes are forced to disk.
+ */
+public enum JournalFsyncPolicy {
+    /**
+     * Only flush according to {@code message_journal_flush_interval} and {@code message_journal_flush_age}.
+     */
+    NONE,
+    /**
+     * Flush after a group commit if the last flush is older than {@code message_journal_fsync_interval}.
+     */
+    INTERVAL,
+    /**
+     * Flush after a group commit if at least {@code message_journal_fsync_size} bytes have been written since the
+     * last flush.
+     */
+    SIZE;
+
+    @Override
+    public String toString() {
+        return super.toString().toLowerCase(Locale.ROOT);
+    }
+
+    public static class Converter implements com.github.joschi.jadconfig.Converter<JournalFsyncPolicy> {
+        @Override
+        public JournalFsyncPolicy convertFrom(String value) {
+            try {
+                return JournalFsyncPolicy.valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new ParameterException("Unable to parse journal fsync policy <" + value + ">. Valid policies are: " +
+                        Arrays.stream(JournalFsyncPolicy.values()).map(JournalFsyncPolicy::toString)
+                                .collect(Collectors.toList()) + ".");
+            }
+        }
+
+        @Override
+        public String convertTo(JournalFsyncPolicy value) {
+            return value.toString();
+        }
+    }
+}
@@ -30,6 +30,7 @@ import com.google.common.io.Files;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.AbstractIdleService;
 import com.google.common.util.concurrent.Uninterruptibles;
+import io.netty.buffer.ByteBuf;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
@@ -38,6 +39,7 @@ import org.graylog.shaded.kafka09.common.KafkaException;
 import org.graylog.shaded.kafka09.common.OffsetOutOfRangeException;
 import org.graylog.shaded.kafka09.common.TopicAndPartition;
 import org.graylog.shaded.kafka09.log.CleanerConfig;
+import org.graylog.shaded.kafka09.log.FileMessageSet;
 import org.graylog.shaded.kafka09.log.Log;
 import org.graylog.shaded.kafka09.log.LogAppendInfo;
 import org.graylog.shaded.kafka09.log.LogConfig;
@@ -72,7 +74,10 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.SyncFailedException;
 import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.AccessDeniedException;
 import java.nio.file.Path;
@@ -80,6 +85,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -92,6 +98,8 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.concurrent.TimeUnit.DAYS;
@@ -112,6 +120,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     public static final long DEFAULT_COMMITTED_OFFSET = Long.MIN_VALUE;
     public static final int NOTIFY_ON_UTILIZATION_PERCENTAGE = 95;
     public static final int THRESHOLD_THROTTLING_DISABLED = -1;
+    // the segment currently being read and the next one, plus some slack for readers which lag behind
+    private static final int MAX_MAPPED_SEGMENTS_PER_PARTITION = 4;
 
     // Metric names, which should be used twice (once in metric startup and once in metric teardown).
     public static final String METER_WRITTEN_MESSAGES = "writtenMessages";
@@ -146,10 +156,13 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
     };
 
+    private static final String TOPIC = "messagejournal";
+    private static final String COMMITTED_READ_OFFSET_FILE = "graylog2-committed-read-offset";
+
     private final LogManager logManager;
-    private final Log kafkaLog;
-    private final File committedReadOffsetFile;
-    private final AtomicLong committedOffset = new AtomicLong(DEFAULT_COMMITTED_OFFSET);
+    private final JournalPartition[] partitions;
+    // partitions beyond this count are left over from a journal with more partitions, they are only read from
+    private final int writePartitionCount;
     private final MetricRegistry metricRegistry;
     private final ScheduledExecutorService scheduler;
     private final ServerStatus serverStatus;
@@ -170,7 +183,6 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     private final long maxRetentionSize;
     private final String metricPrefix;
 
-    private long nextReadOffset = 0L;
     private ScheduledFuture<?> checkpointFlusherFuture;
     private ScheduledFuture<?> dirtyLogFlushFuture;
     private ScheduledFuture<?> logRetentionFuture;
@@ -180,6 +192,22 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     private final AtomicInteger purgedSegmentsInLastRetention = new AtomicInteger();
 
     private final int throttleThresholdPercentage;
+    private final boolean memoryMappedReads;
+
+    public LocalKafkaJournal(Path journalDirectory,
+                             ScheduledExecutorService scheduler,
+                             Size segmentSize,
+                             Duration segmentAge,
+                             Size retentionSize,
+                             Duration retentionAge,
+                             long flushInterval,
+                             Duration flushAge,
+                             int throttleThresholdPercentage,
+                             MetricRegistry metricRegistry,
+                             ServerStatus serverStatus) {
+        this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
+                throttleThresholdPercentage, false, 1, metricRegistry, serverStatus);
+    }
 
     @Inject
     public LocalKafkaJournal(@Named("message_journal_dir") Path journalDirectory,
@@ -191,16 +219,39 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                              @Named("message_journal_flush_interval") long flushInterval,
                              @Named("message_journal_flush_age") Duration flushAge,
                              @Named("lb_throttle_threshold_percentage") int throttleThresholdPercentage,
+                             @Named("message_journal_mmap_reads") boolean memoryMappedReads,
+                             @Named("message_journal_partitions") int partitionCount,
                              MetricRegistry metricRegistry,
                              ServerStatus serverStatus) {
 
         this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
-                throttleThresholdPercentage, metricRegistry, serverStatus, LocalKafkaJournal.class.getName());
+                throttleThresholdPercentage, metricRegistry, serverStatus, LocalKafkaJournal.class.getName(),
+                memoryMappedReads, partitionCount);
+    }
+
+    public LocalKafkaJournal(Path journalDirectory,
+                             ScheduledExecutorService scheduler,
+                             Size segmentSize,
+                             Duration segmentAge,
+                             Size retentionSize,
+                             Duration retentionAge,
+                             long flushInterval,
+                             Duration flushAge,
+                             int throttleThresholdPercentage,
+                             MetricRegistry metricRegistry,
+                             ServerStatus serverStatus,
+                             String metricPrefix) {
+        this(journalDirectory, scheduler, segmentSize, segmentAge, retentionSize, retentionAge, flushInterval, flushAge,
+                throttleThresholdPercentage, metricRegistry, serverStatus, metricPrefix, false, 1);
     }
 
     /**
      * @param throttleThresholdPercentage The journal utilization percent at which throttling will be triggered.
      *                                    Expressed as an integer between 1 and 100. The value -1 disables throttling.
+     * @param memoryMappedReads           Whether read entries are served as slices of the memory-mapped segment files
+     *                                    instead of being copied to the heap.
+     * @param partitionCount              The number of partitions the journal is split into. Every partition has its
+     *                                    own read and committed offset and can be consumed independently.
      */
     public LocalKafkaJournal(Path journalDirectory,
                              ScheduledExecutorService scheduler,
@@ -213,7 +264,9 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                              int throttleThresholdPercentage,
                              MetricRegistry metricRegistry,
                              ServerStatus serverStatus,
-                             String metricPrefix) {
+                             String metricPrefix,
+                             boolean memoryMappedReads,
+                             int partitionCount) {
 
         // Only check throttleThresholdPercentage range if throttling is not disabled;
         if (throttleThresholdPercentage == THRESHOLD_THROTTLING_DISABLED) {
@@ -228,8 +281,13 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         // Max message size should not be bigger than max segment size.
         this.maxMessageSize = Ints.saturatedCast(maxSegmentSize);
         this.maxRetentionSize = retentionSize.toBytes();
+        if (partitionCount < 1) {
+            throw new IllegalArgumentException("The journal needs at least one partition, got " + partitionCount);
+        }
+        this.writePartitionCount = partitionCount;
         this.metricPrefix = metricPrefix;
         this.metricRegistry = metricRegistry;
+        this.memoryMappedReads = memoryMappedReads;
 
         // Set up metrics
         this.writtenMessages = metricRegistry.meter(name(this.metricPrefix, METER_WRITTEN_MESSAGES));
@@ -250,8 +308,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                 .put(LogConfig.FlushMessagesProp(), flushInterval)
                 // flushMs: The amount of time the log can have dirty data before a flush is forced
                 .put(LogConfig.FlushMsProp(), flushAge.getMillis())
-                // retentionSize: The approximate total number of bytes this log can use
-                .put(LogConfig.RetentionBytesProp(), retentionSize.toBytes())
+                // retentionSize: The approximate total number of bytes this log can use, shared by all partitions
+                .put(LogConfig.RetentionBytesProp(), retentionSize.toBytes() / partitionCount)
                 // retentionMs: The age approximate maximum age of the last segment that is retained
                 .put(LogConfig.RetentionMsProp(), retentionAge.getMillis())
                 // maxMessageSize: The maximum size of a message in the log (ensure that it's not larger than the max segment size)
@@ -300,23 +358,6 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             }
         }
 
-        // TODO add check for directory, etc
-        committedReadOffsetFile = new File(journalDirectory.toFile(), "graylog2-committed-read-offset");
-        try {
-            if (!committedReadOffsetFile.createNewFile()) {
-                final String line = Files.asCharSource(committedReadOffsetFile, StandardCharsets.UTF_8).readFirstLine();
-                // the file contains the last offset graylog2 has successfully processed.
-                // thus the nextReadOffset is one beyond that number
-                if (line != null) {
-                    committedOffset.set(Long.parseLong(line.trim()));
-                    nextReadOffset = committedOffset.get() + 1;
-                }
-            }
-        } catch (IOException e) {
-            LOG.error("Cannot access offset file: {}", e.getMessage());
-            final AccessDeniedException accessDeniedException = new AccessDeniedException(committedReadOffsetFile.getAbsolutePath(), null, e.getMessage());
-            throw new RuntimeException(accessDeniedException);
-        }
         try {
             final BrokerState brokerState = new BrokerState();
             brokerState.newState(RunningAsBroker.state());
@@ -335,21 +376,15 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                     brokerState,
                     JODA_TIME);
 
-            final TopicAndPartition topicAndPartition = new TopicAndPartition("messagejournal", 0);
-            final Option<Log> messageLog = logManager.getLog(topicAndPartition);
-            if (messageLog.isEmpty()) {
-                kafkaLog = logManager.createLog(topicAndPartition, logManager.defaultConfig());
-            } else {
-                kafkaLog = messageLog.get();
-            }
+            partitions = openPartitions(journalDirectory.toFile());
 
-            // Set up more metrics
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_SIZE), (Gauge<Long>) kafkaLog::size);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_LOG_END_OFFSET), (Gauge<Long>) kafkaLog::logEndOffset);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_NUMBER_OF_SEGMENTS), (Gauge<Integer>) kafkaLog::numberOfSegments);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_UNFLUSHED_MESSAGES), (Gauge<Long>) kafkaLog::unflushedMessages);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_RECOVERY_POINT), (Gauge<Long>) kafkaLog::recoveryPoint);
-            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_LAST_FLUSH_TIME), (Gauge<Long>) kafkaLog::lastFlushTime);
+            // Set up more metrics. Offsets are summed up over all partitions, see getLogEndOffset().
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_SIZE), (Gauge<Long>) this::size);
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_LOG_END_OFFSET), (Gauge<Long>) this::getLogEndOffset);
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_NUMBER_OF_SEGMENTS), (Gauge<Integer>) this::numberOfSegments);
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_UNFLUSHED_MESSAGES), (Gauge<Long>) this::unflushedMessages);
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_RECOVERY_POINT), (Gauge<Long>) this::recoveryPoint);
+            this.metricRegistry.register(name(metricPrefix, METRIC_NAME_LAST_FLUSH_TIME), (Gauge<Long>) this::lastFlushTime);
 
             // must not be a lambda, because the serialization cannot determine the proper Metric type :(
             this.metricRegistry.register(getOldestSegmentMetricName(), (Gauge<Date>) new Gauge<Date>() {
@@ -364,7 +399,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                 }
             });
 
-            LOG.info("Initialized Kafka based journal at {}", journalDirectory);
+            LOG.info("Initialized Kafka based journal with {} partition(s) at {}", partitions.length, journalDirectory);
 
             offsetFlusher = new OffsetFileFlusher();
             dirtyLogFlusher = new DirtyLogFlusher();
@@ -381,6 +416,42 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    /**
+     * Opens the configured partitions and every partition left over from a journal which had more partitions.
+     * Left over partitions which still contain uncommitted messages are read until they are empty, but no new
+     * messages are written to them. Empty ones are deleted, starting from the last partition.
+     */
+    private JournalPartition[] openPartitions(File journalDirectory) {
+        int existingPartitionCount = writePartitionCount;
+        for (final TopicAndPartition topicAndPartition : JavaConversions.asJavaIterable(logManager.logsByTopicPartition().keys())) {
+            if (TOPIC.equals(topicAndPartition.topic())) {
+                existingPartitionCount = Math.max(existingPartitionCount, topicAndPartition.partition() + 1);
+            }
+        }
+
+        final List<JournalPartition> openedPartitions = new ArrayList<>(existingPartitionCount);
+        for (int i = 0; i < existingPartitionCount; i++) {
+            openedPartitions.add(new JournalPartition(i, journalDirectory));
+        }
+        while (openedPartitions.size() > writePartitionCount) {
+            final JournalPartition lastPartition = openedPartitions.get(openedPartitions.size() - 1);
+            if (lastPartition.uncommittedMessages() > 0) {
+                break;
+            }
+            LOG.info("Deleting empty journal partition {}, which is not configured anymore.", lastPartition.id);
+            lastPartition.delete();
+            openedPartitions.remove(openedPartitions.size() - 1);
+        }
+
+        if (openedPartitions.size() > writePartitionCount) {
+            LOG.warn("The journal has {} partitions, but message_journal_partitions is set to {}. The remaining messages " +
+                            "in partitions {} to {} will be read, but no new messages are written to them. They will be " +
+                            "deleted on a restart once they are empty.",
+                    openedPartitions.size(), writePartitionCount, writePartitionCount, openedPartitions.size() - 1);
+        }
+        return openedPartitions.toArray(new JournalPartition[0]);
+    }
+
     @Override
     public void flush() {
         offsetFlusher.run();
@@ -430,16 +501,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
 
     private void registerUncommittedGauge(MetricRegistry metricRegistry, String name) {
         try {
-            metricRegistry.register(name,
-                    (Gauge<Long>) () -> {
-                        if (size() == 0) {
-                            return 0L;
-                        }
-                        if (committedOffset.get() == DEFAULT_COMMITTED_OFFSET) {
-                            return getLogEndOffset() - getLogStartOffset();
-                        }
-                        return Math.max(0, getLogEndOffset() - 1 - committedOffset.get());
-                    });
+            metricRegistry.register(name, (Gauge<Long>) this::uncommittedMessages);
         } catch (IllegalArgumentException ignored) {
             // already registered, we'll ignore that.
         }
@@ -502,80 +564,135 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     }
 
     /**
-     * Writes the list of entries to the journal.
+     * Writes the list of entries to the journal. With more than one partition, every entry is appended to the
+     * partition selected by its {@link Entry#getPartitionKey() partition key}.
      *
      * @param entries journal entries to be written
-     * @return the last position written to in the journal
+     * @return the last position written to in the journal (the partition written last, if there are several)
      */
     @Override
     public long write(List<Entry> entries) {
+        return write(entries, appended -> {});
+    }
+
+    /**
+     * Like {@link #write(List)}, but reports every set of entries to the given listener as soon as it has been
+     * appended. The entries are appended in several steps if they don't fit into one message set or belong to
+     * different partitions, so if the write fails part way, the entries reported so far are already in the journal.
+     *
+     * @param entries          journal entries to be written
+     * @param appendedListener called with the entries of every append, the list must not be kept
+     * @return the last position written to in the journal (the partition written last, if there are several)
+     */
+    public long write(List<Entry> entries, Consumer<List<Entry>> appendedListener) {
         try (Timer.Context ignored = writeTime.time()) {
-            long payloadSize = 0L;
-            long messageSetSize = 0L;
-            long lastWriteOffset = 0L;
+            if (writePartitionCount == 1) {
+                return write(partitions[0], entries, appendedListener);
+            }
 
-            final List<Message> messages = new ArrayList<>(entries.size());
+            final List<List<Entry>> entriesByPartition = new ArrayList<>(writePartitionCount);
+            for (int i = 0; i < writePartitionCount; i++) {
+                entriesByPartition.add(new ArrayList<>());
+            }
             for (final Entry entry : entries) {
-                final byte[] messageBytes = entry.getMessageBytes();
-                final byte[] idBytes = entry.getIdBytes();
+                entriesByPartition.get(partitionFor(entry)).add(entry);
+            }
 
-                payloadSize += messageBytes.length;
+            long lastWriteOffset = 0L;
+            for (int i = 0; i < writePartitionCount; i++) {
+                final List<Entry> partitionEntries = entriesByPartition.get(i);
+                if (!partitionEntries.isEmpty()) {
+                    lastWriteOffset = write(partitions[i], partitionEntries, appendedListener);
+                }
+            }
+            return lastWriteOffset;
+        }
+    }
 
-                final Message newMessage = new Message(messageBytes, idBytes);
-                // Calculate the size of the new message in the message set by including the overhead for the log entry.
-                final int newMessageSize = MessageSet.entrySize(newMessage);
+    private int partitionFor(Entry entry) {
+        return Math.floorMod(entry.getPartitionKey(), writePartitionCount);
+    }
 
-                if (newMessageSize > maxMessageSize) {
-                    writeDiscardedMessages.mark();
-                    LOG.warn("Message with ID <{}> is too large to store in journal, skipping! (size: {} bytes / max: {} bytes)",
-                            new String(idBytes, StandardCharsets.UTF_8), newMessageSize, maxMessageSize);
-                    payloadSize = 0;
-                    continue;
-                }
+    private long write(JournalPartition partition, List<Entry> entries, Consumer<List<Entry>> appendedListener) {
+        long payloadSize = 0L;
+        long messageSetSize = 0L;
+        long lastWriteOffset = 0L;
 
-                // If adding the new message to the message set would overflow the max segment size, flush the current
-                // list of message to avoid a MessageSetSizeTooLargeException.
-                if ((messageSetSize + newMessageSize) > maxSegmentSize) {
-                    if (LOG.isDebugEnabled()) {
-                        LOG.debug("Flushing {} bytes message set with {} messages to avoid overflowing segment with max size of {} bytes",
-                                messageSetSize, messages.size(), maxSegmentSize);
-                    }
-                    lastWriteOffset = flushMessages(messages, payloadSize);
-                    // Reset the messages list and size counters to start a new batch.
-                    messages.clear();
-                    messageSetSize = 0;
-                    payloadSize = 0;
-                }
-                messages.add(newMessage);
-                messageSetSize += newMessageSize;
+        final List<Entry> messages = new ArrayList<>(entries.size());
+        for (final Entry entry : entries) {
+            final byte[] idBytes = entry.getIdBytes();
+            final int messageSize = entry.getMessageSize();
 
-                if (LOG.isTraceEnabled()) {
-                    LOG.trace("Message {} contains bytes {}", bytesToHex(idBytes), bytesToHex(messageBytes));
+            payloadSize += messageSize;
+
+            // Calculate the size of the new message in the message set by including the overhead for the log entry.
+            final long newMessageSize = entrySize(idBytes, messageSize);
+
+            if (newMessageSize > maxMessageSize) {
+                writeDiscardedMessages.mark();
+                LOG.warn("Message with ID <{}> is too large to store in journal, skipping! (size: {} bytes / max: {} bytes)",
+                        new String(idBytes, StandardCharsets.UTF_8), newMessageSize, maxMessageSize);
+                payloadSize = 0;
+                continue;
+            }
+
+            // If adding the new message to the message set would overflow the max segment size, flush the current
+            // list of message to avoid a MessageSetSizeTooLargeException.
+            if ((messageSetSize + newMessageSize) > maxSegmentSize) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Flushing {} bytes message set with {} messages to avoid overflowing segment with max size of {} bytes",
+                            messageSetSize, messages.size(), maxSegmentSize);
                 }
+                lastWriteOffset = flushMessages(partition, messages, messageSetSize, payloadSize);
+                appendedListener.accept(messages);
+                // Reset the messages list and size counters to start a new batch.
+                messages.clear();
+                messageSetSize = 0;
+                payloadSize = 0;
             }
+            messages.add(entry);
+            messageSetSize += newMessageSize;
 
-            // Flush the rest of the messages.
-            if (messages.size() > 0) {
-                lastWriteOffset = flushMessages(messages, payloadSize);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Message {} contains bytes {}", bytesToHex(idBytes), bytesToHex(entry.getMessageBytes()));
             }
+        }
 
-            return lastWriteOffset;
+        // Flush the rest of the messages.
+        if (messages.size() > 0) {
+            lastWriteOffset = flushMessages(partition, messages, messageSetSize, payloadSize);
+            appendedListener.accept(messages);
         }
+
+        return lastWriteOffset;
     }
 
-    private long flushMessages(List<Message> messages, long payloadSize) {
+    private static long entrySize(byte[] idBytes, int messageSize) {
+        return (long) MessageSet.LogOverhead() + Message.MessageOverhead() + idBytes.length + messageSize;
+    }
+
+    /**
+     * Forces all messages which have been written to the journal so far to disk.
+     */
+    public void fsync() {
+        for (final JournalPartition partition : partitions) {
+            partition.log.flush();
+        }
+    }
+
+    private long flushMessages(JournalPartition partition, List<Entry> messages, long messageSetSize, long payloadSize) {
         if (messages.isEmpty()) {
             LOG.debug("No messages to flush, not trying to write an empty message set.");
             return -1L;
         }
 
-        final ByteBufferMessageSet messageSet = new ByteBufferMessageSet(JavaConversions.asScalaBuffer(messages).toSeq());
+        final ByteBufferMessageSet messageSet = new ByteBufferMessageSet(encodeMessageSet(messages, messageSetSize));
 
         if (LOG.isDebugEnabled()) {
             LOG.debug("Trying to write ByteBufferMessageSet with size of {} bytes to journal", messageSet.sizeInBytes());
         }
 
-        final LogAppendInfo appendInfo = kafkaLog.append(messageSet, true);
+        final LogAppendInfo appendInfo = partition.log.append(messageSet, true);
         long lastWriteOffset = appendInfo.lastOffset();
 
         if (LOG.isDebugEnabled()) {
@@ -587,6 +704,49 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         return lastWriteOffset;
     }
 
+    /**
+     * Encodes the entries in the (uncompressed) Kafka message set format. Writing the message set directly instead
+     * of creating a {@link Message} for every entry saves copying each message twice and allows appending the
+     * message tails of the entries straight from their (pooled) buffers.
+     * The offsets are left empty, they are assigned when the message set is appended to the log.
+     */
+    private static ByteBuffer encodeMessageSet(List<Entry> entries, long messageSetSize) {
+        final ByteBuffer buffer = ByteBuffer.allocate(Ints.checkedCast(messageSetSize));
+        final byte[] array = buffer.array();
+        final CRC32 crc = new CRC32();
+
+        for (final Entry entry : entries) {
+            final byte[] idBytes = entry.getIdBytes();
+            final int messageSize = entry.getMessageSize();
+
+            buffer.putLong(0L);
+            buffer.putInt(Message.MessageOverhead() + idBytes.length + messageSize);
+
+            final int crcPosition = buffer.position();
+            buffer.putInt(0);
+            buffer.put(Message.CurrentMagicValue());
+            buffer.put((byte) 0); // attributes: no compression
+            buffer.putInt(idBytes.length);
+            buffer.put(idBytes);
+            buffer.putInt(messageSize);
+            buffer.put(entry.getMessageBytes());
+
+            final ByteBuf messageTail = entry.getMessageTail();
+            if (messageTail != null) {
+                final int tailSize = messageTail.readableBytes();
+                messageTail.getBytes(messageTail.readerIndex(), array, buffer.position(), tailSize);
+                buffer.position(buffer.position() + tailSize);
+            }
+
+            final int crcStart = crcPosition + Message.MagicOffset();
+            crc.reset();
+            crc.update(array, crcStart, buffer.position() - crcStart);
+            buffer.putInt(crcPosition, (int) crc.getValue());
+        }
+
+        return buffer.flip();
+    }
+
     /**
      * Writes a single message to the journal and returns the new write position
      *
@@ -602,7 +762,26 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
 
     @Override
     public List<JournalReadEntry> read(long requestedMaximumCount) {
-        return readNext(nextReadOffset, requestedMaximumCount);
+        return read(0, requestedMaximumCount);
+    }
+
+    @Override
+    public List<JournalReadEntry> read(int partition, long requestedMaximumCount) {
+        final JournalPartition journalPartition = partition(partition);
+        return readNext(journalPartition, journalPartition.nextReadOffset, requestedMaximumCount);
+    }
+
+    @Override
+    public int getPartitionCount() {
+        return partitions.length;
+    }
+
+    private JournalPartition partition(int partition) {
+        if (partition < 0 || partition >= partitions.length) {
+            throw new IllegalArgumentException("Journal partition " + partition + " does not exist, the journal has "
+                    + partitions.length + " partition(s)");
+        }
+        return partitions[partition];
     }
 
     /**
@@ -615,12 +794,16 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      * @return A list of entries
      */
     public List<JournalReadEntry> readNext(long startOffset, long requestedMaximumCount) {
+        return readNext(partitions[0], startOffset, requestedMaximumCount);
+    }
+
+    private List<JournalReadEntry> readNext(JournalPartition partition, long startOffset, long requestedMaximumCount) {
         // Capture the log end offset early for the failure handling below. The end offset will change during the
         // runtime of the retry loop because new messages are written to the journal. If we would use the changing
         // end offset in the error handling while loop, we would skip valid messages.
-        final long logEndOffset = getLogEndOffset();
+        final long logEndOffset = partition.log.logEndOffset();
 
-        List<JournalReadEntry> messages = read(startOffset, requestedMaximumCount);
+        List<JournalReadEntry> messages = read(partition, startOffset, requestedMaximumCount);
 
         if (messages.isEmpty() && !shuttingDown) {
             // If we got an empty result BUT we know that there are more messages in the log, we bump the readOffset
@@ -637,7 +820,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                         failedReadOffset, retryReadOffset);
 
                 // Retry the read with an increased offset to skip corrupt segments
-                messages = read(retryReadOffset, requestedMaximumCount);
+                messages = read(partition, retryReadOffset, requestedMaximumCount);
 
                 // Bump offsets in case we still read an empty result
                 failedReadOffset++;
@@ -658,6 +841,18 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      */
     @Override
     public List<JournalReadEntry> read(long readOffset, long requestedMaximumCount) {
+        return readFrom(partitions[0], readOffset, requestedMaximumCount);
+    }
+
+    private List<JournalReadEntry> read(JournalPartition partition, long readOffset, long requestedMaximumCount) {
+        // keep reads of the first partition going through the public method, so they can be observed
+        if (partition.id == 0) {
+            return read(readOffset, requestedMaximumCount);
+        }
+        return readFrom(partition, readOffset, requestedMaximumCount);
+    }
+
+    private List<JournalReadEntry> readFrom(JournalPartition partition, long readOffset, long requestedMaximumCount) {
         // Always read at least one!
         final long maximumCount = Math.max(1, requestedMaximumCount);
         long maxOffset = readOffset + maximumCount;
@@ -667,7 +862,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
         final List<JournalReadEntry> messages = new ArrayList<>(Ints.saturatedCast(maximumCount));
         try (Timer.Context ignored = readTime.time()) {
-            final long logStartOffset = getLogStartOffset();
+            final long logStartOffset = partition.logStartOffset();
 
             if (readOffset < logStartOffset) {
                 LOG.info(
@@ -681,11 +876,11 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                     maximumCount, readOffset, maxOffset);
 
             // TODO benchmark and make read-ahead strategy configurable for performance tuning
-            final MessageSet messageSet = kafkaLog.read(readOffset,
+            final MessageSet messageSet = partition.log.read(readOffset,
                     5 * 1024 * 1024,
                     Option.<Object>apply(maxOffset)).messageSet();
 
-            final Iterator<MessageAndOffset> iterator = messageSet.iterator();
+            final Iterator<MessageAndOffset> iterator = memoryMappedReads ? partition.mappedIterator(messageSet) : messageSet.iterator();
             long firstOffset = Long.MIN_VALUE;
             long lastOffset = Long.MIN_VALUE;
             long totalBytes = 0;
@@ -698,15 +893,20 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                 // always remember the last seen offset for debug purposes below
                 lastOffset = messageAndOffset.offset();
 
-                final byte[] payloadBytes = ByteBufferUtils.readBytes(messageAndOffset.message().payload());
+                final JournalReadEntry entry;
+                if (memoryMappedReads) {
+                    entry = new JournalReadEntry(messageAndOffset.message().payload(), messageAndOffset.offset());
+                } else {
+                    entry = new JournalReadEntry(ByteBufferUtils.readBytes(messageAndOffset.message().payload()), messageAndOffset.offset());
+                }
                 if (LOG.isTraceEnabled()) {
                     final byte[] keyBytes = ByteBufferUtils.readBytes(messageAndOffset.message().key());
-                    LOG.trace("Read message {} contains {}", bytesToHex(keyBytes), bytesToHex(payloadBytes));
+                    LOG.trace("Read message {} contains {}", bytesToHex(keyBytes), bytesToHex(entry.getPayload()));
                 }
-                totalBytes += payloadBytes.length;
-                messages.add(new JournalReadEntry(payloadBytes, messageAndOffset.offset()));
+                totalBytes += entry.getPayloadSize();
+                messages.add(entry);
                 // remember where to read from
-                nextReadOffset = messageAndOffset.nextOffset();
+                partition.nextReadOffset = messageAndOffset.nextOffset();
             }
             if (messages.isEmpty()) {
                 LOG.debug("No messages available to read for offset interval [{}, {}).", readOffset, maxOffset);
@@ -750,6 +950,28 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      */
     @Override
     public void markJournalOffsetCommitted(long offset) {
+        markJournalOffsetCommitted(0, offset);
+    }
+
+    /**
+     * Marks the given offset of a single partition as committed. Every partition keeps its own committed offset, so
+     * a partition which is read slower than the others doesn't hold back the cleanup of the others.
+     * <p>
+     * Like the committed offset of a journal without partitions, this is the highest acknowledged offset rather than a
+     * low watermark below which every message has been acknowledged. Messages of a partition are read by a single
+     * thread in offset order, so the messages which might still be in flight below it are limited to those in the
+     * process and output buffers, just like without partitions. If the node crashes while such a gap exists, the
+     * messages in it are lost: the journal resumes reading after the committed offset and doesn't deliver them again.
+     * Redelivery is only guaranteed for messages above the committed offset. A low watermark would need a concurrent structure of
+     * all in-flight offsets on the acknowledgement path of every message, and a single message which is never
+     * acknowledged would hold back the committed offset of its partition for good.
+     *
+     * @param partition the partition the offset belongs to
+     * @param offset    the offset of the latest committed message in that partition
+     */
+    @Override
+    public void markJournalOffsetCommitted(int partition, long offset) {
+        final AtomicLong committedOffset = partition(partition).committedOffset;
         long prev;
         // the caller will not care about offsets going backwards, so we need to make sure we don't backtrack
         int i = 0;
@@ -791,21 +1013,60 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    /**
+     * Returns the committed offset of the whole journal. Offsets of a journal with more than one partition are summed
+     * up over all partitions, see {@link #getLogEndOffset()}. A partition without a committed offset counts as if
+     * everything before its first offset had been committed.
+     *
+     * @return the committed offset, or {@link #DEFAULT_COMMITTED_OFFSET} if no partition has a committed offset
+     */
     @Override
     public long getCommittedOffset() {
-        return committedOffset.get();
+        boolean committed = false;
+        // the committed offsets are inclusive, so sum up the offsets following them
+        long nextOffsets = 0L;
+        for (final JournalPartition partition : partitions) {
+            final long committedOffset = partition.committedOffset.get();
+            if (committedOffset == DEFAULT_COMMITTED_OFFSET) {
+                nextOffsets += partition.logStartOffset();
+            } else {
+                committed = true;
+                nextOffsets += committedOffset + 1;
+            }
+        }
+        return committed ? nextOffsets - 1 : DEFAULT_COMMITTED_OFFSET;
+    }
+
+    /**
+     * Returns the committed offset of a single partition.
+     *
+     * @param partition the journal partition
+     * @return the committed offset, or {@link #DEFAULT_COMMITTED_OFFSET} if nothing has been committed yet
+     */
+    public long getCommittedOffset(int partition) {
+        return partition(partition).committedOffset.get();
     }
 
+    /**
+     * Returns the next read offset of the whole journal, summed up over all partitions.
+     */
     @Override
     public long getNextReadOffset() {
+        long nextReadOffset = 0L;
+        for (final JournalPartition partition : partitions) {
+            nextReadOffset += partition.nextReadOffset;
+        }
         return nextReadOffset;
     }
 
     @Override
     public void resetNextReadOffset() {
-        final long newValue = committedOffset.get() + 1;
-        LOG.info("Resetting next read offset to the last committed offset ({} -> {})", this.nextReadOffset, newValue);
-        this.nextReadOffset = newValue;
+        for (final JournalPartition partition : partitions) {
+            final long newValue = partition.committedOffset.get() + 1;
+            LOG.info("Resetting next read offset of partition {} to the last committed offset ({} -> {})",
+                    partition.id, partition.nextReadOffset, newValue);
+            partition.nextReadOffset = newValue;
+        }
     }
 
     /**
@@ -817,7 +1078,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      */
     @Override
     public Optional<Double> getJournalUtilization() {
-        return Optional.of(calculateUtilization(maxRetentionSize, kafkaLog.size()));
+        return Optional.of(calculateUtilization(maxRetentionSize, size()));
     }
 
     /**
@@ -874,6 +1135,9 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         dirtyLogFlushFuture.cancel(false);
 
         kafkaScheduler.shutdown();
+        for (final JournalPartition partition : partitions) {
+            partition.invalidateMappedSegments();
+        }
         logManager.shutdown();
         // final flush
         offsetFlusher.run();
@@ -910,7 +1174,11 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
 
     // default visibility for tests
     public Iterable<LogSegment> getSegments() {
-        return JavaConversions.asJavaIterable(kafkaLog.logSegments());
+        final List<Iterable<LogSegment>> segments = new ArrayList<>(partitions.length);
+        for (final JournalPartition partition : partitions) {
+            segments.add(JavaConversions.asJavaIterable(partition.log.logSegments()));
+        }
+        return Iterables.concat(segments);
     }
 
     /**
@@ -919,7 +1187,49 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      * @return journal size in bytes
      */
     public long size() {
-        return kafkaLog.size();
+        long size = 0L;
+        for (final JournalPartition partition : partitions) {
+            size += partition.log.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of messages in the journal which have not been committed yet.
+     *
+     * @return number of uncommitted messages
+     */
+    public long uncommittedMessages() {
+        long uncommittedMessages = 0L;
+        for (final JournalPartition partition : partitions) {
+            uncommittedMessages += partition.uncommittedMessages();
+        }
+        return uncommittedMessages;
+    }
+
+    private long recoveryPoint() {
+        long recoveryPoint = 0L;
+        for (final JournalPartition partition : partitions) {
+            recoveryPoint += partition.log.recoveryPoint();
+        }
+        return recoveryPoint;
+    }
+
+    private long lastFlushTime() {
+        // the partition which has been flushed least recently
+        long lastFlushTime = Long.MAX_VALUE;
+        for (final JournalPartition partition : partitions) {
+            lastFlushTime = Math.min(lastFlushTime, partition.log.lastFlushTime());
+        }
+        return lastFlushTime;
+    }
+
+    private long unflushedMessages() {
+        long unflushedMessages = 0L;
+        for (final JournalPartition partition : partitions) {
+            unflushedMessages += partition.log.unflushedMessages();
+        }
+        return unflushedMessages;
     }
 
     /**
@@ -928,39 +1238,94 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
      * @return number of segments
      */
     public int numberOfSegments() {
-        return kafkaLog.numberOfSegments();
+        int numberOfSegments = 0;
+        for (final JournalPartition partition : partitions) {
+            numberOfSegments += partition.log.numberOfSegments();
+        }
+        return numberOfSegments;
     }
 
     /**
-     * Discards all data in the journal prior to the given offset.
+     * Discards all data in a journal with a single partition after the given offset. Offsets of a journal with more
+     * than one partition are only unique within a partition, use {@link #truncateTo(int, long)} for those.
      *
      * @param offset offset to truncate to, so that no offset in the journal is larger than this.
+     * @throws IllegalStateException if the journal has more than one partition
      */
     public void truncateTo(long offset) {
-        kafkaLog.truncateTo(offset);
+        if (partitions.length > 1) {
+            throw new IllegalStateException("The journal has " + partitions.length + " partitions, the partition to truncate must be given");
+        }
+        truncateTo(0, offset);
+    }
+
+    /**
+     * Discards all data in the given journal partition after the given offset.
+     *
+     * @param partition the journal partition to truncate
+     * @param offset    offset to truncate to, so that no offset in the partition is larger than this.
+     */
+    public void truncateTo(int partition, long offset) {
+        final JournalPartition journalPartition = partition(partition);
+        journalPartition.invalidateMappedSegments();
+        journalPartition.log.truncateTo(offset);
+    }
+
+    @VisibleForTesting
+    int numberOfMappedSegments() {
+        int mappedSegments = 0;
+        for (final JournalPartition partition : partitions) {
+            mappedSegments += partition.numberOfMappedSegments();
+        }
+        return mappedSegments;
     }
 
     /**
-     * Returns the first valid offset in the entire journal.
+     * Returns the first valid offset in the journal, summed up over all partitions.
      *
      * @return first offset
      */
     public long getLogStartOffset() {
-        final Iterable<LogSegment> logSegments = JavaConversions.asJavaIterable(kafkaLog.logSegments());
-        final LogSegment segment = Iterables.getFirst(logSegments, null);
-        if (segment == null) {
-            return 0;
+        long logStartOffset = 0L;
+        for (final JournalPartition partition : partitions) {
+            logStartOffset += partition.logStartOffset();
         }
-        return segment.baseOffset();
+        return logStartOffset;
     }
 
     /**
-     * returns the offset for the next value to be inserted in the entire journal.
+     * Returns the first valid offset in the given journal partition.
+     *
+     * @param partition the journal partition
+     * @return first offset
+     */
+    public long getLogStartOffset(int partition) {
+        return partition(partition).logStartOffset();
+    }
+
+    /**
+     * returns the offset for the next value to be inserted in the journal. Every partition has its own offsets, so
+     * they are summed up over all partitions, which keeps the difference between two offsets the number of messages
+     * between them.
      *
      * @return the next offset value (last valid offset is this number - 1)
      */
     public long getLogEndOffset() {
-        return kafkaLog.logEndOffset();
+        long logEndOffset = 0L;
+        for (final JournalPartition partition : partitions) {
+            logEndOffset += partition.log.logEndOffset();
+        }
+        return logEndOffset;
+    }
+
+    /**
+     * returns the offset for the next value to be inserted in the given journal partition.
+     *
+     * @param partition the journal partition
+     * @return the next offset value (last valid offset is this number - 1)
+     */
+    public long getLogEndOffset(int partition) {
+        return partition(partition).log.logEndOffset();
     }
 
     /**
@@ -977,9 +1342,159 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
     }
 
 
-    public class OffsetFileFlusher implements Runnable {
-        @Override
-        public void run() {
+    /**
+     * A single partition of the journal, which is backed by its own Kafka log and keeps its own offsets.
+     * The first partition uses the log and offset file of a journal without partitions.
+     */
+    private class JournalPartition {
+        private final int id;
+        private final Log log;
+        private final File committedReadOffsetFile;
+        private final AtomicLong committedOffset = new AtomicLong(DEFAULT_COMMITTED_OFFSET);
+        private volatile long nextReadOffset = 0L;
+        // rolled segments of this partition which are mapped into memory, keyed by their file and least recently read first
+        private final LinkedHashMap<File, MappedByteBuffer> mappedSegments = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<File, MappedByteBuffer> eldest) {
+                return size() > MAX_MAPPED_SEGMENTS_PER_PARTITION;
+            }
+        };
+
+        JournalPartition(int id, File journalDirectory) {
+            this.id = id;
+            final TopicAndPartition topicAndPartition = new TopicAndPartition(TOPIC, id);
+            final Option<Log> messageLog = logManager.getLog(topicAndPartition);
+            if (messageLog.isEmpty()) {
+                this.log = logManager.createLog(topicAndPartition, logManager.defaultConfig());
+            } else {
+                this.log = messageLog.get();
+            }
+
+            // TODO add check for directory, etc
+            this.committedReadOffsetFile = new File(journalDirectory,
+                    id == 0 ? COMMITTED_READ_OFFSET_FILE : COMMITTED_READ_OFFSET_FILE + "-" + id);
+            try {
+                if (!committedReadOffsetFile.createNewFile()) {
+                    final String line = Files.asCharSource(committedReadOffsetFile, StandardCharsets.UTF_8).readFirstLine();
+                    // the file contains the last offset graylog2 has successfully processed.
+                    // thus the nextReadOffset is one beyond that number
+                    if (line != null) {
+                        committedOffset.set(Long.parseLong(line.trim()));
+                        nextReadOffset = committedOffset.get() + 1;
+                    }
+                }
+            } catch (IOException e) {
+                LOG.error("Cannot access offset file: {}", e.getMessage());
+                final AccessDeniedException accessDeniedException = new AccessDeniedException(committedReadOffsetFile.getAbsolutePath(), null, e.getMessage());
+                throw new RuntimeException(accessDeniedException);
+            }
+        }
+
+        void delete() {
+            logManager.deleteLog(new TopicAndPartition(TOPIC, id));
+            try {
+                java.nio.file.Files.deleteIfExists(committedReadOffsetFile.toPath());
+            } catch (IOException e) {
+                LOG.warn("Unable to delete offset file {} of removed journal partition {}", committedReadOffsetFile, id, e);
+            }
+        }
+
+        long logStartOffset() {
+            final LogSegment segment = Iterables.getFirst(JavaConversions.asJavaIterable(log.logSegments()), null);
+            if (segment == null) {
+                return 0;
+            }
+            return segment.baseOffset();
+        }
+
+        /**
+         * Returns an iterator over the given message set, whose messages and payloads are slices of the memory-mapped
+         * segment file instead of heap copies. Every rolled segment is mapped once and the mapping is shared by all
+         * reads from it. Evicted or invalidated mappings are released once the last entry referencing them has been
+         * garbage collected.
+         * <p>
+         * The entries must not be referenced after they have been decoded, because retention and truncation don't wait
+         * for them. {@link org.graylog2.plugin.journal.RawMessage#decode(ByteBuffer, Object)} copies the message out of
+         * the mapping for this reason.
+         * <p>
+         * The active segment is still growing and would need a new mapping for every read, so it is read into the
+         * heap, just like segments which cannot be mapped.
+         */
+        Iterator<MessageAndOffset> mappedIterator(MessageSet messageSet) {
+            if (!(messageSet instanceof FileMessageSet fileMessageSet)
+                    || fileMessageSet.file().equals(log.activeSegment().log().file())) {
+                return messageSet.iterator();
+            }
+            try {
+                final ByteBuffer buffer = segmentMapping(fileMessageSet).duplicate();
+                final int end = fileMessageSet.start() + fileMessageSet.sizeInBytes();
+                if (end > buffer.capacity()) {
+                    // the segment has been appended to after it was mapped, which only happens after a truncation
+                    return messageSet.iterator();
+                }
+                buffer.limit(end).position(fileMessageSet.start());
+                return new ByteBufferMessageSet(buffer.slice()).iterator();
+            } catch (IOException e) {
+                LOG.debug("Unable to map journal segment {}, reading it into the heap instead.", fileMessageSet.file(), e);
+                return messageSet.iterator();
+            }
+        }
+
+        private MappedByteBuffer segmentMapping(FileMessageSet fileMessageSet) throws IOException {
+            synchronized (mappedSegments) {
+                MappedByteBuffer mapping = mappedSegments.get(fileMessageSet.file());
+                if (mapping == null) {
+                    final FileChannel channel = fileMessageSet.channel();
+                    mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    mappedSegments.put(fileMessageSet.file(), mapping);
+                }
+                return mapping;
+            }
+        }
+
+        void invalidateMappedSegment(LogSegment segment) {
+            synchronized (mappedSegments) {
+                mappedSegments.remove(segment.log().file());
+            }
+        }
+
+        /**
+         * Drops the mappings of segments which are no longer part of the log, e.g. because a read mapped a segment
+         * while it was being deleted.
+         */
+        void pruneMappedSegments() {
+            final Set<File> segmentFiles = new HashSet<>();
+            for (final LogSegment segment : JavaConversions.asJavaIterable(log.logSegments())) {
+                segmentFiles.add(segment.log().file());
+            }
+            synchronized (mappedSegments) {
+                mappedSegments.keySet().retainAll(segmentFiles);
+            }
+        }
+
+        void invalidateMappedSegments() {
+            synchronized (mappedSegments) {
+                mappedSegments.clear();
+            }
+        }
+
+        int numberOfMappedSegments() {
+            synchronized (mappedSegments) {
+                return mappedSegments.size();
+            }
+        }
+
+        long uncommittedMessages() {
+            if (log.size() == 0) {
+                return 0L;
+            }
+            if (committedOffset.get() == DEFAULT_COMMITTED_OFFSET) {
+                return log.logEndOffset() - logStartOffset();
+            }
+            return Math.max(0, log.logEndOffset() - 1 - committedOffset.get());
+        }
+
+        void flushCommittedOffset() {
             // Do not write the file if committedOffset has never been updated.
             if (committedOffset.get() == DEFAULT_COMMITTED_OFFSET) {
                 return;
@@ -999,6 +1514,15 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
         }
     }
 
+    public class OffsetFileFlusher implements Runnable {
+        @Override
+        public void run() {
+            for (final JournalPartition partition : partitions) {
+                partition.flushCommittedOffset();
+            }
+        }
+    }
+
     /**
      * Java implementation of the Kafka log retention cleaner.
      */
@@ -1020,14 +1544,16 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             loggerForCleaner.debug("Beginning log cleanup");
             int total = 0;
             final Timer.Context ctx = new Timer().time();
-            for (final Log kafkaLog : JavaConversions.asJavaIterable(logManager.allLogs())) {
+            for (final JournalPartition partition : partitions) {
+                final Log kafkaLog = partition.log;
                 if (kafkaLog.config().compact()) {
                     continue;
                 }
                 loggerForCleaner.debug("Garbage collecting {}", kafkaLog.name());
-                total += cleanupExpiredSegments(kafkaLog) +
-                        cleanupSegmentsToMaintainSize(kafkaLog) +
-                        cleanupSegmentsToRemoveCommitted(kafkaLog);
+                total += cleanupExpiredSegments(partition) +
+                        cleanupSegmentsToMaintainSize(partition) +
+                        cleanupSegmentsToRemoveCommitted(partition, partition.committedOffset.get());
+                partition.pruneMappedSegments();
             }
 
             loggerForCleaner.debug("Log cleanup completed. {} files deleted in {} seconds",
@@ -1036,7 +1562,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             return total;
         }
 
-        private int cleanupExpiredSegments(final Log kafkaLog) {
+        private int cleanupExpiredSegments(final JournalPartition partition) {
+            final Log kafkaLog = partition.log;
             // don't run if nothing will be done
             if (kafkaLog.size() == 0 && kafkaLog.numberOfSegments() < 1) {
                 LocalKafkaJournal.this.purgedSegmentsInLastRetention.set(0);
@@ -1052,6 +1579,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                                 "[cleanup-time] Removing segment with age {}s, older than then maximum retention age {}s",
                                 MILLISECONDS.toSeconds(segmentAge),
                                 MILLISECONDS.toSeconds(kafkaLog.config().retentionMs()));
+                        partition.invalidateMappedSegment(segment);
                     }
                     return shouldDelete;
                 }
@@ -1083,7 +1611,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             }
         }
 
-        private int cleanupSegmentsToMaintainSize(Log kafkaLog) {
+        private int cleanupSegmentsToMaintainSize(JournalPartition partition) {
+            final Log kafkaLog = partition.log;
             final long retentionSize = kafkaLog.config().retentionSize();
             final long currentSize = kafkaLog.size();
             final double utilizationPercentage = calculateUtilization(retentionSize, currentSize);
@@ -1113,6 +1642,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                                 segment.size(),
                                 diff[0],
                                 retentionSize);
+                        partition.invalidateMappedSegment(segment);
                         return true;
                     } else {
                         return false;
@@ -1123,7 +1653,8 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             return deletedSegments;
         }
 
-        private int cleanupSegmentsToRemoveCommitted(Log kafkaLog) {
+        private int cleanupSegmentsToRemoveCommitted(JournalPartition partition, long committedOffset) {
+            final Log kafkaLog = partition.log;
             if (kafkaLog.numberOfSegments() <= 1) {
                 loggerForCleaner.debug(
                         "[cleanup-committed] The journal is already minimal at {} segment(s), not trying to remove more segments.",
@@ -1133,7 +1664,6 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
             // we need to iterate through all segments to the find the cutoff point for the committed offset.
             // unfortunately finding the largest offset contained in a segment is expensive (it involves reading the entire file)
             // so we have to get a global view.
-            final long committedOffset = LocalKafkaJournal.this.committedOffset.get();
             final HashSet<LogSegment> logSegments = Sets.newHashSet(
                     JavaConversions.asJavaIterable(kafkaLog.logSegments(committedOffset, Long.MAX_VALUE))
             );
@@ -1147,6 +1677,7 @@ public class LocalKafkaJournal extends AbstractIdleService implements Journal {
                                 "[cleanup-committed] Should delete segment {} because it is prior to committed offset {}",
                                 segment,
                                 committedOffset);
+                        partition.invalidateMappedSegment(segment);
                     }
                     return shouldDelete;
                 }
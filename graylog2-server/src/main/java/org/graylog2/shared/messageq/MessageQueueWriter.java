@@ -31,6 +31,17 @@ public interface MessageQueueWriter {
 
     void write(List<RawMessageEvent> entries) throws MessageQueueException;
 
+    /**
+     * Whether this writer handles events whose payload is held in a pooled buffer, see
+     * {@link RawMessageEvent#getEncodedPayload()}. Such a writer has to append the buffer to the encoded raw message
+     * and release it once written. Writers which don't support this get events whose encoded raw message is complete.
+     *
+     * @return {@code true} if the writer supports pooled payload buffers
+     */
+    default boolean supportsPooledPayloads() {
+        return false;
+    }
+
     @AutoValue
     abstract class Metrics {
         public static class Provider implements jakarta.inject.Provider<MessageQueueWriter.Metrics> {
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.messageq.localkafka;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.JournalFsyncPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Collects journal entries from all writers and appends them to the journal in groups of up to {@code maxGroupBytes}
+ * bytes. A group is appended once it is full or once its oldest entries have waited for {@code maxDelayMs}.
+ * <p>
+ * After every append the {@link JournalFsyncPolicy} decides whether the journal is forced to disk. The future
+ * returned by {@link #submit(List)} completes once the group containing the entries has been appended and, if the
+ * policy forced the journal to disk after that append, synced. It fails with a {@link NotAppendedException} if the
+ * group couldn't be appended or the committer stopped before appending it, so the writer can fall back to writing
+ * the entries which are not in the journal yet itself.
+ */
+class JournalGroupCommitter implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalGroupCommitter.class);
+    private static final int QUEUE_CAPACITY = 1024;
+
+    interface Appender {
+        /**
+         * Appends the entries, calling the listener with the entries of every successful append step.
+         */
+        void append(List<Journal.Entry> entries, Consumer<List<Journal.Entry>> appendedListener) throws Exception;
+    }
+
+    /**
+     * Fails a submission, carrying the entries of the submission which have not been appended to the journal.
+     */
+    static class NotAppendedException extends Exception {
+        private final List<Journal.Entry> entries;
+
+        NotAppendedException(String message, List<Journal.Entry> entries, Throwable cause) {
+            super(message, cause);
+            this.entries = entries;
+        }
+
+        List<Journal.Entry> entries() {
+            return entries;
+        }
+    }
+
+    private record Batch(List<Journal.Entry> entries, CompletableFuture<Void> completion) {
+    }
+
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Appender appender;
+    private final Runnable fsync;
+    private final long maxGroupBytes;
+    private final long maxDelayNanos;
+    private final JournalFsyncPolicy fsyncPolicy;
+    private final long fsyncIntervalNanos;
+    private final long fsyncBytes;
+
+    private final Histogram batchSize;
+    private final Histogram batchBytes;
+    private final Timer appendTime;
+    private final Timer fsyncTime;
+
+    private volatile boolean running = true;
+    private volatile boolean terminated = false;
+    private long unsyncedBytes = 0;
+    private long lastFsync = System.nanoTime();
+
+    JournalGroupCommitter(Appender appender,
+                          Runnable fsync,
+                          long maxGroupBytes,
+                          long maxDelayMs,
+                          JournalFsyncPolicy fsyncPolicy,
+                          long fsyncIntervalMs,
+                          long fsyncBytes,
+                          MetricRegistry metricRegistry) {
+        this.appender = appender;
+        this.fsync = fsync;
+        this.maxGroupBytes = maxGroupBytes;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.fsyncPolicy = fsyncPolicy;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMs);
+        this.fsyncBytes = fsyncBytes;
+        this.batchSize = metricRegistry.histogram(name(LocalKafkaMessageQueueWriter.class, "group-commit-batch-size"));
+        this.batchBytes = metricRegistry.histogram(name(LocalKafkaMessageQueueWriter.class, "group-commit-batch-bytes"));
+        this.appendTime = metricRegistry.timer(name(LocalKafkaMessageQueueWriter.class, "group-commit-append-time"));
+        this.fsyncTime = metricRegistry.timer(name(LocalKafkaMessageQueueWriter.class, "fsync-time"));
+    }
+
+    /**
+     * Queues the entries for the next group commit. Blocks if the committer doesn't keep up with the writers, but
+     * doesn't wait for the group to be appended. The entries must not be released before the returned future has
+     * completed.
+     *
+     * @return a future which completes once the entries have been appended to the journal
+     */
+    CompletableFuture<Void> submit(List<Journal.Entry> entries) throws InterruptedException {
+        if (entries.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final Batch batch = new Batch(entries, new CompletableFuture<>());
+        queue.put(batch);
+        // The committer fails all batches it finds in the queue when terminating. If it terminated before it could
+        // see this batch, fail it here.
+        if (terminated && queue.remove(batch)) {
+            fail(batch, new IllegalStateException("Journal group committer has been stopped"));
+        }
+        return batch.completion();
+    }
+
+    /**
+     * Stops the committer after all queued entries have been appended.
+     */
+    void stop() {
+        running = false;
+    }
+
+    @Override
+    public void run() {
+        final List<Batch> group = new ArrayList<>();
+        try {
+            while (running || !queue.isEmpty()) {
+                final Batch first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    maybeFsync();
+                    continue;
+                }
+                group.add(first);
+                long groupBytes = size(first);
+
+                // Wait for more entries until the group is full or the oldest entries waited long enough
+                final long deadline = System.nanoTime() + maxDelayNanos;
+                while (groupBytes < maxGroupBytes) {
+                    Batch next = queue.poll();
+                    if (next == null) {
+                        final long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0 || !running) {
+                            break;
+                        }
+                        next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                    }
+                    group.add(next);
+                    groupBytes += size(next);
+                }
+
+                commit(group, groupBytes);
+                group.clear();
+            }
+            if (fsyncPolicy != JournalFsyncPolicy.NONE && unsyncedBytes > 0) {
+                doFsync();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.warn("Journal group committer interrupted, {} queued batches are handed back to their writers.", queue.size());
+        } finally {
+            terminated = true;
+            final IllegalStateException stopped = new IllegalStateException("Journal group committer has been stopped");
+            group.forEach(batch -> fail(batch, stopped));
+            Batch batch;
+            while ((batch = queue.poll()) != null) {
+                fail(batch, stopped);
+            }
+        }
+    }
+
+    private static long size(Batch batch) {
+        long bytes = 0;
+        for (Journal.Entry entry : batch.entries()) {
+            bytes += entry.getMessageSize();
+        }
+        return bytes;
+    }
+
+    private void commit(List<Batch> group, long groupBytes) {
+        final List<Journal.Entry> entries = new ArrayList<>();
+        for (Batch batch : group) {
+            entries.addAll(batch.entries());
+        }
+        batchSize.update(entries.size());
+        batchBytes.update(groupBytes);
+        final Set<Journal.Entry> appended = Collections.newSetFromMap(new IdentityHashMap<>());
+        try (Timer.Context ignored = appendTime.time()) {
+            appender.append(entries, appended::addAll);
+        } catch (Exception e) {
+            LOG.warn("Unable to write {} of {} messages to the journal in a group, handing them back to their writers.",
+                    entries.size() - appended.size(), entries.size(), e);
+            if (!appended.isEmpty()) {
+                unsyncedBytes += appended.stream().mapToLong(Journal.Entry::getMessageSize).sum();
+                maybeFsync();
+            }
+            for (Batch batch : group) {
+                final List<Journal.Entry> notAppended = batch.entries().stream()
+                        .filter(entry -> !appended.contains(entry))
+                        .toList();
+                if (notAppended.isEmpty()) {
+                    batch.completion().complete(null);
+                } else {
+                    batch.completion().completeExceptionally(
+                            new NotAppendedException("Unable to write messages to the journal", notAppended, e));
+                }
+            }
+            return;
+        }
+        unsyncedBytes += groupBytes;
+        maybeFsync();
+        group.forEach(batch -> batch.completion().complete(null));
+    }
+
+    private static void fail(Batch batch, Exception cause) {
+        batch.completion().completeExceptionally(new NotAppendedException(cause.getMessage(), batch.entries(), cause));
+    }
+
+    private void maybeFsync() {
+        if (unsyncedBytes == 0) {
+            return;
+        }
+        final boolean due = switch (fsyncPolicy) {
+            case NONE -> false;
+            case INTERVAL -> System.nanoTime() - lastFsync >= fsyncIntervalNanos;
+            case SIZE -> unsyncedBytes >= fsyncBytes;
+        };
+        if (due) {
+            doFsync();
+        }
+    }
+
+    private void doFsync() {
+        try (Timer.Context ignored = fsyncTime.time()) {
+            fsync.run();
+        } catch (Exception e) {
+            LOG.error("Unable to flush journal to disk.", e);
+            return;
+        }
+        unsyncedBytes = 0;
+        lastFsync = System.nanoTime();
+    }
+}
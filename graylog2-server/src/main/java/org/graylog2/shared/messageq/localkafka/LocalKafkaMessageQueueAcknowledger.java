@@ -22,36 +22,72 @@ import org.graylog2.shared.journal.LocalKafkaJournal;
 import org.graylog2.shared.messageq.AbstractMessageQueueAcknowledger;
 import org.graylog2.shared.messageq.Acknowledgeable;
 import org.graylog2.shared.messageq.MessageQueueAcknowledger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.util.HashMap;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 
+/**
+ * Acknowledges messages by committing their journal offsets. The message queue ID is a {@link Long} offset if the
+ * journal has a single partition and a {@link JournalPartitionOffset} if it has several partitions.
+ */
 @Singleton
-public class LocalKafkaMessageQueueAcknowledger extends AbstractMessageQueueAcknowledger<Long> {
+public class LocalKafkaMessageQueueAcknowledger extends AbstractMessageQueueAcknowledger<Object> {
+    private static final Logger log = LoggerFactory.getLogger(LocalKafkaMessageQueueAcknowledger.class);
+
     private final LocalKafkaJournal kafkaJournal;
 
     @Inject
     public LocalKafkaMessageQueueAcknowledger(LocalKafkaJournal kafkaJournal,
                                               MessageQueueAcknowledger.Metrics metrics) {
-        super(Long.class, metrics);
+        super(Object.class, metrics);
         this.kafkaJournal = kafkaJournal;
     }
 
     @Override
     public void acknowledge(List<? extends Acknowledgeable> messages) {
-        @SuppressWarnings("ConstantConditions")
-        final Optional<Long> max =
-                messages.stream()
-                        .map(Acknowledgeable::getMessageQueueId)
-                        .filter(this::isValidMessageQueueId)
-                        .map(Long.class::cast)
-                        .max(Long::compare);
-        max.ifPresent(this::doAcknowledge);
+        // Only the highest offset of every partition has to be committed
+        long maxOffset = Long.MIN_VALUE;
+        final Map<Integer, Long> maxPartitionOffsets = new HashMap<>();
+        for (final Acknowledgeable message : messages) {
+            final Object queueId = message.getMessageQueueId();
+            if (!isValidMessageQueueId(queueId)) {
+                continue;
+            }
+            if (queueId instanceof JournalPartitionOffset partitionOffset) {
+                maxPartitionOffsets.merge(partitionOffset.partition(), partitionOffset.offset(), Math::max);
+            } else {
+                maxOffset = Math.max(maxOffset, (Long) queueId);
+            }
+        }
+        if (maxOffset != Long.MIN_VALUE) {
+            kafkaJournal.markJournalOffsetCommitted(maxOffset);
+        }
+        maxPartitionOffsets.forEach(kafkaJournal::markJournalOffsetCommitted);
         metrics.acknowledgedMessages().mark(messages.size());
     }
 
     @Override
-    protected void doAcknowledge(Long queueId) {
-        kafkaJournal.markJournalOffsetCommitted(queueId);
+    protected void doAcknowledge(Object queueId) {
+        if (queueId instanceof JournalPartitionOffset partitionOffset) {
+            kafkaJournal.markJournalOffsetCommitted(partitionOffset.partition(), partitionOffset.offset());
+        } else {
+            kafkaJournal.markJournalOffsetCommitted((Long) queueId);
+        }
+    }
+
+    @Override
+    protected boolean isValidMessageQueueId(Object object) {
+        if (object instanceof Long || object instanceof JournalPartitionOffset) {
+            return true;
+        }
+        // null is not valid, but it's also not an error condition because we might be dealing with a synthetic message
+        if (object != null) {
+            log.error("{} is unable to acknowledge message. Expected <{}> to be a journal offset, but found <{}>.",
+                    getClass().getSimpleName(), object, object.getClass().getSimpleName());
+        }
+        return false;
     }
 }
@@ -35,12 +35,17 @@ import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Semaphore;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+/**
+ * Reads messages from the journal and inserts them into the {@link ProcessBuffer}. Every journal partition is read by
+ * its own thread.
+ */
 @Singleton
 public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
     private static final Logger log = LoggerFactory.getLogger(LocalKafkaMessageQueueReader.class);
@@ -53,6 +58,7 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
     private Histogram requestedReadCount;
     private final Counter readBlocked;
     private Thread executionThread;
+    private final List<Thread> partitionThreads = new ArrayList<>();
 
     @Inject
     public LocalKafkaMessageQueueReader(Journal journal,
@@ -87,6 +93,9 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
     @Override
     protected void triggerShutdown() {
         executionThread.interrupt();
+        synchronized (partitionThreads) {
+            partitionThreads.forEach(Thread::interrupt);
+        }
     }
 
     @Override
@@ -98,6 +107,34 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
             throw e;
         }
 
+        final int partitionCount = journal.getPartitionCount();
+        if (partitionCount == 1) {
+            readPartition(0, 1);
+        } else {
+            // The current thread reads the first partition, every other partition gets a thread of its own
+            synchronized (partitionThreads) {
+                for (int i = 1; i < partitionCount; i++) {
+                    final int partition = i;
+                    final Thread thread = new Thread(() -> readPartition(partition, partitionCount),
+                            "journal-reader-" + partition);
+                    thread.setDaemon(true);
+                    partitionThreads.add(thread);
+                    thread.start();
+                }
+            }
+            readPartition(0, partitionCount);
+            synchronized (partitionThreads) {
+                partitionThreads.forEach(Thread::interrupt);
+            }
+            for (final Thread thread : partitionThreads) {
+                thread.join();
+            }
+        }
+        log.info("Stopping.");
+    }
+
+    private void readPartition(int partition, int partitionCount) {
+        final boolean partitioned = partitionCount > 1;
         while (isRunning()) {
             // TODO interfere with reading if we are not 100% certain we should be reading, see #listenForLifecycleChanges
             if (!shouldBeReading()) {
@@ -105,16 +142,21 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
                 // don't read immediately, but check if we should be shutting down.
                 continue;
             }
-            // approximate count to read from the journal to backfill the processing chain
-            final long remainingCapacity = processBuffer.getRemainingCapacity();
+            // approximate count to read from the journal to backfill the processing chain, shared by all partitions
+            final long remainingCapacity = Math.max(1, processBuffer.getRemainingCapacity() / partitionCount);
             requestedReadCount.update(remainingCapacity);
-            final List<Journal.JournalReadEntry> encodedRawMessages = journal.read(remainingCapacity);
+            final List<Journal.JournalReadEntry> encodedRawMessages = journal.read(partition, remainingCapacity);
             if (encodedRawMessages.isEmpty()) {
                 log.debug("No messages to read from Journal, waiting until the writer adds more messages.");
                 // block until something is written to the journal again
                 try {
                     readBlocked.inc();
-                    journalFilled.acquire();
+                    if (partitioned) {
+                        // The signal is shared by all partition readers, so don't wait for it indefinitely
+                        journalFilled.tryAcquire(100, MILLISECONDS);
+                    } else {
+                        journalFilled.acquire();
+                    }
                 } catch (InterruptedException ignored) {
                     // this can happen when we are blocked but the system wants to shut down. We don't have to do anything in that case.
                     continue;
@@ -125,22 +167,22 @@ public class LocalKafkaMessageQueueReader extends AbstractMessageQueueReader {
             } else {
                 readMessages.mark(encodedRawMessages.size());
                 readerMetrics.readMessages().mark(encodedRawMessages.size());
-                log.debug("Processing {} messages from journal.", encodedRawMessages.size());
+                log.debug("Processing {} messages from journal partition {}.", encodedRawMessages.size(), partition);
                 for (final Journal.JournalReadEntry encodedRawMessage : encodedRawMessages) {
-                    final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayload(),
-                            encodedRawMessage.getOffset());
-                    readerMetrics.readBytes().mark(encodedRawMessage.getPayload().length);
+                    final long offset = encodedRawMessage.getOffset();
+                    final RawMessage rawMessage = RawMessage.decode(encodedRawMessage.getPayloadBuffer(),
+                            partitioned ? new JournalPartitionOffset(partition, offset) : offset);
+                    readerMetrics.readBytes().mark(encodedRawMessage.getPayloadSize());
                     if (rawMessage == null) {
                         // never insert null objects into the ringbuffer, as that is useless
                         log.error("Found null raw message!");
-                        journal.markJournalOffsetCommitted(encodedRawMessage.getOffset());
+                        journal.markJournalOffsetCommitted(partition, offset);
                         continue;
                     }
                     processBuffer.insertBlocking(rawMessage);
                 }
             }
         }
-        log.info("Stopping.");
     }
 
 
@@ -16,27 +16,33 @@
  */
 package org.graylog2.shared.messageq.localkafka;
 
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
 import com.github.rholder.retry.RetryException;
 import com.github.rholder.retry.Retryer;
 import com.google.common.util.concurrent.AbstractIdleService;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
 import jakarta.inject.Singleton;
 import org.graylog2.shared.buffers.RawMessageEvent;
 import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.JournalFsyncPolicy;
 import org.graylog2.shared.journal.LocalKafkaJournal;
 import org.graylog2.shared.messageq.MessageQueueException;
 import org.graylog2.shared.messageq.MessageQueueWriter;
+import org.joda.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Semaphore;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 @Singleton
 public class LocalKafkaMessageQueueWriter extends AbstractIdleService implements MessageQueueWriter {
@@ -46,28 +52,105 @@ public class LocalKafkaMessageQueueWriter extends AbstractIdleService implements
     private Semaphore journalFilled;
     private final Metrics metrics;
     private final Retryer<Void> writeRetryer;
+    @Nullable
+    private final JournalGroupCommitter groupCommitter;
+    private Thread groupCommitterThread;
 
     @Inject
     public LocalKafkaMessageQueueWriter(LocalKafkaJournal kafkaJournal,
                                         @Named("JournalSignal") Semaphore journalFilled,
-                                        MessageQueueWriter.Metrics metrics) {
+                                        MessageQueueWriter.Metrics metrics,
+                                        MetricRegistry metricRegistry,
+                                        @Named("message_journal_group_commit") boolean groupCommit,
+                                        @Named("message_journal_group_commit_size") Size groupCommitSize,
+                                        @Named("message_journal_group_commit_delay") Duration groupCommitDelay,
+                                        @Named("message_journal_fsync_policy") JournalFsyncPolicy fsyncPolicy,
+                                        @Named("message_journal_fsync_interval") Duration fsyncInterval,
+                                        @Named("message_journal_fsync_size") Size fsyncSize) {
         this.kafkaJournal = kafkaJournal;
         this.journalFilled = journalFilled;
         this.metrics = metrics;
         this.writeRetryer = JournalRetryerFactory.create(retryerExceptionPredicate());
+        this.groupCommitter = groupCommit
+                ? new JournalGroupCommitter(this::writeToJournal, kafkaJournal::fsync, groupCommitSize.toBytes(),
+                groupCommitDelay.getMillis(), fsyncPolicy, fsyncInterval.getMillis(), fsyncSize.toBytes(), metricRegistry)
+                : null;
     }
 
     @Override
     public void write(List<RawMessageEvent> entries) throws MessageQueueException {
+        final List<Journal.Entry> journalEntries = new ArrayList<>(entries.size());
+        boolean handedOver = false;
+        try {
+            for (final RawMessageEvent e : entries) {
+                if (e != null) {
+                    // the journal entry owns the payload buffer from now on
+                    journalEntries.add(new Journal.Entry(e.getMessageIdBytes(), e.getEncodedRawMessage(),
+                            e.detachEncodedPayload(), e.getJournalPartitionKey()));
+                }
+            }
 
-        final AtomicLong msgBytes = new AtomicLong(0);
+            if (groupCommitter != null) {
+                writeGrouped(journalEntries);
+                handedOver = true;
+                return;
+            }
+            writeWithRetry(journalEntries);
+        } finally {
+            if (!handedOver) {
+                journalEntries.forEach(Journal.Entry::release);
+            }
+        }
+
+        markWritten(journalEntries);
+    }
 
-        final List<Journal.Entry> journalEntries = entries.stream()
-                .filter(Objects::nonNull)
-                .map(e -> new Journal.Entry(e.getMessageIdBytes(), e.getEncodedRawMessage()))
-                .peek(e -> msgBytes.addAndGet(e.getMessageBytes().length))
-                .collect(Collectors.toList());
+    private void markWritten(List<Journal.Entry> journalEntries) {
+        long msgBytes = 0L;
+        for (Journal.Entry entry : journalEntries) {
+            msgBytes += entry.getMessageSize();
+        }
+        metrics.writtenMessages().mark(journalEntries.size());
+        metrics.writtenBytes().mark(msgBytes);
+    }
 
+    /**
+     * Hands the entries to the group committer without waiting for them to be appended, so the writer can go on
+     * with its next batch while the committer is still collecting the group. The entries are released once the
+     * committer is done with them.
+     * <p>
+     * Entries the committer couldn't append are written with the usual retries instead. This happens on the committer
+     * thread, which holds back the following groups until the journal accepts writes again.
+     */
+    private void writeGrouped(List<Journal.Entry> journalEntries) throws MessageQueueException {
+        final CompletableFuture<Void> completion;
+        try {
+            completion = groupCommitter.submit(journalEntries);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessageQueueException("Interrupted while waiting for the journal group committer", e);
+        }
+        completion.whenComplete((ignored, throwable) -> {
+            try {
+                if (throwable != null) {
+                    // only retry what isn't in the journal yet, the committer may have appended part of the group
+                    final List<Journal.Entry> notAppended = throwable instanceof JournalGroupCommitter.NotAppendedException notAppendedException
+                            ? notAppendedException.entries()
+                            : journalEntries;
+                    metrics.failedWriteAttempts().mark();
+                    LOG.warn("Group commit of {} messages failed, writing them directly.", notAppended.size(), throwable.getCause());
+                    writeWithRetry(notAppended);
+                }
+                markWritten(journalEntries);
+            } catch (MessageQueueException e) {
+                LOG.error("Unable to write {} messages to the journal.", journalEntries.size(), e);
+            } finally {
+                journalEntries.forEach(Journal.Entry::release);
+            }
+        });
+    }
+
+    private void writeWithRetry(List<Journal.Entry> journalEntries) throws MessageQueueException {
         try {
             writeToJournal(journalEntries);
         } catch (Exception e) {
@@ -83,13 +166,14 @@ public class LocalKafkaMessageQueueWriter extends AbstractIdleService implements
                 throw new MessageQueueException("Retryer exception", ex);
             }
         }
-
-        metrics.writtenMessages().mark(journalEntries.size());
-        metrics.writtenBytes().mark(msgBytes.get());
     }
 
     private void writeToJournal(List<Journal.Entry> entries) {
-        final long lastOffset = kafkaJournal.write(entries);
+        writeToJournal(entries, appended -> {});
+    }
+
+    private void writeToJournal(List<Journal.Entry> entries, Consumer<List<Journal.Entry>> appendedListener) {
+        final long lastOffset = kafkaJournal.write(entries, appendedListener);
 
         LOG.debug("Processed batch, last journal offset: {}, signalling reader.",
                 lastOffset);
@@ -105,12 +189,27 @@ public class LocalKafkaMessageQueueWriter extends AbstractIdleService implements
     }
 
     @Override
-    protected void startUp() throws Exception {
+    public boolean supportsPooledPayloads() {
+        return true;
+    }
 
+    @Override
+    protected void startUp() throws Exception {
+        if (groupCommitter != null) {
+            groupCommitterThread = new ThreadFactoryBuilder()
+                    .setNameFormat("journal-group-committer-%d")
+                    .setDaemon(true)
+                    .build()
+                    .newThread(groupCommitter);
+            groupCommitterThread.start();
+        }
     }
 
     @Override
     protected void shutDown() throws Exception {
-
+        if (groupCommitter != null && groupCommitterThread != null) {
+            groupCommitter.stop();
+            groupCommitterThread.join();
+        }
     }
 }
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.streams;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Immutable Aho-Corasick automaton which finds all patterns contained in a text in a single pass over the text.
+ *
+ * Every pattern is registered with an integer id which is reported to the consumer when the pattern is found.
+ * Ids may be reported more than once if a pattern occurs multiple times in the text.
+ */
+final class AhoCorasickAutomaton {
+    private static final int ROOT = 0;
+    private static final int[] NO_OUTPUT = new int[0];
+
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+    private final int[] failure;
+    private final int[][] outputs;
+
+    AhoCorasickAutomaton(List<String> patterns, int[] ids) {
+        if (patterns.size() != ids.length) {
+            throw new IllegalArgumentException("Number of patterns and ids must be equal");
+        }
+
+        final List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        final List<int[]> trieOutputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        trieOutputs.add(NO_OUTPUT);
+
+        for (int i = 0; i < patterns.size(); i++) {
+            final String pattern = patterns.get(i);
+            int state = ROOT;
+            for (int pos = 0; pos < pattern.length(); pos++) {
+                final Integer next = trie.get(state).get(pattern.charAt(pos));
+                if (next == null) {
+                    trie.add(new TreeMap<>());
+                    trieOutputs.add(NO_OUTPUT);
+                    trie.get(state).put(pattern.charAt(pos), trie.size() - 1);
+                    state = trie.size() - 1;
+                } else {
+                    state = next;
+                }
+            }
+            trieOutputs.set(state, append(trieOutputs.get(state), ids[i]));
+        }
+
+        final int states = trie.size();
+        this.edgeChars = new char[states][];
+        this.edgeTargets = new int[states][];
+        this.failure = new int[states];
+        this.outputs = new int[states][];
+
+        for (int state = 0; state < states; state++) {
+            final TreeMap<Character, Integer> edges = trie.get(state);
+            edgeChars[state] = new char[edges.size()];
+            edgeTargets[state] = new int[edges.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> edge : edges.entrySet()) {
+                edgeChars[state][i] = edge.getKey();
+                edgeTargets[state][i] = edge.getValue();
+                i++;
+            }
+        }
+
+        // Breadth-first traversal so that the failure state of every parent is known before its children.
+        final Deque<Integer> queue = new ArrayDeque<>();
+        outputs[ROOT] = trieOutputs.get(ROOT);
+        for (int child : edgeTargets[ROOT]) {
+            failure[child] = ROOT;
+            outputs[child] = trieOutputs.get(child);
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            final int state = queue.poll();
+            for (int i = 0; i < edgeChars[state].length; i++) {
+                final char c = edgeChars[state][i];
+                final int child = edgeTargets[state][i];
+
+                int fallback = failure[state];
+                int target = transition(fallback, c);
+                while (target < 0 && fallback != ROOT) {
+                    fallback = failure[fallback];
+                    target = transition(fallback, c);
+                }
+                failure[child] = target < 0 ? ROOT : target;
+                // Empty patterns live in the root state and are reported once per text, not once per character.
+                outputs[child] = failure[child] == ROOT ? trieOutputs.get(child) : concat(trieOutputs.get(child), outputs[failure[child]]);
+                queue.add(child);
+            }
+        }
+    }
+
+    /**
+     * Reports the ids of all patterns which are contained in the given text.
+     *
+     * @param text     the text to search
+     * @param consumer receives the id of every pattern that was found
+     */
+    void match(CharSequence text, IntConsumer consumer) {
+        report(outputs[ROOT], consumer);
+
+        int state = ROOT;
+        for (int pos = 0; pos < text.length(); pos++) {
+            final char c = text.charAt(pos);
+            int next = transition(state, c);
+            while (next < 0 && state != ROOT) {
+                state = failure[state];
+                next = transition(state, c);
+            }
+            state = next < 0 ? ROOT : next;
+            if (state != ROOT) {
+                report(outputs[state], consumer);
+            }
+        }
+    }
+
+    private int transition(int state, char c) {
+        final int i = Arrays.binarySearch(edgeChars[state], c);
+        return i < 0 ? -1 : edgeTargets[state][i];
+    }
+
+    private static void report(int[] ids, IntConsumer consumer) {
+        for (int id : ids) {
+            consumer.accept(id);
+        }
+    }
+
+    private static int[] append(int[] ids, int id) {
+        final int[] result = Arrays.copyOf(ids, ids.length + 1);
+        result[ids.length] = id;
+        return result;
+    }
+
+    private static int[] concat(int[] first, int[] second) {
+        if (second.length == 0) {
+            return first;
+        }
+        if (first.length == 0) {
+            return second;
+        }
+        final int[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.streams;
+
+import com.google.common.collect.ImmutableList;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.plugin.streams.StreamRuleType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.DoublePredicate;
+import java.util.function.Predicate;
+
+/**
+ * Stream rules compiled into per-field dispatch tables.
+ *
+ * Every rule gets a bit in a shared rule bitset. The rules of a stream occupy a contiguous range of that bitset so
+ * that AND/OR resolution of a stream is a range check. For each field referenced by a rule there is a table with
+ * <ul>
+ *     <li>a hash index of the {@link StreamRuleType#EXACT} and {@link StreamRuleType#MATCH_INPUT} values,</li>
+ *     <li>sorted threshold arrays for {@link StreamRuleType#GREATER} and {@link StreamRuleType#SMALLER},</li>
+ *     <li>one Aho-Corasick automaton for all {@link StreamRuleType#CONTAINS} values and</li>
+ *     <li>the list of {@link StreamRuleType#PRESENCE} rules.</li>
+ * </ul>
+ * The cost of matching a message therefore depends on the number of fields and not on the number of rules.
+ * {@link StreamRuleType#REGEX} rules cannot be indexed and are evaluated with the given fallback matcher, but only
+ * for streams which are not already decided by their indexed rules.
+ *
+ * Instances are immutable and thread-safe.
+ */
+class CompiledStreamRules {
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledStreamRules.class);
+
+    private final Stream[] streams;
+    private final Stream.MatchingType[] matchingTypes;
+    // Rule range of each stream: [ruleStart[i], ruleEnd[i])
+    private final int[] ruleStart;
+    private final int[] ruleEnd;
+    // Rules that match when the field they refer to is missing or has no indexed hit
+    private final BitSet inverted;
+    // GREATER/SMALLER rules never match if the field or the rule value is not numeric, not even inverted ones
+    private final BitSet numeric;
+    private final BitSet alwaysMatch;
+    private final int[] fallbackRules;
+    private final Predicate<Message>[] fallbackMatchers;
+    private final int[] fallbackStream;
+    private final FieldTable[] fieldTables;
+
+    @SuppressWarnings("unchecked")
+    CompiledStreamRules(List<Stream> streams, BiFunction<Stream, StreamRule, Predicate<Message>> fallbackMatcherFactory) {
+        this.streams = streams.toArray(new Stream[0]);
+        this.matchingTypes = new Stream.MatchingType[this.streams.length];
+        this.ruleStart = new int[this.streams.length];
+        this.ruleEnd = new int[this.streams.length];
+        this.inverted = new BitSet();
+        this.numeric = new BitSet();
+        this.alwaysMatch = new BitSet();
+
+        final Map<String, FieldTable.Builder> tableBuilders = new LinkedHashMap<>();
+        final List<Integer> fallbackRuleIds = new ArrayList<>();
+        final List<Predicate<Message>> fallbackRuleMatchers = new ArrayList<>();
+        final List<Integer> fallbackRuleStreams = new ArrayList<>();
+
+        int ruleId = 0;
+        for (int streamIdx = 0; streamIdx < this.streams.length; streamIdx++) {
+            final Stream stream = this.streams[streamIdx];
+            matchingTypes[streamIdx] = stream.getMatchingType();
+            ruleStart[streamIdx] = ruleId;
+
+            // Regex rules are placed at the end of the stream's rule range, so they are only evaluated when the
+            // indexed rules did not decide the stream yet.
+            final List<StreamRule> rules = new ArrayList<>(stream.getStreamRules());
+            rules.sort(Comparator.comparing(rule -> rule.getType() == StreamRuleType.REGEX));
+
+            for (StreamRule rule : rules) {
+                final StreamRuleType type = rule.getType();
+                if (type == null) {
+                    LOG.warn("Invalid stream rule type. Skipping matching for rule <{}> of stream <{}>.", rule.getId(), stream.getId());
+                    continue;
+                }
+                final boolean isInverted = Boolean.TRUE.equals(rule.getInverted());
+
+                switch (type) {
+                    case ALWAYS_MATCH:
+                        alwaysMatch.set(ruleId);
+                        inverted.set(ruleId, isInverted);
+                        break;
+                    case REGEX:
+                        fallbackRuleIds.add(ruleId);
+                        fallbackRuleMatchers.add(fallbackMatcherFactory.apply(stream, rule));
+                        fallbackRuleStreams.add(streamIdx);
+                        break;
+                    case MATCH_INPUT:
+                        inverted.set(ruleId, isInverted);
+                        table(tableBuilders, Message.FIELD_GL2_SOURCE_INPUT).addInput(rule.getValue(), ruleId);
+                        break;
+                    case PRESENCE:
+                        inverted.set(ruleId, isInverted);
+                        if (rule.getField() != null) {
+                            table(tableBuilders, rule.getField()).addPresence(ruleId);
+                        }
+                        break;
+                    case EXACT:
+                        inverted.set(ruleId, isInverted);
+                        if (rule.getField() != null && rule.getValue() != null) {
+                            table(tableBuilders, rule.getField()).addExact(rule.getValue(), ruleId);
+                        }
+                        break;
+                    case CONTAINS:
+                        // A rule without a value fails with an error in the ContainsMatcher, so it never matches.
+                        if (rule.getValue() != null) {
+                            inverted.set(ruleId, isInverted);
+                            if (rule.getField() != null) {
+                                table(tableBuilders, rule.getField()).addContains(rule.getValue(), ruleId);
+                            }
+                        }
+                        break;
+                    case GREATER:
+                    case SMALLER:
+                        numeric.set(ruleId);
+                        inverted.set(ruleId, isInverted);
+                        final Double threshold = Tools.getDouble(rule.getValue());
+                        if (rule.getField() != null && threshold != null) {
+                            table(tableBuilders, rule.getField()).addNumeric(type, threshold, ruleId);
+                        }
+                        break;
+                }
+                ruleId++;
+            }
+            ruleEnd[streamIdx] = ruleId;
+        }
+
+        this.fallbackRules = fallbackRuleIds.stream().mapToInt(Integer::intValue).toArray();
+        this.fallbackMatchers = fallbackRuleMatchers.toArray(new Predicate[0]);
+        this.fallbackStream = fallbackRuleStreams.stream().mapToInt(Integer::intValue).toArray();
+
+        this.fieldTables = tableBuilders.values().stream().map(FieldTable.Builder::build).toArray(FieldTable[]::new);
+    }
+
+    private static FieldTable.Builder table(Map<String, FieldTable.Builder> builders, String field) {
+        return builders.computeIfAbsent(field, FieldTable.Builder::new);
+    }
+
+    /**
+     * Returns the list of matching streams for the given message in the order of the compiled stream list.
+     *
+     * @param message the message
+     * @return the list of matching streams
+     */
+    List<Stream> match(Message message) {
+        final BitSet hits = (BitSet) alwaysMatch.clone();
+        final BitSet applicable = new BitSet();
+
+        for (FieldTable table : fieldTables) {
+            table.collect(message.getField(table.field), hits, applicable);
+        }
+
+        // hits = (hits ^ inverted) & ~(numeric & ~applicable)
+        hits.xor(inverted);
+        final BitSet notApplicable = (BitSet) numeric.clone();
+        notApplicable.andNot(applicable);
+        hits.andNot(notApplicable);
+
+        for (int i = 0; i < fallbackRules.length; i++) {
+            final int rule = fallbackRules[i];
+            if (isUndecided(fallbackStream[i], rule, hits) && fallbackMatchers[i].test(message)) {
+                hits.set(rule);
+            }
+        }
+
+        final ImmutableList.Builder<Stream> result = ImmutableList.builder();
+        for (int streamIdx = 0; streamIdx < streams.length; streamIdx++) {
+            if (isMatched(streamIdx, hits)) {
+                result.add(streams[streamIdx]);
+            }
+        }
+        return result.build();
+    }
+
+    /**
+     * Checks if the outcome of the stream still depends on the given rule, based on the rules before it.
+     */
+    private boolean isUndecided(int streamIdx, int rule, BitSet hits) {
+        final int start = ruleStart[streamIdx];
+        if (matchingTypes[streamIdx] == Stream.MatchingType.OR) {
+            final int firstHit = hits.nextSetBit(start);
+            return firstHit < 0 || firstHit >= rule;
+        }
+        return hits.nextClearBit(start) >= rule;
+    }
+
+    private boolean isMatched(int streamIdx, BitSet hits) {
+        final int start = ruleStart[streamIdx];
+        final int end = ruleEnd[streamIdx];
+        if (start == end) {
+            return false;
+        }
+        if (matchingTypes[streamIdx] == Stream.MatchingType.OR) {
+            final int firstHit = hits.nextSetBit(start);
+            return firstHit >= 0 && firstHit < end;
+        }
+        return hits.nextClearBit(start) >= end;
+    }
+
+    private static class FieldTable {
+        private static final int[] NONE = new int[0];
+
+        private final String field;
+        private final int[] presenceRules;
+        private final Map<String, int[]> exactRules;
+        private final Map<String, int[]> inputRules;
+        private final NumericIndex greaterRules;
+        private final NumericIndex smallerRules;
+        private final AhoCorasickAutomaton containsAutomaton;
+
+        private FieldTable(Builder builder) {
+            this.field = builder.field;
+            this.presenceRules = builder.presenceRules.stream().mapToInt(Integer::intValue).toArray();
+            this.exactRules = toArrays(builder.exactRules, new HashMap<>());
+            this.inputRules = toArrays(builder.inputRules, new TreeMap<>(String.CASE_INSENSITIVE_ORDER));
+            this.greaterRules = builder.greaterRules.isEmpty() ? null : new NumericIndex(builder.greaterRules, true);
+            this.smallerRules = builder.smallerRules.isEmpty() ? null : new NumericIndex(builder.smallerRules, false);
+            this.containsAutomaton = builder.containsValues.isEmpty() ? null : new AhoCorasickAutomaton(
+                    builder.containsValues, builder.containsRules.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        private static Map<String, int[]> toArrays(Map<String, List<Integer>> source, Map<String, int[]> target) {
+            source.forEach((value, rules) -> target.put(value, rules.stream().mapToInt(Integer::intValue).toArray()));
+            return target;
+        }
+
+        void collect(Object value, BitSet hits, BitSet applicable) {
+            if (value == null) {
+                return;
+            }
+
+            if (!(value instanceof String) || !((String) value).trim().isEmpty()) {
+                set(hits, presenceRules);
+            }
+
+            if (!exactRules.isEmpty() || !inputRules.isEmpty() || containsAutomaton != null) {
+                final String stringValue = value.toString();
+                if (!exactRules.isEmpty() || !inputRules.isEmpty()) {
+                    final String trimmed = stringValue.trim();
+                    set(hits, exactRules.getOrDefault(trimmed, NONE));
+                    set(hits, inputRules.getOrDefault(trimmed, NONE));
+                }
+                if (containsAutomaton != null) {
+                    containsAutomaton.match(stringValue, hits::set);
+                }
+            }
+
+            if (greaterRules != null || smallerRules != null) {
+                final Double number = Tools.getDouble(value);
+                if (number != null) {
+                    if (greaterRules != null) {
+                        greaterRules.collect(number, hits, applicable);
+                    }
+                    if (smallerRules != null) {
+                        smallerRules.collect(number, hits, applicable);
+                    }
+                }
+            }
+        }
+
+        private static void set(BitSet bits, int[] rules) {
+            for (int rule : rules) {
+                bits.set(rule);
+            }
+        }
+
+        private static class Builder {
+            private final String field;
+            private final List<Integer> presenceRules = new ArrayList<>();
+            private final Map<String, List<Integer>> exactRules = new HashMap<>();
+            private final Map<String, List<Integer>> inputRules = new HashMap<>();
+            private final List<double[]> greaterRules = new ArrayList<>();
+            private final List<double[]> smallerRules = new ArrayList<>();
+            private final List<String> containsValues = new ArrayList<>();
+            private final List<Integer> containsRules = new ArrayList<>();
+
+            private Builder(String field) {
+                this.field = field;
+            }
+
+            void addPresence(int rule) {
+                presenceRules.add(rule);
+            }
+
+            void addExact(String value, int rule) {
+                exactRules.computeIfAbsent(value, k -> new ArrayList<>()).add(rule);
+            }
+
+            void addInput(String value, int rule) {
+                if (value != null) {
+                    inputRules.computeIfAbsent(value, k -> new ArrayList<>()).add(rule);
+                }
+            }
+
+            void addContains(String value, int rule) {
+                containsValues.add(value);
+                containsRules.add(rule);
+            }
+
+            void addNumeric(StreamRuleType type, double threshold, int rule) {
+                (type == StreamRuleType.GREATER ? greaterRules : smallerRules).add(new double[]{threshold, rule});
+            }
+
+            FieldTable build() {
+                return new FieldTable(this);
+            }
+        }
+    }
+
+    /**
+     * Sorted thresholds of GREATER or SMALLER rules of a single field. A binary search finds the boundary between
+     * matching and non-matching rules.
+     */
+    private static class NumericIndex {
+        private final boolean greater;
+        private final double[] thresholds;
+        private final int[] rules;
+        // NaN thresholds never match, but inverted rules with a NaN threshold do
+        private final int[] allRules;
+
+        NumericIndex(List<double[]> entries, boolean greater) {
+            this.greater = greater;
+            final double[][] sorted = entries.stream()
+                    .filter(entry -> !Double.isNaN(entry[0]))
+                    .sorted(Comparator.comparingDouble(entry -> entry[0]))
+                    .toArray(double[][]::new);
+            this.thresholds = Arrays.stream(sorted).mapToDouble(entry -> entry[0]).toArray();
+            this.rules = Arrays.stream(sorted).mapToInt(entry -> (int) entry[1]).toArray();
+            this.allRules = entries.stream().mapToInt(entry -> (int) entry[1]).toArray();
+        }
+
+        void collect(double value, BitSet hits, BitSet applicable) {
+            for (int rule : allRules) {
+                applicable.set(rule);
+            }
+            if (greater) {
+                // threshold < value holds for a prefix of the sorted thresholds
+                final int end = firstIndex(threshold -> !(threshold < value));
+                for (int i = 0; i < end; i++) {
+                    hits.set(rules[i]);
+                }
+            } else {
+                // threshold > value holds for a suffix of the sorted thresholds
+                final int start = firstIndex(threshold -> value < threshold);
+                for (int i = start; i < thresholds.length; i++) {
+                    hits.set(rules[i]);
+                }
+            }
+        }
+
+        private int firstIndex(DoublePredicate predicate) {
+            int low = 0;
+            int high = thresholds.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (predicate.test(thresholds[mid])) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+    }
+}
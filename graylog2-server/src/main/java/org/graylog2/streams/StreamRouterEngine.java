@@ -28,6 +28,7 @@ import com.google.common.util.concurrent.TimeLimiter;
 import com.google.common.util.concurrent.UncheckedTimeoutException;
 import com.google.inject.assistedinject.Assisted;
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.inject.Provider;
 import org.graylog.failure.ProcessingFailureCause;
 import org.graylog2.plugin.Message;
@@ -41,6 +42,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
+import java.util.Collection;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +50,7 @@ import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import static com.codahale.metrics.MetricRegistry.name;
 import static org.graylog2.shared.utilities.StringUtils.f;
@@ -55,6 +58,10 @@ import static org.graylog2.shared.utilities.StringUtils.f;
 /**
  * Stream routing engine to select matching streams for a message.
  *
+ * If {@code stream_router_compiled_matching} is enabled, the stream rules are compiled into per-field dispatch
+ * tables (see {@link CompiledStreamRules}) instead of being evaluated one after another. Per-rule execution timers
+ * are only recorded for regex rules in that mode.
+ *
  * This class is NOT thread-safe! Use one instance per thread.
  */
 public class StreamRouterEngine {
@@ -71,6 +78,8 @@ public class StreamRouterEngine {
     private final Provider<Stream> defaultStreamProvider;
 
     private final List<Rule> rulesList;
+    @Nullable
+    private final CompiledStreamRules compiledRules;
     private final Counter cannotRemoveDefaultMeter;
 
     public interface Factory {
@@ -83,7 +92,8 @@ public class StreamRouterEngine {
                               StreamFaultManager streamFaultManager,
                               StreamMetrics streamMetrics,
                               @DefaultStream Provider<Stream> defaultStreamProvider,
-                              MetricRegistry metricRegistry) {
+                              MetricRegistry metricRegistry,
+                              @Named("stream_router_compiled_matching") boolean compiledMatching) {
         this.streams = streams;
         this.streamFaultManager = streamFaultManager;
         this.streamMetrics = streamMetrics;
@@ -150,6 +160,18 @@ public class StreamRouterEngine {
         this.rulesList.addAll(smallerRules);
         this.rulesList.addAll(containsRules);
         this.rulesList.addAll(regexRules);
+
+        this.compiledRules = compiledMatching ? new CompiledStreamRules(streams, this::fallbackMatcher) : null;
+    }
+
+    private Predicate<Message> fallbackMatcher(Stream stream, StreamRule streamRule) {
+        try {
+            final Rule rule = new Rule(stream, streamRule, stream.getMatchingType());
+            return message -> rule.matchWithTimeOut(message, streamProcessingTimeout, TimeUnit.MILLISECONDS) != null;
+        } catch (InvalidStreamRuleTypeException e) {
+            LOG.warn("Invalid stream rule type. Skipping matching for this rule. " + e.getMessage(), e);
+            return message -> false;
+        }
     }
 
     /**
@@ -177,6 +199,34 @@ public class StreamRouterEngine {
      * @return the list of matching streams
      */
     public List<Stream> match(Message message) {
+        final Collection<Stream> result = compiledRules != null ? compiledRules.match(message) : matchRules(message);
+
+        final Stream defaultStream = defaultStreamProvider.get();
+        boolean alreadyRemovedDefaultStream = false;
+        for (Stream stream : result) {
+            if (stream.getRemoveMatchesFromDefaultStream()) {
+                if (alreadyRemovedDefaultStream || message.removeStream(defaultStream)) {
+                    alreadyRemovedDefaultStream = true;
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Successfully removed default stream <{}> from message <{}>", defaultStream.getId(), message.getId());
+                    }
+                } else {
+                    // A previously executed message processor (or Illuminate) has likely already removed the
+                    // default stream from the message. Now, the message has matched a stream in the Graylog
+                    // MessageFilterChain, and the matching stream is also set to remove the default stream.
+                    // This is usually from user-defined stream rules, and is generally not a problem.
+                    cannotRemoveDefaultMeter.inc();
+                    if (LOG.isTraceEnabled()) {
+                        LOG.trace("Couldn't remove default stream <{}> from message <{}>", defaultStream.getId(), message.getId());
+                    }
+                }
+            }
+        }
+
+        return ImmutableList.copyOf(result);
+    }
+
+    private Set<Stream> matchRules(Message message) {
         final Set<Stream> result = Sets.newHashSet();
         final Set<String> blackList = Sets.newHashSet();
 
@@ -221,29 +271,7 @@ public class StreamRouterEngine {
             }
         }
 
-        final Stream defaultStream = defaultStreamProvider.get();
-        boolean alreadyRemovedDefaultStream = false;
-        for (Stream stream : result) {
-            if (stream.getRemoveMatchesFromDefaultStream()) {
-                if (alreadyRemovedDefaultStream || message.removeStream(defaultStream)) {
-                    alreadyRemovedDefaultStream = true;
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Successfully removed default stream <{}> from message <{}>", defaultStream.getId(), message.getId());
-                    }
-                } else {
-                    // A previously executed message processor (or Illuminate) has likely already removed the
-                    // default stream from the message. Now, the message has matched a stream in the Graylog
-                    // MessageFilterChain, and the matching stream is also set to remove the default stream.
-                    // This is usually from user-defined stream rules, and is generally not a problem.
-                    cannotRemoveDefaultMeter.inc();
-                    if (LOG.isTraceEnabled()) {
-                        LOG.trace("Couldn't remove default stream <{}> from message <{}>", defaultStream.getId(), message.getId());
-                    }
-                }
-            }
-        }
-
-        return ImmutableList.copyOf(result);
+        return result;
     }
 
     /**
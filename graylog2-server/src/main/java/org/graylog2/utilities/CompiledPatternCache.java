@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.benmanes.caffeine.cache.stats.StatsCounter;
+import jakarta.inject.Inject;
+import jakarta.inject.Named;
+import jakarta.inject.Singleton;
+import org.graylog2.shared.metrics.MetricUtils;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Size-bounded cache for compiled regular expressions and other compiled patterns, shared by the pipeline functions
+ * and extractors.
+ * <p>
+ * Entries are weighed by the length of their pattern, plus a fixed overhead per entry. Patterns built from message
+ * contents are compiled once and then reused like constant ones, as long as they are used frequently enough to stay
+ * in the cache.
+ */
+@Singleton
+public class CompiledPatternCache {
+    public static final int DEFAULT_MAX_WEIGHT = 1_000_000;
+
+    private static final String REGEX_NAMESPACE = "regex";
+    private static final int ENTRY_WEIGHT = 64;
+
+    private record Key(String namespace, String source) {
+    }
+
+    /**
+     * Implemented by compiled values whose size isn't reflected by their source, e.g. grok patterns which expand
+     * to much larger regular expressions.
+     */
+    public interface Weighted {
+        /**
+         * @return the length of the pattern which was actually compiled
+         */
+        int patternLength();
+    }
+
+    private final Cache<Key, Object> cache;
+
+    @Inject
+    public CompiledPatternCache(@Named("compiled_pattern_cache_size") int maxWeight, MetricRegistry metricRegistry) {
+        final MetricStatsCounter statsCounter = new MetricStatsCounter(metricRegistry);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(maxWeight)
+                .weigher((Key key, Object value) -> ENTRY_WEIGHT
+                        + (value instanceof Weighted weighted ? weighted.patternLength() : key.source().length()))
+                // patterns which aren't used anymore shouldn't hang on to memory forever
+                .expireAfterAccess(10, TimeUnit.MINUTES)
+                .recordStats(() -> statsCounter)
+                .build();
+
+        MetricUtils.safelyRegister(metricRegistry, name(CompiledPatternCache.class, "entries"),
+                (Gauge<Long>) cache::estimatedSize);
+        MetricUtils.safelyRegister(metricRegistry, name(CompiledPatternCache.class, "weight"),
+                (Gauge<Long>) () -> cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
+    }
+
+    /**
+     * Creates a cache with the default size which isn't reporting to a shared metric registry, for code which doesn't
+     * get the server-wide instance injected.
+     */
+    public static CompiledPatternCache create() {
+        return new CompiledPatternCache(DEFAULT_MAX_WEIGHT, new MetricRegistry());
+    }
+
+    /**
+     * Returns the compiled form of the given regular expression.
+     *
+     * @param regex the regular expression in Java syntax
+     * @return the compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid
+     */
+    public Pattern regex(String regex) {
+        return regex(regex, 0);
+    }
+
+    /**
+     * Returns the compiled form of the given regular expression.
+     *
+     * @param regex the regular expression in Java syntax
+     * @param flags the match flags, see {@link Pattern#compile(String, int)}
+     * @return the compiled pattern
+     * @throws java.util.regex.PatternSyntaxException if the expression is invalid
+     */
+    public Pattern regex(String regex, int flags) {
+        return get(flags == 0 ? REGEX_NAMESPACE : REGEX_NAMESPACE + "/" + flags, regex, source -> Pattern.compile(source, flags));
+    }
+
+    /**
+     * Returns the compiled form of the given source, compiling it if it isn't cached yet.
+     * <p>
+     * Exceptions thrown by the compiler are passed on to the caller and nothing is cached.
+     *
+     * @param namespace separates the entries of different compilers, which could be given the same source
+     * @param source    the source to compile
+     * @param compiler  compiles the source, called at most once per cache miss
+     * @return the compiled form of the source
+     */
+    public <V> V get(String namespace, String source, Function<String, V> compiler) {
+        //noinspection unchecked
+        return (V) cache.get(new Key(namespace, source), key -> compiler.apply(key.source()));
+    }
+
+    /**
+     * Removes all entries of the given namespace, e.g. because the compiled forms depend on external state which
+     * has changed.
+     *
+     * @param namespace the namespace to remove the entries for
+     */
+    public void invalidate(String namespace) {
+        cache.asMap().keySet().removeIf(key -> key.namespace().equals(namespace));
+    }
+
+    private static class MetricStatsCounter implements StatsCounter {
+        private final Meter hits;
+        private final Meter misses;
+        private final Meter loadFailures;
+        private final Timer loadTime;
+        private final Meter evictions;
+
+        MetricStatsCounter(MetricRegistry metricRegistry) {
+            this.hits = metricRegistry.meter(name(CompiledPatternCache.class, "hits"));
+            this.misses = metricRegistry.meter(name(CompiledPatternCache.class, "misses"));
+            this.loadFailures = metricRegistry.meter(name(CompiledPatternCache.class, "compile-failures"));
+            this.loadTime = metricRegistry.timer(name(CompiledPatternCache.class, "compile-time"));
+            this.evictions = metricRegistry.meter(name(CompiledPatternCache.class, "evictions"));
+        }
+
+        @Override
+        public void recordHits(int count) {
+            hits.mark(count);
+        }
+
+        @Override
+        public void recordMisses(int count) {
+            misses.mark(count);
+        }
+
+        @Override
+        public void recordLoadSuccess(long loadTime) {
+            this.loadTime.update(loadTime, TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public void recordLoadFailure(long loadTime) {
+            loadFailures.mark();
+        }
+
+        @Override
+        public void recordEviction(int weight, RemovalCause cause) {
+            evictions.mark();
+        }
+
+        @Override
+        public @Nonnull CacheStats snapshot() {
+            return CacheStats.of(hits.getCount(), misses.getCount(), loadTime.getCount(), loadFailures.getCount(),
+                    0, evictions.getCount(), 0);
+        }
+    }
+}
@@ -33,6 +33,7 @@ import org.graylog.plugins.views.search.db.SearchJobService;
 import org.graylog.plugins.views.search.elasticsearch.QueryStringDecorators;
 import org.graylog.plugins.views.search.engine.PositionTrackingQuery;
 import org.graylog.plugins.views.search.engine.QueryEngine;
+import org.graylog.plugins.views.search.engine.QueryExecutionPriority;
 import org.graylog.plugins.views.search.engine.normalization.SearchNormalization;
 import org.graylog.plugins.views.search.rest.PermittedStreams;
 import org.graylog.plugins.views.search.searchfilters.model.InlineQueryStringSearchFilter;
@@ -524,11 +525,11 @@ public class PivotAggregationSearchTest {
         job.addQueryResultFuture(TEST_USER, CompletableFuture.completedFuture(queryResult));
         job.seal();
         when(searchJobService.create(any(), eq(TEST_USER), eq(0))).thenReturn(job);
-        when(queryEngine.execute(any(), anySet(), any())).thenReturn(job).thenReturn(job);
+        when(queryEngine.execute(any(), anySet(), any(), any())).thenReturn(job).thenReturn(job);
         pivotAggregationSearch.getSearchJob(parameters,
                 new AggregationSearch.User(TEST_USER, DateTimeZone.UTC), WINDOW_LENGTH, WINDOW_LENGTH);
         Mockito.verify(searchNormalization, times(1)).postValidation(isA(Query.class), any());
-        Mockito.verify(queryEngine, times(1)).execute(isA(SearchJob.class), argThat(Set::isEmpty), eq(DateTimeZone.UTC));
+        Mockito.verify(queryEngine, times(1)).execute(isA(SearchJob.class), argThat(Set::isEmpty), eq(DateTimeZone.UTC), eq(QueryExecutionPriority.BACKGROUND));
     }
 
     private static AggregationEventProcessorParameters buildParameters(AbsoluteRange timerange) {
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.netflow.codecs;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.io.Resources;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.graylog.plugins.netflow.v9.NetFlowV9Journal;
+import org.graylog2.events.ClusterEventBus;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.graylog.plugins.netflow.codecs.FlowTemplateRegistry.Protocol.IPFIX;
+import static org.graylog.plugins.netflow.codecs.FlowTemplateRegistry.Protocol.NETFLOW_V9;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class FlowTemplateRegistryTest {
+    private static final InetSocketAddress EXPORTER = new InetSocketAddress("10.0.0.1", 2055);
+
+    private final ClusterEventBus clusterEventBus = mock(ClusterEventBus.class);
+    private final FlowTemplateRegistry registry = new FlowTemplateRegistry(clusterEventBus, new EventBus());
+
+    @Test
+    void publishesNewAndChangedTemplates() {
+        registry.register(NETFLOW_V9, EXPORTER, 1L, 256, new byte[]{1, 2}, false);
+        registry.register(NETFLOW_V9, EXPORTER, 1L, 256, new byte[]{1, 2}, false);
+        assertThat(registry.version()).isEqualTo(1L);
+
+        registry.register(NETFLOW_V9, EXPORTER, 1L, 256, new byte[]{1, 3}, false);
+
+        final ArgumentCaptor<FlowTemplateLearnedEvent> captor = ArgumentCaptor.forClass(FlowTemplateLearnedEvent.class);
+        verify(clusterEventBus, times(2)).post(captor.capture());
+        assertThat(captor.getAllValues().get(1)).isEqualTo(FlowTemplateLearnedEvent.create(NETFLOW_V9, "10.0.0.1:2055",
+                1L, 256, false, "AQM="));
+        assertThat(registry.version()).isEqualTo(2L);
+        assertThat(registry.get(NETFLOW_V9, EXPORTER, 1L, 256).getBytes()).containsExactly(1, 3);
+    }
+
+    @Test
+    void separatesExportersAndProtocols() {
+        registry.register(NETFLOW_V9, EXPORTER, 1L, 256, new byte[]{1}, false);
+        registry.register(NETFLOW_V9, EXPORTER, 1L, 257, new byte[]{2}, true);
+        registry.register(NETFLOW_V9, EXPORTER, 2L, 258, new byte[]{3}, false);
+        registry.register(IPFIX, EXPORTER, 1L, 259, new byte[]{4}, false);
+        registry.register(NETFLOW_V9, new InetSocketAddress("10.0.0.2", 2055), 1L, 260, new byte[]{5}, false);
+
+        assertThat(registry.templateIds(NETFLOW_V9, EXPORTER, 1L)).containsExactlyInAnyOrder(256, 257);
+        assertThat(registry.templateIds(IPFIX, EXPORTER, 1L)).containsExactly(259);
+        assertThat(registry.get(NETFLOW_V9, EXPORTER, 1L, 257).isOptionTemplate()).isTrue();
+        assertThat(registry.get(IPFIX, EXPORTER, 1L, 256)).isNull();
+    }
+
+    @Test
+    void addsTemplatesLearnedByOtherNodes() {
+        final FlowTemplateLearnedEvent event = FlowTemplateLearnedEvent.create(IPFIX, "10.0.0.1:2055", 1L, 256, false, "AQI=");
+
+        registry.handleTemplateLearned(event);
+        registry.handleTemplateLearned(event);
+
+        assertThat(registry.version()).isEqualTo(1L);
+        assertThat(registry.get(IPFIX, EXPORTER, 1L, 256).getBytes()).containsExactly(1, 2);
+        verify(clusterEventBus, never()).post(any());
+    }
+
+    @Test
+    void releasesBufferedPacketsOnceAnotherNodeLearnedTheTemplate() throws IOException {
+        final FlowTemplateRegistry otherRegistry = new FlowTemplateRegistry(clusterEventBus, new EventBus());
+        final NetflowV9CodecAggregator aggregator = new NetflowV9CodecAggregator(registry);
+        final NetflowV9CodecAggregator otherAggregator = new NetflowV9CodecAggregator(otherRegistry);
+
+        // this node only receives data flows, the other node receives the templates
+        final CodecAggregator.Result buffered = aggregator.addChunk(packet("netflow-v9-2-2.dat"), EXPORTER);
+        assertThat(buffered.isValid()).isTrue();
+        assertThat(buffered.getMessage()).isNull();
+
+        otherAggregator.addChunk(packet("netflow-v9-2-1.dat"), EXPORTER);
+        final ArgumentCaptor<FlowTemplateLearnedEvent> captor = ArgumentCaptor.forClass(FlowTemplateLearnedEvent.class);
+        verify(clusterEventBus, times(3)).post(captor.capture());
+        captor.getAllValues().forEach(registry::handleTemplateLearned);
+
+        final CodecAggregator.Result result = aggregator.addChunk(packet("netflow-v9-2-3.dat"), EXPORTER);
+        final ByteBuf message = result.getMessage();
+        assertThat(message).isNotNull();
+        assertThat(message.readByte()).isEqualTo(NetFlowCodec.ORDERED_V9_MARKER);
+        final NetFlowV9Journal.RawNetflowV9 rawNetflowV9 = NetFlowV9Journal.RawNetflowV9.parseFrom(ByteBufUtil.getBytes(message));
+        assertThat(rawNetflowV9.getTemplatesMap()).containsOnlyKeys(257);
+        assertThat(rawNetflowV9.getPacketsList()).hasSize(2);
+    }
+
+    private static ByteBuf packet(String name) throws IOException {
+        final byte[] bytes = Resources.toByteArray(Resources.getResource("netflow-data/" + name));
+        return Unpooled.wrappedBuffer(Arrays.copyOf(bytes, bytes.length));
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.ast;
+
+import org.graylog.plugins.pipelineprocessor.BaseParserTest;
+import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
+import org.graylog.plugins.pipelineprocessor.functions.messages.HasField;
+import org.graylog.plugins.pipelineprocessor.parser.FunctionRegistry;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.Tools;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StageRuleIndexTest extends BaseParserTest {
+    private final MessageFactory messageFactory = new TestMessageFactory();
+
+    @BeforeAll
+    static void registerFunctions() {
+        final Map<String, Function<?>> functions = commonFunctions();
+        functions.put(HasField.NAME, new HasField());
+        functions.put(StringConversion.NAME, new StringConversion());
+        functionRegistry = new FunctionRegistry(functions);
+    }
+
+    @Test
+    void extractsPreconditionsFromConjunctions() {
+        final RulePreconditions preconditions = RulePreconditions.of(rule(
+                "has_field(\"a\") && (to_string($message.b) == \"x\" && \"y\" == $message.c) && true"));
+
+        assertThat(preconditions.requiredFields()).containsExactly("a");
+        assertThat(preconditions.requiredValues()).containsOnly(
+                Map.entry("b", new RulePreconditions.FieldValue("x", true)),
+                Map.entry("c", new RulePreconditions.FieldValue("y", false)));
+    }
+
+    @Test
+    void ignoresConditionsWhichCannotBeIndexed() {
+        assertThat(RulePreconditions.of(rule("has_field(\"a\") || has_field(\"b\")")).isEmpty()).isTrue();
+        assertThat(RulePreconditions.of(rule("!has_field(\"a\")")).isEmpty()).isTrue();
+        assertThat(RulePreconditions.of(rule("$message.a != \"x\"")).isEmpty()).isTrue();
+        assertThat(RulePreconditions.of(rule("to_string($message.a, \"x\") == \"x\"")).isEmpty()).isTrue();
+        assertThat(RulePreconditions.of(rule("has_field(\"a\", $message)")).isEmpty()).isTrue();
+    }
+
+    @Test
+    void noIndexWithoutPreconditions() {
+        assertThat(StageRuleIndex.create(List.of(rule("true"), rule("$message.a != \"x\"")))).isNull();
+    }
+
+    @Test
+    void skipsRulesWithMissingFields() {
+        final StageRuleIndex index = StageRuleIndex.create(List.of(
+                rule("has_field(\"a\")"),
+                rule("true"),
+                rule("has_field(\"a\") && has_field(\"b\")")));
+
+        assertThat(index.isIndexed(0)).isTrue();
+        assertThat(index.isIndexed(1)).isFalse();
+        assertThat(index.rulesToSkip(message(Map.of("a", "1", "b", "2")))).isNull();
+        assertThat(index.rulesToSkip(message(Map.of("a", "1")))).isEqualTo(bits(2));
+        assertThat(index.rulesToSkip(message(Map.of()))).isEqualTo(bits(0, 2));
+    }
+
+    @Test
+    void skipsRulesWithDifferentValues() {
+        final StageRuleIndex index = StageRuleIndex.create(List.of(
+                rule("$message.a == \"x\""),
+                rule("to_string($message.a) == \"y\""),
+                rule("to_string($message.a) == \"\""),
+                rule("$message.a == \"y\" && has_field(\"b\")")));
+
+        assertThat(index.rulesToSkip(message(Map.of("a", "x")))).isEqualTo(bits(1, 2, 3));
+        assertThat(index.rulesToSkip(message(Map.of("a", "y")))).isEqualTo(bits(0, 2, 3));
+        assertThat(index.rulesToSkip(message(Map.of("a", "y", "b", "z")))).isEqualTo(bits(0, 2));
+        // to_string() turns a missing field into the empty string
+        assertThat(index.rulesToSkip(message(Map.of()))).isEqualTo(bits(0, 1, 3));
+        // other types are left to the rules
+        assertThat(index.rulesToSkip(message(Map.of("a", 42L, "b", "z")))).isNull();
+    }
+
+    private Rule rule(String condition) {
+        return parser.parseRule(null, "rule \"test\" when " + condition + " then end", false);
+    }
+
+    private Message message(Map<String, Object> fields) {
+        final Message message = messageFactory.createMessage("message", "source", Tools.nowUTC());
+        message.addFields(fields);
+        return message;
+    }
+
+    private static BitSet bits(int... positions) {
+        final BitSet bits = new BitSet();
+        for (int position : positions) {
+            bits.set(position);
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.codegen;
+
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog.plugins.pipelineprocessor.BaseParserTest;
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.Rule;
+import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
+import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.LongConversion;
+import org.graylog.plugins.pipelineprocessor.functions.conversion.StringConversion;
+import org.graylog.plugins.pipelineprocessor.functions.messages.HasField;
+import org.graylog.plugins.pipelineprocessor.functions.messages.SetField;
+import org.graylog.plugins.pipelineprocessor.functions.strings.Concat;
+import org.graylog.plugins.pipelineprocessor.functions.strings.Uppercase;
+import org.graylog.plugins.pipelineprocessor.parser.FunctionRegistry;
+import org.graylog.plugins.pipelineprocessor.processors.ConfigurationStateUpdater;
+import org.graylog.plugins.pipelineprocessor.simulator.RuleSimulator;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInfo;
+
+import java.util.Map;
+
+import static com.google.common.collect.ImmutableList.of;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+
+class RuleCompilerTest extends BaseParserTest {
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private RuleCompiler ruleCompiler;
+    private RuleSimulator ruleSimulator;
+
+    @BeforeAll
+    static void registerFunctions() {
+        final Map<String, Function<?>> functions = commonFunctions();
+        functions.put(HasField.NAME, new HasField());
+        functions.put(SetField.NAME, new SetField());
+        functions.put(LongConversion.NAME, new LongConversion());
+        functions.put(StringConversion.NAME, new StringConversion());
+        functions.put(Concat.NAME, new Concat());
+        functions.put(Uppercase.NAME, new Uppercase());
+        functions.put("fail", new AbstractFunction<Boolean>() {
+            @Override
+            public Boolean evaluate(FunctionArgs args, EvaluationContext context) {
+                throw new IllegalStateException("failing on purpose");
+            }
+
+            @Override
+            public FunctionDescriptor<Boolean> descriptor() {
+                return FunctionDescriptor.<Boolean>builder().name("fail").returnType(Boolean.class).params(of()).build();
+            }
+        });
+        functionRegistry = new FunctionRegistry(functions);
+    }
+
+    @BeforeEach
+    void setUp(TestInfo testInfo) {
+        setup(testInfo);
+        ruleCompiler = new RuleCompiler(true, metricRegistry);
+        ruleSimulator = new RuleSimulator(mock(ConfigurationStateUpdater.class), new ObjectMapper(), messageFactory, ruleCompiler);
+    }
+
+    @Test
+    void compilesConditionsAndActions() {
+        final Message message = assertSameResult("""
+                rule "conditions"
+                when
+                    has_field("source") && $message.source == "example.org" && !has_field("missing")
+                    && (to_long($message.count) > 5 || to_long($message.count) <= 1) && to_long($message.count) >= 7
+                then
+                    let upper = uppercase(to_string($message.source));
+                    set_field("upper", upper);
+                    set_field("combined", concat(upper, to_string($message.count)));
+                    set_field("next", to_long($message.count) + 1);
+                end
+                """);
+
+        assertThat(message.getField("upper")).isEqualTo("EXAMPLE.ORG");
+        assertThat(message.getField("combined")).isEqualTo("EXAMPLE.ORG7");
+        assertThat(message.getField("next")).isEqualTo(8L);
+    }
+
+    @Test
+    void compilesNonMatchingConditions() {
+        final Message message = assertSameResult("""
+                rule "not matching"
+                when
+                    $message.source != "example.org" || has_field("missing")
+                then
+                    set_field("matched", true);
+                end
+                """);
+
+        assertThat(message.hasField("matched")).isFalse();
+    }
+
+    @Test
+    void stopsAtFailingAction() {
+        final Message message = assertSameResult("""
+                rule "failing action"
+                when
+                    true
+                then
+                    set_field("before", true);
+                    fail();
+                    set_field("after", true);
+                end
+                """);
+
+        assertThat(message.hasField("before")).isTrue();
+        assertThat(message.hasField("after")).isFalse();
+        assertThat(message.processingErrors()).hasSize(1);
+    }
+
+    @Test
+    void propagatesConditionErrors() {
+        final Rule rule = parse("""
+                rule "failing condition"
+                when
+                    has_field("source") && fail()
+                then
+                    set_field("matched", true);
+                end
+                """);
+        final Rule compiled = ruleCompiler.compile(rule);
+
+        final Throwable interpreted = catchThrowable(() -> rule.when().evaluateBool(new EvaluationContext(message())));
+        final Throwable generated = catchThrowable(() -> compiled.generatedRule().when(new EvaluationContext(message())));
+
+        assertThat(generated).isNotNull().hasSameClassAs(interpreted).hasMessage(interpreted.getMessage());
+    }
+
+    @Test
+    void interpretsExpressionsWhichAreNotCompiled() {
+        assertSameResult("""
+                rule "arithmetic"
+                when
+                    to_long($message.count) * 2 > 10
+                then
+                    set_field("doubled", to_long($message.count) * 2);
+                end
+                """);
+
+        assertThat(metricRegistry.counter(MetricRegistry.name(RuleCompiler.class, "interpreted-expressions")).getCount())
+                .isPositive();
+    }
+
+    @Test
+    void keepsRuleWhenDisabled() {
+        final Rule rule = parse("rule \"disabled\" when true then end");
+
+        assertThat(new RuleCompiler(false, metricRegistry).maybeCompile(rule)).isSameAs(rule);
+        assertThat(ruleCompiler.maybeCompile(rule).generatedRule()).isNotNull();
+        assertThat(ruleCompiler.maybeCompile(rule).copy().generatedRule()).isNotNull();
+    }
+
+    /**
+     * Simulates the rule once interpreted and once compiled and verifies that both produce the same message.
+     */
+    private Message assertSameResult(String source) {
+        final Rule rule = parse(source);
+        assertThat(ruleCompiler.compile(rule).generatedRule()).isNotNull();
+
+        final Message interpreted = ruleSimulator.simulate(rule, message(), false);
+        final Message compiled = ruleSimulator.simulate(rule, message(), true);
+
+        assertThat(compiled.getFields()).isEqualTo(interpreted.getFields());
+        // the simulator runs each rule in a pipeline with a random ID, which is part of the error message
+        assertThat(compiled.processingErrors())
+                .extracting(Message.ProcessingError::getCause, Message.ProcessingError::getDetails)
+                .isEqualTo(interpreted.processingErrors().stream()
+                        .map(error -> tuple(error.getCause(), error.getDetails()))
+                        .toList());
+        return compiled;
+    }
+
+    private Rule parse(String source) {
+        // without an ID the rule doesn't need registered metrics
+        return parser.parseRule(null, source, false);
+    }
+
+    private Message message() {
+        return messageFactory.createMessage(Map.of(
+                "_id", "d0c8f3a0-0000-11ef-8000-000000000000",
+                "message", "hello",
+                "source", "example.org",
+                "timestamp", "2024-04-20T12:00:00.000Z",
+                "count", 7L));
+    }
+}
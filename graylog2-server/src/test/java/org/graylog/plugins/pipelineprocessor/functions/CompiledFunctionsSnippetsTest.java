@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.functions;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Maps;
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
+import org.graylog.plugins.pipelineprocessor.ast.Rule;
+import org.graylog.plugins.pipelineprocessor.ast.statements.Statement;
+import org.graylog.plugins.pipelineprocessor.codegen.GeneratedRule;
+import org.graylog.plugins.pipelineprocessor.codegen.RuleCompiler;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+
+import javax.annotation.Nullable;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.clearInvocations;
+
+/**
+ * Runs the rules of {@link FunctionsSnippetsTest} as compiled rules.
+ * <p>
+ * Every rule is evaluated twice: interpreted on a copy of the message, then compiled on the message itself. Both
+ * runs have to result in the same fields, streams and evaluation errors. The assertions of the snippet tests are then
+ * applied to the result of the compiled run. Like the pipeline interpreter, both runs skip the remaining actions of a
+ * rule once an action raised an error.
+ */
+class CompiledFunctionsSnippetsTest extends FunctionsSnippetsTest {
+    private final RuleCompiler ruleCompiler = new RuleCompiler(true, new MetricRegistry());
+    private final MessageFactory messageFactory = new TestMessageFactory();
+
+    /**
+     * The rule raises an error in its second to last action. {@link FunctionsSnippetsTest#urls()} runs the remaining
+     * actions anyway, but rules stop at the first failing action in the pipeline, so the last action isn't run.
+     */
+    @Test
+    @Override
+    void urls() {
+        final Rule rule = parser.parseRule(ruleForTest(), false);
+        final Message message = evaluateRule(rule);
+
+        assertThat(actionsTriggered.get()).isFalse();
+        assertThat(message).isNotNull();
+        assertThat(message.getField("protocol")).isEqualTo("https");
+        assertThat(message.getField("equal")).isEqualTo("can=containanotherone");
+        assertThat(message.hasField("default_specified")).isTrue();
+        assertThat(message.hasField("invalid_default_specified")).isFalse();
+    }
+
+    @Override
+    protected EvaluationContext contextForRuleEval(Rule rule, Message message) {
+        return evaluateBoth(rule, message).context();
+    }
+
+    @Nullable
+    @Override
+    protected Message evaluateRule(Rule rule, Message message) {
+        final Result result = evaluateBoth(rule, message);
+        return result.matched() ? result.context().currentMessage() : null;
+    }
+
+    private Result evaluateBoth(Rule rule, Message message) {
+        final Rule compiledRule = ruleCompiler.compile(rule);
+        assertThat(compiledRule.generatedRule()).as("generated rule of <%s>", rule.name()).isNotNull();
+
+        final Message interpretedMessage = copy(message);
+        // a timestamp which isn't a date is replaced by the current time, which differs between both runs
+        final boolean validTimestamp = message.getField(Message.FIELD_TIMESTAMP) instanceof DateTime;
+        resetSideEffects();
+        final Result interpreted = interpret(rule, interpretedMessage);
+        resetSideEffects();
+        final Result compiled = execute(compiledRule.generatedRule(), message);
+
+        assertThat(compiled.matched()).as("condition of <%s>", rule.name()).isEqualTo(interpreted.matched());
+        // some field values, e.g. URLs, don't implement equals()
+        assertThat(comparableFields(message, validTimestamp))
+                .as("fields of <%s>", rule.name())
+                .usingRecursiveComparison()
+                .isEqualTo(comparableFields(interpretedMessage, validTimestamp));
+        assertThat(message.getStreams()).as("streams of <%s>", rule.name()).isEqualTo(interpretedMessage.getStreams());
+        assertThat(compiled.context().evaluationErrors())
+                .as("errors of <%s>", rule.name())
+                .extracting(EvaluationContext.EvalError::toString)
+                .isEqualTo(interpreted.context().evaluationErrors().stream().map(EvaluationContext.EvalError::toString).toList());
+        assertThat(Iterables.size(compiled.context().createdMessages()))
+                .as("created messages of <%s>", rule.name())
+                .isEqualTo(Iterables.size(interpreted.context().createdMessages()));
+        return compiled;
+    }
+
+    /**
+     * The snippet tests verify the calls of the rule functions to the mocks and the metrics they update.
+     */
+    private static void resetSideEffects() {
+        clearInvocations(lookupTable, loggerMock);
+        // the counters are looked up when the rule is parsed, so they are reset instead of removed
+        metricRegistry.getCounters().values().forEach(counter -> counter.dec(counter.getCount()));
+    }
+
+    private static Result interpret(Rule rule, Message message) {
+        final EvaluationContext context = new EvaluationContext(message);
+        if (!rule.when().evaluateBool(context)) {
+            return new Result(context, false);
+        }
+        for (Statement statement : rule.then()) {
+            statement.evaluate(context);
+            if (context.hasEvaluationErrors()) {
+                break;
+            }
+        }
+        return new Result(context, true);
+    }
+
+    private static Result execute(GeneratedRule generatedRule, Message message) {
+        final EvaluationContext context = new EvaluationContext(message);
+        if (!generatedRule.when(context)) {
+            return new Result(context, false);
+        }
+        generatedRule.then(context);
+        return new Result(context, true);
+    }
+
+    private Message copy(Message message) {
+        final Message copy = messageFactory.createMessage(message.getId(), new HashMap<>(message.getFields()));
+        copy.addStreams(message.getStreams());
+        return copy;
+    }
+
+    /**
+     * Empty strings are only kept for the required fields a message has been created with, adding them as regular
+     * fields to a copy of the message drops them. The timestamp is left out if it is set to the current time.
+     */
+    private static Map<String, Object> comparableFields(Message message, boolean withTimestamp) {
+        return Maps.filterEntries(message.getFields(), field -> !"".equals(field.getValue())
+                && (withTimestamp || !Message.FIELD_TIMESTAMP.equals(field.getKey())));
+    }
+
+    private record Result(EvaluationContext context, boolean matched) {
+    }
+}
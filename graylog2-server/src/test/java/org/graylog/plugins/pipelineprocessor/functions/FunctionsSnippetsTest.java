@@ -171,6 +171,7 @@ import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.SuppressForbidden;
 import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
 import org.graylog2.streams.StreamService;
+import org.graylog2.utilities.CompiledPatternCache;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
@@ -193,7 +194,6 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.Executors;
 import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -217,13 +217,13 @@ public class FunctionsSnippetsTest extends BaseParserTest {
     private static final EventBus eventBus = new EventBus();
     private static StreamCacheService streamCacheService;
     private static Stream otherStream;
-    private static MetricRegistry metricRegistry = new MetricRegistry();
+    protected static MetricRegistry metricRegistry = new MetricRegistry();
 
     private static LookupTableService lookupTableService;
     private static LookupTableService.Function lookupServiceFunction;
-    private static LookupTable lookupTable;
+    protected static LookupTable lookupTable;
 
-    private static Logger loggerMock;
+    protected static Logger loggerMock;
     private static MessageFactory messageFactory = new TestMessageFactory();
 
     @BeforeAll
@@ -397,7 +397,8 @@ public class FunctionsSnippetsTest extends BaseParserTest {
         final EventBus clusterBus = new EventBus();
         final GrokPatternRegistry grokPatternRegistry = new GrokPatternRegistry(clusterBus,
                 grokPatternService,
-                Executors.newScheduledThreadPool(1));
+                CompiledPatternCache.create(),
+                false);
         functions.put(GrokMatch.NAME, new GrokMatch(grokPatternRegistry));
         functions.put(MultiGrokMatch.NAME, new MultiGrokMatch(grokPatternRegistry));
         functions.put(GrokExists.NAME, new GrokExists(grokPatternRegistry));
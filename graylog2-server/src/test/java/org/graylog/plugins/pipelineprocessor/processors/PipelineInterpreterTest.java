@@ -23,9 +23,15 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.eventbus.EventBus;
 import org.graylog.failure.ProcessingFailureCause;
+import org.graylog.plugins.pipelineprocessor.EvaluationContext;
 import org.graylog.plugins.pipelineprocessor.ast.Pipeline;
 import org.graylog.plugins.pipelineprocessor.ast.Rule;
+import org.graylog.plugins.pipelineprocessor.ast.functions.AbstractFunction;
 import org.graylog.plugins.pipelineprocessor.ast.functions.Function;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionArgs;
+import org.graylog.plugins.pipelineprocessor.ast.functions.FunctionDescriptor;
+import org.graylog.plugins.pipelineprocessor.ast.functions.ParameterDescriptor;
+import org.graylog.plugins.pipelineprocessor.ast.functions.PrefetchingFunction;
 import org.graylog.plugins.pipelineprocessor.db.PipelineDao;
 import org.graylog.plugins.pipelineprocessor.db.PipelineService;
 import org.graylog.plugins.pipelineprocessor.db.PipelineStreamConnectionsService;
@@ -61,6 +67,7 @@ import org.graylog2.shared.messageq.MessageQueueAcknowledger;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -151,6 +158,80 @@ public class PipelineInterpreterTest {
         assertEquals(2, messages.length);
     }
 
+    @Test
+    public void testProcessesBatchOfMessagesOnSameStreams() {
+        final RuleService ruleService = mock(MongoDbRuleService.class);
+        when(ruleService.loadAll()).thenReturn(ImmutableList.of(RULE_ADD_FOOBAR));
+
+        final PipelineService pipelineService = mock(MongoDbPipelineService.class);
+        when(pipelineService.loadAll()).thenReturn(Collections.singleton(
+                PipelineDao.create("p1", null, "title", "description",
+                        "pipeline \"pipeline\"\n" +
+                                "stage 0 match either\n" +
+                                "    rule \"add_foobar\";\n" +
+                                "end\n",
+                        Tools.nowUTC(),
+                        null)
+        ));
+
+        final Map<String, Function<?>> functions = ImmutableMap.of(SetField.NAME, new SetField());
+        final PipelineInterpreter interpreter = createPipelineInterpreter(ruleService, pipelineService, functions);
+
+        final Message withoutStreams = messageFactory.createMessage("message", "test", Tools.nowUTC());
+        final Messages processed = interpreter.process(new MessageCollection(ImmutableList.of(
+                messageInDefaultStream("message 1", "test"),
+                withoutStreams,
+                messageInDefaultStream("message 2", "test"),
+                messageInDefaultStream("message 3", "test"))));
+
+        final List<Message> messages = ImmutableList.copyOf(processed);
+        assertThat(messages).hasSize(4);
+        assertThat(messages.get(0).getField("foobar")).isEqualTo("covfefe");
+        assertThat(messages.get(1).getField("foobar")).isNull();
+        assertThat(messages.get(2).getField("foobar")).isEqualTo("covfefe");
+        assertThat(messages.get(3).getField("foobar")).isEqualTo("covfefe");
+    }
+
+    @Test
+    public void testPrefetchesMessageDependentCallsOncePerBatch() {
+        final RuleService ruleService = mock(MongoDbRuleService.class);
+        when(ruleService.loadAll()).thenReturn(ImmutableList.of(RuleDao.create("prefetch", "prefetch", "prefetch",
+                "rule \"prefetch\"\n" +
+                        "when true\n" +
+                        "then\n" +
+                        "  set_field(\"prefetched\", prefetching(to_string($message.source)));\n" +
+                        "  let source = to_string($message.source);\n" +
+                        "  set_field(\"evaluated\", prefetching(source));\n" +
+                        "end", null, null, null, null)));
+
+        final PipelineService pipelineService = mock(MongoDbPipelineService.class);
+        when(pipelineService.loadAll()).thenReturn(Collections.singleton(
+                PipelineDao.create("p1", null, "title", "description",
+                        "pipeline \"pipeline\"\n" +
+                                "stage 0 match either\n" +
+                                "    rule \"prefetch\";\n" +
+                                "end\n",
+                        Tools.nowUTC(),
+                        null)
+        ));
+
+        final RecordingPrefetchFunction prefetching = new RecordingPrefetchFunction();
+        final PipelineInterpreter interpreter = createPipelineInterpreter(ruleService, pipelineService, ImmutableMap.of(
+                SetField.NAME, new SetField(),
+                StringConversion.NAME, new StringConversion(),
+                RecordingPrefetchFunction.NAME, prefetching));
+
+        final List<Message> messages = ImmutableList.copyOf(interpreter.process(new MessageCollection(ImmutableList.of(
+                messageInDefaultStream("message 1", "source-1"),
+                messageInDefaultStream("message 2", "source-2"),
+                messageInDefaultStream("message 3", "source-1")))));
+
+        // Only the call with a message field argument is prefetched, the one using a rule variable is not
+        assertThat(prefetching.prefetched).containsExactly(List.of("source-1", "source-2", "source-1"));
+        assertThat(messages).extracting(message -> message.getField("prefetched")).containsExactly("source-1", "source-2", "source-1");
+        assertThat(messages).extracting(message -> message.getField("evaluated")).containsExactly("source-1", "source-2", "source-1");
+    }
+
     @Test
     public void testMatchAllContinuesIfAllRulesMatched() {
         final RuleService ruleService = mock(MongoDbRuleService.class);
@@ -525,6 +606,78 @@ public class PipelineInterpreterTest {
 
     }
 
+    @Test
+    @SuppressForbidden("Allow using default thread factory")
+    public void testSkippedRuleMetrics() {
+        final RuleMetricsConfigService ruleMetricsConfigService = mock(RuleMetricsConfigService.class);
+        when(ruleMetricsConfigService.get()).thenReturn(RuleMetricsConfigDto.createDefault());
+        final ClusterEventBus clusterEventBus = new ClusterEventBus("cluster-event-bus", Executors.newSingleThreadExecutor());
+        final RuleService ruleService = new InMemoryRuleService(clusterEventBus);
+        ruleService.save(RuleDao.create("abc",
+                "title",
+                "description",
+                "rule \"has_foo\"\n" +
+                        "when has_field(\"foo\")\n" +
+                        "then\n" +
+                        "  set_field(\"bar\", \"baz\");\n" +
+                        "end",
+                Tools.nowUTC(),
+                null, null, null)
+        );
+
+        final PipelineService pipelineService = new InMemoryPipelineService(new ClusterEventBus());
+        pipelineService.save(PipelineDao.create("cde", null, "title", "description",
+                "pipeline \"pipeline\"\n" +
+                        "stage 0 match either\n" +
+                        "    rule \"has_foo\";\n" +
+                        "end\n",
+                Tools.nowUTC(),
+                null)
+        );
+
+        final PipelineStreamConnectionsService pipelineStreamConnectionsService = new InMemoryPipelineStreamConnectionsService(clusterEventBus);
+        pipelineStreamConnectionsService.save(PipelineConnections.create(null,
+                DEFAULT_STREAM_ID,
+                Collections.singleton("cde")));
+
+        final FunctionRegistry functionRegistry = new FunctionRegistry(ImmutableMap.of(
+                HasField.NAME, new HasField(),
+                SetField.NAME, new SetField()));
+        final PipelineRuleParser parser = new PipelineRuleParser(functionRegistry);
+
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final ConfigurationStateUpdater stateUpdater = new ConfigurationStateUpdater(ruleService,
+                pipelineService,
+                pipelineStreamConnectionsService,
+                parser,
+                (config, ruleParser) -> new PipelineResolver(ruleParser, config),
+                ruleMetricsConfigService,
+                metricRegistry,
+                Executors.newScheduledThreadPool(1),
+                mock(EventBus.class),
+                (currentPipelines, streamPipelineConnections, ruleMetricsConfig) -> new PipelineInterpreter.State(currentPipelines, streamPipelineConnections, ruleMetricsConfig, new MetricRegistry(), 1, true)
+        );
+        final PipelineInterpreter interpreter = new PipelineInterpreter(
+                mock(MessageQueueAcknowledger.class),
+                metricRegistry,
+                stateUpdater);
+
+        final Message withoutFoo = messageInDefaultStream("message", "test");
+        final Message withFoo = messageInDefaultStream("message", "test");
+        withFoo.addField("foo", "value");
+        interpreter.process(new MessageCollection(ImmutableList.of(withoutFoo, withFoo)));
+
+        assertThat(withoutFoo.hasField("bar")).isFalse();
+        assertThat(withFoo.getField("bar")).isEqualTo("baz");
+
+        final SortedMap<String, Meter> meters = metricRegistry.getMeters((name, metric) -> name.startsWith(name(Rule.class, "abc")));
+        assertThat(meters.get(name(Rule.class, "abc", "skipped")).getCount()).isEqualTo(1L);
+        assertThat(meters.get(name(Rule.class, "abc", "cde", "0", "skipped")).getCount()).isEqualTo(1L);
+        assertThat(meters.get(name(Rule.class, "abc", "not-matched")).getCount()).isEqualTo(1L);
+        assertThat(meters.get(name(Rule.class, "abc", "matched")).getCount()).isEqualTo(1L);
+        assertThat(meters.get(name(Rule.class, "abc", "executed")).getCount()).isEqualTo(1L);
+    }
+
     @Test
     public void process_ruleConditionEvaluationErrorConvertedIntoMessageProcessingError() throws Exception {
         // given
@@ -657,6 +810,32 @@ public class PipelineInterpreterTest {
                 });
     }
 
+    private static class RecordingPrefetchFunction extends AbstractFunction<String> implements PrefetchingFunction {
+        static final String NAME = "prefetching";
+
+        private final ParameterDescriptor<String, String> valueParam = ParameterDescriptor.string("value").build();
+        private final List<List<String>> prefetched = new ArrayList<>();
+
+        @Override
+        public String evaluate(FunctionArgs args, EvaluationContext context) {
+            return valueParam.required(args, context);
+        }
+
+        @Override
+        public void prefetch(FunctionArgs args, List<EvaluationContext> contexts) {
+            prefetched.add(contexts.stream().map(context -> valueParam.required(args, context)).toList());
+        }
+
+        @Override
+        public FunctionDescriptor<String> descriptor() {
+            return FunctionDescriptor.<String>builder()
+                    .name(NAME)
+                    .returnType(String.class)
+                    .params(valueParam)
+                    .build();
+        }
+    }
+
     private Message messageWithNumField(Object numValue) {
         final Message msg = messageInDefaultStream("message", "test");
         msg.addField("num", numValue);
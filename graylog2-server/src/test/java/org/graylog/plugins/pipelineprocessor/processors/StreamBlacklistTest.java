@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.pipelineprocessor.processors;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamBlacklistTest {
+    @Test
+    void assignsStableOrdinals() {
+        final StreamBlacklist blacklist = new StreamBlacklist();
+
+        assertThat(blacklist.ordinal("a")).isEqualTo(0);
+        assertThat(blacklist.ordinal("b")).isEqualTo(1);
+        assertThat(blacklist.ordinal("a")).isEqualTo(0);
+        assertThat(blacklist.streamId(1)).isEqualTo("b");
+    }
+
+    @Test
+    void tracksMessageStreamCombinations() {
+        final StreamBlacklist blacklist = new StreamBlacklist();
+        final int a = blacklist.ordinal("a");
+        final int b = blacklist.ordinal("b");
+
+        blacklist.add(0, a);
+        blacklist.add(3, b);
+
+        assertThat(blacklist.contains(0, a)).isTrue();
+        assertThat(blacklist.contains(0, b)).isFalse();
+        assertThat(blacklist.contains(3, b)).isTrue();
+        assertThat(blacklist.contains(1, a)).isFalse();
+    }
+
+    @Test
+    void keepsCombinationsWhenManyStreamsAreSeen() {
+        final StreamBlacklist blacklist = new StreamBlacklist();
+        blacklist.add(0, blacklist.ordinal("first"));
+        blacklist.add(2, blacklist.ordinal("first"));
+
+        int last = 0;
+        for (int i = 0; i < 200; i++) {
+            last = blacklist.ordinal("stream-" + i);
+        }
+        blacklist.add(1, last);
+
+        assertThat(blacklist.contains(0, 0)).isTrue();
+        assertThat(blacklist.contains(2, 0)).isTrue();
+        assertThat(blacklist.contains(1, 0)).isFalse();
+        assertThat(blacklist.contains(1, last)).isTrue();
+        assertThat(blacklist.contains(0, last)).isFalse();
+    }
+}
@@ -34,12 +34,12 @@ import org.graylog2.plugin.MessageFactory;
 import org.graylog2.plugin.TestMessageFactory;
 import org.graylog2.plugin.Tools;
 import org.graylog2.shared.SuppressForbidden;
+import org.graylog2.utilities.CompiledPatternCache;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
@@ -62,7 +62,8 @@ class V20220522125200_AddSetGrokToFieldsExtractorFragmentsTest extends BaseFragm
         final EventBus clusterBus = new EventBus();
         final GrokPatternRegistry grokPatternRegistry = new GrokPatternRegistry(clusterBus,
                 grokPatternService,
-                Executors.newScheduledThreadPool(1));
+                CompiledPatternCache.create(),
+                false);
         functions.put(GrokMatch.NAME, new GrokMatch(grokPatternRegistry));
         functions.put(SetFields.NAME, new SetFields());
         functions.put(StringConversion.NAME, new StringConversion());
@@ -62,6 +62,7 @@ import org.graylog2.plugin.MessageFactory;
 import org.graylog2.plugin.TestMessageFactory;
 import org.graylog2.plugin.Tools;
 import org.graylog2.shared.SuppressForbidden;
+import org.graylog2.utilities.CompiledPatternCache;
 import org.joda.time.Period;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
@@ -73,7 +74,6 @@ import java.net.MalformedURLException;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
 
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -125,7 +125,8 @@ class V20230724092100_AddFieldConditionsTest extends BaseFragmentTest {
         final EventBus clusterBus = new EventBus();
         final GrokPatternRegistry grokPatternRegistry = new GrokPatternRegistry(clusterBus,
                 grokPatternService,
-                Executors.newScheduledThreadPool(1));
+                CompiledPatternCache.create(),
+                false);
         functions.put(GrokMatch.NAME, new GrokMatch(grokPatternRegistry));
         functionRegistry = new FunctionRegistry(functions);
     }
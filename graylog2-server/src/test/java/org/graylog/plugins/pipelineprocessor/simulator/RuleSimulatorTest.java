@@ -16,7 +16,9 @@
  */
 package org.graylog.plugins.pipelineprocessor.simulator;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.graylog.plugins.pipelineprocessor.codegen.RuleCompiler;
 import org.graylog.plugins.pipelineprocessor.processors.ConfigurationStateUpdater;
 import org.graylog.testing.messages.MessagesExtension;
 import org.graylog2.plugin.Message;
@@ -43,7 +45,8 @@ class RuleSimulatorTest {
     @BeforeAll
     public void setUp(MessageFactory messageFactory) {
         objectMapper = new ObjectMapper();
-        ruleSimulator = new RuleSimulator(configurationStateUpdater, objectMapper, messageFactory);
+        ruleSimulator = new RuleSimulator(configurationStateUpdater, objectMapper, messageFactory,
+                new RuleCompiler(false, new MetricRegistry()));
     }
 
     @Test
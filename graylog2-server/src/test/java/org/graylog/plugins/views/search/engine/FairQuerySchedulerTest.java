@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.graylog.plugins.views.search.engine.QueryExecutionPriority.BACKGROUND;
+import static org.graylog.plugins.views.search.engine.QueryExecutionPriority.INTERACTIVE;
+
+class FairQuerySchedulerTest {
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private ThreadPoolExecutor executor;
+    private FairQueryScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        scheduler = new FairQueryScheduler(executor, 4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void interleavesOwners() throws Exception {
+        blockWorker();
+        for (int i = 1; i <= 4; i++) {
+            submit("alice", BACKGROUND, "alice-" + i);
+        }
+        final CompletableFuture<String> last = submit("bob", BACKGROUND, "bob-1");
+
+        release.countDown();
+        last.get(10, TimeUnit.SECONDS);
+        awaitIdle();
+
+        assertThat(executed).containsExactly("alice-1", "bob-1", "alice-2", "alice-3", "alice-4");
+    }
+
+    @Test
+    void prefersInteractiveQueries() throws Exception {
+        blockWorker();
+        for (int i = 1; i <= 3; i++) {
+            submit("events", BACKGROUND, "background-" + i);
+        }
+        for (int i = 1; i <= 4; i++) {
+            submit("alice", INTERACTIVE, "interactive-" + i);
+        }
+
+        release.countDown();
+        awaitIdle();
+
+        assertThat(executed).containsExactly("background-1", "interactive-1", "interactive-2", "interactive-3",
+                "interactive-4", "background-2", "background-3");
+    }
+
+    @Test
+    void cancelledQueriesAreNotExecuted() throws Exception {
+        blockWorker();
+        final CompletableFuture<String> cancelled = submit("alice", INTERACTIVE, "cancelled");
+        submit("alice", INTERACTIVE, "executed");
+        assertThat(scheduler.queued()).isEqualTo(2);
+
+        cancelled.cancel(true);
+        assertThat(scheduler.queued()).isEqualTo(1);
+
+        release.countDown();
+        awaitIdle();
+
+        assertThat(executed).containsExactly("executed");
+        assertThat(cancelled).isCancelled();
+    }
+
+    @Test
+    void wrapsExceptions() {
+        final CompletableFuture<String> future = scheduler.submit("alice", INTERACTIVE, () -> {
+            throw new IllegalStateException("boom");
+        });
+
+        assertThatThrownBy(future::join)
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    private void blockWorker() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        scheduler.submit("blocker", INTERACTIVE, () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return null;
+        });
+        assertThat(started.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private CompletableFuture<String> submit(String owner, QueryExecutionPriority priority, String name) {
+        return scheduler.submit(owner, priority, () -> {
+            executed.add(name);
+            return name;
+        });
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+    }
+}
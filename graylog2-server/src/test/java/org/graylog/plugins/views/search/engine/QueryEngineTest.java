@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog.plugins.views.search.engine;
+
+import com.google.common.collect.ImmutableSet;
+import org.graylog.plugins.views.search.Query;
+import org.graylog.plugins.views.search.QueryResult;
+import org.graylog.plugins.views.search.Search;
+import org.graylog.plugins.views.search.SearchJob;
+import org.graylog.plugins.views.search.elasticsearch.ElasticsearchQueryString;
+import org.graylog.plugins.views.search.errors.QueryError;
+import org.graylog.plugins.views.search.errors.SearchException;
+import org.graylog2.Configuration;
+import org.graylog2.storage.providers.ElasticsearchBackendProvider;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QueryEngineTest {
+    private final Query query1 = query("query1");
+    private final Query query2 = query("query2");
+
+    private QueryBackend<GeneratedQueryContext> backend;
+    private QueryEngine queryEngine;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        backend = mock(QueryBackend.class);
+        when(backend.generate(any(), any(), any())).thenAnswer(invocation -> mock(GeneratedQueryContext.class));
+        when(backend.run(any(), any(Query.class), any())).thenAnswer(invocation -> result(invocation.getArgument(1)));
+        when(backend.run(any(), anyMap())).thenAnswer(invocation -> {
+            final Map<Query, QueryResult> results = new LinkedHashMap<>();
+            invocation.<Map<Query, GeneratedQueryContext>>getArgument(1).keySet().forEach(query -> results.put(query, result(query)));
+            return results;
+        });
+        final ElasticsearchBackendProvider backendProvider = mock(ElasticsearchBackendProvider.class);
+        doReturn(backend).when(backendProvider).get();
+
+        queryEngine = new QueryEngine(new Configuration(), backendProvider, Collections.emptyMap(), Collections.emptySet(), mock(QueryParser.class));
+    }
+
+    @Test
+    void runsQueriesOfMultiQueryBackendsTogether() throws Exception {
+        when(backend.supportsMultiQueryRun()).thenReturn(true);
+
+        final SearchJob searchJob = execute();
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Map<Query, GeneratedQueryContext>> contexts = ArgumentCaptor.forClass(Map.class);
+        verify(backend).run(eq(searchJob), contexts.capture());
+        assertThat(contexts.getValue()).containsOnlyKeys(query1, query2);
+        verify(backend, never()).run(any(), any(Query.class), any());
+        assertThat(searchJob.results()).containsOnlyKeys("query1", "query2");
+        assertThat(searchJob.results().values()).allMatch(result -> result.state() == QueryResult.State.COMPLETED);
+    }
+
+    @Test
+    void runsQueriesOneByOneForOtherBackends() throws Exception {
+        final SearchJob searchJob = execute();
+
+        verify(backend, times(2)).run(eq(searchJob), any(Query.class), any());
+        verify(backend, never()).run(any(), anyMap());
+        assertThat(searchJob.results()).containsOnlyKeys("query1", "query2");
+    }
+
+    @Test
+    void failingQueryGenerationOnlyFailsItsOwnQuery() throws Exception {
+        when(backend.supportsMultiQueryRun()).thenReturn(true);
+        final QueryError error = new QueryError(query2, "Invalid query");
+        when(backend.generate(eq(query2), any(), any())).thenThrow(new SearchException(error));
+
+        final SearchJob searchJob = execute();
+
+        @SuppressWarnings("unchecked")
+        final ArgumentCaptor<Map<Query, GeneratedQueryContext>> contexts = ArgumentCaptor.forClass(Map.class);
+        verify(backend).run(eq(searchJob), contexts.capture());
+        assertThat(contexts.getValue()).containsOnlyKeys(query1);
+        assertThat(searchJob.results().get("query1").state()).isEqualTo(QueryResult.State.COMPLETED);
+        assertThat(searchJob.results().get("query2").state()).isEqualTo(QueryResult.State.FAILED);
+        assertThat(searchJob.getErrors()).containsExactly(error);
+    }
+
+    private SearchJob execute() throws Exception {
+        final Search search = Search.builder()
+                .id("search1")
+                .queries(ImmutableSet.of(query1, query2))
+                .build();
+        final SearchJob searchJob = queryEngine.execute(new SearchJob("job1", search, "admin", "test-node-id"), Set.of(), DateTimeZone.UTC);
+        searchJob.getResultFuture().get(10, TimeUnit.SECONDS);
+        return searchJob;
+    }
+
+    private static Query query(String id) {
+        return Query.builder()
+                .id(id)
+                .query(ElasticsearchQueryString.of("*"))
+                .build();
+    }
+
+    private static QueryResult result(Query query) {
+        return QueryResult.builder()
+                .query(query)
+                .searchTypes(Collections.emptyMap())
+                .build();
+    }
+}
@@ -579,6 +579,65 @@ public class DBJobTriggerServiceTest {
     }
 
 
+    @Test
+    public void nextRunnableTriggers() {
+        assertThat(dbJobTriggerService.nextRunnableTriggers(3, null)).isEmpty();
+
+        final JobTriggerDto trigger1 = dbJobTriggerService.create(intervalTrigger(clock.nowUTC().plusSeconds(12)));
+        final JobTriggerDto trigger2 = dbJobTriggerService.create(intervalTrigger(clock.nowUTC().plusSeconds(10)));
+        final JobTriggerDto trigger3 = dbJobTriggerService.create(intervalTrigger(clock.nowUTC().plusSeconds(11)));
+        final JobTriggerDto trigger4 = dbJobTriggerService.create(intervalTrigger(clock.nowUTC().plusSeconds(13)));
+        dbJobTriggerService.create(intervalTrigger(clock.nowUTC().plusSeconds(60)));
+
+        clock.plus(20, TimeUnit.SECONDS);
+
+        // The triggers with the oldest next time are locked first
+        final List<JobTriggerDto> firstBatch = dbJobTriggerService.nextRunnableTriggers(3, null);
+        assertThat(firstBatch).extracting(JobTriggerDto::id).containsExactly(trigger2.id(), trigger3.id(), trigger1.id());
+        firstBatch.forEach(trigger -> assertNextTrigger(Optional.of(trigger), trigger));
+
+        final List<JobTriggerDto> secondBatch = dbJobTriggerService.nextRunnableTriggers(3, null);
+        assertThat(secondBatch).extracting(JobTriggerDto::id).containsExactly(trigger4.id());
+        assertNextTrigger(Optional.of(secondBatch.get(0)), trigger4);
+
+        assertThat(dbJobTriggerService.nextRunnableTriggers(3, null)).isEmpty();
+    }
+
+    @Test
+    public void nextRunnableTriggersWithAffinity() {
+        final DBJobTriggerService otherNodeService = new DBJobTriggerService(mongoCollections,
+                new SimpleNodeId("node-2"), clock, schedulerCapabilitiesService, EXPIRATION_DURATION);
+        final java.time.Duration gracePeriod = java.time.Duration.ofSeconds(30);
+
+        final JobTriggerDto trigger = dbJobTriggerService.create(intervalTrigger(clock.nowUTC()));
+
+        // Triggers which haven't been run yet can be locked by any node
+        assertThat(otherNodeService.nextRunnableTriggers(2, gracePeriod)).hasSize(1);
+        otherNodeService.releaseTrigger(trigger, JobTriggerUpdate.withNextTime(clock.nowUTC().plusSeconds(10)));
+
+        clock.plus(10, TimeUnit.SECONDS);
+
+        // The trigger is due, but it has last been run by the other node
+        assertThat(dbJobTriggerService.nextRunnableTriggers(2, gracePeriod)).isEmpty();
+
+        clock.plus(30, TimeUnit.SECONDS);
+
+        // Once it's overdue by the grace period, this node takes it over
+        assertNextTrigger(dbJobTriggerService.nextRunnableTriggers(2, gracePeriod).stream().findFirst(), trigger);
+    }
+
+    private JobTriggerDto intervalTrigger(DateTime nextTime) {
+        return JobTriggerDto.Builder.create(clock)
+                .jobDefinitionId("abc-123")
+                .jobDefinitionType("event-processor-execution-v1")
+                .nextTime(nextTime)
+                .schedule(IntervalJobSchedule.builder()
+                        .interval(1)
+                        .unit(TimeUnit.SECONDS)
+                        .build())
+                .build();
+    }
+
     @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
     private void assertNextTrigger(Optional<JobTriggerDto> trigger, JobTriggerDto expected) {
         assertThat(trigger)
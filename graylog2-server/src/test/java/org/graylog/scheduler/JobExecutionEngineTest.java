@@ -17,18 +17,28 @@
 package org.graylog.scheduler;
 
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.graylog.scheduler.eventbus.JobSchedulerEventBus;
+import org.graylog.scheduler.schedule.IntervalJobSchedule;
 import org.graylog.scheduler.worker.JobWorkerPool;
 import org.graylog2.cluster.lock.RefreshingLockService;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
@@ -67,4 +77,60 @@ class JobExecutionEngineTest {
 
         verify(jobTriggerService, times(1)).updateLockedJobTriggers();
     }
+
+    @Test
+    void executeLocksTriggersUpToFreeSlots() {
+        given(jobSchedulerConfig.triggerBatchSize()).willReturn(10);
+        final JobExecutionEngine underTest = new JobExecutionEngine(jobTriggerService, jobDefinitionService, eventBus, scheduleStrategies, jobTriggerUpdatesFactory,
+                refreshingLockServiceFactory, jobFactory, workerPool, jobSchedulerConfig, metricRegistry);
+        final JobTriggerDto trigger1 = trigger("trigger-1");
+        final JobTriggerDto trigger2 = trigger("trigger-2");
+
+        given(workerPool.hasFreeSlots()).willReturn(true);
+        given(workerPool.freeSlots()).willReturn(2);
+        given(jobTriggerService.nextRunnableTriggers(2, null)).willReturn(List.of(trigger1, trigger2));
+        given(workerPool.execute(any())).willReturn(true, false);
+
+        assertThat(underTest.execute()).isFalse();
+
+        // The trigger which couldn't be executed is released again
+        verify(workerPool, times(2)).execute(any());
+        verify(jobTriggerService).releaseTrigger(trigger2, JobTriggerUpdate.withNextTime(trigger2.nextTime()));
+        verify(jobTriggerService, never()).releaseTrigger(eq(trigger1), any());
+    }
+
+    @Test
+    void executeRecordsTriggerLag() {
+        given(jobSchedulerConfig.triggerBatchSize()).willReturn(10);
+        final JobExecutionEngine underTest = new JobExecutionEngine(jobTriggerService, jobDefinitionService, eventBus, scheduleStrategies, jobTriggerUpdatesFactory,
+                refreshingLockServiceFactory, jobFactory, workerPool, jobSchedulerConfig, metricRegistry);
+        final JobTriggerDto trigger = trigger("trigger-1").toBuilder()
+                .nextTime(DateTime.now(DateTimeZone.UTC).minusMinutes(1))
+                .build();
+
+        given(workerPool.hasFreeSlots()).willReturn(true);
+        given(workerPool.freeSlots()).willReturn(5);
+        given(jobTriggerService.nextRunnableTriggers(5, null)).willReturn(List.of(trigger));
+        given(workerPool.execute(any())).willAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return true;
+        });
+
+        assertThat(underTest.execute()).isTrue();
+
+        final Timer lag = metricRegistry.getTimers().get(MetricRegistry.name(JobExecutionEngine.class, "executions", "lag", "type", "test-job"));
+        assertThat(lag.getCount()).isEqualTo(1);
+        assertThat(lag.getSnapshot().getMax()).isGreaterThanOrEqualTo(TimeUnit.MINUTES.toNanos(1));
+        // There is no job definition for the trigger
+        verify(jobTriggerService).setTriggerError(trigger);
+    }
+
+    private JobTriggerDto trigger(String id) {
+        return JobTriggerDto.builder()
+                .id(id)
+                .jobDefinitionId("job-1")
+                .jobDefinitionType("test-job")
+                .schedule(IntervalJobSchedule.builder().interval(1).unit(TimeUnit.MINUTES).build())
+                .build();
+    }
 }
@@ -178,6 +178,18 @@ public class ConfigurationTest {
                 .hasMessageContaining("needs to be greater than");
     }
 
+    @Test
+    public void outputBatchDispatchRequiresBatchClaiming() throws Exception {
+        validProperties.put("output_batch_dispatch", "true");
+
+        assertThatThrownBy(() -> initConfig(new Configuration(), validProperties))
+                .isInstanceOf(ValidationException.class)
+                .hasMessageContaining("requires \"processor_batch_claiming\"");
+
+        validProperties.put("processor_batch_claiming", "true");
+        assertThat(initConfig(new Configuration(), validProperties).isOutputBatchDispatch()).isTrue();
+    }
+
     @Test
     public void isLeaderByDefault() throws Exception {
         final Configuration configuration = initConfig(new Configuration(), validProperties);
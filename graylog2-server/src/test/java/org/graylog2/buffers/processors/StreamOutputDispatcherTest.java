@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.buffers.processors;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.Configuration;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.outputs.MessageOutput;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class StreamOutputDispatcherTest {
+    private MetricRegistry metricRegistry;
+    private StreamOutputDispatcher dispatcher;
+
+    @BeforeEach
+    void setUp() {
+        final Configuration configuration = mock(Configuration.class);
+        when(configuration.getOutputBatchDispatchQueueSize()).thenReturn(1);
+        when(configuration.getOutputModuleTimeout()).thenReturn(10L);
+        metricRegistry = new MetricRegistry();
+        dispatcher = new StreamOutputDispatcher(configuration, metricRegistry);
+    }
+
+    @Test
+    void writesBatchesToOutput() throws Exception {
+        final MessageOutput output = mock(MessageOutput.class);
+        when(output.isRunning()).thenReturn(true);
+        final List<Message> messages = List.of(mock(Message.class), mock(Message.class));
+
+        dispatcher.dispatch(output, messages);
+
+        verify(output, timeout(5000)).write(messages);
+    }
+
+    @Test
+    void startsNewQueueForRestartedOutput() throws Exception {
+        final MessageOutput output = mock(MessageOutput.class);
+        when(output.isRunning()).thenReturn(false);
+        final List<Message> skipped = List.of(mock(Message.class));
+        dispatcher.dispatch(output, skipped);
+
+        // The queue of the stopped output closes once it has been idle, batches for the restarted output must not
+        // end up in it
+        final Counter queuedBatches = metricRegistry.counter("org.graylog2.buffers.processors.StreamOutputDispatcher.queuedBatches");
+        verify(output, timeout(5000).atLeast(2)).isRunning();
+        Thread.sleep(1500);
+        when(output.isRunning()).thenReturn(true);
+        final List<Message> messages = List.of(mock(Message.class), mock(Message.class));
+        dispatcher.dispatch(output, messages);
+
+        verify(output, timeout(5000)).write(messages);
+        verify(output, never()).write(skipped);
+        assertThat(queuedBatches.getCount()).isZero();
+    }
+
+    @Test
+    void dropsBatchesIfOutputIsTooSlow() throws Exception {
+        final CountDownLatch blockOutput = new CountDownLatch(1);
+        final CountDownLatch writing = new CountDownLatch(1);
+        final MessageOutput output = mock(MessageOutput.class);
+        when(output.isRunning()).thenReturn(true);
+        doAnswer(invocation -> {
+            writing.countDown();
+            blockOutput.await();
+            return null;
+        }).when(output).write(anyList());
+
+        // The first batch is taken by the writer thread, the second one fills the queue
+        dispatcher.dispatch(output, List.of(mock(Message.class)));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch(output, List.of(mock(Message.class)));
+        dispatcher.dispatch(output, List.of(mock(Message.class), mock(Message.class)));
+
+        assertThat(metricRegistry.meter("org.graylog2.buffers.processors.StreamOutputDispatcher.droppedMessages").getCount())
+                .isEqualTo(2);
+
+        blockOutput.countDown();
+    }
+
+    @Test
+    void writesQueuedBatchesOnShutdown() throws Exception {
+        final CountDownLatch blockOutput = new CountDownLatch(1);
+        final CountDownLatch writing = new CountDownLatch(1);
+        final MessageOutput output = mock(MessageOutput.class);
+        when(output.isRunning()).thenReturn(true);
+        doAnswer(invocation -> {
+            writing.countDown();
+            blockOutput.await();
+            return null;
+        }).when(output).write(anyList());
+
+        final List<Message> first = List.of(mock(Message.class));
+        final List<Message> queued = List.of(mock(Message.class));
+        dispatcher.dispatch(output, first);
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+        dispatcher.dispatch(output, queued);
+
+        blockOutput.countDown();
+        dispatcher.shutdown(5, TimeUnit.SECONDS);
+
+        verify(output).write(first);
+        verify(output).write(queued);
+
+        // Batches dispatched after the shutdown are dropped
+        dispatcher.dispatch(output, List.of(mock(Message.class)));
+        assertThat(metricRegistry.meter("org.graylog2.buffers.processors.StreamOutputDispatcher.droppedMessages").getCount())
+                .isEqualTo(1);
+        verify(output, times(2)).write(anyList());
+    }
+
+    @Test
+    void interruptsOutputsWhichDoNotFinishOnShutdown() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final MessageOutput output = mock(MessageOutput.class);
+        when(output.isRunning()).thenReturn(true);
+        doAnswer(invocation -> {
+            writing.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        }).when(output).write(anyList());
+
+        dispatcher.dispatch(output, List.of(mock(Message.class)));
+        assertThat(writing.await(5, TimeUnit.SECONDS)).isTrue();
+
+        dispatcher.shutdown(10, TimeUnit.MILLISECONDS);
+
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+}
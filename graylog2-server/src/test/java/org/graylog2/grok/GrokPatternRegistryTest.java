@@ -17,8 +17,9 @@
 package org.graylog2.grok;
 
 import com.google.common.eventbus.EventBus;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.krakens.grok.api.Grok;
+import io.krakens.grok.api.Match;
+import org.graylog2.utilities.CompiledPatternCache;
 import org.hamcrest.Matchers;
 import org.junit.Before;
 import org.junit.Rule;
@@ -29,9 +30,8 @@ import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.when;
@@ -54,9 +54,8 @@ public class GrokPatternRegistryTest {
     @Before
     public void setUp() {
         eventBus = new EventBus("Test");
-        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder().setNameFormat("updater-%d").build());
         when(grokPatternService.loadAll()).thenReturn(GROK_PATTERNS);
-        grokPatternRegistry = new GrokPatternRegistry(eventBus, grokPatternService, executor);
+        grokPatternRegistry = new GrokPatternRegistry(eventBus, grokPatternService, CompiledPatternCache.create(), false);
     }
 
     @Test
@@ -117,4 +116,83 @@ public class GrokPatternRegistryTest {
         assertThat(grokPatternRegistry.grokPatternExists("NUM")).isFalse();
         assertThat(grokPatternRegistry.grokPatternExists("TESTNUM")).isTrue();
     }
+
+    @Test
+    public void match() {
+        assertThat(grokPatternRegistry.match("id=%{TESTNUM:id}", true, "id=42").captureFlattened())
+                .containsEntry("id", "42");
+        assertThat(grokPatternRegistry.match("id=%{TESTNUM:id}", true, "id=abc")).isSameAs(Match.EMPTY);
+    }
+
+    @Test
+    public void matchWithLinearTimePrefilter() {
+        final GrokPatternRegistry registry = new GrokPatternRegistry(eventBus, grokPatternService, CompiledPatternCache.create(), true);
+
+        assertThat(registry.match("id=%{TESTNUM:id}", true, "id=42").captureFlattened()).containsEntry("id", "42");
+        assertThat(registry.match("id=%{TESTNUM:id}", true, "id=abc")).isSameAs(Match.EMPTY);
+    }
+
+    @Test
+    public void matchWithLinearTimePrefilterFallsBackForUnsupportedPatterns() {
+        final GrokPatternRegistry registry = new GrokPatternRegistry(eventBus, grokPatternService, CompiledPatternCache.create(), true);
+
+        // RE2/J doesn't support lookbehind, so the pattern is only matched by the backtracking matcher
+        assertThat(registry.match("(?<=id=)%{TESTNUM:id}", true, "id=42").captureFlattened()).containsEntry("id", "42");
+        assertThat(registry.match("(?<=id=)%{TESTNUM:id}", true, "no=42")).isSameAs(Match.EMPTY);
+    }
+
+    @Test
+    public void linearTimePrefilterAcceptsVerticalTabAsSpace() {
+        when(grokPatternService.loadAll()).thenReturn(Set.of(GROK_PATTERN, GrokPattern.create("SPACE", "\\s*")));
+        final GrokPatternRegistry registry = new GrokPatternRegistry(eventBus, grokPatternService, CompiledPatternCache.create(), true);
+
+        // java.util.regex counts the vertical tab as whitespace, RE2/J doesn't
+        assertThat(registry.match("id=%{SPACE}%{TESTNUM:id}", true, "id=\u000B42").captureFlattened())
+                .containsEntry("id", "42");
+        assertThat(registry.match("[^\\s]+", false, "\u000B")).isSameAs(Match.EMPTY);
+    }
+
+    @Test
+    public void linearTimePrefilterDoesNotChangeWordBoundariesOfUnicodeLetters() {
+        final GrokPatternRegistry registry = new GrokPatternRegistry(eventBus, grokPatternService, CompiledPatternCache.create(), true);
+
+        for (String value : List.of("café au lait", "cafés", "un café")) {
+            assertThat(registry.match("\\bcafé\\b", false, value).captureFlattened())
+                    .as(value)
+                    .isEqualTo(grokPatternRegistry.match("\\bcafé\\b", false, value).captureFlattened());
+        }
+    }
+
+    @Test
+    public void linearTimePrefilterAcceptsLineTerminatorsBeforeEndAnchor() {
+        final GrokPatternRegistry registry = new GrokPatternRegistry(eventBus, grokPatternService, CompiledPatternCache.create(), true);
+
+        // "$" matches before a final "\r" in java.util.regex, but not in RE2/J
+        assertThat(registry.match("id=%{TESTNUM:id}$", true, "id=42\r").captureFlattened()).containsEntry("id", "42");
+        assertThat(registry.match("id=%{TESTNUM:id}$", true, "id=42 ")).isSameAs(Match.EMPTY);
+    }
+
+    @Test
+    public void translateToRe2j() {
+        assertThat(GrokPatternRegistry.translateToRe2j("a\\s+b")).isEqualTo("a[\\s\\x0B]+b");
+        assertThat(GrokPatternRegistry.translateToRe2j("[^\\s,]\\S")).isEqualTo("[^\\s\\x0B,]\\S");
+        assertThat(GrokPatternRegistry.translateToRe2j("[]\\s]")).isEqualTo("[]\\s\\x0B]");
+        assertThat(GrokPatternRegistry.translateToRe2j("\\Q\\s\\E\\s")).isEqualTo("\\Q\\s\\E[\\s\\x0B]");
+        assertThat(GrokPatternRegistry.translateToRe2j("\\\\s")).isEqualTo("\\\\s");
+        assertThat(GrokPatternRegistry.translateToRe2j("\\bword\\b")).isNull();
+        assertThat(GrokPatternRegistry.translateToRe2j("\\Bword")).isNull();
+        assertThat(GrokPatternRegistry.translateToRe2j("\\v")).isNull();
+        assertThat(GrokPatternRegistry.translateToRe2j("[^\\S]")).isNull();
+        assertThat(GrokPatternRegistry.translateToRe2j("[a[b]]")).isNull();
+    }
+
+    @Test
+    public void patternsChangedInvalidatesCompiledPatterns() {
+        assertThat(grokPatternRegistry.match("%{TESTNUM:value}", true, "abc")).isSameAs(Match.EMPTY);
+
+        when(grokPatternService.loadAll()).thenReturn(Collections.singleton(GrokPattern.create("TESTNUM", "[a-z]+")));
+        eventBus.post(GrokPatternsUpdatedEvent.create(Collections.singleton("TESTNUM")));
+
+        assertThat(grokPatternRegistry.match("%{TESTNUM:value}", true, "abc").captureFlattened()).containsEntry("value", "abc");
+    }
 }
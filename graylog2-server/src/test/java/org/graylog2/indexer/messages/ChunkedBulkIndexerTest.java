@@ -16,11 +16,13 @@
  */
 package org.graylog2.indexer.messages;
 
+import com.codahale.metrics.Meter;
 import com.google.common.base.Strings;
 import org.graylog2.indexer.ElasticsearchException;
 import org.graylog2.indexer.IndexSet;
 import org.graylog2.plugin.MessageFactory;
 import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.jupiter.api.Test;
@@ -84,6 +86,41 @@ class ChunkedBulkIndexerTest {
                 .hasMessageContaining("Bulk index cannot split output batch any further.");
     }
 
+    @Test
+    void splitsSerializedRequestsBySizeIfEntityTooLarge() throws IOException {
+        final var context = SerializationContext.of(new ObjectMapperProvider().get(), new Meter());
+        try (var request = SerializedBulkRequest.serialize(indexingRequests, context, new BulkBufferPool(4096, 16))) {
+            final long maxAcceptedBytes = request.sizeInBytes() / 5;
+            final List<Integer> sentChunkSizes = new ArrayList<>();
+            final ChunkedBulkIndexer.SerializedBulkIndex bulkIndex = (indexed, previous, slice) -> {
+                if (request.sizeInBytes(slice) > maxAcceptedBytes) {
+                    throw new ChunkedBulkIndexer.EntityTooLargeException(indexed, previous);
+                }
+                sentChunkSizes.add(slice.size());
+                return success(request.requests(slice));
+            };
+
+            final var result = indexer.index(request, request.sizeInBytes() / 2, bulkIndex);
+
+            assertThat(result.successes()).hasSize(indexingRequests.size());
+            assertThat(sentChunkSizes.stream().mapToInt(Integer::intValue).sum()).isEqualTo(indexingRequests.size());
+        }
+    }
+
+    @Test
+    void doesNotSplitSerializedRequestsBelowOneMessage() throws IOException {
+        final var context = SerializationContext.of(new ObjectMapperProvider().get(), new Meter());
+        try (var request = SerializedBulkRequest.serialize(indexingRequests, context, new BulkBufferPool(4096, 16))) {
+            final ChunkedBulkIndexer.SerializedBulkIndex bulkIndex = (indexed, previous, slice) -> {
+                throw new ChunkedBulkIndexer.EntityTooLargeException(indexed, previous);
+            };
+
+            assertThatThrownBy(() -> indexer.index(request, request.sizeInBytes(), bulkIndex))
+                    .isInstanceOf(ElasticsearchException.class)
+                    .hasMessageContaining("Bulk index cannot split output batch any further.");
+        }
+    }
+
     private ChunkedBulkIndexer.BulkIndexResult success(List<IndexingRequest> requests) {
         final var results = requests.stream()
                 .map(request -> IndexingSuccess.create(request.message(), request.indexSet().getNewestIndex()))
@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.messages;
+
+import com.codahale.metrics.Meter;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Strings;
+import org.graylog2.indexer.IndexSet;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SerializedBulkRequestTest {
+    private static final IndexSet indexSet = new MessagesTestIndexSet();
+    private final ObjectMapper objectMapper = new ObjectMapperProvider().get();
+    private final SerializationContext context = SerializationContext.of(objectMapper, new Meter());
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    // Small segments, so messages span multiple buffers
+    private final BulkBufferPool pool = new BulkBufferPool(256, 16);
+
+    @Test
+    void serializesRequestsAsNdjson() throws IOException {
+        final List<IndexingRequest> requests = createMessageBatch(100, 50);
+
+        try (SerializedBulkRequest bulkRequest = SerializedBulkRequest.serialize(requests, context, pool)) {
+            final String body = body(bulkRequest, bulkRequest.slice(0, Long.MAX_VALUE));
+            final String[] lines = body.split("\n");
+
+            assertThat(body).endsWith("\n");
+            assertThat(body.getBytes(StandardCharsets.UTF_8)).hasSize((int) bulkRequest.sizeInBytes());
+            assertThat(lines).hasSize(requests.size() * 2);
+            for (int i = 0; i < requests.size(); i++) {
+                final IndexingRequest request = requests.get(i);
+                final JsonNode action = objectMapper.readTree(lines[i * 2]);
+                assertThat(action.path("index").path("_index").asText()).isEqualTo(indexSet.getWriteIndexAlias());
+                assertThat(action.path("index").path("_id").asText()).isEqualTo(request.message().getId());
+                assertThat(objectMapper.readTree(lines[i * 2 + 1]))
+                        .isEqualTo(objectMapper.readTree(request.message().serialize(context)));
+            }
+        }
+    }
+
+    @Test
+    void slicesRequestsBySize() throws IOException {
+        final List<IndexingRequest> requests = createMessageBatch(100, 50);
+
+        try (SerializedBulkRequest bulkRequest = SerializedBulkRequest.serialize(requests, context, pool)) {
+            final String body = body(bulkRequest, bulkRequest.slice(0, Long.MAX_VALUE));
+            final long maxBytes = bulkRequest.sizeInBytes() / 7;
+
+            final StringBuilder slicedBody = new StringBuilder();
+            int offset = 0;
+            while (offset < bulkRequest.size()) {
+                final SerializedBulkRequest.Slice slice = bulkRequest.slice(offset, maxBytes);
+                assertThat(bulkRequest.sizeInBytes(slice)).isLessThanOrEqualTo(maxBytes);
+                assertThat(bulkRequest.requests(slice)).hasSize(slice.size());
+                // Reading the same slice twice returns the same bytes
+                assertThat(body(bulkRequest, slice)).isEqualTo(body(bulkRequest, slice));
+                slicedBody.append(body(bulkRequest, slice));
+                offset = slice.to();
+            }
+
+            assertThat(slicedBody.toString()).isEqualTo(body);
+        }
+    }
+
+    @Test
+    void sliceContainsAtLeastOneRequest() throws IOException {
+        try (SerializedBulkRequest bulkRequest = SerializedBulkRequest.serialize(createMessageBatch(100, 3), context, pool)) {
+            final SerializedBulkRequest.Slice slice = bulkRequest.slice(1, 1);
+
+            assertThat(slice.from()).isEqualTo(1);
+            assertThat(slice.to()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void releasesBuffersOnClose() throws IOException {
+        final SerializedBulkRequest bulkRequest = SerializedBulkRequest.serialize(createMessageBatch(100, 10), context, pool);
+        assertThat(pool.pooledSegments()).isZero();
+
+        bulkRequest.close();
+
+        assertThat(pool.pooledSegments()).isPositive().isLessThanOrEqualTo(16);
+    }
+
+    private String body(SerializedBulkRequest bulkRequest, SerializedBulkRequest.Slice slice) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bulkRequest.writeTo(slice, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private List<IndexingRequest> createMessageBatch(int size, int count) {
+        final List<IndexingRequest> messageList = new ArrayList<>();
+
+        final String message = Strings.repeat("A", size);
+        for (int i = 0; i < count; i++) {
+            messageList.add(IndexingRequest.create(indexSet, messageFactory.createMessage(i + message, "source", DateTime.now(DateTimeZone.UTC))));
+        }
+        return messageList;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.indexer.ranges;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IndexRangeIntervalTreeTest {
+    @Test
+    void findsOverlappingRanges() {
+        final IndexRangeIntervalTree tree = IndexRangeIntervalTree.create(List.of(
+                range("graylog_1", 0, 10),
+                range("graylog_2", 10, 20),
+                range("graylog_3", 20, 30),
+                range("graylog_4", 5, 100),
+                range("graylog_5", 0, 0)));
+
+        assertThat(tree.find(12, 18)).extracting(IndexRange::indexName).containsExactlyInAnyOrder("graylog_2", "graylog_4");
+        assertThat(tree.find(10, 10)).extracting(IndexRange::indexName).containsExactlyInAnyOrder("graylog_1", "graylog_2", "graylog_4");
+        assertThat(tree.find(101, 200)).isEmpty();
+        assertThat(tree.find(0, 0)).extracting(IndexRange::indexName).containsExactlyInAnyOrder("graylog_1", "graylog_5");
+    }
+
+    @Test
+    void updatesRanges() {
+        final IndexRangeIntervalTree tree = IndexRangeIntervalTree.create(List.of(
+                range("graylog_1", 0, 10),
+                range("graylog_2", 10, 20)));
+
+        final IndexRangeIntervalTree updated = tree.update(Set.of("graylog_1", "graylog_2", "graylog_3"), List.of(
+                range("graylog_2", 10, 25),
+                range("graylog_3", 30, 40)));
+
+        assertThat(updated.get("graylog_1")).isNull();
+        assertThat(updated.find(21, 35)).extracting(IndexRange::indexName).containsExactlyInAnyOrder("graylog_2", "graylog_3");
+        // The original tree is unchanged
+        assertThat(tree.find(0, 100)).extracting(IndexRange::indexName).containsExactlyInAnyOrder("graylog_1", "graylog_2");
+    }
+
+    @Test
+    void matchesLinearScan() {
+        final Random random = new Random(42);
+        final List<IndexRange> ranges = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            final long begin = random.nextInt(100_000);
+            ranges.add(range("graylog_" + i, begin, begin + random.nextInt(i % 10 == 0 ? 50_000 : 1_000)));
+        }
+        final IndexRangeIntervalTree tree = IndexRangeIntervalTree.create(ranges);
+
+        for (int i = 0; i < 1_000; i++) {
+            final long begin = random.nextInt(110_000);
+            final long end = begin + random.nextInt(5_000);
+            final List<IndexRange> expected = ranges.stream()
+                    .filter(range -> range.begin().getMillis() <= end && range.end().getMillis() >= begin)
+                    .toList();
+
+            assertThat(tree.find(begin, end)).containsExactlyInAnyOrderElementsOf(expected);
+        }
+    }
+
+    private static IndexRange range(String indexName, long begin, long end) {
+        final DateTime now = DateTime.now(DateTimeZone.UTC);
+        return MongoIndexRange.create(indexName, new DateTime(begin, DateTimeZone.UTC), new DateTime(end, DateTimeZone.UTC), now, 0);
+    }
+}
@@ -17,6 +17,7 @@
 package org.graylog2.indexer.ranges;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.joschi.jadconfig.util.Duration;
 import com.google.common.eventbus.EventBus;
 import org.assertj.jodatime.api.Assertions;
 import org.bson.types.ObjectId;
@@ -26,6 +27,7 @@ import org.graylog2.audit.NullAuditEventSender;
 import org.graylog2.bindings.providers.MongoJackObjectMapperProvider;
 import org.graylog2.database.MongoCollections;
 import org.graylog2.database.NotFoundException;
+import org.graylog2.events.ClusterEventBus;
 import org.graylog2.indexer.ElasticsearchException;
 import org.graylog2.indexer.IndexSetRegistry;
 import org.graylog2.indexer.indices.HealthStatus;
@@ -33,6 +35,7 @@ import org.graylog2.indexer.indices.Indices;
 import org.graylog2.indexer.indices.events.IndicesClosedEvent;
 import org.graylog2.indexer.indices.events.IndicesDeletedEvent;
 import org.graylog2.indexer.indices.events.IndicesReopenedEvent;
+import org.graylog2.indexer.ranges.events.IndexRangesUpdatedEvent;
 import org.graylog2.indexer.searches.IndexRangeStats;
 import org.graylog2.plugin.system.SimpleNodeId;
 import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
@@ -48,9 +51,11 @@ import org.mockito.junit.MockitoRule;
 import java.util.Collections;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class MongoIndexRangeServiceTest {
@@ -67,6 +72,10 @@ public class MongoIndexRangeServiceTest {
     private Indices indices;
     @Mock
     private IndexSetRegistry indexSetRegistry;
+    @Mock
+    private ClusterEventBus clusterEventBus;
+    @Mock
+    private ScheduledExecutorService scheduler;
     private EventBus localEventBus;
     private MongoIndexRangeService indexRangeService;
 
@@ -75,7 +84,8 @@ public class MongoIndexRangeServiceTest {
         localEventBus = new EventBus("local-event-bus");
         indexRangeService = new MongoIndexRangeService(
                 new MongoCollections(objectMapperProvider, mongodb.mongoConnection()), indices, indexSetRegistry,
-                new NullAuditEventSender(), new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000000"), localEventBus);
+                new NullAuditEventSender(), new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000000"), localEventBus,
+                clusterEventBus, scheduler, Duration.minutes(5));
     }
 
     @Test
@@ -322,4 +332,37 @@ public class MongoIndexRangeServiceTest {
             assertThat(r.stream().anyMatch(s -> s.indexName().equals("graylog_warm_2"))).isTrue();
         });
     }
+
+    @Test
+    @MongoDBFixtures("MongoIndexRangeServiceTest.json")
+    public void saveNotifiesOtherNodes() throws Exception {
+        final DateTime begin = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2016, 1, 2, 0, 0, DateTimeZone.UTC);
+        assertThat(indexRangeService.findAll()).hasSize(2);
+
+        indexRangeService.save(MongoIndexRange.create("graylog_3", begin, end, end, 42));
+
+        // The cache of this node is updated right away
+        assertThat(indexRangeService.find(begin, end)).extracting(IndexRange::indexName).containsExactly("graylog_3");
+        verify(clusterEventBus).post(IndexRangesUpdatedEvent.create(Set.of("graylog_3")));
+    }
+
+    @Test
+    @MongoDBFixtures("MongoIndexRangeServiceTest.json")
+    public void handleIndexRangesUpdatedRefreshesCache() throws Exception {
+        final DateTime begin = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+        final DateTime end = new DateTime(2016, 1, 2, 0, 0, DateTimeZone.UTC);
+        assertThat(indexRangeService.findAll()).hasSize(2);
+
+        // Another node writes an index range directly
+        new MongoCollections(objectMapperProvider, mongodb.mongoConnection())
+                .nonEntityCollection("index_ranges", MongoIndexRange.class)
+                .insertOne(MongoIndexRange.create("graylog_3", begin, end, end, 42));
+        assertThat(indexRangeService.find(begin, end)).isEmpty();
+
+        localEventBus.post(IndexRangesUpdatedEvent.create(Set.of("graylog_3", "graylog_1")));
+
+        assertThat(indexRangeService.find(begin, end)).extracting(IndexRange::indexName).containsExactly("graylog_3");
+        assertThat(indexRangeService.findAll()).extracting(IndexRange::indexName).containsOnly("graylog_1", "graylog_2", "graylog_3");
+    }
 }
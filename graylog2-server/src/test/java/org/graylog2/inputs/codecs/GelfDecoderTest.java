@@ -428,4 +428,96 @@ public class GelfDecoderTest {
                 .isInstanceOf(InputProcessingException.class)
                 .hasMessageContaining("JSON is null/could not be parsed (invalid JSON)");
     }
+
+    @Test
+    public void decodeCompressedMessages() throws Exception {
+        final String json = "{"
+                + "\"version\": \"1.1\","
+                + "\"host\": \"example.org\","
+                + "\"short_message\": \"A short message with \u00fc\","
+                + "\"_user_id\": 9001"
+                + "}";
+
+        for (byte[] payload : new byte[][]{TestHelper.zlibCompress(json), TestHelper.gzipCompress(json)}) {
+            final Message message = decoder.decode(new RawMessage(payload)).get();
+            assertThat(message.getField("source")).isEqualTo("example.org");
+            assertThat(message.getField("message")).isEqualTo("A short message with \u00fc");
+            assertThat(message.getField("user_id")).isEqualTo(9001L);
+        }
+    }
+
+    @Test
+    public void decodeConvertsFieldValuesLikeJsonTree() {
+        final String json = "{"
+                + "\"host\": \"example.org\","
+                + "\"short_message\": \"test\","
+                + "\"full_message\": null,"
+                + "\"line\": \"42\","
+                + "\"level\": 3.7,"
+                + "\"_dup\": 1,"
+                + "\"_object\": {\"a\": [1, 2.5, \"b\", null]},"
+                + "\"_array\": [],"
+                + "\"_big\": 123456789012345678901234,"
+                + "\"_double\": 1.5,"
+                + "\"_bool\": true,"
+                + "\"_null\": null,"
+                + "\"_dup\": \"last\","
+                + "\"dup\": \"shadowed\""
+                + "}";
+
+        final Message message = decoder.decode(new RawMessage(json.getBytes(StandardCharsets.UTF_8))).get();
+
+        assertThat(message.getField("full_message")).isEqualTo("null");
+        assertThat(message.getField("line")).isEqualTo(42L);
+        assertThat(message.getField("level")).isEqualTo(3);
+        assertThat(message.getField("dup")).isEqualTo("last");
+        assertThat(message.getField("object")).isEqualTo("{\"a\":[1,2.5,\"b\",null]}");
+        assertThat(message.getField("array")).isEqualTo("[]");
+        assertThat(message.getField("big")).isEqualTo(new java.math.BigInteger("123456789012345678901234").longValue());
+        assertThat(message.getField("double")).isEqualTo(1.5d);
+        assertThat(message.getFieldNames()).doesNotContain("bool", "null");
+    }
+
+    @Test
+    public void decodeReplacesMalformedUtf8() {
+        final byte[] prefix = "{\"host\":\"example.org\",\"short_message\":\"caf".getBytes(StandardCharsets.UTF_8);
+        final byte[] payload = new byte[prefix.length + 3];
+        System.arraycopy(prefix, 0, payload, 0, prefix.length);
+        payload[prefix.length] = (byte) 0xe9;
+        payload[prefix.length + 1] = '"';
+        payload[prefix.length + 2] = '}';
+
+        final Message message = decoder.decode(new RawMessage(payload)).get();
+
+        assertThat(message.getField("message")).isEqualTo("caf\ufffd");
+    }
+
+    @Test
+    public void decodeUsesConfiguredCharsetForUncompressedMessages() {
+        final GelfDecoder latin1Decoder = new GelfDecoder(messageFactory, DEFAULT_DECOMPRESS_SIZE_LIMIT, StandardCharsets.ISO_8859_1, gelfBulkDroppedMsgService);
+        final String json = "{\"host\":\"example.org\",\"short_message\":\"caf\u00e9\"}";
+
+        final Message message = latin1Decoder.decode(new RawMessage(json.getBytes(StandardCharsets.ISO_8859_1))).get();
+
+        assertThat(message.getField("message")).isEqualTo("caf\u00e9");
+    }
+
+    @Test
+    public void decodeFailsOnCorruptCompressedPayload() throws Exception {
+        final byte[] payload = TestHelper.gzipCompress("{\"host\":\"example.org\",\"short_message\":\"test\"}");
+        payload[payload.length - 5]++;
+
+        assertThatThrownBy(() -> decoder.decode(new RawMessage(payload)))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("Failed to decompress the GELF message payload");
+    }
+
+    @Test
+    public void decodeFailsOnNonObjectPayload() {
+        final RawMessage rawMessage = new RawMessage("[\"short_message\", \"test\"]".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> decoder.decode(rawMessage))
+                .isInstanceOf(InputProcessingException.class)
+                .hasMessageMatching("GELF message <[0-9a-f-]+> is missing mandatory \"short_message\" or \"message\" field.");
+    }
 }
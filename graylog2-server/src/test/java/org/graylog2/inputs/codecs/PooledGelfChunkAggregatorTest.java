@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.codecs;
+
+import com.codahale.metrics.MetricRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.TimerTask;
+import org.graylog2.plugin.inputs.codecs.CodecAggregator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.graylog2.inputs.codecs.GelfChunkAggregator.CHUNK_COUNTER;
+import static org.graylog2.inputs.codecs.GelfChunkAggregator.COMPLETE_MESSAGES;
+import static org.graylog2.inputs.codecs.GelfChunkAggregator.DUPLICATE_CHUNKS;
+import static org.graylog2.inputs.codecs.GelfChunkAggregator.EXPIRED_CHUNKS;
+import static org.graylog2.inputs.codecs.GelfChunkAggregator.EXPIRED_MESSAGES;
+import static org.graylog2.inputs.codecs.GelfChunkAggregator.WAITING_MESSAGES;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PooledGelfChunkAggregatorTest {
+    private static final String PAYLOAD = "{\"version\":\"1.1\",\"host\":\"example.org\",\"short_message\":\"A short message\"}";
+
+    private MetricRegistry metricRegistry;
+    private Timer timer;
+
+    @BeforeEach
+    void setUp() {
+        metricRegistry = new MetricRegistry();
+        timer = mock(Timer.class);
+        when(timer.newTimeout(any(), anyLong(), any())).thenReturn(mock(Timeout.class));
+    }
+
+    @Test
+    void reassemblesChunkedMessage() {
+        final PooledGelfChunkAggregator aggregator = aggregator(1024 * 1024, 16);
+        final ByteBuf[] chunks = chunks(1L, PAYLOAD.getBytes(StandardCharsets.UTF_8), 10);
+
+        for (int i = chunks.length - 1; i > 0; i--) {
+            final CodecAggregator.Result result = addChunk(aggregator, chunks[i]);
+            assertThat(result.isValid()).isTrue();
+            assertThat(result.getMessage()).isNull();
+        }
+        assertThat(counter(WAITING_MESSAGES)).isEqualTo(1);
+        assertThat(aggregator.getBufferedBytes()).isEqualTo(PAYLOAD.length() - 10);
+
+        final CodecAggregator.Result result = addChunk(aggregator, chunks[0]);
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.getMessage()).isNotNull();
+        try {
+            assertThat(result.getMessage().toString(StandardCharsets.UTF_8)).isEqualTo(PAYLOAD);
+        } finally {
+            result.getMessage().release();
+        }
+
+        assertThat(counter(CHUNK_COUNTER)).isEqualTo(chunks.length);
+        assertThat(counter(COMPLETE_MESSAGES)).isEqualTo(1);
+        assertThat(counter(WAITING_MESSAGES)).isZero();
+        assertThat(aggregator.getBufferedBytes()).isZero();
+    }
+
+    @Test
+    void passesThroughUnchunkedMessages() {
+        final PooledGelfChunkAggregator aggregator = aggregator(1024 * 1024, 16);
+        final ByteBuf buffer = Unpooled.copiedBuffer(PAYLOAD, StandardCharsets.UTF_8);
+
+        final CodecAggregator.Result result = addChunk(aggregator, buffer);
+
+        assertThat(result.isValid()).isTrue();
+        assertThat(result.getMessage().toString(StandardCharsets.UTF_8)).isEqualTo(PAYLOAD);
+        result.getMessage().release();
+        assertThat(buffer.refCnt()).isZero();
+        assertThat(counter(CHUNK_COUNTER)).isZero();
+    }
+
+    @Test
+    void ignoresDuplicateChunks() {
+        final PooledGelfChunkAggregator aggregator = aggregator(1024 * 1024, 16);
+        final ByteBuf[] chunks = chunks(1L, PAYLOAD.getBytes(StandardCharsets.UTF_8), 40);
+
+        assertThat(addChunk(aggregator, chunks[0]).getMessage()).isNull();
+        final CodecAggregator.Result duplicate = addChunk(aggregator, chunks(1L, PAYLOAD.getBytes(StandardCharsets.UTF_8), 40)[0]);
+        assertThat(duplicate.isValid()).isTrue();
+        assertThat(duplicate.getMessage()).isNull();
+        assertThat(counter(DUPLICATE_CHUNKS)).isEqualTo(1);
+        assertThat(aggregator.getBufferedBytes()).isEqualTo(40);
+
+        final CodecAggregator.Result result = addChunk(aggregator, chunks[1]);
+        assertThat(result.getMessage()).isNotNull();
+        result.getMessage().release();
+        assertThat(aggregator.getBufferedBytes()).isZero();
+    }
+
+    @Test
+    void dropsChunksExceedingMemoryLimit() {
+        final PooledGelfChunkAggregator aggregator = aggregator(50, 16);
+        final ByteBuf[] first = chunks(1L, new byte[80], 40);
+        final ByteBuf[] second = chunks(2L, new byte[80], 40);
+
+        assertThat(addChunk(aggregator, first[0]).isValid()).isTrue();
+        assertThat(addChunk(aggregator, second[0]).isValid()).isFalse();
+        assertThat(counter(PooledGelfChunkAggregator.DROPPED_CHUNKS)).isEqualTo(1);
+        assertThat(aggregator.getBufferedBytes()).isEqualTo(40);
+        assertThat(metricRegistry.getGauges().get(PooledGelfChunkAggregator.BUFFERED_BYTES).getValue()).isEqualTo(40L);
+    }
+
+    @Test
+    void dropsChunksExceedingMessageLimit() {
+        final PooledGelfChunkAggregator aggregator = aggregator(1024 * 1024, 1);
+
+        assertThat(addChunk(aggregator, chunks(1L, new byte[80], 40)[0]).isValid()).isTrue();
+        assertThat(addChunk(aggregator, chunks(2L, new byte[80], 40)[0]).isValid()).isFalse();
+        assertThat(counter(PooledGelfChunkAggregator.DROPPED_CHUNKS)).isEqualTo(1);
+        assertThat(aggregator.getBufferedBytes()).isEqualTo(40);
+    }
+
+    @Test
+    void expiresIncompleteMessages() throws Exception {
+        final PooledGelfChunkAggregator aggregator = aggregator(1024 * 1024, 1);
+        final ByteBuf[] chunks = chunks(1L, new byte[120], 40);
+
+        addChunk(aggregator, chunks[0]);
+        addChunk(aggregator, chunks[1]);
+
+        final ArgumentCaptor<TimerTask> task = ArgumentCaptor.forClass(TimerTask.class);
+        verify(timer).newTimeout(task.capture(), eq((long) GelfChunkAggregator.VALIDITY_PERIOD), eq(TimeUnit.MILLISECONDS));
+        task.getValue().run(mock(Timeout.class));
+
+        assertThat(counter(EXPIRED_MESSAGES)).isEqualTo(1);
+        assertThat(counter(EXPIRED_CHUNKS)).isEqualTo(2);
+        assertThat(counter(WAITING_MESSAGES)).isZero();
+        assertThat(aggregator.getBufferedBytes()).isZero();
+
+        // the expired entry has been removed, so the slot is available again
+        assertThat(addChunk(aggregator, chunks(2L, new byte[80], 40)[0]).isValid()).isTrue();
+        assertThat(counter(PooledGelfChunkAggregator.DROPPED_CHUNKS)).isZero();
+    }
+
+    private PooledGelfChunkAggregator aggregator(long maxBytes, int maxMessages) {
+        return new PooledGelfChunkAggregator(metricRegistry, maxBytes, maxMessages, ByteBufAllocator.DEFAULT, timer);
+    }
+
+    private CodecAggregator.Result addChunk(PooledGelfChunkAggregator aggregator, ByteBuf buffer) {
+        // the input releases the datagram after handing it to the aggregator
+        try {
+            return aggregator.addChunk(buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    private long counter(String name) {
+        return metricRegistry.counter(name).getCount();
+    }
+
+    private static ByteBuf[] chunks(long messageId, byte[] payload, int chunkSize) {
+        final int sequenceCount = (payload.length + chunkSize - 1) / chunkSize;
+        final ByteBuf[] chunks = new ByteBuf[sequenceCount];
+        for (int i = 0; i < sequenceCount; i++) {
+            final int offset = i * chunkSize;
+            final int length = Math.min(chunkSize, payload.length - offset);
+            chunks[i] = Unpooled.buffer()
+                    .writeByte(0x1e)
+                    .writeByte(0x0f)
+                    .writeLong(messageId)
+                    .writeByte(i)
+                    .writeByte(sequenceCount)
+                    .writeBytes(payload, offset, length);
+        }
+        return chunks;
+    }
+}
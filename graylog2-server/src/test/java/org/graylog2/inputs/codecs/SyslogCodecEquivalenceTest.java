@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.codecs;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.io.Resources;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.configuration.fields.DropdownField;
+import org.graylog2.plugin.inputs.codecs.Codec;
+import org.graylog2.plugin.journal.RawMessage;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.Year;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+/**
+ * Checks that the hand-written syslog parsing produces the same messages as parsing with syslog4j.
+ */
+class SyslogCodecEquivalenceTest {
+    // the patterns SyslogCodec used to select the syslog4j parser
+    private static final Pattern STRUCTURED_PATTERN = Pattern.compile("<\\d{1,3}>[0-9]\\d{0,2}\\s.*", Pattern.DOTALL);
+    private static final Pattern CISCO_PATTERN = Pattern.compile("<\\d{1,3}>\\d*:\\s.*", Pattern.DOTALL);
+    private static final Pattern FORTIGATE_PATTERN = Pattern.compile("<\\d{1,3}>date=.*", Pattern.DOTALL);
+
+    private static final String[] MONTHS = {"Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
+
+    private final InetAddress remoteAddress = InetAddress.getLoopbackAddress();
+    private final DateTime receivedTimestamp = new DateTime(2020, 1, 2, 3, 4, 5, DateTimeZone.UTC);
+
+    static Stream<Arguments> configurations() {
+        final List<Arguments> arguments = new ArrayList<>();
+        for (String timeZone : List.of(DropdownField.NOT_CONFIGURED, "Europe/Berlin", "America/Los_Angeles", "Asia/Kolkata")) {
+            for (boolean expand : List.of(false, true)) {
+                arguments.add(Arguments.of(timeZone, expand));
+            }
+        }
+        return arguments.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("configurations")
+    void producesSameMessagesAsSyslog4j(String timeZone, boolean expandStructuredData) throws IOException {
+        final SyslogCodec codec = codec(timeZone, expandStructuredData);
+        final List<String> corpus = corpus(timeZone);
+
+        final Map<SyslogMessageParser.Format, Integer> parsedWithoutSyslog4j = new EnumMap<>(SyslogMessageParser.Format.class);
+        for (String line : corpus) {
+            final SyslogMessageParser.Format format = referenceFormat(line);
+            assertThat(SyslogMessageParser.detectFormat(line.getBytes(StandardCharsets.UTF_8))).as(line).isEqualTo(format);
+
+            final Throwable expectedError = catchThrowable(() -> codec.parseWithSyslog4j(line, format, remoteAddress, receivedTimestamp));
+            if (expectedError != null) {
+                assertThatThrownBy(() -> codec.parse(line, remoteAddress, receivedTimestamp)).as(line)
+                        .isInstanceOf(expectedError.getClass());
+                continue;
+            }
+            final long before = System.currentTimeMillis();
+            final Message expected = codec.parseWithSyslog4j(line, format, remoteAddress, receivedTimestamp);
+            final Message actual = codec.parse(line, remoteAddress, receivedTimestamp);
+            final long after = System.currentTimeMillis();
+            assertSameMessage(line, actual, expected, before, after);
+
+            if (fastPathResult(timeZone, expandStructuredData, line, format) != null) {
+                parsedWithoutSyslog4j.merge(format, 1, Integer::sum);
+            }
+        }
+
+        // make sure the corpus actually exercises the hand-written parser
+        assertThat(parsedWithoutSyslog4j.values().stream().mapToInt(Integer::intValue).sum()).isGreaterThan(corpus.size() / 2);
+        assertThat(parsedWithoutSyslog4j).containsOnlyKeys(SyslogMessageParser.Format.values());
+    }
+
+    @Test
+    void decodesOtherCharsetsLikeSyslog4j() {
+        final Charset charset = StandardCharsets.ISO_8859_1;
+        final SyslogCodec codec = new SyslogCodec(new Configuration(Map.of(
+                SyslogCodec.CK_FORCE_RDNS, false,
+                SyslogCodec.CK_ALLOW_OVERRIDE_DATE, true,
+                SyslogCodec.CK_EXPAND_STRUCTURED_DATA, false,
+                SyslogCodec.CK_STORE_FULL_MESSAGE, true,
+                SyslogCodec.CK_TIMEZONE, DropdownField.NOT_CONFIGURED,
+                Codec.Config.CK_CHARSET_NAME, charset.name()
+        )), new MetricRegistry(), new TestMessageFactory());
+
+        for (String line : List.of(
+                "<34>Oct 11 22:14:15 höst ünïcödé méssägé",
+                "<14>1 2024-01-01T00:00:00Z höst app 123 - [id@1 ä=\"ö\"] ünïcödé",
+                "<189>12: Feb 27 2017 06:07:28: %SYS-5-CONFIG_I: ünïcödé",
+                "<45>date=2017-03-06 time=12:53:10 devname=höst msg=\"ünïcödé\"")) {
+            final RawMessage rawMessage = new RawMessage(line.getBytes(charset), new InetSocketAddress(remoteAddress, 514));
+            final long before = System.currentTimeMillis();
+            final Message expected = codec.parseWithSyslog4j(line, SyslogMessageParser.detectFormat(line.getBytes(StandardCharsets.UTF_8)),
+                    remoteAddress, rawMessage.getTimestamp());
+            final Message actual = codec.decodeSafe(rawMessage).orElseThrow();
+            final long after = System.currentTimeMillis();
+            assertSameMessage(line, actual, expected, before, after);
+        }
+    }
+
+    private static void assertSameMessage(String line, Message actual, Message expected, long before, long after) {
+        final Map<String, Object> expectedFields = fields(expected);
+        final Map<String, Object> actualFields = fields(actual);
+        // syslog4j uses the current time for some timestamps it can't parse
+        final long expectedTimestamp = expected.getTimestamp().getMillis();
+        if (expectedTimestamp >= before && expectedTimestamp <= after) {
+            assertThat(actual.getTimestamp().getMillis()).as(line).isBetween(before, after);
+            expectedFields.remove(Message.FIELD_TIMESTAMP);
+            actualFields.remove(Message.FIELD_TIMESTAMP);
+        }
+        assertThat(actualFields).as(line).isEqualTo(expectedFields);
+    }
+
+    private SyslogMessageParser.ParsedSyslog fastPathResult(String timeZone, boolean expand, String line, SyslogMessageParser.Format format) {
+        final DateTimeZone defaultTimeZone = DropdownField.NOT_CONFIGURED.equals(timeZone) ? null : DateTimeZone.forID(timeZone);
+        final SyslogMessageParser parser = new SyslogMessageParser(defaultTimeZone, expand);
+        final byte[] msg = line.getBytes(StandardCharsets.UTF_8);
+        return switch (format) {
+            case STRUCTURED -> parser.parseStructured(msg);
+            case CISCO -> parser.parseCisco(msg);
+            case FORTIGATE -> parser.parseFortiGate(msg);
+            case BSD -> parser.parseBsd(msg);
+        };
+    }
+
+    private SyslogCodec codec(String timeZone, boolean expandStructuredData) {
+        final Configuration configuration = new Configuration(Map.of(
+                SyslogCodec.CK_FORCE_RDNS, false,
+                SyslogCodec.CK_ALLOW_OVERRIDE_DATE, true,
+                SyslogCodec.CK_EXPAND_STRUCTURED_DATA, expandStructuredData,
+                SyslogCodec.CK_STORE_FULL_MESSAGE, true,
+                SyslogCodec.CK_TIMEZONE, timeZone
+        ));
+        return new SyslogCodec(configuration, new MetricRegistry(), new TestMessageFactory());
+    }
+
+    private List<String> corpus(String timeZone) throws IOException {
+        final List<String> corpus = new ArrayList<>();
+        for (String line : Resources.readLines(Resources.getResource(getClass(), "syslog-corpus.txt"), StandardCharsets.UTF_8)) {
+            if (!line.isEmpty() && !line.startsWith("#")) {
+                corpus.add(line);
+            }
+        }
+
+        // every day of the year in all timestamp layouts, including invalid days
+        for (String month : MONTHS) {
+            for (int day = 0; day <= 31; day++) {
+                corpus.add(String.format(Locale.ROOT, "<%d>%s %02d 12:%02d:%02d host app[%d]: two digit day", day % 192, month, day, day, 59 - day, day));
+                corpus.add(String.format(Locale.ROOT, "<%d>%s %2d 12:%02d:%02d host app[%d]: padded day", day % 192, month, day, day, 59 - day, day));
+                corpus.add(String.format(Locale.ROOT, "<%d>%s %d 12:%02d:%02d host app[%d]: single digit day", day % 192, month, day, day, 59 - day, day));
+            }
+        }
+
+        // line terminators, which can't be part of the corpus file
+        for (String terminator : List.of("\n", "\r", "\r\n", "\u0085", "\u2028", "\u2029")) {
+            corpus.add("<45>date=2017-03-06 time=12:53:10 devname=fw" + terminator + "level=notice msg=\"line terminator\"");
+            corpus.add("<45>date=2017-03-06 time=12:53:10 devname=fw level=notice" + terminator);
+            corpus.add("<189>12: Feb 27 2017 06:07:28: %SYS-5-CONFIG_I:" + terminator + "line terminator");
+            corpus.add("<14>1 2024-01-01T00:00:00Z host app 123 - [id@1 a=\"1" + terminator + "\"] line terminator");
+            corpus.add("<34>Oct 11 22:14:15 host line" + terminator + "terminator");
+        }
+
+        // local times within this year's DST transitions of the JVM and the configured time zone
+        final List<ZoneId> zones = new ArrayList<>(List.of(ZoneId.systemDefault()));
+        if (!DropdownField.NOT_CONFIGURED.equals(timeZone)) {
+            zones.add(ZoneId.of(timeZone));
+        }
+        final DateTimeFormatter bsdFormat = DateTimeFormatter.ofPattern("MMM dd HH:mm:ss", Locale.ENGLISH);
+        for (ZoneId zone : zones) {
+            final ZoneRules rules = zone.getRules();
+            ZoneOffsetTransition transition = rules.nextTransition(Year.now(ZoneId.systemDefault()).atDay(1).atStartOfDay(zone).toInstant());
+            while (transition != null && transition.getDateTimeBefore().getYear() == Year.now(ZoneId.systemDefault()).getValue()) {
+                for (LocalDateTime dateTime : List.of(transition.getDateTimeBefore().minusMinutes(1), transition.getDateTimeBefore(),
+                        transition.getDateTimeBefore().plusMinutes(30), transition.getDateTimeAfter(), transition.getDateTimeAfter().plusMinutes(1))) {
+                    corpus.add("<13>" + bsdFormat.format(dateTime) + " host app: around a DST transition");
+                }
+                transition = rules.nextTransition(transition.getInstant());
+            }
+        }
+        return corpus;
+    }
+
+    private static SyslogMessageParser.Format referenceFormat(String msg) {
+        if (STRUCTURED_PATTERN.matcher(msg).matches()) {
+            return SyslogMessageParser.Format.STRUCTURED;
+        } else if (CISCO_PATTERN.matcher(msg).matches()) {
+            return SyslogMessageParser.Format.CISCO;
+        } else if (FORTIGATE_PATTERN.matcher(msg).matches()) {
+            return SyslogMessageParser.Format.FORTIGATE;
+        }
+        return SyslogMessageParser.Format.BSD;
+    }
+
+    private static Map<String, Object> fields(Message message) {
+        final Map<String, Object> fields = new HashMap<>(message.getFields());
+        fields.remove(Message.FIELD_ID);
+        return fields;
+    }
+}
@@ -155,6 +155,7 @@ public class SyslogCodecTest {
     public void testDecodeStructuredWithFullMessage() {
         when(configuration.getBoolean(SyslogCodec.CK_STORE_FULL_MESSAGE)).thenReturn(true);
 
+        final SyslogCodec codec = new SyslogCodec(configuration, metricRegistry, messageFactory);
         final Message message = codec.decodeSafe(buildRawMessage(STRUCTURED)).get();
 
         assertNotNull(message);
@@ -215,6 +216,7 @@ public class SyslogCodecTest {
     public void testDecodeUnstructuredWithFullMessage() {
         when(configuration.getBoolean(SyslogCodec.CK_STORE_FULL_MESSAGE)).thenReturn(true);
 
+        final SyslogCodec codec = new SyslogCodec(configuration, metricRegistry, messageFactory);
         final Message message = codec.decodeSafe(buildRawMessage(UNSTRUCTURED)).get();
 
         assertNotNull(message);
@@ -16,9 +16,13 @@
  */
 package org.graylog2.inputs.codecs.gelf;
 
+import com.google.common.io.ByteStreams;
 import org.graylog2.inputs.TestHelper;
 import org.junit.Test;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
@@ -79,6 +83,30 @@ public class GELFMessageTest {
         assertEquals(GELF_JSON, msg.getJSON(1024));
     }
 
+    @Test
+    public void testGetJSONStreamFromCompressedMessages() throws Exception {
+        final byte[][] payloads = {
+                TestHelper.zlibCompress(GELF_JSON),
+                TestHelper.gzipCompress(GELF_JSON),
+                GELF_JSON.getBytes(StandardCharsets.UTF_8)
+        };
+        for (byte[] payload : payloads) {
+            try (InputStream in = new GELFMessage(payload).getJSONStream(1024)) {
+                assertEquals(GELF_JSON, new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void testGetJSONStreamLimitsDecompressedSize() throws Exception {
+        for (byte[] payload : new byte[][]{TestHelper.zlibCompress(GELF_JSON), TestHelper.gzipCompress(GELF_JSON)}) {
+            final GELFMessage msg = new GELFMessage(payload);
+            try (InputStream in = msg.getJSONStream(10)) {
+                assertEquals(msg.getJSON(10), new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
     @Test
     public void testGetJSONFromUncompressedMessage() throws Exception {
         byte[] text = GELF_JSON.getBytes("UTF-8");
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.codecs.gelf;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.primitives.Bytes;
+import org.graylog2.inputs.TestHelper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InflatingPayloadInputStreamTest {
+    private static final String JSON = "{\"short_message\":\"foobar\",\"host\":\"example.com\",\"_utf8\":\"ü\"}";
+
+    @Test
+    void inflatesLikeTheJdkStreams() throws IOException {
+        final byte[] data = new byte[100_000];
+        new Random(42).nextBytes(data);
+        // Make the data compressible, so the inflater runs through several rounds.
+        Arrays.fill(data, 10_000, 60_000, (byte) 'x');
+        final String text = new String(data, StandardCharsets.ISO_8859_1);
+
+        final byte[] gzip = TestHelper.gzipCompress(text);
+        try (InputStream in = InflatingPayloadInputStream.gzip(gzip, Long.MAX_VALUE)) {
+            assertThat(ByteStreams.toByteArray(in)).isEqualTo(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzip))));
+        }
+        try (InputStream in = InflatingPayloadInputStream.zlib(TestHelper.zlibCompress(text), Long.MAX_VALUE)) {
+            assertThat(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8)).isEqualTo(text);
+        }
+    }
+
+    @Test
+    void limitsDecompressedBytes() throws IOException {
+        try (InputStream in = InflatingPayloadInputStream.zlib(TestHelper.zlibCompress(JSON), 10)) {
+            assertThat(ByteStreams.toByteArray(in)).isEqualTo(Arrays.copyOf(JSON.getBytes(StandardCharsets.UTF_8), 10));
+            assertThat(in.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void readsConcatenatedGzipMembersAndIgnoresTrailingGarbage() throws IOException {
+        final byte[] payload = Bytes.concat(TestHelper.gzipCompress("foo"), TestHelper.gzipCompress("bar"), new byte[]{1, 2, 3});
+
+        try (InputStream in = InflatingPayloadInputStream.gzip(payload, Long.MAX_VALUE)) {
+            assertThat(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8)).isEqualTo("foobar");
+        }
+    }
+
+    @Test
+    void skipsOptionalGzipHeaderFields() throws IOException {
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        // FHCRC | FEXTRA | FNAME | FCOMMENT
+        header.writeBytes(new byte[]{0x1f, (byte) 0x8b, 8, 2 | 4 | 8 | 16, 0, 0, 0, 0, 0, 3});
+        header.writeBytes(new byte[]{3, 0, 'a', 'b', 'c'});
+        header.writeBytes("name.json\0".getBytes(StandardCharsets.ISO_8859_1));
+        header.writeBytes("comment\0".getBytes(StandardCharsets.ISO_8859_1));
+        final CRC32 headerCrc = new CRC32();
+        headerCrc.update(header.toByteArray());
+        header.write((int) headerCrc.getValue());
+        header.write((int) (headerCrc.getValue() >> 8));
+
+        final byte[] payload = Bytes.concat(header.toByteArray(), deflateRaw(JSON), trailer(JSON));
+
+        try (InputStream in = InflatingPayloadInputStream.gzip(payload, Long.MAX_VALUE)) {
+            assertThat(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8)).isEqualTo(JSON);
+        }
+        assertThat(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(payload))))
+                .isEqualTo(JSON.getBytes(StandardCharsets.UTF_8));
+
+        payload[header.size() - 1]++;
+        assertThatThrownBy(() -> InflatingPayloadInputStream.gzip(payload, Long.MAX_VALUE))
+                .isInstanceOf(ZipException.class)
+                .hasMessage("Corrupt GZIP header");
+    }
+
+    @Test
+    void failsOnCorruptOrTruncatedPayloads() throws IOException {
+        final byte[] gzip = TestHelper.gzipCompress(JSON);
+        gzip[gzip.length - 5]++;
+        assertThatThrownBy(() -> ByteStreams.toByteArray(InflatingPayloadInputStream.gzip(gzip, Long.MAX_VALUE)))
+                .isInstanceOf(ZipException.class)
+                .hasMessage("Corrupt GZIP trailer");
+
+        final byte[] zlib = TestHelper.zlibCompress(JSON);
+        assertThatThrownBy(() -> ByteStreams.toByteArray(InflatingPayloadInputStream.zlib(Arrays.copyOf(zlib, zlib.length / 2), Long.MAX_VALUE)))
+                .isInstanceOf(EOFException.class);
+
+        final byte[] garbage = zlib.clone();
+        Arrays.fill(garbage, 2, garbage.length, (byte) 0xff);
+        assertThatThrownBy(() -> ByteStreams.toByteArray(InflatingPayloadInputStream.zlib(garbage, Long.MAX_VALUE)))
+                .isInstanceOf(ZipException.class);
+    }
+
+    @Test
+    void reusesInflaterAfterClose() throws IOException {
+        final byte[] zlib = TestHelper.zlibCompress(JSON);
+
+        // Leave the first stream half-read, so the pooled inflater is still in the middle of the payload.
+        final InputStream first = InflatingPayloadInputStream.zlib(zlib, Long.MAX_VALUE);
+        assertThat(first.read()).isEqualTo('{');
+        try (InputStream nested = InflatingPayloadInputStream.zlib(zlib, Long.MAX_VALUE)) {
+            assertThat(new String(ByteStreams.toByteArray(nested), StandardCharsets.UTF_8)).isEqualTo(JSON);
+        }
+        assertThat(new String(ByteStreams.toByteArray(first), StandardCharsets.UTF_8)).isEqualTo(JSON.substring(1));
+        first.close();
+
+        for (int i = 0; i < 3; i++) {
+            try (InputStream in = InflatingPayloadInputStream.zlib(zlib, Long.MAX_VALUE)) {
+                assertThat(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8)).isEqualTo(JSON);
+            }
+        }
+        assertThatThrownBy(first::read).isInstanceOf(IOException.class).hasMessage("Stream closed");
+    }
+
+    private static byte[] deflateRaw(String text) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+        deflater.finish();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        deflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] trailer(String text) {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final CRC32 crc = new CRC32();
+        crc.update(bytes);
+        final long value = crc.getValue();
+        return new byte[]{
+                (byte) value, (byte) (value >> 8), (byte) (value >> 16), (byte) (value >> 24),
+                (byte) bytes.length, (byte) (bytes.length >> 8), (byte) (bytes.length >> 16), (byte) (bytes.length >> 24)
+        };
+    }
+}
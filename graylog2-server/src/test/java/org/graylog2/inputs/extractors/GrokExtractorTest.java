@@ -27,6 +27,7 @@ import org.graylog2.grok.InMemoryGrokPatternService;
 import org.graylog2.plugin.LocalMetricRegistry;
 import org.graylog2.plugin.inputs.Extractor;
 import org.graylog2.shared.SuppressForbidden;
+import org.graylog2.utilities.CompiledPatternCache;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Before;
@@ -229,7 +230,7 @@ public class GrokExtractorTest {
         } catch (Exception e) {
             fail("Could not save grok patter: " + e.getMessage());
         }
-        final GrokPatternRegistry grokPatternRegistry = new GrokPatternRegistry(clusterBus, grokPatternService, Executors.newScheduledThreadPool(1));
+        final GrokPatternRegistry grokPatternRegistry = new GrokPatternRegistry(clusterBus, grokPatternService, CompiledPatternCache.create(), false);
 
         try {
             return new GrokExtractor(new LocalMetricRegistry(),
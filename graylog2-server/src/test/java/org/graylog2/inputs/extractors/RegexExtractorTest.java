@@ -22,6 +22,7 @@ import org.graylog2.plugin.MessageFactory;
 import org.graylog2.plugin.TestMessageFactory;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.inputs.Extractor;
+import org.graylog2.utilities.CompiledPatternCache;
 import org.junit.Test;
 
 import java.util.Collections;
@@ -33,6 +34,7 @@ import static org.junit.Assert.assertNull;
 
 public class RegexExtractorTest extends AbstractExtractorTest {
     private final MessageFactory messageFactory = new TestMessageFactory();
+    private final CompiledPatternCache patternCache = CompiledPatternCache.create();
 
     @Test
     public void testBasicExtraction() throws Exception {
@@ -40,7 +42,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
         msg.addField("somefield", "<10> 07 Aug 2013 somesubsystem: this is my message for username9001 id:9001");
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
 
         assertNotNull(msg.getField("our_result"));
@@ -54,7 +56,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
         msg.addField("somefield", "<10> 07 Aug 2013 somesubsystem: this is my message for username9001 id:9001");
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
 
         assertNotNull(msg.getField("our_result"));
@@ -66,7 +68,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
     public void testBasicExtractionWithCutStrategyCanOverwriteSameField() throws Exception {
         Message msg = messageFactory.createMessage("The short message", "TestUnit", Tools.nowUTC());
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "message", "message", config("The (.+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "message", "message", config("The (.+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
 
         assertEquals("short message", msg.getField("message"));
@@ -78,7 +80,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
         msg.addField("somefield", "<10> 07 Aug 2013 somesubsystem: this is my message for username9001 id:9001");
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("nothing:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("nothing:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
 
         assertNull(msg.getField("our_result"));
@@ -91,7 +93,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
         msg.addField("somefield", "<10> 07 Aug 2013 somesubsystem: this is my message for username9001 id:9001");
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "our_result", config("nothing:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "our_result", config("nothing:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
 
         assertNull(msg.getField("our_result"));
@@ -104,7 +106,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
         msg.addField("somefield", "<10> 07 Aug 2013 somesubsystem: this is my message for username9001 id:9001 lolwut");
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("id:(\\d+).*(lolwut)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("id:(\\d+).*(lolwut)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
 
         assertNotNull(msg.getField("our_result"));
@@ -116,7 +118,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
     public void testDoesNotFailOnNonExistentSourceField() throws Exception {
         Message msg = messageFactory.createMessage("The short message", "TestUnit", Tools.nowUTC());
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "LOLIDONTEXIST", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "LOLIDONTEXIST", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
     }
 
@@ -126,7 +128,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
         msg.addField("somefield", 9001);
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
     }
 
@@ -136,7 +138,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
         msg.addField("somefield", "<10> 07 Aug 2013 somesubsystem: this is my message for username9001 id:9001");
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "our_result", config("(.*)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "our_result", config("(.*)"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
 
         assertNotNull(msg.getField("our_result"));
@@ -145,17 +147,17 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
     @Test(expected = ConfigurationException.class)
     public void testDoesNotInitializeOnNullConfigMap() throws Exception {
-        new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "somefield", null, "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "somefield", null, "foo", noConverters(), Extractor.ConditionType.NONE, null);
     }
 
     @Test(expected = ConfigurationException.class)
     public void testDoesNotInitializeOnNullRegexValue() throws Exception {
-        new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "somefield", config(null), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "somefield", config(null), "foo", noConverters(), Extractor.ConditionType.NONE, null);
     }
 
     @Test(expected = ConfigurationException.class)
     public void testDoesNotInitializeOnEmptyRegexValue() throws Exception {
-        new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "somefield", config(""), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "somefield", "somefield", config(""), "foo", noConverters(), Extractor.ConditionType.NONE, null);
     }
 
     @Test
@@ -164,7 +166,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
         msg.addField("somefield", "<10> 07 Aug 2013 somesubsystem: this is my message for username9001 id:9001");
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.REGEX, "^XXX");
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.REGEX, "^XXX");
         x.runExtractor(msg);
 
         assertNull(msg.getField("our_result"));
@@ -177,7 +179,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
 
         msg.addField("somefield", "<10> 07 Aug 2013 somesubsystem: this is my message for username9001 id:9001");
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.STRING, "FOOBAR");
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.COPY, "somefield", "our_result", config("id:(\\d+)"), "foo", noConverters(), Extractor.ConditionType.STRING, "FOOBAR");
         x.runExtractor(msg);
 
         assertNull(msg.getField("our_result"));
@@ -188,7 +190,7 @@ public class RegexExtractorTest extends AbstractExtractorTest {
     public void testDoesNotCutFromStandardFields() throws Exception {
         Message msg = messageFactory.createMessage("The short message", "TestUnit", Tools.nowUTC());
 
-        RegexExtractor x = new RegexExtractor(metricRegistry, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "message", "our_result", config("^(The).+"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
+        RegexExtractor x = new RegexExtractor(metricRegistry, patternCache, "foo", "foo", 0, Extractor.CursorStrategy.CUT, "message", "our_result", config("^(The).+"), "foo", noConverters(), Extractor.ConditionType.NONE, null);
         x.runExtractor(msg);
 
         // Would be cut to "short message" if cutting from standard field was allowed.
@@ -24,6 +24,7 @@ import org.graylog2.plugin.TestMessageFactory;
 import org.graylog2.plugin.Tools;
 import org.graylog2.plugin.inputs.Converter;
 import org.graylog2.plugin.inputs.Extractor;
+import org.graylog2.utilities.CompiledPatternCache;
 import org.junit.Test;
 
 import java.util.Collections;
@@ -32,11 +33,13 @@ import static org.assertj.core.api.Assertions.assertThat;
 
 public class RegexReplaceExtractorTest extends AbstractExtractorTest {
     private final MessageFactory messageFactory = new TestMessageFactory();
+    private final CompiledPatternCache patternCache = CompiledPatternCache.create();
 
     @Test(expected = ConfigurationException.class)
     public void testConstructorWithMissingRegex() throws Exception {
         new RegexReplaceExtractor(
                 metricRegistry,
+                patternCache,
                 "id",
                 "title",
                 0L,
@@ -54,6 +57,7 @@ public class RegexReplaceExtractorTest extends AbstractExtractorTest {
     public void testConstructorWithNonStringRegex() throws Exception {
         new RegexReplaceExtractor(
                 metricRegistry,
+                patternCache,
                 "id",
                 "title",
                 0L,
@@ -71,6 +75,7 @@ public class RegexReplaceExtractorTest extends AbstractExtractorTest {
     public void testConstructorWithNonStringReplacement() throws Exception {
         new RegexReplaceExtractor(
                 metricRegistry,
+                patternCache,
                 "id",
                 "title",
                 0L,
@@ -89,6 +94,7 @@ public class RegexReplaceExtractorTest extends AbstractExtractorTest {
         final Message message = messageFactory.createMessage("Test", "source", Tools.nowUTC());
         final RegexReplaceExtractor extractor = new RegexReplaceExtractor(
                 metricRegistry,
+                patternCache,
                 "id",
                 "title",
                 0L,
@@ -110,6 +116,7 @@ public class RegexReplaceExtractorTest extends AbstractExtractorTest {
         final Message message = messageFactory.createMessage("Test Foobar", "source", Tools.nowUTC());
         final RegexReplaceExtractor extractor = new RegexReplaceExtractor(
                 metricRegistry,
+                patternCache,
                 "id",
                 "title",
                 0L,
@@ -131,6 +138,7 @@ public class RegexReplaceExtractorTest extends AbstractExtractorTest {
         final Message message = messageFactory.createMessage("Foobar 123", "source", Tools.nowUTC());
         final RegexReplaceExtractor extractor = new RegexReplaceExtractor(
                 metricRegistry,
+                patternCache,
                 "id",
                 "title",
                 0L,
@@ -150,6 +158,7 @@ public class RegexReplaceExtractorTest extends AbstractExtractorTest {
         final Message message = messageFactory.createMessage("Foobar 123", "source", Tools.nowUTC());
         final RegexReplaceExtractor extractor = new RegexReplaceExtractor(
                 metricRegistry,
+                patternCache,
                 "id",
                 "title",
                 0L,
@@ -171,6 +180,7 @@ public class RegexReplaceExtractorTest extends AbstractExtractorTest {
         final Message message = messageFactory.createMessage("Foobar 123 Foobaz 456", "source", Tools.nowUTC());
         final RegexReplaceExtractor extractor = new RegexReplaceExtractor(
                 metricRegistry,
+                patternCache,
                 "id",
                 "title",
                 0L,
@@ -192,6 +202,7 @@ public class RegexReplaceExtractorTest extends AbstractExtractorTest {
         final Message message = messageFactory.createMessage("Foobar 123 Foobaz 456", "source", Tools.nowUTC());
         final RegexReplaceExtractor extractor = new RegexReplaceExtractor(
                 metricRegistry,
+                patternCache,
                 "id",
                 "title",
                 0L,
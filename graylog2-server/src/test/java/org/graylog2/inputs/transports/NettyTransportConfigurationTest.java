@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.inputs.transports;
+
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.kqueue.KQueue;
+import org.graylog2.inputs.transports.netty.DatagramChannelFactory;
+import org.graylog2.inputs.transports.netty.IOUringTransport;
+import org.graylog2.inputs.transports.netty.NettyTransportType;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class NettyTransportConfigurationTest {
+    @Test
+    void resolvesConfiguredTransportType() {
+        assertThat(new NettyTransportConfiguration("nio", "jdk", 1).getType()).isEqualTo(NettyTransportType.NIO);
+        assertThat(new NettyTransportConfiguration("EPOLL", "jdk", 1).getType()).isEqualTo(NettyTransportType.EPOLL);
+        assertThat(new NettyTransportConfiguration("kqueue", "jdk", 1).getType()).isEqualTo(NettyTransportType.KQUEUE);
+        assertThat(new NettyTransportConfiguration("auto", "jdk", 1).getType()).isEqualTo(detectedType());
+    }
+
+    @Test
+    void fallsBackFromUnavailableIOUring() {
+        assumeFalse(IOUringTransport.isAvailable(), "io_uring transport is available");
+
+        assertThat(IOUringTransport.unavailabilityCause()).isNotNull();
+        assertThat(new NettyTransportConfiguration("io_uring", "jdk", 1).getType()).isEqualTo(detectedType());
+        assertThatThrownBy(() -> new DatagramChannelFactory(NettyTransportType.IO_URING).newChannel())
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("io_uring transport is not available");
+    }
+
+    @Test
+    void usesAvailableIOUring() {
+        assumeTrue(IOUringTransport.isAvailable(), "io_uring transport is not available");
+
+        assertThat(new NettyTransportConfiguration("io_uring", "jdk", 1).getType()).isEqualTo(NettyTransportType.IO_URING);
+    }
+
+    private static NettyTransportType detectedType() {
+        if (Epoll.isAvailable()) {
+            return NettyTransportType.EPOLL;
+        } else if (KQueue.isAvailable()) {
+            return NettyTransportType.KQUEUE;
+        }
+        return NettyTransportType.NIO;
+    }
+}
@@ -166,6 +166,14 @@ public class UdpTransportTest {
         assertThat(udpTransport.getMetricSet()).isSameAs(localMetricRegistry);
     }
 
+    @Test
+    public void transportTypeGaugeReportsResolvedTransportType() {
+        final Gauge<?> gauge = localMetricRegistry.getGauges().get("transport_type");
+
+        assertThat(gauge).isNotNull();
+        assertThat(gauge.getValue()).isEqualTo("nio");
+    }
+
     @Test
     public void testDefaultReceiveBufferSize() {
         final UdpTransport.Config config = new UdpTransport.Config();
@@ -16,7 +16,10 @@
  */
 package org.graylog2.inputs.transports.netty;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.embedded.EmbeddedChannel;
 import org.graylog2.plugin.ResolvableInetSocketAddress;
 import org.graylog2.plugin.inputs.MessageInput;
@@ -79,4 +82,39 @@ public class RawMessageHandlerTest {
         final ResolvableInetSocketAddress expected = ResolvableInetSocketAddress.wrap(new InetSocketAddress("3.3.3.3", 0));
         assertThat(actual).isEqualTo(expected);
     }
+
+    @Test
+    void retainsCompactPayloadBuffer() {
+        final MessageInput input = mock(MessageInput.class);
+        final EmbeddedChannel channel = new EmbeddedChannel(new RawMessageHandler(input)) {
+            @Override
+            protected SocketAddress remoteAddress0() {
+                return new InetSocketAddress("6.6.6.6", 0);
+            }
+        };
+
+        final ByteBuf buffer = Unpooled.wrappedBuffer(new byte[]{1, 2, 3});
+        channel.writeInbound(buffer);
+        channel.finish();
+        ArgumentCaptor<RawMessage> captor = ArgumentCaptor.forClass(RawMessage.class);
+        verify(input).processRawMessage(captor.capture());
+        final RawMessage rawMessage = captor.getValue();
+
+        assertThat(buffer.refCnt()).isEqualTo(1);
+        assertThat(rawMessage.hasPayloadBuffer()).isTrue();
+        assertThat(rawMessage.getPayload()).containsExactly(1, 2, 3);
+        assertThat(buffer.refCnt()).isZero();
+    }
+
+    @Test
+    void copiesSmallPartOfLargeBuffer() {
+        final ByteBuf buffer = Unpooled.buffer(1024).writeBytes(new byte[]{1, 2, 3});
+
+        final ByteBuf payload = RawMessageHandler.retainedPayload(UnpooledByteBufAllocator.DEFAULT, buffer);
+
+        assertThat(payload.capacity()).isEqualTo(3);
+        assertThat(ByteBufUtil.getBytes(payload)).containsExactly(1, 2, 3);
+        assertThat(buffer.refCnt()).isEqualTo(1);
+        payload.release();
+    }
 }
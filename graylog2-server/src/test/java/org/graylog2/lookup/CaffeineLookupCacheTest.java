@@ -27,18 +27,32 @@ import org.graylog2.plugin.lookup.LookupCache;
 import org.graylog2.plugin.lookup.LookupCacheConfiguration;
 import org.graylog2.plugin.lookup.LookupCacheKey;
 import org.graylog2.plugin.lookup.LookupResult;
+import org.graylog2.shared.SuppressForbidden;
 import org.junit.Rule;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.graylog2.plugin.lookup.LookupResult.DEFAULT_ERROR_LOOKUP_RESULT;
 import static org.graylog2.plugin.lookup.LookupResult.EMPTY_LOOKUP_RESULT;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class CaffeineLookupCacheTest {
@@ -138,6 +152,127 @@ public class CaffeineLookupCacheTest {
         Assertions.assertThat(value3.cacheTTL()).isEqualTo(999);
     }
 
+    @Test
+    public void getAllLoadsMissingKeysAtOnce() throws Exception {
+        LookupCache cache = buildCache(false);
+        final LookupCacheKey cachedKey = LookupCacheKey.createFromJSON("x", "cached");
+        when(loader.call()).thenReturn(LookupResult.single("c"));
+        cache.get(cachedKey, loader);
+
+        final List<Collection<LookupCacheKey>> loads = new ArrayList<>();
+        final LookupCacheKey keyA = LookupCacheKey.createFromJSON("x", "a");
+        final LookupCacheKey keyB = LookupCacheKey.createFromJSON("x", "b");
+        final Map<LookupCacheKey, LookupResult> results = cache.getAll(List.of(cachedKey, keyA, keyB), keys -> {
+            loads.add(Set.copyOf(keys));
+            // no result for key b
+            return Map.of(keyA, LookupResult.single("a"));
+        });
+
+        Assertions.assertThat(loads).containsExactly(Set.of(keyA, keyB));
+        Assertions.assertThat(results.get(cachedKey).singleValue()).isEqualTo("c");
+        Assertions.assertThat(results.get(keyA).singleValue()).isEqualTo("a");
+        Assertions.assertThat(results.get(keyB).isEmpty()).isTrue();
+
+        // all keys are cached now
+        Assertions.assertThat(cache.getAll(List.of(keyA, keyB), keys -> {
+            throw new AssertionError("Unexpected load of " + keys);
+        })).containsOnlyKeys(keyA, keyB);
+    }
+
+    @Test
+    public void getAllReturnsErrorsForFailedLoads() {
+        LookupCache cache = buildCache(false);
+        final LookupCacheKey key = LookupCacheKey.createFromJSON("x", "a");
+
+        final Map<LookupCacheKey, LookupResult> results = cache.getAll(List.of(key), keys -> {
+            throw new IllegalStateException("Boom");
+        });
+
+        Assertions.assertThat(results.get(key).hasError()).isTrue();
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    @Test
+    public void refreshServesStaleResultWhileReloading() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        List<Runnable> refreshes = new ArrayList<>();
+        MetricRegistry metricRegistry = new MetricRegistry();
+        LookupCache cache = buildRefreshingCache(metricRegistry, ticker::read, refreshes::add);
+        LookupCacheKey key = LookupCacheKey.createFromJSON("x", "y");
+        when(loader.call()).thenReturn(LookupResult.single("x1")).thenReturn(LookupResult.single("x2"));
+
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x1");
+
+        ticker.advance(11, TimeUnit.SECONDS);
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x1");
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x1");
+        // Both stale reads are served from the cache, but only one of them triggers a reload
+        Assertions.assertThat(refreshes).hasSize(1);
+        verify(loader, times(1)).call();
+
+        refreshes.get(0).run();
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x2");
+        Assertions.assertThat(metricRegistry.meter("org.graylog2.lookup.caches.id.staleServed").getCount()).isEqualTo(2);
+        Assertions.assertThat(metricRegistry.timer("org.graylog2.lookup.caches.id.refreshTime").getCount()).isEqualTo(1);
+
+        // The refreshed result starts a new refresh interval
+        ticker.advance(5, TimeUnit.SECONDS);
+        cache.get(key, loader);
+        Assertions.assertThat(refreshes).hasSize(1);
+    }
+
+    @SuppressWarnings("UnstableApiUsage")
+    @Test
+    public void refreshKeepsStaleResultOnFailure() throws Exception {
+        FakeTicker ticker = new FakeTicker();
+        List<Runnable> refreshes = new ArrayList<>();
+        LookupCache cache = buildRefreshingCache(new MetricRegistry(), ticker::read, refreshes::add);
+        LookupCacheKey key = LookupCacheKey.createFromJSON("x", "y");
+        when(loader.call()).thenReturn(LookupResult.single("x1")).thenReturn(LookupResult.withError());
+
+        cache.get(key, loader);
+        ticker.advance(11, TimeUnit.SECONDS);
+        cache.get(key, loader);
+        refreshes.get(0).run();
+
+        Assertions.assertThat(cache.get(key, loader).singleValue()).isEqualTo("x1");
+        // The failed refresh is retried after another refresh interval
+        Assertions.assertThat(refreshes).hasSize(1);
+        ticker.advance(11, TimeUnit.SECONDS);
+        cache.get(key, loader);
+        Assertions.assertThat(refreshes).hasSize(2);
+    }
+
+    @Test
+    @SuppressForbidden("Allow using default thread factory")
+    public void coalescesConcurrentMisses() throws Exception {
+        LookupCache cache = buildCache(false);
+        LookupCacheKey key = LookupCacheKey.createFromJSON("x", "y");
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Callable<LookupResult> slowLoader = () -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return LookupResult.single("x");
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<LookupResult> first = executor.submit(() -> cache.get(key, slowLoader));
+            loading.await();
+            Future<LookupResult> second = executor.submit(() -> cache.get(key, slowLoader));
+            release.countDown();
+
+            Assertions.assertThat(first.get(10, TimeUnit.SECONDS).singleValue()).isEqualTo("x");
+            Assertions.assertThat(second.get(10, TimeUnit.SECONDS).singleValue()).isEqualTo("x");
+            Assertions.assertThat(loads).hasValue(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
     private LookupCache buildCache(boolean ignoreNull) {
         when(registry.timer(anyString())).thenReturn(lookupTimer);
         when(registry.meter(anyString())).thenReturn(meter);
@@ -169,4 +304,18 @@ public class CaffeineLookupCacheTest {
                 .build();
         return new CaffeineLookupCache("id", "name", config, registry, ticker);
     }
+
+    private LookupCache buildRefreshingCache(MetricRegistry metricRegistry, Ticker ticker, Executor refreshExecutor) {
+        CaffeineLookupCache.Config config = CaffeineLookupCache.Config.builder()
+                .type(CaffeineLookupCache.NAME)
+                .maxSize(1000)
+                .expireAfterAccess(0)
+                .expireAfterWrite(60)
+                .expireAfterWriteUnit(TimeUnit.SECONDS)
+                .refreshAfterWrite(10L)
+                .refreshAfterWriteUnit(TimeUnit.SECONDS)
+                .ignoreNull(false)
+                .build();
+        return new CaffeineLookupCache("id", "name", config, metricRegistry, ticker, refreshExecutor);
+    }
 }
@@ -22,8 +22,10 @@ import com.google.common.io.Resources;
 import org.graylog2.lookup.AllowedAuxiliaryPathChecker;
 import org.graylog2.plugin.lookup.LookupCachePurge;
 import org.graylog2.plugin.lookup.LookupResult;
+import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnit;
 import org.mockito.junit.MockitoRule;
@@ -31,6 +33,7 @@ import org.mockito.junit.MockitoRule;
 import java.net.URL;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -49,11 +52,15 @@ public class CSVFileDataAdapterTest {
     @Rule
     public MockitoRule rule = MockitoJUnit.rule();
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private final Path csvFile;
     private final Path cidrLookupFile;
     private final Path multiValueLookupFile;
     private final Path multiValueCidrFile;
     private CSVFileDataAdapter csvFileDataAdapter;
+    private Path storeDir;
 
     @Mock
     AllowedAuxiliaryPathChecker pathChecker;
@@ -78,10 +85,15 @@ public class CSVFileDataAdapterTest {
         this.multiValueCidrFile = Paths.get(multiValueCidrResource.toURI());
     }
 
+    @Before
+    public void setUp() throws Exception {
+        storeDir = temporaryFolder.newFolder().toPath();
+    }
+
     @Test
     public void doGet_successfully_returns_values() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, storeDir));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
@@ -102,7 +114,7 @@ public class CSVFileDataAdapterTest {
                                     .checkInterval(60)
                                     .caseInsensitiveLookup(false)
                                     .build();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, storeDir));
         when(pathChecker.fileIsInAllowedPath((isA(Path.class)))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
@@ -115,7 +127,7 @@ public class CSVFileDataAdapterTest {
     public void doGet_failure_filePathInvalid() throws Exception {
         final Config config = baseConfig();
         when(pathChecker.fileIsInAllowedPath((isA(Path.class)))).thenReturn(false);
-        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker);
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, storeDir);
         assertThatThrownBy(() -> csvFileDataAdapter.doStart())
                 .isExactlyInstanceOf(IllegalStateException.class)
                 .hasMessageStartingWith(CSVFileDataAdapter.ALLOWED_PATH_ERROR);
@@ -124,7 +136,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void refresh_success() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, storeDir));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true).thenReturn(true);
         csvFileDataAdapter.doStart();
         csvFileDataAdapter.doRefresh(cachePurge);
@@ -134,7 +146,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void refresh_failure_disallowedFileLocation() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, storeDir));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true).thenReturn(false);
         csvFileDataAdapter.doStart();
         csvFileDataAdapter.doRefresh(cachePurge);
@@ -147,7 +159,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void refresh_failure_success() throws Exception {
         final Config config = baseConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, storeDir));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true).thenReturn(false);
         csvFileDataAdapter.doStart();
         csvFileDataAdapter.doRefresh(cachePurge);
@@ -239,7 +251,7 @@ public class CSVFileDataAdapterTest {
     @Test
     public void testCIDRLookups() throws Exception {
         final Config config = cidrLookupConfig();
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, storeDir));
         when(pathChecker.fileIsInAllowedPath((isA(Path.class)))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
@@ -261,7 +273,7 @@ public class CSVFileDataAdapterTest {
 
     @Test
     public void testMultiValueLookups() throws Exception {
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", multiValueConfig(), new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", multiValueConfig(), new MetricRegistry(), pathChecker, storeDir));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
@@ -294,7 +306,7 @@ public class CSVFileDataAdapterTest {
 
     @Test
     public void testMultiValueCIDRLookups() throws Exception {
-        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", multiValueCidrConfig(), new MetricRegistry(), pathChecker));
+        csvFileDataAdapter = spy(new CSVFileDataAdapter("id", "name", multiValueCidrConfig(), new MetricRegistry(), pathChecker, storeDir));
         when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
         csvFileDataAdapter.doStart();
 
@@ -325,6 +337,67 @@ public class CSVFileDataAdapterTest {
         assertThat(csvFileDataAdapter.doGet("8.8.8.8")).isEqualTo(LookupResult.empty());
     }
 
+    @Test
+    public void doGet_successfully_returns_values_from_memory_mapped_store() throws Exception {
+        final Config config = Config.builder()
+                .type(NAME)
+                .path(csvFile.toString())
+                .separator(",")
+                .quotechar("\"")
+                .keyColumn("key")
+                .valueColumn("value")
+                .checkInterval(60)
+                .caseInsensitiveLookup(false)
+                .memoryMapped(true)
+                .build();
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, storeDir);
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        csvFileDataAdapter.doStart();
+
+        assertThat(csvFileDataAdapter.doGet("foo")).isEqualTo(LookupResult.single("23"));
+        assertThat(csvFileDataAdapter.doGet("bar")).isEqualTo(LookupResult.single("42"));
+        assertThat(csvFileDataAdapter.doGet("quux")).isEqualTo(LookupResult.empty());
+        assertThat(csvFileDataAdapter.getPreview(10).results())
+                .containsEntry("foo", "23")
+                .containsEntry("bar", "42");
+        assertThat(storeDir).isDirectoryContaining(path -> path.getFileName().toString().startsWith("csvfile-id-"));
+
+        csvFileDataAdapter.doRefresh(cachePurge);
+        assertThat(csvFileDataAdapter.doGet("foo")).isEqualTo(LookupResult.single("23"));
+
+        csvFileDataAdapter.doStop();
+        assertThat(storeDir).isEmptyDirectory();
+    }
+
+    @Test
+    public void testMultiValueLookupsFromMemoryMappedStore() throws Exception {
+        final Config config = Config.builder()
+                .type(NAME)
+                .path(multiValueLookupFile.toString())
+                .separator(",")
+                .quotechar("\"")
+                .keyColumn("user_id")
+                .valueColumn("")
+                .checkInterval(60)
+                .caseInsensitiveLookup(false)
+                .multiValueLookup(true)
+                .memoryMapped(true)
+                .build();
+        csvFileDataAdapter = new CSVFileDataAdapter("id", "name", config, new MetricRegistry(), pathChecker, storeDir);
+        when(pathChecker.fileIsInAllowedPath(isA(Path.class))).thenReturn(true);
+        csvFileDataAdapter.doStart();
+
+        final Map<Object, Object> result = csvFileDataAdapter.doGet("000005").multiValue();
+        assertThat(result)
+                .containsEntry("first_name", "Mason")
+                .containsEntry("last_name", "Johnson")
+                .containsEntry("username", "mjohnson")
+                .containsEntry("phone", "880-1222")
+                .containsEntry("address", "4000 2nd St");
+        assertThat(csvFileDataAdapter.doGet("999999")).isEqualTo(LookupResult.empty());
+        assertThat(csvFileDataAdapter.getPreview(100).total()).isEqualTo(10);
+    }
+
     private Config baseConfig() {
         return Config.builder()
                 .type(NAME)
@@ -16,11 +16,22 @@
  */
 package org.graylog2.lookup.adapters;
 
+import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.floreysoft.jmte.Engine;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.jayway.jsonpath.JsonPath;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.graylog2.lookup.dto.DataAdapterDto;
+import org.graylog2.notifications.NotificationService;
 import org.graylog2.plugin.lookup.LookupResult;
+import org.graylog2.system.urlwhitelist.UrlWhitelistNotificationService;
+import org.graylog2.system.urlwhitelist.UrlWhitelistService;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -28,10 +39,14 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.entry;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class HTTPJSONPathDataAdapterTest {
     private static Map<Object, Object> JSON = ImmutableMap.of(
@@ -96,4 +111,54 @@ public class HTTPJSONPathDataAdapterTest {
 
         assertThat(result).isNull();
     }
+
+    @Test
+    public void getAllRequestsAllKeys() throws Exception {
+        try (MockWebServer server = new MockWebServer()) {
+            server.setDispatcher(new Dispatcher() {
+                @Override
+                public MockResponse dispatch(RecordedRequest request) {
+                    final String key = request.getRequestUrl().queryParameter("key");
+                    if ("missing".equals(key)) {
+                        return new MockResponse().setResponseCode(404);
+                    }
+                    return new MockResponse().setBody("{\"value\":\"" + key + "-value\"}");
+                }
+            });
+            server.start();
+
+            final HTTPJSONPathDataAdapter adapter = adapter(server.url("/lookup") + "?key=${key}");
+            adapter.startAsync().awaitRunning();
+            try {
+                final Map<Object, LookupResult> results = adapter.getAll(List.of("a", "b", "missing"));
+
+                assertThat(results).containsOnlyKeys("a", "b", "missing");
+                assertThat(results.get("a").singleValue()).isEqualTo("a-value");
+                assertThat(results.get("b").singleValue()).isEqualTo("b-value");
+                assertThat(results.get("missing").hasError()).isTrue();
+                assertThat(server.getRequestCount()).isEqualTo(3);
+            } finally {
+                adapter.stopAsync().awaitTerminated();
+            }
+        }
+    }
+
+    private HTTPJSONPathDataAdapter adapter(String url) {
+        final UrlWhitelistService urlWhitelistService = mock(UrlWhitelistService.class);
+        when(urlWhitelistService.isWhitelisted(anyString())).thenReturn(true);
+        final DataAdapterDto dto = DataAdapterDto.builder()
+                .id("adapter-id")
+                .title("Test")
+                .description("Test")
+                .name("test")
+                .config(HTTPJSONPathDataAdapter.Config.builder()
+                        .type(HTTPJSONPathDataAdapter.NAME)
+                        .url(url)
+                        .singleValueJSONPath("$.value")
+                        .userAgent("test")
+                        .build())
+                .build();
+        return new HTTPJSONPathDataAdapter(dto, Engine.createEngine(), new OkHttpClient(), urlWhitelistService,
+                mock(UrlWhitelistNotificationService.class), new MetricRegistry(), mock(NotificationService.class));
+    }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.caches;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.testing.FakeTicker;
+import org.graylog2.plugin.lookup.LookupCacheKey;
+import org.graylog2.plugin.lookup.LookupResult;
+import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MappedFileLookupCacheTest {
+    @TempDir
+    Path storeDir;
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final AtomicInteger loads = new AtomicInteger();
+    private MappedFileLookupCache cache;
+
+    @BeforeEach
+    void setUp() {
+        final MappedFileLookupCache.Config config = MappedFileLookupCache.Config.builder()
+                .type(MappedFileLookupCache.NAME)
+                .maxSize(100)
+                .maxHeapEntries(1_000)
+                .expireAfterWrite(60)
+                .expireAfterWriteUnit(TimeUnit.SECONDS)
+                .build();
+        cache = new MappedFileLookupCache("id", "test", config, new MetricRegistry(),
+                new ObjectMapperProvider().get(), storeDir, ticker);
+        cache.startAsync().awaitRunning();
+    }
+
+    @AfterEach
+    void tearDown() {
+        cache.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    void servesMergedEntries() {
+        assertThat(get("a", "foo")).isEqualTo("foo-1");
+        assertThat(get("a", 42)).isEqualTo("42-2");
+
+        cache.merge();
+
+        assertThat(get("a", "foo")).isEqualTo("foo-1");
+        assertThat(get("a", 42)).isEqualTo("42-2");
+        assertThat(get("a", "42")).isEqualTo("42-3");
+        assertThat(loads).hasValue(3);
+        assertThat(cache.entryCount()).isEqualTo(3);
+        assertThat(storeDir).isDirectoryContaining(path -> path.getFileName().toString().endsWith(".store"));
+    }
+
+    @Test
+    void purgesMergedEntries() {
+        get("a", "foo");
+        get("a", "bar");
+        get("b", "foo");
+        cache.merge();
+
+        cache.purge(LookupCacheKey.createFromJSON("a", "foo"));
+
+        assertThat(cache.getIfPresent(LookupCacheKey.createFromJSON("a", "foo")).isEmpty()).isTrue();
+        assertThat(get("a", "bar")).isEqualTo("bar-2");
+
+        cache.purge(LookupCacheKey.createFromJSON("b", null));
+
+        assertThat(cache.getIfPresent(LookupCacheKey.createFromJSON("b", "foo")).isEmpty()).isTrue();
+
+        // Merging drops the purged entries for good
+        cache.merge();
+
+        assertThat(cache.entryCount()).isEqualTo(1);
+        assertThat(get("a", "foo")).isEqualTo("foo-4");
+        assertThat(get("b", "foo")).isEqualTo("foo-5");
+    }
+
+    @Test
+    void expiresEntries() {
+        get("a", "foo");
+        cache.merge();
+        get("a", "bar");
+
+        ticker.advance(61, TimeUnit.SECONDS);
+
+        assertThat(get("a", "foo")).isEqualTo("foo-3");
+        assertThat(get("a", "bar")).isEqualTo("bar-4");
+    }
+
+    @Test
+    void keepsMostRecentEntriesUpToMaxSize() {
+        for (int i = 0; i < 80; i++) {
+            get("a", i);
+        }
+        cache.merge();
+        for (int i = 80; i < 160; i++) {
+            get("a", i);
+        }
+        cache.merge();
+
+        assertThat(cache.entryCount()).isEqualTo(100);
+        assertThat(cache.getIfPresent(LookupCacheKey.createFromJSON("a", 159)).singleValue()).isEqualTo("159-160");
+    }
+
+    @Test
+    void purgesAllEntries() {
+        get("a", "foo");
+        cache.merge();
+        get("a", "bar");
+
+        cache.purge();
+
+        assertThat(cache.entryCount()).isZero();
+        assertThat(storeDir).isEmptyDirectory();
+        assertThat(get("a", "foo")).isEqualTo("foo-3");
+    }
+
+    private Object get(String prefix, Object key) {
+        return cache.get(LookupCacheKey.createFromJSON(prefix, key),
+                () -> LookupResult.single(key + "-" + loads.incrementAndGet())).singleValue();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.lookup.store;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MappedLookupStoreTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void returnsStoredValues() throws Exception {
+        final Path file = tempDir.resolve("test.store");
+        try (MappedLookupStore.Builder builder = MappedLookupStore.builder(file)) {
+            builder.put(bytes("foo"), bytes("1"));
+            builder.put(bytes("bar"), bytes("2"));
+            builder.put(bytes(""), bytes("empty key"));
+            builder.put(bytes("baz"), new byte[0]);
+
+            final MappedLookupStore store = builder.build();
+
+            assertThat(store.size()).isEqualTo(4);
+            assertThat(store.get(bytes("foo"))).isEqualTo(bytes("1"));
+            assertThat(store.get(bytes("bar"))).isEqualTo(bytes("2"));
+            assertThat(store.get(bytes(""))).isEqualTo(bytes("empty key"));
+            assertThat(store.get(bytes("baz"))).isEmpty();
+            assertThat(store.get(bytes("qux"))).isNull();
+            assertThat(store.contains(bytes("fo"))).isFalse();
+        }
+    }
+
+    @Test
+    void handlesEmptyStores() throws Exception {
+        final MappedLookupStore store = MappedLookupStore.builder(tempDir.resolve("test.store")).build();
+
+        assertThat(store.size()).isZero();
+        assertThat(store.get(bytes("foo"))).isNull();
+        assertThat(store.iterator().hasNext()).isFalse();
+    }
+
+    @Test
+    void storesEntriesAcrossSegments() throws Exception {
+        final Path file = tempDir.resolve("test.store");
+        final MappedLookupStore.Builder builder = MappedLookupStore.builder(file, 12);
+        for (int i = 0; i < 5_000; i++) {
+            // Some larger values, so records don't fit at the end of a segment
+            builder.put(bytes("key-" + i), bytes(("value-" + i).repeat(i % 7 == 0 ? 50 : 1)));
+        }
+        final MappedLookupStore store = builder.build();
+
+        assertThat(store.size()).isEqualTo(5_000);
+        for (int i = 0; i < 5_000; i++) {
+            assertThat(store.get(bytes("key-" + i))).isEqualTo(bytes(("value-" + i).repeat(i % 7 == 0 ? 50 : 1)));
+        }
+
+        final List<String> keys = new ArrayList<>();
+        final Iterator<Map.Entry<byte[], byte[]>> entries = MappedLookupStore.open(file).iterator();
+        while (entries.hasNext()) {
+            keys.add(new String(entries.next().getKey(), StandardCharsets.UTF_8));
+        }
+        assertThat(keys).hasSize(5_000).startsWith("key-0", "key-1").endsWith("key-4999");
+    }
+
+    @Test
+    void rejectsDuplicateKeys() throws Exception {
+        final Path file = tempDir.resolve("test.store");
+        final MappedLookupStore.Builder builder = MappedLookupStore.builder(file);
+        builder.put(bytes("foo"), bytes("1"));
+        builder.put(bytes("bar"), bytes("2"));
+        builder.put(bytes("foo"), bytes("3"));
+
+        assertThatThrownBy(builder::build)
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("foo");
+        assertThat(file).doesNotExist();
+    }
+
+    @Test
+    void rejectsEntriesLargerThanASegment() throws Exception {
+        try (MappedLookupStore.Builder builder = MappedLookupStore.builder(tempDir.resolve("test.store"), 12)) {
+            assertThatThrownBy(() -> builder.put(bytes("foo"), new byte[4096]))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void deletesFiles() throws Exception {
+        final Path file = tempDir.resolve("test.store");
+        try (MappedLookupStore.Builder builder = MappedLookupStore.builder(file)) {
+            builder.put(bytes("foo"), bytes("1"));
+        }
+        assertThat(file).doesNotExist();
+
+        final MappedLookupStore store = MappedLookupStore.builder(file).put(bytes("foo"), bytes("1")).build();
+        store.close();
+
+        assertThat(file).doesNotExist();
+        // The mapping stays readable until the store is garbage collected
+        assertThat(store.get(bytes("foo"))).isEqualTo(bytes("1"));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MessageFieldsTest {
+    private static final String[] KEYS = {
+            Message.FIELD_ID, Message.FIELD_MESSAGE, Message.FIELD_SOURCE, Message.FIELD_TIMESTAMP,
+            Message.FIELD_GL2_SOURCE_INPUT, Message.FIELD_GL2_REMOTE_IP, "custom_a", "custom_b", "custom_c"
+    };
+
+    @Test
+    void behavesLikeHashMap() {
+        final Random random = new Random(42);
+        final Map<String, Object> expected = new HashMap<>();
+        final MessageFields fields = new MessageFields();
+
+        for (int i = 0; i < 10_000; i++) {
+            final String key = KEYS[random.nextInt(KEYS.length)];
+            if (random.nextInt(3) == 0) {
+                assertThat(fields.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                final Object value = random.nextInt(100);
+                assertThat(fields.put(key, value)).isEqualTo(expected.put(key, value));
+            }
+            assertThat(fields.size()).isEqualTo(expected.size());
+            assertThat(fields.containsKey(key)).isEqualTo(expected.containsKey(key));
+        }
+
+        assertThat(fields).isEqualTo(expected);
+        assertThat(expected).isEqualTo(fields);
+        assertThat(fields.hashCode()).isEqualTo(expected.hashCode());
+    }
+
+    @Test
+    void putNullRemovesField() {
+        final MessageFields fields = new MessageFields();
+        fields.put(Message.FIELD_SOURCE, "source");
+        fields.put("custom", "value");
+
+        assertThat(fields.put(Message.FIELD_SOURCE, null)).isEqualTo("source");
+        assertThat(fields.put("custom", null)).isEqualTo("value");
+        assertThat(fields).isEmpty();
+    }
+
+    @Test
+    void iteratorRemovesEntries() {
+        final MessageFields fields = new MessageFields();
+        fields.put(Message.FIELD_MESSAGE, "message");
+        fields.put(Message.FIELD_SOURCE, "source");
+        fields.put("custom_a", 1);
+        fields.put("custom_b", 2);
+
+        final Iterator<Map.Entry<String, Object>> iterator = fields.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, Object> entry = iterator.next();
+            if (!entry.getKey().equals(Message.FIELD_SOURCE) && !entry.getKey().equals("custom_b")) {
+                iterator.remove();
+            }
+        }
+
+        assertThat(fields).containsOnly(Map.entry(Message.FIELD_SOURCE, "source"), Map.entry("custom_b", 2));
+    }
+}
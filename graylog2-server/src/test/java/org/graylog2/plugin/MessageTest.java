@@ -30,6 +30,7 @@ import org.graylog2.indexer.IndexSet;
 import org.graylog2.plugin.streams.Stream;
 import org.graylog2.shared.SuppressForbidden;
 import org.graylog2.shared.bindings.providers.ObjectMapperProvider;
+import org.graylog2.shared.messageq.localkafka.JournalPartitionOffset;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeUtils;
 import org.joda.time.DateTimeZone;
@@ -808,4 +809,17 @@ public class MessageTest {
         assertThat(msg.getMessage()).isNull();
         assertThat(msg.toString()).isNotEmpty();
     }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void journalOffsetOfPartitionedJournal() {
+        final Message msg = new Message("foo", "bar", Tools.nowUTC());
+        assertThat(msg.getJournalOffset()).isEqualTo(Long.MIN_VALUE);
+
+        msg.setMessageQueueId(new JournalPartitionOffset(2, 7L));
+        assertThat(msg.getJournalOffset()).isEqualTo(7L);
+
+        msg.setJournalOffset(8L);
+        assertThat(msg.getJournalOffset()).isEqualTo(8L);
+    }
 }
@@ -16,15 +16,22 @@
  */
 package org.graylog2.plugin.journal;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.graylog2.plugin.configuration.Configuration;
 import org.graylog2.plugin.system.SimpleNodeId;
+import org.graylog2.shared.messageq.localkafka.JournalPartitionOffset;
 import org.junit.Test;
 
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 
 public class RawMessageTest {
     @Test
@@ -44,4 +51,113 @@ public class RawMessageTest {
         assertEquals("inputid", decodedMsg.getSourceNodes().get(0).inputId);
         assertEquals("5ca1ab1e-0000-4000-a000-000000000000", decodedMsg.getSourceNodes().get(0).nodeId);
     }
+
+    @Test
+    public void decodeFromDirectBuffer() {
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+
+        final byte[] encoded = rawMessage.encode();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length);
+        buffer.put(encoded).flip();
+        final RawMessage decodedMsg = RawMessage.decode(buffer, 1L);
+
+        assertNotNull(decodedMsg);
+        assertEquals(11, decodedMsg.getPayloadSize());
+        assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), decodedMsg.getPayload());
+        assertEquals("raw", decodedMsg.getCodecName());
+        assertEquals(1L, decodedMsg.getMessageQueueId());
+    }
+
+    @Test
+    public void decodeFromBufferDoesNotReferenceBuffer() {
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+
+        final byte[] encoded = rawMessage.encode();
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(encoded.length);
+        buffer.put(encoded).flip();
+        final RawMessage decodedMsg = RawMessage.decode(buffer, 1L);
+
+        // e. g. a memory-mapped journal segment which has been truncated in the meantime
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+
+        assertNotNull(decodedMsg);
+        assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), decodedMsg.getPayload());
+        assertEquals("raw", decodedMsg.getCodecName());
+    }
+
+    @Test
+    public void encodeWithoutPayloadBuffer() {
+        final ByteBuf buffer = Unpooled.directBuffer();
+        buffer.writeCharSequence("testmessage", StandardCharsets.UTF_8);
+        final RawMessage rawMessage = new RawMessage(buffer, new InetSocketAddress("127.0.0.1", 514));
+        rawMessage.addSourceNode("inputid", new SimpleNodeId("5ca1ab1e-0000-4000-a000-000000000000"));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+        rawMessage.setSequenceNr(42);
+
+        assertEquals(11, rawMessage.getPayloadSize());
+        final byte[] header = rawMessage.encodeWithoutPayload();
+        final ByteBuf payload = rawMessage.detachPayloadBuffer();
+        assertNotNull(header);
+        assertSame(buffer, payload);
+
+        final byte[] encoded = new byte[header.length + payload.readableBytes()];
+        System.arraycopy(header, 0, encoded, 0, header.length);
+        payload.getBytes(payload.readerIndex(), encoded, header.length, payload.readableBytes());
+        payload.release();
+        final RawMessage decodedMsg = RawMessage.decode(encoded, 1);
+
+        assertNotNull(decodedMsg);
+        assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), decodedMsg.getPayload());
+        assertEquals("raw", decodedMsg.getCodecName());
+        assertEquals(42, decodedMsg.getSequenceNr());
+        assertEquals("inputid", decodedMsg.getSourceNodes().get(0).inputId);
+        assertEquals(new InetSocketAddress("127.0.0.1", 514), decodedMsg.getRemoteAddress().getInetSocketAddress());
+    }
+
+    @Test
+    public void getPayloadCopiesAndReleasesPayloadBuffer() {
+        final ByteBuf buffer = Unpooled.directBuffer();
+        buffer.writeCharSequence("testmessage", StandardCharsets.UTF_8);
+        final RawMessage rawMessage = new RawMessage(buffer, null);
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+
+        assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), rawMessage.getPayload());
+        assertEquals(0, buffer.refCnt());
+        assertFalse(rawMessage.hasPayloadBuffer());
+        assertArrayEquals("testmessage".getBytes(StandardCharsets.UTF_8), RawMessage.decode(rawMessage.encode(), 1).getPayload());
+    }
+
+    @Test
+    public void releaseDiscardedPayloadBuffer() {
+        final ByteBuf buffer = Unpooled.directBuffer();
+        final RawMessage rawMessage = new RawMessage(buffer, null);
+
+        rawMessage.release();
+        rawMessage.release();
+
+        assertEquals(0, buffer.refCnt());
+        assertEquals(0, rawMessage.getPayloadSize());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void journalOffsetOfPartitionedJournal() {
+        final RawMessage rawMessage = new RawMessage("testmessage".getBytes(StandardCharsets.UTF_8));
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+        final byte[] encoded = rawMessage.encode();
+
+        assertEquals(7L, RawMessage.decode(encoded, new JournalPartitionOffset(2, 7L)).getJournalOffset());
+        assertEquals(7L, RawMessage.decode(encoded, 7L).getJournalOffset());
+        assertEquals(Long.MIN_VALUE, RawMessage.decode(encoded, null).getJournalOffset());
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+import com.lmax.disruptor.util.DaemonThreadFactory;
+import org.junit.Test;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BatchClaimingEventProcessorTest {
+    private static final int EVENTS = 100_000;
+
+    private static class LongEvent {
+        long value;
+    }
+
+    private static class CollectingHandler implements BatchWorkHandler<LongEvent> {
+        private final ConcurrentHashMap<Long, Integer> seen;
+        private final CountDownLatch latch;
+        private final int maxBatchSize;
+        private final AtomicInteger largestBatch;
+        private final AtomicInteger starts = new AtomicInteger();
+
+        CollectingHandler(ConcurrentHashMap<Long, Integer> seen, CountDownLatch latch, int maxBatchSize, AtomicInteger largestBatch) {
+            this.seen = seen;
+            this.latch = latch;
+            this.maxBatchSize = maxBatchSize;
+            this.largestBatch = largestBatch;
+        }
+
+        @Override
+        public void onEvent(LongEvent event) {
+            throw new UnsupportedOperationException("Only batches are expected");
+        }
+
+        @Override
+        public void onBatch(List<LongEvent> events) {
+            assertThat(events).hasSizeBetween(1, maxBatchSize);
+            largestBatch.accumulateAndGet(events.size(), Math::max);
+            for (LongEvent event : events) {
+                seen.merge(event.value, 1, Integer::sum);
+                latch.countDown();
+            }
+        }
+
+        @Override
+        public void onStart() {
+            starts.incrementAndGet();
+        }
+    }
+
+    @Test
+    public void everyEventIsHandledExactlyOnce() throws Exception {
+        final int maxBatchSize = 64;
+        final ConcurrentHashMap<Long, Integer> seen = new ConcurrentHashMap<>();
+        final CountDownLatch latch = new CountDownLatch(EVENTS);
+        final AtomicInteger largestBatch = new AtomicInteger();
+
+        final Disruptor<LongEvent> disruptor = new Disruptor<>(LongEvent::new, 1024, DaemonThreadFactory.INSTANCE,
+                ProducerType.MULTI, new BlockingWaitStrategy());
+        final List<CollectingHandler> handlers = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            handlers.add(new CollectingHandler(seen, latch, maxBatchSize, largestBatch));
+        }
+        disruptor.handleEventsWith(BatchClaimingEventProcessor.createProcessors(disruptor.getRingBuffer(), handlers,
+                new LoggingExceptionHandler(LoggerFactory.getLogger(BatchClaimingEventProcessorTest.class)), maxBatchSize));
+        final RingBuffer<LongEvent> ringBuffer = disruptor.start();
+
+        for (long i = 0; i < EVENTS; i++) {
+            final long value = i;
+            ringBuffer.publishEvent((event, sequence) -> event.value = value);
+        }
+
+        assertThat(latch.await(30, TimeUnit.SECONDS)).isTrue();
+        disruptor.shutdown(10, TimeUnit.SECONDS);
+
+        assertThat(seen).hasSize(EVENTS);
+        assertThat(seen.values()).containsOnly(1);
+        assertThat(largestBatch.get()).isBetween(1, maxBatchSize);
+        assertThat(handlers).allSatisfy(handler -> assertThat(handler.starts.get()).isEqualTo(1));
+    }
+}
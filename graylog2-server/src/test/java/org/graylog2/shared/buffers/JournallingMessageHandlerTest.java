@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers;
+
+import com.codahale.metrics.MetricRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.graylog2.plugin.configuration.Configuration;
+import org.graylog2.plugin.journal.RawMessage;
+import org.graylog2.shared.messageq.MessageQueueException;
+import org.graylog2.shared.messageq.MessageQueueWriter;
+import org.graylog2.system.processing.ProcessingStatusRecorder;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+class JournallingMessageHandlerTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Test
+    void writersWithoutPooledPayloadSupportGetCompleteMessages() throws Exception {
+        final ByteBuf payload = pooledPayload();
+        final RawMessageEvent event = encode(payload, entries -> {
+        });
+
+        assertThat(payload.refCnt()).isZero();
+        assertThat(event.getEncodedPayload()).isNull();
+        final RawMessage decoded = RawMessage.decode(event.getEncodedRawMessage(), 0L);
+        assertThat(decoded).isNotNull();
+        assertThat(new String(decoded.getPayload(), UTF_8)).isEqualTo("message");
+    }
+
+    @Test
+    void releasesPooledPayloadsIfTheWriteFails() throws Exception {
+        final ByteBuf payload = pooledPayload();
+        final MessageQueueWriter failingWriter = new PooledPayloadWriter() {
+            @Override
+            public void write(List<RawMessageEvent> entries) throws MessageQueueException {
+                throw new MessageQueueException("journal is gone");
+            }
+        };
+        final RawMessageEvent event = encode(payload, failingWriter);
+        assertThat(event.getEncodedPayload()).isSameAs(payload);
+
+        final JournallingMessageHandler handler = new JournallingMessageHandler(metricRegistry, failingWriter,
+                mock(ProcessingStatusRecorder.class));
+        assertThatThrownBy(() -> handler.onEvent(event, 0L, true)).isInstanceOf(MessageQueueException.class);
+
+        assertThat(payload.refCnt()).isZero();
+        assertThat(event.getEncodedRawMessage()).isNull();
+    }
+
+    @Test
+    void leavesPooledPayloadsDetachedByTheWriterAlone() throws Exception {
+        final ByteBuf payload = pooledPayload();
+        final MessageQueueWriter detachingWriter = new PooledPayloadWriter() {
+            @Override
+            public void write(List<RawMessageEvent> entries) {
+                entries.forEach(RawMessageEvent::detachEncodedPayload);
+            }
+        };
+        final RawMessageEvent event = encode(payload, detachingWriter);
+
+        new JournallingMessageHandler(metricRegistry, detachingWriter, mock(ProcessingStatusRecorder.class))
+                .onEvent(event, 0L, true);
+
+        assertThat(payload.refCnt()).isEqualTo(1);
+        payload.release();
+    }
+
+    private RawMessageEvent encode(ByteBuf payload, MessageQueueWriter writer) throws Exception {
+        final RawMessage rawMessage = new RawMessage(payload, null);
+        rawMessage.setCodecName("raw");
+        rawMessage.setCodecConfig(Configuration.EMPTY_CONFIGURATION);
+        final RawMessageEvent event = new RawMessageEvent();
+        event.setRawMessage(rawMessage);
+        new RawMessageEncoderHandler(metricRegistry, writer).onEvent(event);
+        return event;
+    }
+
+    private static ByteBuf pooledPayload() {
+        final ByteBuf payload = PooledByteBufAllocator.DEFAULT.directBuffer();
+        payload.writeCharSequence("message", UTF_8);
+        return payload;
+    }
+
+    private abstract static class PooledPayloadWriter implements MessageQueueWriter {
+        @Override
+        public boolean supportsPooledPayloads() {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.buffers.processors;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.eventbus.EventBus;
+import org.graylog.failure.FailureSubmissionService;
+import org.graylog2.buffers.OutputBuffer;
+import org.graylog2.messageprocessors.OrderedMessageProcessors;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.MessageFactory;
+import org.graylog2.plugin.Messages;
+import org.graylog2.plugin.TestMessageFactory;
+import org.graylog2.plugin.Tools;
+import org.graylog2.plugin.buffers.MessageEvent;
+import org.graylog2.plugin.cluster.ClusterConfigService;
+import org.graylog2.plugin.messageprocessors.MessageProcessor;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.streams.StreamMetrics;
+import org.graylog2.system.processing.ProcessingStatusRecorder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ProcessBufferProcessorTest {
+    private final MessageFactory messageFactory = new TestMessageFactory();
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final OutputBuffer outputBuffer = mock(OutputBuffer.class);
+    private final DecodingProcessor decodingProcessor = mock(DecodingProcessor.class);
+    private final FailureSubmissionService failureSubmissionService = mock(FailureSubmissionService.class);
+    private final OrderedMessageProcessors orderedMessageProcessors = mock(OrderedMessageProcessors.class);
+    private ProcessBufferProcessor processor;
+
+    @BeforeEach
+    void setUp() {
+        final ClusterConfigService clusterConfigService = mock(ClusterConfigService.class);
+        when(clusterConfigService.getOrDefault(eq(TimeStampConfig.class), any())).thenReturn(TimeStampConfig.getDefault());
+        when(failureSubmissionService.submitProcessingErrors(any())).thenReturn(true);
+        final MessageULIDGenerator ulidGenerator = mock(MessageULIDGenerator.class);
+        when(ulidGenerator.createULID(any())).thenReturn("01HQ0000000000000000000000");
+        final Stream defaultStream = mock(Stream.class);
+
+        processor = new ProcessBufferProcessor(metricRegistry,
+                orderedMessageProcessors,
+                outputBuffer,
+                mock(ProcessingStatusRecorder.class),
+                ulidGenerator,
+                decodingProcessor,
+                () -> defaultStream,
+                failureSubmissionService,
+                mock(StreamMetrics.class),
+                clusterConfigService,
+                new EventBus());
+    }
+
+    @Test
+    void processesBatchMessagesOneByOneIfTheBatchFails() throws Exception {
+        // fails every collection containing the "bad" message
+        final MessageProcessor messageProcessor = new MessageProcessor() {
+            @Override
+            public Messages process(Messages messages) {
+                for (final Message message : messages) {
+                    if ("bad".equals(message.getMessage())) {
+                        throw new IllegalStateException("Unable to process " + message.getMessage());
+                    }
+                }
+                return messages;
+            }
+        };
+        when(orderedMessageProcessors.iterator()).thenAnswer(invocation -> List.of(messageProcessor).iterator());
+
+        final Message good1 = message("good1");
+        final Message bad = message("bad");
+        final Message good2 = message("good2");
+        processor.onBatch(List.of(event(good1), event(bad), event(good2)));
+
+        verify(outputBuffer).insertBlocking(good1);
+        verify(outputBuffer).insertBlocking(good2);
+        verify(outputBuffer, never()).insertBlocking(bad);
+        verify(failureSubmissionService).submitUnknownProcessingError(eq(bad), anyString());
+        verify(failureSubmissionService, never()).submitUnknownProcessingError(eq(good1), anyString());
+        verify(failureSubmissionService, never()).submitUnknownProcessingError(eq(good2), anyString());
+        assertThat(metricRegistry.timer(MetricRegistry.name(ProcessBufferProcessor.class, "batchProcessTime")).getCount()).isOne();
+    }
+
+    @Test
+    void doesNotRunProcessorsBeforeTheFailedOneAgain() throws Exception {
+        // not idempotent, running it twice on a message changes the result
+        final MessageProcessor counter = new MessageProcessor() {
+            @Override
+            public Messages process(Messages messages) {
+                for (final Message message : messages) {
+                    final Long count = message.getFieldAs(Long.class, "count");
+                    message.addField("count", count == null ? 1L : count + 1);
+                }
+                return messages;
+            }
+        };
+        final MessageProcessor failing = new MessageProcessor() {
+            @Override
+            public Messages process(Messages messages) {
+                for (final Message message : messages) {
+                    if ("bad".equals(message.getMessage())) {
+                        throw new IllegalStateException("Unable to process " + message.getMessage());
+                    }
+                    message.addField("processed", true);
+                }
+                return messages;
+            }
+        };
+        when(orderedMessageProcessors.iterator()).thenAnswer(invocation -> List.of(counter, failing).iterator());
+
+        final Message good1 = message("good1");
+        final Message bad = message("bad");
+        final Message good2 = message("good2");
+        processor.onBatch(List.of(event(good1), event(bad), event(good2)));
+
+        verify(outputBuffer).insertBlocking(good1);
+        verify(outputBuffer).insertBlocking(good2);
+        verify(outputBuffer, never()).insertBlocking(bad);
+        verify(failureSubmissionService).submitUnknownProcessingError(eq(bad), anyString());
+        assertThat(List.of(good1, bad, good2)).allSatisfy(message -> assertThat(message.getField("count")).isEqualTo(1L));
+        assertThat(good1.getField("processed")).isEqualTo(true);
+        assertThat(good2.getField("processed")).isEqualTo(true);
+    }
+
+    @Test
+    void rethrowsDecodingExceptionsAfterProcessingTheBatch() throws Exception {
+        when(orderedMessageProcessors.iterator()).thenAnswer(invocation -> new ArrayList<MessageProcessor>().iterator());
+        final Message good = message("good");
+        final MessageEvent undecodable = event(message("undecodable"));
+        final MessageEvent goodEvent = event(good);
+        final IllegalStateException decodingException = new IllegalStateException("Unable to decode");
+        doThrow(decodingException).when(decodingProcessor).onEvent(undecodable, 0L, false);
+
+        assertThatThrownBy(() -> processor.onBatch(List.of(undecodable, goodEvent))).isSameAs(decodingException);
+
+        verify(outputBuffer).insertBlocking(good);
+        assertThat(goodEvent.getMessage()).isNull();
+        assertThat(undecodable.getMessage()).isNull();
+    }
+
+    private Message message(String text) {
+        return messageFactory.createMessage(text, "source", Tools.nowUTC());
+    }
+
+    private static MessageEvent event(Message message) {
+        final MessageEvent event = new MessageEvent();
+        event.setMessage(message);
+        return event;
+    }
+}
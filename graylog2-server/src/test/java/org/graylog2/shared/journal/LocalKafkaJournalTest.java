@@ -22,6 +22,10 @@ import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
 import com.google.common.primitives.Ints;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import org.graylog.shaded.kafka09.common.KafkaException;
 import org.graylog.shaded.kafka09.log.LogSegment;
 import org.graylog.shaded.kafka09.message.Message;
@@ -31,6 +35,7 @@ import org.graylog2.Configuration;
 import org.graylog2.audit.NullAuditEventSender;
 import org.graylog2.plugin.InstantMillisProvider;
 import org.graylog2.plugin.ServerStatus;
+import org.graylog2.plugin.journal.RawMessage;
 import org.graylog2.plugin.lifecycles.Lifecycle;
 import org.graylog2.plugin.system.FilePersistedNodeIdProvider;
 import org.joda.time.DateTime;
@@ -58,6 +63,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.EnumSet;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -71,6 +77,7 @@ import static org.apache.commons.io.filefilter.FileFilterUtils.nameFileFilter;
 import static org.apache.commons.io.filefilter.FileFilterUtils.suffixFileFilter;
 import static org.apache.commons.lang.RandomStringUtils.randomAlphanumeric;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
@@ -140,6 +147,264 @@ public class LocalKafkaJournalTest {
         assertEquals("message", new String(firstMessage.getPayload(), UTF_8));
     }
 
+    @Test
+    public void writeAndReadPooledRawMessages() throws IOException {
+        final Journal journal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                new MetricRegistry(),
+                serverStatus);
+
+        final List<ByteBuf> buffers = new ArrayList<>();
+        final List<Journal.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final ByteBuf buffer = PooledByteBufAllocator.DEFAULT.directBuffer();
+            buffer.writeCharSequence("message" + i, UTF_8);
+            buffers.add(buffer);
+
+            final RawMessage rawMessage = new RawMessage(buffer, null);
+            rawMessage.setCodecName("raw");
+            rawMessage.setCodecConfig(org.graylog2.plugin.configuration.Configuration.EMPTY_CONFIGURATION);
+            final byte[] encoded = rawMessage.encodeWithoutPayload();
+            entries.add(new Journal.Entry(rawMessage.getIdBytes(), encoded, rawMessage.detachPayloadBuffer(), 0));
+        }
+        entries.add(new Journal.Entry("id".getBytes(UTF_8), "plain".getBytes(UTF_8)));
+
+        journal.write(entries);
+        entries.forEach(Journal.Entry::release);
+
+        assertThat(buffers).allSatisfy(buffer -> assertThat(buffer.refCnt()).isZero());
+        final List<Journal.JournalReadEntry> messages = journal.read(10);
+        assertThat(messages).hasSize(4);
+        for (int i = 0; i < 3; i++) {
+            final RawMessage decoded = RawMessage.decode(messages.get(i).getPayload(), messages.get(i).getOffset());
+            assertThat(decoded).isNotNull();
+            assertThat(decoded.getCodecName()).isEqualTo("raw");
+            assertThat(new String(decoded.getPayload(), UTF_8)).isEqualTo("message" + i);
+        }
+        assertThat(new String(messages.get(3).getPayload(), UTF_8)).isEqualTo("plain");
+    }
+
+    @Test
+    public void writeAndReadMemoryMapped() throws IOException {
+        final Journal journal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                true,
+                1,
+                new MetricRegistry(),
+                serverStatus);
+
+        for (int i = 0; i < 5; i++) {
+            journal.write(("id" + i).getBytes(UTF_8), ("message" + i).getBytes(UTF_8));
+        }
+        final List<Journal.JournalReadEntry> messages = journal.read(5);
+
+        assertThat(messages).hasSize(5);
+        for (int i = 0; i < 5; i++) {
+            final Journal.JournalReadEntry entry = messages.get(i);
+            assertThat(entry.getOffset()).isEqualTo(i);
+            assertThat(entry.getPayloadSize()).isEqualTo(8);
+            assertThat(new String(entry.getPayload(), UTF_8)).isEqualTo("message" + i);
+        }
+    }
+
+    @Test
+    public void memoryMappedReadsShareSegmentMappings() throws Exception {
+        final Size segmentSize = Size.kilobytes(1L);
+        final LocalKafkaJournal journal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                segmentSize,
+                Duration.standardHours(1),
+                Size.kilobytes(10L),
+                Duration.standardDays(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                true,
+                1,
+                new MetricRegistry(),
+                serverStatus);
+
+        createBulkChunks(journal, segmentSize, 8);
+        assertThat(journal.numberOfSegments()).isEqualTo(8);
+
+        // read the whole journal in small batches, which needs several reads per segment
+        final List<Journal.JournalReadEntry> messages = new ArrayList<>();
+        List<Journal.JournalReadEntry> batch;
+        while (!(batch = journal.read(5)).isEmpty()) {
+            messages.addAll(batch);
+        }
+
+        assertThat(messages).hasSize(Ints.checkedCast(journal.getLogEndOffset()));
+        // only rolled segments are mapped, and only a bounded number of them at once
+        assertThat(messages.get(0).getPayloadBuffer().isDirect()).isTrue();
+        assertThat(messages.get(messages.size() - 1).getPayloadBuffer().isDirect()).isFalse();
+        assertThat(journal.numberOfMappedSegments()).isEqualTo(4);
+        for (int i = 0; i < messages.size(); i++) {
+            assertThat(messages.get(i).getOffset()).isEqualTo(i);
+        }
+
+        // retention drops the mappings of deleted segments
+        journal.markJournalOffsetCommitted(journal.getLogEndOffset() - 1);
+        journal.runRetention();
+        assertThat(journal.numberOfSegments()).isEqualTo(1);
+        assertThat(journal.numberOfMappedSegments()).isZero();
+    }
+
+    @Test
+    public void writeAndReadPartitioned() throws Exception {
+        final LocalKafkaJournal journal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                false,
+                2,
+                new MetricRegistry(),
+                serverStatus);
+        assertThat(journal.getPartitionCount()).isEqualTo(2);
+
+        final List<Journal.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            entries.add(new Journal.Entry(("id" + i).getBytes(UTF_8), ("message" + i).getBytes(UTF_8), i));
+        }
+        journal.write(entries);
+
+        final List<Journal.JournalReadEntry> even = journal.read(0, 10);
+        final List<Journal.JournalReadEntry> odd = journal.read(1, 10);
+        assertThat(even).extracting(entry -> new String(entry.getPayload(), UTF_8))
+                .containsExactly("message0", "message2", "message4");
+        assertThat(odd).extracting(entry -> new String(entry.getPayload(), UTF_8))
+                .containsExactly("message1", "message3", "message5");
+        assertThat(odd).extracting(Journal.JournalReadEntry::getOffset).containsExactly(0L, 1L, 2L);
+        assertThat(journal.size()).isGreaterThan(0);
+
+        // Offsets of the whole journal are summed up over all partitions
+        assertThat(journal.getLogStartOffset()).isZero();
+        assertThat(journal.getLogEndOffset()).isEqualTo(6L);
+        assertThat(journal.getLogEndOffset(1)).isEqualTo(3L);
+        assertThat(journal.getNextReadOffset()).isEqualTo(6L);
+        assertThat(journal.uncommittedMessages()).isEqualTo(6L);
+
+        // Offsets are committed per partition
+        journal.markJournalOffsetCommitted(1, 2L);
+        assertThat(journal.getCommittedOffset(0)).isEqualTo(LocalKafkaJournal.DEFAULT_COMMITTED_OFFSET);
+        assertThat(journal.getCommittedOffset(1)).isEqualTo(2L);
+        assertThat(journal.getCommittedOffset()).isEqualTo(2L);
+        assertThat(journal.uncommittedMessages()).isEqualTo(3L);
+        journal.markJournalOffsetCommitted(0, 1L);
+        assertThat(journal.getCommittedOffset(0)).isEqualTo(1L);
+        assertThat(journal.getCommittedOffset()).isEqualTo(4L);
+        assertThat(journal.uncommittedMessages()).isEqualTo(1L);
+        assertThat(journal.getLogEndOffset() - 1 - journal.getCommittedOffset()).isEqualTo(journal.uncommittedMessages());
+
+        journal.flush();
+        assertThat(new File(journalDirectory, "graylog2-committed-read-offset")).hasContent("1");
+        assertThat(new File(journalDirectory, "graylog2-committed-read-offset-1")).hasContent("2");
+
+        journal.resetNextReadOffset();
+        assertThat(journal.read(0, 10)).extracting(Journal.JournalReadEntry::getOffset).containsExactly(2L);
+        assertThat(journal.read(1, 10)).isEmpty();
+
+        // Offsets are only unique within a partition, so truncation needs the partition
+        assertThatThrownBy(() -> journal.truncateTo(1L)).isInstanceOf(IllegalStateException.class);
+        journal.truncateTo(1, 1L);
+        assertThat(journal.getLogEndOffset(0)).isEqualTo(3L);
+        assertThat(journal.getLogEndOffset(1)).isEqualTo(1L);
+        assertThat(journal.getLogEndOffset()).isEqualTo(4L);
+    }
+
+    @Test
+    public void readRemovedPartitionsUntilEmpty() throws Exception {
+        final LocalKafkaJournal journal = openPartitionedJournal(3);
+        final List<Journal.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            entries.add(new Journal.Entry(("id" + i).getBytes(UTF_8), ("message" + i).getBytes(UTF_8), i));
+        }
+        journal.write(entries);
+        journal.markJournalOffsetCommitted(1, 1L);
+        journal.stopAsync().awaitTerminated();
+
+        // the third partition still has uncommitted messages, so it is read but not written to anymore
+        final LocalKafkaJournal reducedJournal = openPartitionedJournal(2);
+        assertThat(reducedJournal.getPartitionCount()).isEqualTo(3);
+        reducedJournal.write(List.of(new Journal.Entry("id".getBytes(UTF_8), "message".getBytes(UTF_8), 2)));
+        assertThat(reducedJournal.getLogEndOffset(0)).isEqualTo(3L);
+        assertThat(reducedJournal.getLogEndOffset(2)).isEqualTo(2L);
+        assertThat(reducedJournal.read(2, 10)).extracting(entry -> new String(entry.getPayload(), UTF_8))
+                .containsExactly("message2", "message5");
+        reducedJournal.markJournalOffsetCommitted(2, 1L);
+        reducedJournal.stopAsync().awaitTerminated();
+
+        // once it has been read completely, it is deleted on the next start
+        final LocalKafkaJournal drainedJournal = openPartitionedJournal(2);
+        assertThat(drainedJournal.getPartitionCount()).isEqualTo(2);
+        assertThat(new File(journalDirectory, "messagejournal-2")).doesNotExist();
+        assertThat(new File(journalDirectory, "graylog2-committed-read-offset-2")).doesNotExist();
+        assertThat(new File(journalDirectory, "graylog2-committed-read-offset-1")).hasContent("1");
+        drainedJournal.stopAsync().awaitTerminated();
+    }
+
+    @Test
+    public void committedOffsetIsHighestAcknowledgedOffsetAfterRestart() throws Exception {
+        final LocalKafkaJournal journal = openPartitionedJournal(2);
+        final List<Journal.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            entries.add(new Journal.Entry(("id" + i).getBytes(UTF_8), ("message" + i).getBytes(UTF_8), i));
+        }
+        journal.write(entries);
+        assertThat(journal.read(1, 10)).extracting(Journal.JournalReadEntry::getOffset).containsExactly(0L, 1L, 2L, 3L);
+
+        // Offsets are acknowledged out of order, offset 1 is still in flight when the node goes down
+        journal.markJournalOffsetCommitted(1, 2L);
+        journal.markJournalOffsetCommitted(1, 0L);
+        assertThat(journal.getCommittedOffset(1)).isEqualTo(2L);
+        journal.stopAsync().awaitTerminated();
+
+        // The gap below the committed offset is not delivered again, reading resumes after the highest acknowledged
+        // offset
+        final LocalKafkaJournal restartedJournal = openPartitionedJournal(2);
+        assertThat(restartedJournal.getCommittedOffset(1)).isEqualTo(2L);
+        assertThat(restartedJournal.read(1, 10)).extracting(entry -> new String(entry.getPayload(), UTF_8))
+                .containsExactly("message7");
+        restartedJournal.stopAsync().awaitTerminated();
+    }
+
+    private LocalKafkaJournal openPartitionedJournal(int partitionCount) {
+        final LocalKafkaJournal journal = new LocalKafkaJournal(journalDirectory.toPath(),
+                scheduler,
+                Size.megabytes(100L),
+                Duration.standardHours(1),
+                Size.megabytes(5L),
+                Duration.standardHours(1),
+                1_000_000,
+                Duration.standardMinutes(1),
+                100,
+                false,
+                partitionCount,
+                new MetricRegistry(),
+                serverStatus);
+        journal.startAsync().awaitRunning();
+        return journal;
+    }
+
     @Test
     public void readAtLeastOne() throws Exception {
         final Journal journal = new LocalKafkaJournal(journalDirectory.toPath(),
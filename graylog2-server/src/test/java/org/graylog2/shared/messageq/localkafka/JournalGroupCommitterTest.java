@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.messageq.localkafka;
+
+import com.codahale.metrics.MetricRegistry;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.JournalFsyncPolicy;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JournalGroupCommitterTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final List<List<Journal.Entry>> appended = Collections.synchronizedList(new ArrayList<>());
+    private final AtomicInteger fsyncs = new AtomicInteger();
+
+    @Test
+    void groupsEntriesOfMultipleWrites() throws Exception {
+        final JournalGroupCommitter committer = committer(10 * 100, 10_000, JournalFsyncPolicy.NONE);
+
+        // Queue all writes before the committer starts, so they are grouped by size only
+        for (int i = 0; i < 25; i++) {
+            committer.submit(List.of(entry(100)));
+        }
+        runToCompletion(committer);
+
+        assertThat(appended).hasSize(3);
+        assertThat(appended.get(0)).hasSize(10);
+        assertThat(appended.get(1)).hasSize(10);
+        assertThat(appended.get(2)).hasSize(5);
+        assertThat(metricRegistry.histogram("org.graylog2.shared.messageq.localkafka.LocalKafkaMessageQueueWriter.group-commit-batch-size").getCount())
+                .isEqualTo(3);
+        assertThat(fsyncs).hasValue(0);
+    }
+
+    @Test
+    void appendsIncompleteGroupsAfterDelay() throws Exception {
+        final JournalGroupCommitter committer = committer(Long.MAX_VALUE, 10, JournalFsyncPolicy.NONE);
+        final Thread thread = new Thread(committer);
+        thread.start();
+
+        committer.submit(List.of(entry(100), entry(100)));
+
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (appended.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        committer.stop();
+        thread.join();
+
+        assertThat(appended).hasSize(1);
+        assertThat(appended.get(0)).hasSize(2);
+    }
+
+    @Test
+    void fsyncsBySize() throws Exception {
+        final JournalGroupCommitter committer = new JournalGroupCommitter(this::append, fsyncs::incrementAndGet,
+                100, 10_000, JournalFsyncPolicy.SIZE, 0, 300, metricRegistry);
+
+        for (int i = 0; i < 7; i++) {
+            committer.submit(List.of(entry(100)));
+        }
+        runToCompletion(committer);
+
+        // Seven groups of 100 bytes, synced after the third and sixth one and once more on shutdown
+        assertThat(appended).hasSize(7);
+        assertThat(fsyncs).hasValue(3);
+    }
+
+    @Test
+    void fsyncsEveryGroupWithZeroInterval() throws Exception {
+        final JournalGroupCommitter committer = committer(100, 10_000, JournalFsyncPolicy.INTERVAL);
+
+        for (int i = 0; i < 4; i++) {
+            committer.submit(List.of(entry(100)));
+        }
+        runToCompletion(committer);
+
+        assertThat(appended).hasSize(4);
+        assertThat(fsyncs).hasValue(4);
+    }
+
+    @Test
+    void continuesAfterAppendFailure() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final JournalGroupCommitter committer = new JournalGroupCommitter((entries, appendedListener) -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("Boom");
+            }
+            append(entries, appendedListener);
+        }, fsyncs::incrementAndGet, 100, 10_000, JournalFsyncPolicy.NONE, 0, 0, metricRegistry);
+
+        final CompletableFuture<Void> failed = committer.submit(List.of(entry(100)));
+        final CompletableFuture<Void> succeeded = committer.submit(List.of(entry(100)));
+        runToCompletion(committer);
+
+        assertThat(attempts).hasValue(2);
+        assertThat(appended).hasSize(1);
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(succeeded).isCompleted().isNotCompletedExceptionally();
+    }
+
+    @Test
+    void handsBackOnlyEntriesWhichWereNotAppended() throws Exception {
+        final JournalGroupCommitter committer = new JournalGroupCommitter((entries, appendedListener) -> {
+            // the first three entries make it into the journal before the write fails
+            append(entries.subList(0, 3), appendedListener);
+            throw new IllegalStateException("Boom");
+        }, fsyncs::incrementAndGet, 1000, 10_000, JournalFsyncPolicy.NONE, 0, 0, metricRegistry);
+
+        final Journal.Entry first = entry(100);
+        final Journal.Entry second = entry(100);
+        final Journal.Entry third = entry(100);
+        final Journal.Entry fourth = entry(100);
+        final CompletableFuture<Void> appendedBatch = committer.submit(List.of(first, second));
+        final CompletableFuture<Void> partialBatch = committer.submit(List.of(third, fourth));
+        runToCompletion(committer);
+
+        assertThat(appendedBatch).isCompleted().isNotCompletedExceptionally();
+        assertThat(partialBatch).isCompletedExceptionally();
+        assertThatThrownBy(partialBatch::join)
+                .cause()
+                .isInstanceOfSatisfying(JournalGroupCommitter.NotAppendedException.class,
+                        e -> assertThat(e.entries()).containsExactly(fourth));
+    }
+
+    @Test
+    void completesSubmissionsAfterAppendAndFsync() throws Exception {
+        final JournalGroupCommitter committer = new JournalGroupCommitter((entries, appendedListener) -> {
+            assertThat(fsyncs).hasValue(0);
+            append(entries, appendedListener);
+        }, fsyncs::incrementAndGet, 100, 10, JournalFsyncPolicy.INTERVAL, 0, 0, metricRegistry);
+        final Thread thread = new Thread(committer);
+        thread.start();
+
+        final CompletableFuture<Void> completion = committer.submit(List.of(entry(100)));
+        completion.get(5, TimeUnit.SECONDS);
+
+        assertThat(appended).hasSize(1);
+        assertThat(fsyncs).hasValue(1);
+        committer.stop();
+        thread.join();
+    }
+
+    @Test
+    void failsSubmissionsAfterStop() throws Exception {
+        final JournalGroupCommitter committer = committer(100, 10_000, JournalFsyncPolicy.NONE);
+        runToCompletion(committer);
+
+        final CompletableFuture<Void> completion = committer.submit(List.of(entry(100)));
+
+        assertThat(completion).isCompletedExceptionally();
+        assertThat(appended).isEmpty();
+    }
+
+    private JournalGroupCommitter committer(long maxGroupBytes, long maxDelayMs, JournalFsyncPolicy fsyncPolicy) {
+        return new JournalGroupCommitter(this::append, fsyncs::incrementAndGet, maxGroupBytes, maxDelayMs,
+                fsyncPolicy, 0, 0, metricRegistry);
+    }
+
+    private void append(List<Journal.Entry> entries, Consumer<List<Journal.Entry>> appendedListener) {
+        // The committer reuses the list for the next group
+        appended.add(List.copyOf(entries));
+        appendedListener.accept(entries);
+    }
+
+    private void runToCompletion(JournalGroupCommitter committer) {
+        committer.stop();
+        committer.run();
+    }
+
+    private Journal.Entry entry(int size) {
+        return new Journal.Entry(new byte[16], new byte[size]);
+    }
+}
@@ -99,4 +99,27 @@ public class LocalKafkaMessageQueueAcknowledgerTest {
 
         verify(kafkaJournal).markJournalOffsetCommitted(2L);
     }
+
+    @Test
+    void acknowledgePartitionOffset() {
+        acknowledger.acknowledge(new JournalPartitionOffset(3, 1L));
+        verify(kafkaJournal).markJournalOffsetCommitted(3, 1L);
+    }
+
+    @Test
+    void acknowledgeMessagesOfSeveralPartitions(MessageFactory messageFactory) {
+        final ImmutableList.Builder<Message> messages = ImmutableList.builder();
+        for (JournalPartitionOffset offset : ImmutableList.of(new JournalPartitionOffset(0, 4L),
+                new JournalPartitionOffset(1, 7L), new JournalPartitionOffset(0, 5L), new JournalPartitionOffset(1, 6L))) {
+            final Message message = messageFactory.createMessage("message", "source", DateTime.now(UTC));
+            message.setMessageQueueId(offset);
+            messages.add(message);
+        }
+
+        acknowledger.acknowledge(messages.build());
+
+        verify(kafkaJournal).markJournalOffsetCommitted(0, 5L);
+        verify(kafkaJournal).markJournalOffsetCommitted(1, 7L);
+        verifyNoMoreInteractions(kafkaJournal);
+    }
 }
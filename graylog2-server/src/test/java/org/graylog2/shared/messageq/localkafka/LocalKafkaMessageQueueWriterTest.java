@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.shared.messageq.localkafka;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.joschi.jadconfig.util.Size;
+import org.graylog2.shared.buffers.RawMessageEvent;
+import org.graylog2.shared.journal.Journal;
+import org.graylog2.shared.journal.JournalFsyncPolicy;
+import org.graylog2.shared.journal.LocalKafkaJournal;
+import org.graylog2.shared.messageq.MessageQueueWriter;
+import org.joda.time.Duration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class LocalKafkaMessageQueueWriterTest {
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+    private final LocalKafkaJournal journal = mock(LocalKafkaJournal.class);
+    private final List<List<String>> written = new ArrayList<>();
+
+    private LocalKafkaMessageQueueWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        writer = new LocalKafkaMessageQueueWriter(journal, new Semaphore(0),
+                new MessageQueueWriter.Metrics.Provider(metricRegistry).get(), metricRegistry,
+                true, Size.kilobytes(64), Duration.standardSeconds(10), JournalFsyncPolicy.NONE,
+                Duration.standardSeconds(1), Size.megabytes(1));
+    }
+
+    @Test
+    void doesNotWaitForTheGroupToBeAppended() throws Exception {
+        writer.write(List.of(event("a"), event("b")));
+        writer.write(List.of(event("c")));
+
+        // the committer isn't running yet, so both writes only queued their entries
+        verify(journal, never()).write(anyList(), any());
+
+        writer.startUp();
+        writer.shutDown();
+
+        verify(journal, times(1)).write(anyList(), any());
+        assertThat(metricRegistry.meter("org.graylog2.shared.messageq.MessageQueueWriter.written-messages").getCount())
+                .isEqualTo(3);
+    }
+
+    @Test
+    void retriesOnlyEntriesWhichWereNotAppended() throws Exception {
+        when(journal.write(anyList(), any())).thenAnswer(invocation -> {
+            final List<Journal.Entry> entries = invocation.getArgument(0);
+            written.add(ids(entries));
+            if (written.size() == 1) {
+                // the first entry makes it into the journal, then the write fails
+                invocation.<Consumer<List<Journal.Entry>>>getArgument(1).accept(entries.subList(0, 1));
+                throw new IllegalStateException("Boom");
+            }
+            return 0L;
+        });
+
+        writer.write(List.of(event("a"), event("b")));
+        writer.startUp();
+        writer.shutDown();
+
+        assertThat(written).containsExactly(List.of("a", "b"), List.of("b"));
+        assertThat(metricRegistry.meter("org.graylog2.shared.messageq.MessageQueueWriter.failed-write-attempts").getCount())
+                .isEqualTo(1);
+    }
+
+    private static RawMessageEvent event(String id) {
+        final RawMessageEvent event = new RawMessageEvent();
+        event.setMessageIdBytes(id.getBytes(UTF_8));
+        event.setEncodedRawMessage(new byte[100]);
+        return event;
+    }
+
+    private static List<String> ids(List<Journal.Entry> entries) {
+        return entries.stream()
+                .map(entry -> new String(entry.getIdBytes(), UTF_8))
+                .toList();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.streams;
+
+import com.google.common.collect.ImmutableMap;
+import org.bson.types.ObjectId;
+import org.graylog2.plugin.Message;
+import org.graylog2.plugin.streams.Stream;
+import org.graylog2.plugin.streams.StreamRule;
+import org.graylog2.plugin.streams.StreamRuleType;
+import org.graylog2.streams.matchers.StreamRuleMock;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Runs all {@link StreamRouterEngineTest} tests against the compiled matching mode and checks that both modes
+ * produce the same results.
+ */
+public class CompiledStreamRouterEngineTest extends StreamRouterEngineTest {
+    private static final String[] FIELDS = {"field1", "field2", "field3"};
+    private static final String[] VALUES = {"", " ", "foo", "bar", "foobar", "barfoo", "ob", "o", "1", "-1", "2.5", "10", "NaN"};
+    private static final StreamRuleType[] TYPES = {
+            StreamRuleType.EXACT, StreamRuleType.GREATER, StreamRuleType.SMALLER, StreamRuleType.PRESENCE,
+            StreamRuleType.CONTAINS, StreamRuleType.ALWAYS_MATCH, StreamRuleType.MATCH_INPUT, StreamRuleType.REGEX
+    };
+
+    @Override
+    protected StreamRouterEngine newEngine(List<Stream> streams) {
+        return newEngine(streams, true);
+    }
+
+    @Test
+    public void testOverlappingContainsRules() {
+        final StreamMock stream1 = getStreamMock("stream1");
+        stream1.setStreamRules(List.of(rule(StreamRuleType.CONTAINS, "field1", "she", false)));
+        final StreamMock stream2 = getStreamMock("stream2");
+        stream2.setStreamRules(List.of(rule(StreamRuleType.CONTAINS, "field1", "he", false),
+                rule(StreamRuleType.CONTAINS, "field1", "hers", false)));
+        final StreamMock stream3 = getStreamMock("stream3", Stream.MatchingType.OR);
+        stream3.setStreamRules(List.of(rule(StreamRuleType.CONTAINS, "field1", "his", false),
+                rule(StreamRuleType.CONTAINS, "field1", "ushe", true)));
+
+        final StreamRouterEngine engine = newEngine(List.of(stream1, stream2, stream3));
+
+        final Message message = getMessage();
+        message.addField("field1", "ushers");
+
+        assertThat(engine.match(message)).containsExactly(stream1, stream2);
+    }
+
+    @Test
+    public void testNumericThresholds() {
+        final List<Stream> streams = new ArrayList<>();
+        for (String threshold : new String[]{"-5", "0", "1.5", "3", "3", "NaN", "not-a-number"}) {
+            final StreamMock greater = getStreamMock("greater " + threshold);
+            greater.setStreamRules(List.of(rule(StreamRuleType.GREATER, "field1", threshold, false)));
+            final StreamMock smaller = getStreamMock("smaller " + threshold);
+            smaller.setStreamRules(List.of(rule(StreamRuleType.SMALLER, "field1", threshold, true)));
+            streams.add(greater);
+            streams.add(smaller);
+        }
+
+        final StreamRouterEngine compiled = newEngine(streams, true);
+        final StreamRouterEngine linear = newEngine(streams, false);
+
+        for (Object value : new Object[]{-10, -5, 0, 0.0d, 1.5f, 2, 3L, 3.0001d, 100, "3", "foo", Double.NaN}) {
+            final Message message = getMessage();
+            message.addField("field1", value);
+
+            assertThat(compiled.match(message)).as("value <%s>", value)
+                    .containsExactlyInAnyOrderElementsOf(linear.match(message));
+        }
+    }
+
+    @Test
+    public void testRandomRulesMatchLinearEngine() {
+        final Random random = new Random(42);
+
+        for (int round = 0; round < 20; round++) {
+            final List<Stream> streams = new ArrayList<>();
+            for (int i = 0; i < 30; i++) {
+                final StreamMock stream = getStreamMock("stream" + i, random.nextBoolean() ? Stream.MatchingType.AND : Stream.MatchingType.OR);
+                final List<StreamRule> rules = new ArrayList<>();
+                final int ruleCount = random.nextInt(4);
+                for (int r = 0; r < ruleCount; r++) {
+                    rules.add(rule(TYPES[random.nextInt(TYPES.length)], pick(random, FIELDS), pick(random, VALUES), random.nextBoolean()));
+                }
+                stream.setStreamRules(rules);
+                streams.add(stream);
+            }
+
+            final StreamRouterEngine compiled = newEngine(streams, true);
+            final StreamRouterEngine linear = newEngine(streams, false);
+
+            for (int m = 0; m < 50; m++) {
+                final Message message = getMessage();
+                for (String field : FIELDS) {
+                    if (random.nextBoolean()) {
+                        message.addField(field, random.nextBoolean() ? pick(random, VALUES) : random.nextInt(20) - 5);
+                    }
+                }
+                if (random.nextBoolean()) {
+                    message.addField(Message.FIELD_GL2_SOURCE_INPUT, pick(random, VALUES).toUpperCase(Locale.ROOT));
+                }
+
+                assertThat(compiled.match(message)).as("message <%s>", message.getFields())
+                        .containsExactlyInAnyOrderElementsOf(linear.match(message));
+            }
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static StreamRule rule(StreamRuleType type, String field, String value, boolean inverted) {
+        return new StreamRuleMock(ImmutableMap.<String, Object>builder()
+                .put("_id", new ObjectId())
+                .put("field", field)
+                .put("value", value)
+                .put("type", type.toInteger())
+                .put("inverted", inverted)
+                .build());
+    }
+}
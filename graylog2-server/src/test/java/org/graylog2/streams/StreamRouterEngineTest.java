@@ -73,9 +73,14 @@ public class StreamRouterEngineTest {
     }
 
     @SuppressForbidden("Executors#newSingleThreadExecutor() is okay for tests")
-    private StreamRouterEngine newEngine(List<Stream> streams) {
+    protected StreamRouterEngine newEngine(List<Stream> streams) {
+        return newEngine(streams, false);
+    }
+
+    @SuppressForbidden("Executors#newSingleThreadExecutor() is okay for tests")
+    protected StreamRouterEngine newEngine(List<Stream> streams, boolean compiledMatching) {
         return new StreamRouterEngine(streams, Executors.newSingleThreadExecutor(), streamFaultManager, streamMetrics,
-                defaultStreamProvider, new MetricRegistry());
+                defaultStreamProvider, new MetricRegistry(), compiledMatching);
     }
 
     @Test
@@ -767,15 +772,15 @@ public class StreamRouterEngineTest {
                 Lists.newArrayList(stream), engine.match(message2));
     }
 
-    private StreamMock getStreamMock(String title) {
+    protected StreamMock getStreamMock(String title) {
         return getStreamMock(title, Stream.MatchingType.AND);
     }
 
-    private StreamMock getStreamMock(String title, Stream.MatchingType matchingType) {
+    protected StreamMock getStreamMock(String title, Stream.MatchingType matchingType) {
         return new StreamMock(ImmutableMap.of("_id", new ObjectId(), "title", title, "matching_type", matchingType));
     }
 
-    private StreamRule getStreamRuleMock(String id, StreamRuleType type, String field, String value) {
+    protected StreamRule getStreamRuleMock(String id, StreamRuleType type, String field, String value) {
         final StreamRule result = mock(StreamRule.class);
         when(result.getId()).thenReturn(id);
         when(result.getType()).thenReturn(type);
@@ -785,7 +790,7 @@ public class StreamRouterEngineTest {
         return result;
     }
 
-    private Message getMessage() {
+    protected Message getMessage() {
         return messageFactory.createMessage("test message", "localhost", new DateTime(DateTimeZone.UTC));
     }
 }
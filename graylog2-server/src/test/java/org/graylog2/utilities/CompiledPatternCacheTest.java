@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2020 Graylog, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the Server Side Public License, version 1,
+ * as published by MongoDB, Inc.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * Server Side Public License for more details.
+ *
+ * You should have received a copy of the Server Side Public License
+ * along with this program. If not, see
+ * <http://www.mongodb.com/licensing/server-side-public-license>.
+ */
+package org.graylog2.utilities;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.awaitility.Awaitility.await;
+
+class CompiledPatternCacheTest {
+    private static final String PREFIX = "org.graylog2.utilities.CompiledPatternCache.";
+
+    private final MetricRegistry metricRegistry = new MetricRegistry();
+
+    @Test
+    void reusesCompiledPatterns() {
+        final CompiledPatternCache cache = new CompiledPatternCache(10_000, metricRegistry);
+
+        final Pattern pattern = cache.regex("^foo(\\d+)$");
+
+        assertThat(cache.regex("^foo(\\d+)$")).isSameAs(pattern);
+        assertThat(cache.regex("^foo(\\d+)$", Pattern.DOTALL)).isNotSameAs(pattern)
+                .extracting(Pattern::flags).isEqualTo(Pattern.DOTALL);
+        assertThat(metricRegistry.meter(PREFIX + "hits").getCount()).isEqualTo(1);
+        assertThat(metricRegistry.meter(PREFIX + "misses").getCount()).isEqualTo(2);
+    }
+
+    @Test
+    void separatesNamespaces() {
+        final CompiledPatternCache cache = new CompiledPatternCache(10_000, metricRegistry);
+        final AtomicInteger compilations = new AtomicInteger();
+
+        assertThat(cache.<String>get("a", "x", source -> "a:" + source + compilations.incrementAndGet())).isEqualTo("a:x1");
+        assertThat(cache.<String>get("b", "x", source -> "b:" + source + compilations.incrementAndGet())).isEqualTo("b:x2");
+        assertThat(cache.<String>get("a", "x", source -> "a:" + source + compilations.incrementAndGet())).isEqualTo("a:x1");
+
+        cache.invalidate("a");
+
+        assertThat(cache.<String>get("a", "x", source -> "a:" + source + compilations.incrementAndGet())).isEqualTo("a:x3");
+        assertThat(cache.<String>get("b", "x", source -> "b:" + source + compilations.incrementAndGet())).isEqualTo("b:x2");
+    }
+
+    @Test
+    void doesNotCacheInvalidPatterns() {
+        final CompiledPatternCache cache = new CompiledPatternCache(10_000, metricRegistry);
+
+        assertThatThrownBy(() -> cache.regex("foo(")).isInstanceOf(PatternSyntaxException.class);
+        assertThatThrownBy(() -> cache.regex("foo(")).isInstanceOf(PatternSyntaxException.class);
+
+        assertThat(metricRegistry.meter(PREFIX + "compile-failures").getCount()).isEqualTo(2);
+        assertThat(gauge("entries")).isEqualTo(0L);
+    }
+
+    @Test
+    void evictsByPatternSize() {
+        final CompiledPatternCache cache = new CompiledPatternCache(1_000, metricRegistry);
+
+        for (int i = 0; i < 100; i++) {
+            cache.get("test", i + "x".repeat(100), source -> (CompiledPatternCache.Weighted) source::length);
+        }
+
+        await().atMost(5, TimeUnit.SECONDS).until(() -> gauge("weight") <= 1_000);
+        assertThat(metricRegistry.meter(PREFIX + "evictions").getCount()).isPositive();
+    }
+
+    @SuppressWarnings("unchecked")
+    private long gauge(String name) {
+        return ((Gauge<Long>) metricRegistry.getGauges().get(PREFIX + name)).getValue();
+    }
+}
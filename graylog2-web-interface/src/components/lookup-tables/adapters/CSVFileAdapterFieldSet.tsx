@@ -139,6 +139,16 @@ const CSVFileAdapterFieldSet = ({ config, handleFormEvent, validationState, vali
         help="Enable if the keys in the lookup table are in CIDR notation and lookups will be done with IPs"
         wrapperClassName="col-md-offset-3 col-md-9"
       />
+      <Input
+        type="checkbox"
+        id="memory_mapped"
+        name="memory_mapped"
+        label="Memory-mapped storage"
+        checked={config.memory_mapped}
+        onChange={handleFormEvent}
+        help="Enable to keep the parsed file in a memory-mapped file instead of the heap. Recommended for large files. Has no effect on CIDR lookups."
+        wrapperClassName="col-md-offset-3 col-md-9"
+      />
     </fieldset>
   );
 };
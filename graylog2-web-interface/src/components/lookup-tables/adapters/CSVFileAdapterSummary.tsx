@@ -51,6 +51,8 @@ const CSVFileAdapterSummary = ({ dataAdapter }: Props) => {
       <dd>{config.case_insensitive_lookup ? 'yes' : 'no'}</dd>
       <dt>CIDR lookup</dt>
       <dd>{config.cidr_lookup ? 'yes' : 'no'}</dd>
+      <dt>Memory-mapped storage</dt>
+      <dd>{config.memory_mapped ? 'yes' : 'no'}</dd>
     </dl>
   );
 };
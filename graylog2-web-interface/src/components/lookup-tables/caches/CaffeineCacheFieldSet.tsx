@@ -102,6 +102,18 @@ const CaffeineCacheFieldSet = ({ config }: Props, ref: any) => {
         labelClassName="col-sm-3"
         wrapperClassName="col-sm-9"
       />
+      <TimeUnitInput
+        label="Refresh after write"
+        help="If enabled, entries are reloaded in the background after the specified time from when they were written. Until the reload is done, the previous value is used."
+        update={handleUpdate('refresh_after_write')}
+        name="config.refresh_after_write"
+        unitName="config.refresh_after_write_unit"
+        value={stateConfig.refresh_after_write}
+        unit={stateConfig.refresh_after_write_unit || 'SECONDS'}
+        defaultEnabled={config.refresh_after_write > 0}
+        labelClassName="col-sm-3"
+        wrapperClassName="col-sm-9"
+      />
       <Input
         type="checkbox"
         id="ignore_null"
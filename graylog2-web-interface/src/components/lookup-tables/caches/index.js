@@ -21,6 +21,8 @@ import NullCacheSummary from './NullCacheSummary';
 import CaffeineCacheFieldSet from './CaffeineCacheFieldSet';
 import CaffeineCacheSummary from './CaffeineCacheSummary';
 import CaffeineCacheDocumentation from './CaffeineCacheDocumentation';
+import MappedFileCacheFieldSet from './MappedFileCacheFieldSet';
+import MappedFileCacheSummary from './MappedFileCacheSummary';
 
 PluginStore.register(
   new PluginManifest(
@@ -41,6 +43,13 @@ PluginStore.register(
           summaryComponent: CaffeineCacheSummary,
           documentationComponent: CaffeineCacheDocumentation,
         },
+        {
+          type: 'mapped_file_cache',
+          displayName: 'Node-local, memory-mapped file cache',
+          formComponent: MappedFileCacheFieldSet,
+          summaryComponent: MappedFileCacheSummary,
+          documentationComponent: null,
+        },
       ],
     },
   ),
@@ -46,9 +46,20 @@ export type LookupTableCacheConfig = {
     | 'HOURS'
     | 'DAYS'
     | null;
+  max_heap_entries?: number;
   ignore_null?: boolean;
   ttl_empty?: number;
   ttl_empty_unit?: 'NANOSECONDS' | 'MICROSECONDS' | 'MILLISECONDS' | 'SECONDS' | 'MINUTES' | 'HOURS' | 'DAYS' | null;
+  refresh_after_write?: number;
+  refresh_after_write_unit?:
+    | 'NANOSECONDS'
+    | 'MICROSECONDS'
+    | 'MILLISECONDS'
+    | 'SECONDS'
+    | 'MINUTES'
+    | 'HOURS'
+    | 'DAYS'
+    | null;
 };
 
 export type LookupTableCache = GenericEntityType & {
@@ -67,6 +78,7 @@ export type LookupTableDataAdapterConfig = {
   multi_value_lookup?: boolean;
   case_insensitive_lookup?: boolean;
   cidr_lookup?: boolean;
+  memory_mapped?: boolean;
   user_passwd?: {
     is_set?: boolean;
     keep_value?: boolean;